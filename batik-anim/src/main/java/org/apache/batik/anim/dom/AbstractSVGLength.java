@@ -18,8 +18,11 @@
  */
 package org.apache.batik.anim.dom;
 
+import org.apache.batik.parser.DefaultLengthHandler;
 import org.apache.batik.parser.LengthParser;
 import org.apache.batik.parser.ParseException;
+import org.apache.batik.parser.Parser;
+import org.apache.batik.parser.ParserCache;
 import org.apache.batik.parser.UnitProcessor;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Element;
@@ -223,8 +226,8 @@ public abstract class AbstractSVGLength
      * @param s String representation of a SVGlength.
      */
     protected void parse(String s) {
+        LengthParser lengthParser = (LengthParser)lengthParsers.take();
         try {
-            LengthParser lengthParser = new LengthParser();
             UnitProcessor.UnitResolver ur =
                 new UnitProcessor.UnitResolver();
             lengthParser.setLengthHandler(ur);
@@ -234,9 +237,24 @@ public abstract class AbstractSVGLength
         } catch (ParseException e) {
             unitType = SVG_LENGTHTYPE_UNKNOWN;
             value = 0;
+        } finally {
+            lengthParsers.release(lengthParser);
         }
     }
 
+    /**
+     * The parsers of the lengths.
+     */
+    private static final ParserCache lengthParsers = new ParserCache() {
+            protected Parser createParser() {
+                return new LengthParser();
+            }
+            protected void reset(Parser p) {
+                ((LengthParser)p).setLengthHandler
+                    (DefaultLengthHandler.INSTANCE);
+            }
+        };
+
     /**
      * To resolve the units.
      */
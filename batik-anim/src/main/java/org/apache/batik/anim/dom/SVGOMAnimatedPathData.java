@@ -27,7 +27,6 @@ import org.apache.batik.dom.svg.AbstractSVGNormPathSegList;
 import org.apache.batik.dom.svg.AbstractSVGPathSegList;
 import org.apache.batik.dom.svg.ListBuilder;
 import org.apache.batik.dom.svg.LiveAttributeException;
-import org.apache.batik.dom.svg.SVGAnimatedPathDataSupport;
 import org.apache.batik.dom.svg.SVGItem;
 import org.apache.batik.dom.svg.AbstractSVGPathSegList.SVGPathSegArcItem;
 import org.apache.batik.dom.svg.AbstractSVGPathSegList.SVGPathSegCurvetoCubicItem;
@@ -39,8 +38,8 @@ import org.apache.batik.dom.svg.AbstractSVGPathSegList.SVGPathSegLinetoVerticalI
 import org.apache.batik.dom.svg.AbstractSVGPathSegList.SVGPathSegMovetoLinetoItem;
 import org.apache.batik.dom.svg.SVGPathSegItem;
 
+import org.apache.batik.parser.PackedPath;
 import org.apache.batik.parser.ParseException;
-import org.apache.batik.parser.PathArrayProducer;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
@@ -91,6 +90,27 @@ public class SVGOMAnimatedPathData
      */
     protected String defaultValue;
 
+    /**
+     * The parsed base value, shared by the path segment lists and the
+     * renderer, or null if the attribute must be parsed again.
+     */
+    protected PackedPath basePath;
+
+    /**
+     * Whether the attribute is missing.
+     */
+    protected boolean baseMissing;
+
+    /**
+     * Whether the attribute is malformed.
+     */
+    protected boolean baseMalformed;
+
+    /**
+     * The animated value, if the attribute is animated.
+     */
+    protected PackedPath animatedPath;
+
     /**
      * Creates a new SVGOMAnimatedPathData.
      * @param elt The associated element.
@@ -174,33 +194,76 @@ public class SVGOMAnimatedPathData
      */
     public void check() {
         if (!hasAnimVal) {
-            if (pathSegs == null) {
-                pathSegs = new BaseSVGPathSegList();
-            }
-            pathSegs.revalidate();
-            if (pathSegs.missing) {
+            getBasePackedPath();
+            if (baseMissing) {
                 throw new LiveAttributeException
                     (element, localName,
                      LiveAttributeException.ERR_ATTRIBUTE_MISSING, null);
             }
-            if (pathSegs.malformed) {
+            if (baseMalformed) {
                 throw new LiveAttributeException
                     (element, localName,
                      LiveAttributeException.ERR_ATTRIBUTE_MALFORMED,
-                     pathSegs.getValueAsString());
+                     getBaseValueAsString());
+            }
+        }
+    }
+
+    /**
+     * Returns the parsed base value of the attribute.  The attribute is
+     * parsed once and the result shared until it changes; the path
+     * segment lists are built from it when they are first used.  An
+     * empty path is returned if the attribute is missing or malformed.
+     */
+    public PackedPath getBasePackedPath() {
+        if (basePath == null) {
+            baseMissing = false;
+            baseMalformed = false;
+            String s = getBaseValueAsString();
+            if (s == null) {
+                baseMissing = true;
+                basePath = PackedPath.EMPTY;
+            } else {
+                try {
+                    basePath = AbstractSVGPathSegList.parsePackedPath(s);
+                } catch (ParseException e) {
+                    baseMalformed = true;
+                    basePath = PackedPath.EMPTY;
+                }
             }
         }
+        return basePath;
+    }
+
+    /**
+     * Returns the parsed animated value of the attribute, which is the
+     * base value if the attribute is not animated.
+     */
+    public PackedPath getAnimatedPackedPath() {
+        if (hasAnimVal) {
+            return animatedPath;
+        }
+        return getBasePackedPath();
+    }
+
+    /**
+     * Returns the value of the DOM attribute containing the path data.
+     */
+    protected String getBaseValueAsString() {
+        Attr attr = element.getAttributeNodeNS(namespaceURI, localName);
+        if (attr == null) {
+            return defaultValue;
+        }
+        return attr.getValue();
     }
 
     /**
      * Returns the base value of the attribute as an {@link AnimatableValue}.
      */
     public AnimatableValue getUnderlyingValue(AnimationTarget target) {
-        SVGPathSegList psl = getPathSegList();
-        PathArrayProducer pp = new PathArrayProducer();
-        SVGAnimatedPathDataSupport.handlePathSegList(psl, pp);
-        return new AnimatablePathDataValue(target, pp.getPathCommands(),
-                                           pp.getPathParameters());
+        PackedPath p = getBasePackedPath();
+        return new AnimatablePathDataValue(target, p.getPathCommands(),
+                                           p.getPathParameters());
     }
 
     /**
@@ -209,9 +272,12 @@ public class SVGOMAnimatedPathData
     protected void updateAnimatedValue(AnimatableValue val) {
         if (val == null) {
             hasAnimVal = false;
+            animatedPath = null;
         } else {
             hasAnimVal = true;
             AnimatablePathDataValue animPath = (AnimatablePathDataValue) val;
+            animatedPath = new PackedPath(animPath.getCommands(),
+                                          animPath.getParameters());
             if (animPathSegs == null) {
                 animPathSegs = new AnimSVGPathSegList();
             }
@@ -225,6 +291,7 @@ public class SVGOMAnimatedPathData
      * Called when an Attr node has been added.
      */
     public void attrAdded(Attr node, String newv) {
+        basePath = null;
         if (!changing) {
             if (pathSegs != null) {
                 pathSegs.invalidate();
@@ -243,6 +310,7 @@ public class SVGOMAnimatedPathData
      * Called when an Attr node has been modified.
      */
     public void attrModified(Attr node, String oldv, String newv) {
+        basePath = null;
         if (!changing) {
             if (pathSegs != null) {
                 pathSegs.invalidate();
@@ -261,6 +329,7 @@ public class SVGOMAnimatedPathData
      * Called when an Attr node has been removed.
      */
     public void attrRemoved(Attr node, String oldv) {
+        basePath = null;
         if (!changing) {
             if (pathSegs != null) {
                 pathSegs.invalidate();
@@ -361,15 +430,20 @@ public class SVGOMAnimatedPathData
             missing = false;
             malformed = false;
 
-            String s = getValueAsString();
-            if (s == null) {
+            PackedPath p = getBasePackedPath();
+            if (baseMissing) {
                 missing = true;
                 return;
             }
+            if (baseMalformed) {
+                itemList = new ArrayList(1);
+                malformed = true;
+                return;
+            }
             try {
                 ListBuilder builder = new ListBuilder(this);
 
-                doParse(s, builder);
+                doParse(p, builder);
 
                 if (builder.getList() != null) {
                     clear(itemList);
@@ -450,15 +524,20 @@ public class SVGOMAnimatedPathData
             missing = false;
             malformed = false;
 
-            String s = getValueAsString();
-            if (s == null) {
+            PackedPath p = getBasePackedPath();
+            if (baseMissing) {
                 missing = true;
                 return;
             }
+            if (baseMalformed) {
+                itemList = new ArrayList(1);
+                malformed = true;
+                return;
+            }
             try {
                 ListBuilder builder = new ListBuilder(this);
 
-                doParse(s, builder);
+                doParse(p, builder);
 
                 if (builder.getList() != null) {
                     clear(itemList);
@@ -0,0 +1,209 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.image.SampleModel;
+
+import org.apache.batik.ext.awt.image.renderable.DeferRable;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.RedRable;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.util.BoundedCache;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * A <code>URLImageCache</code> which holds its images strongly, within
+ * a budget of bytes.
+ *
+ * <p>The size of an image is the size of its decoded raster, computed
+ * from its sample model.  When the cached images exceed the budget the
+ * least recently used ones are dropped, so images used on every page
+ * stay in the cache while large images used once leave it first.  An
+ * image which is still being decoded when it is put is accounted for
+ * once its raster is known.</p>
+ *
+ * <p>The request/put protocol is the one of <code>URLImageCache</code>:
+ * the first requester of an URL is 'on the hook' for it, and the other
+ * requesters wait until it is put or cleared.  Unlike
+ * <code>URLImageCache</code>, the cache has no global lock: the
+ * lookups of different URLs do not block each other.</p>
+ *
+ * @see BoundedCache
+ * @version $Id$
+ */
+public class BoundedURLImageCache extends URLImageCache {
+
+    /**
+     * The bytes accounted for each cached image, on top of its raster.
+     */
+    public static final int ENTRY_OVERHEAD = 1024;
+
+    /**
+     * The cache holding the images.
+     */
+    protected final BoundedCache cache;
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum total size of the cached images, in
+     *        bytes.
+     */
+    public BoundedURLImageCache(long maxSize) {
+        cache = new BoundedCache(maxSize) {
+                protected long getSize(Object value) {
+                    return getDecodedSize((Filter)value);
+                }
+            };
+    }
+
+    /**
+     * Check if <code>request(url)</code> will return with a Filter
+     * (not putting you on the hook for it).
+     */
+    public boolean isPresent(ParsedURL purl) {
+        return cache.isPresent(purl);
+    }
+
+    /**
+     * Check if <code>request(url)</code> will return immediately with the
+     * Filter.
+     */
+    public boolean isDone(ParsedURL purl) {
+        return cache.isDone(purl);
+    }
+
+    /**
+     * If this returns null then you are now 'on the hook'.
+     * to put the Filter associated with ParsedURL into the
+     * cache.
+     */
+    public Filter request(ParsedURL purl) {
+        return (Filter)cache.request(purl);
+    }
+
+    /**
+     * Clear the entry for ParsedURL.
+     * This is the easiest way to 'get off the hook'.
+     * if you didn't indend to get on it.
+     */
+    public void clear(ParsedURL purl) {
+        cache.clear(purl);
+    }
+
+    /**
+     * Associate filt with purl.  If the cache no longer contains purl it
+     * was cleared or flushed since we were put on the hook for it, so in
+     * that case we will do nothing.
+     */
+    public void put(ParsedURL purl, Filter filt) {
+        cache.put(purl, filt);
+    }
+
+    /**
+     * Removes all the images from the cache.  Pending requests will
+     * be treated as though clear() was called on their URL.
+     */
+    public void flush() {
+        cache.flush();
+    }
+
+    /**
+     * Returns the maximum total size of the cached images, in bytes.
+     */
+    public long getMaxSize() {
+        return cache.getMaxSize();
+    }
+
+    /**
+     * Sets the maximum total size of the cached images, in bytes.
+     */
+    public void setMaxSize(long maxSize) {
+        cache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Returns the total size of the cached images, in bytes.
+     */
+    public long getSize() {
+        return cache.getSize();
+    }
+
+    /**
+     * Returns the number of cached images, including the ones being
+     * loaded.
+     */
+    public int getImageCount() {
+        return cache.getCount();
+    }
+
+    /**
+     * Returns the number of requests which found their image.
+     */
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * Returns the number of requests which put the caller on the hook.
+     */
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * Returns the number of images dropped to fit the budget.
+     */
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public void resetStatistics() {
+        cache.resetStatistics();
+    }
+
+    /**
+     * Returns the size of the decoded raster of the given image, in
+     * bytes, or -1 if it is still being decoded.  Images which are not
+     * rasters, such as broken link images, only count for
+     * {@link #ENTRY_OVERHEAD}.
+     */
+    protected long getDecodedSize(Filter filt) {
+        while (filt instanceof DeferRable) {
+            filt = ((DeferRable)filt).peekSource();
+            if (filt == null) {
+                return -1;
+            }
+        }
+        long bytes = ENTRY_OVERHEAD;
+        if (filt instanceof RedRable) {
+            CachableRed cr = ((RedRable)filt).getSource();
+            SampleModel sm = cr.getSampleModel();
+            int[] sampleSize = sm.getSampleSize();
+            long bits = 0;
+            for (int i = 0; i < sampleSize.length; i++) {
+                bits += sampleSize[i];
+            }
+            bytes += ((long)cr.getWidth() * cr.getHeight() * bits + 7) / 8;
+        }
+        return bytes;
+    }
+}
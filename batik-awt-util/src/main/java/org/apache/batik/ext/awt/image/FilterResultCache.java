@@ -0,0 +1,632 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.renderable.RenderContext;
+import java.awt.image.renderable.RenderableImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.rendered.Any2LsRGBRed;
+import org.apache.batik.ext.awt.image.rendered.Any2sRGBRed;
+import org.apache.batik.ext.awt.image.rendered.BufferedImageCachableRed;
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.ext.awt.image.rendered.TranslateRed;
+
+/**
+ * A process-wide cache of the renderings of the filters drawn by
+ * <code>GraphicsUtil.drawImage</code>, so that repainting a filtered
+ * element whose content did not change does not evaluate its filter
+ * primitives again.
+ *
+ * <p>Renderings are only cached while an owner, typically a graphics
+ * node painting its filter, is entered on the current thread.  They
+ * are recorded for that owner, and {@link #invalidate} drops them when
+ * the content of the owner changes.  A filter is rendered once over its
+ * whole bounds and kept as a raster, which is reused as long as the
+ * filter is drawn with the same device transform, up to an integer
+ * translation, and the same rendering hints.  The least recently used
+ * renderings are dropped first when the cache exceeds its budget.</p>
+ *
+ * <p>The budget is a number of bytes of raster data, set with the
+ * <code>org.apache.batik.filter.cache_size</code> system property or
+ * {@link #setMaxSize}.  It defaults to 0, which disables the
+ * cache.</p>
+ *
+ * @version $Id$
+ */
+public class FilterResultCache {
+
+    /**
+     * The rendering hints which change the rendering of a filter.
+     */
+    protected static final RenderingHints.Key[] OUTPUT_HINTS = {
+        RenderingHints.KEY_ANTIALIASING,
+        RenderingHints.KEY_RENDERING,
+        RenderingHints.KEY_COLOR_RENDERING,
+        RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.KEY_ALPHA_INTERPOLATION,
+        RenderingHints.KEY_DITHERING,
+        RenderingHints.KEY_STROKE_CONTROL,
+        RenderingHints.KEY_TEXT_ANTIALIASING,
+        RenderingHints.KEY_FRACTIONALMETRICS,
+        RenderingHintsKeyExt.KEY_COLORSPACE,
+        RenderingHintsKeyExt.KEY_TRANSCODING
+    };
+
+    /**
+     * The color space conversions of a cached rendering.
+     */
+    protected static final int NO_CONVERSION = 0;
+    protected static final int TO_LINEAR_RGB = 1;
+    protected static final int TO_SRGB       = 2;
+
+    protected static final ColorSpace SRGB
+        = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+    protected static final ColorSpace LINEAR_RGB
+        = ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB);
+
+    /**
+     * The shared instance.
+     */
+    protected static final FilterResultCache instance;
+    static {
+        long value = 0;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.filter.cache_size");
+            if (s != null) {
+                value = Long.parseLong(s);
+            }
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        }
+        instance = new FilterResultCache(value);
+    }
+
+    /**
+     * Returns the cache used by <code>GraphicsUtil</code>.
+     */
+    public static FilterResultCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * The owner entered on each thread.
+     */
+    protected final ThreadLocal owner = new ThreadLocal();
+
+    /**
+     * The cached renderings, in least recently used first order.
+     */
+    protected LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     * The keys of the cached renderings of each owner, so that
+     * invalidating an owner does not go through the whole cache.
+     */
+    protected HashMap owners = new HashMap();
+
+    /**
+     * The maximum total size of the cached rasters, in bytes.
+     */
+    protected volatile long maxSize;
+
+    /**
+     * The total size of the cached rasters, in bytes.
+     */
+    protected long size;
+
+    protected long hitCount;
+    protected long missCount;
+    protected long evictionCount;
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum total size of the cached rasters, in
+     *        bytes.
+     */
+    public FilterResultCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Tells whether the cache holds any rendering at all.
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Makes the given object the owner of the renderings created by
+     * the current thread, until {@link #exit} is called.  The owner
+     * is compared by identity and held until its renderings are
+     * dropped, so it should be a small object, such as a weak
+     * reference.
+     * @return the previous owner, to give to <code>exit</code>.
+     */
+    public Object enter(Object o) {
+        Object prev = owner.get();
+        owner.set(o);
+        return prev;
+    }
+
+    /**
+     * Restores the owner replaced by {@link #enter}.
+     */
+    public void exit(Object prev) {
+        owner.set(prev);
+    }
+
+    /**
+     * Returns a rendering of the given filter, from the cache if
+     * possible.  The rendering may cover more than the area of
+     * interest of the context.
+     */
+    public RenderedImage createRendering(RenderableImage filter,
+                                         RenderContext rc) {
+        Object o = owner.get();
+        long max = maxSize;
+        if ((o == null) || (max <= 0) || !(filter instanceof Filter)) {
+            return filter.createRendering(rc);
+        }
+        Filter f = (Filter)filter;
+
+        AffineTransform at = rc.getTransform();
+        Rectangle area = at.createTransformedShape
+            (f.getBounds2D()).getBounds();
+        Rectangle needed = area;
+        Shape aoi = rc.getAreaOfInterest();
+        if (aoi != null) {
+            needed = area.intersection
+                (at.createTransformedShape(aoi).getBounds());
+        }
+        if (needed.isEmpty()) {
+            return filter.createRendering(rc);
+        }
+        Map hints = getOutputHints(rc.getRenderingHints());
+        Key key = new Key(o, f);
+
+        Entry e;
+        synchronized (this) {
+            e = (Entry)entries.get(key);
+            if ((e != null) && !e.covers(f, at, hints, needed)) {
+                e = null;
+            }
+            if (e != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+
+        if (e == null) {
+            long bytes = (long)area.width * area.height * 4;
+            if (bytes > max / 4) {
+                // Too large to be worth keeping.
+                return filter.createRendering(rc);
+            }
+            e = render(f, at, rc.getRenderingHints());
+            if (e == null) {
+                return filter.createRendering(rc);
+            }
+            e.hints = hints;
+            put(key, e);
+            return e.image;
+        }
+
+        int dx = (int)(at.getTranslateX() - e.transform.getTranslateX());
+        int dy = (int)(at.getTranslateY() - e.transform.getTranslateY());
+        if ((dx == 0) && (dy == 0)) {
+            return e.image;
+        }
+        return new TranslateRed(e.image, e.image.getMinX() + dx,
+                                e.image.getMinY() + dy);
+    }
+
+    /**
+     * Removes the renderings created for the given owner.
+     */
+    public synchronized void invalidate(Object o) {
+        List keys = (List)owners.remove(o);
+        if (keys == null) {
+            return;
+        }
+        Iterator it = keys.iterator();
+        while (it.hasNext()) {
+            Entry e = (Entry)entries.remove(it.next());
+            if (e != null) {
+                size -= e.size;
+            }
+        }
+    }
+
+    /**
+     * Removes all the renderings from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        owners.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of cached renderings.
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the maximum total size of the cached rasters, in bytes.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum total size of the cached rasters, in bytes.  0
+     * disables the cache.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    /**
+     * Returns the total size of the cached rasters, in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of renderings found in the cache.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of renderings not found in the cache.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of renderings dropped to fit the budget.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+        evictionCount = 0;
+    }
+
+    /**
+     * Adds a rendering to the cache and trims it.
+     */
+    protected synchronized void put(Key key, Entry e) {
+        Entry old = (Entry)entries.put(key, e);
+        if (old != null) {
+            size -= old.size;
+        } else {
+            List keys = (List)owners.get(key.owner);
+            if (keys == null) {
+                keys = new ArrayList(2);
+                owners.put(key.owner, keys);
+            }
+            keys.add(key);
+        }
+        size += e.size;
+        trim();
+    }
+
+    /**
+     * Removes a key from the keys of its owner.
+     */
+    protected void removeOwnerKey(Key key) {
+        List keys = (List)owners.get(key.owner);
+        if (keys == null) {
+            return;
+        }
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            if (keys.get(i) == key) {
+                keys.remove(i);
+                break;
+            }
+        }
+        if (keys.isEmpty()) {
+            owners.remove(key.owner);
+        }
+    }
+
+    /**
+     * Drops the renderings of the collected filters, then the least
+     * recently used renderings until the cache fits in its budget.
+     */
+    protected void trim() {
+        Iterator it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry me = (Map.Entry)it.next();
+            Key key = (Key)me.getKey();
+            if (key.filter.get() == null) {
+                size -= ((Entry)me.getValue()).size;
+                it.remove();
+                removeOwnerKey(key);
+            }
+        }
+        it = entries.entrySet().iterator();
+        while ((size > maxSize) && it.hasNext()) {
+            Map.Entry me = (Map.Entry)it.next();
+            size -= ((Entry)me.getValue()).size;
+            it.remove();
+            removeOwnerKey((Key)me.getKey());
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Renders a filter over its whole bounds.  Returns null if
+     * the filter renders nothing there, or more than the budget
+     * allows.
+     */
+    protected Entry render(Filter f, AffineTransform at, RenderingHints rh) {
+        // Render what a paint of the whole filter would.
+        Shape aoi = f.getBounds2D();
+        if (rh != null) {
+            rh = (RenderingHints)rh.clone();
+            rh.remove(RenderingHintsKeyExt.KEY_AREA_OF_INTEREST);
+        }
+        RenderedImage ri = f.createRendering(new RenderContext(at, aoi, rh));
+        if ((ri == null) || (ri.getWidth() <= 0) || (ri.getHeight() <= 0)) {
+            return null;
+        }
+
+        // Keep the data a color space conversion reads rather than its
+        // result, so that drawImage can still undo the conversion.
+        CachableRed cr = GraphicsUtil.wrap(ri);
+        int conversion = NO_CONVERSION;
+        if ((cr instanceof Any2LsRGBRed) && isSourceIn(cr, SRGB)) {
+            cr = (CachableRed)cr.getSources().get(0);
+            conversion = TO_LINEAR_RGB;
+        } else if ((cr instanceof Any2sRGBRed) && isSourceIn(cr, LINEAR_RGB)) {
+            cr = (CachableRed)cr.getSources().get(0);
+            conversion = TO_SRGB;
+        }
+
+        // The rendering is kept whole, the filter may paint a little
+        // outside of its bounds.
+        Rectangle r = cr.getBounds();
+        ColorModel cm = cr.getColorModel();
+        long bytes = ((long)r.width * r.height * cm.getPixelSize() + 7) / 8;
+        if (bytes > maxSize / 4) {
+            return null;
+        }
+
+        CachableRed image;
+        if (cr instanceof BufferedImageCachableRed) {
+            // Already computed, and not shared with anything which
+            // would modify it.
+            image = cr;
+        } else {
+            image = copyTiles(cr);
+        }
+        switch (conversion) {
+        case TO_LINEAR_RGB:
+            image = GraphicsUtil.convertToLsRGB(image);
+            break;
+        case TO_SRGB:
+            image = GraphicsUtil.convertTosRGB(image);
+            break;
+        }
+
+        Entry e = new Entry();
+        e.timeStamp = f.getTimeStamp();
+        e.transform = new AffineTransform(at);
+        e.area = at.createTransformedShape(aoi).getBounds();
+        e.image = image;
+        e.size = bytes;
+        return e;
+    }
+
+    /**
+     * Copies a rendering into a raster, tile by tile as drawImage
+     * reads it.
+     */
+    protected static CachableRed copyTiles(CachableRed cr) {
+        Rectangle r = cr.getBounds();
+        ColorModel cm = cr.getColorModel();
+        WritableRaster wr = cm.createCompatibleWritableRaster
+            (r.width, r.height);
+        WritableRaster dst = wr.createWritableTranslatedChild(r.x, r.y);
+        int tx0 = cr.getMinTileX();
+        int ty0 = cr.getMinTileY();
+        int tx1 = tx0 + cr.getNumXTiles();
+        int ty1 = ty0 + cr.getNumYTiles();
+        for (int ty = ty0; ty < ty1; ty++) {
+            for (int tx = tx0; tx < tx1; tx++) {
+                Raster tile = cr.getTile(tx, ty);
+                Rectangle tr = tile.getBounds().intersection(r);
+                if (!tr.isEmpty()) {
+                    dst.setRect(tile.createChild(tr.x, tr.y,
+                                                 tr.width, tr.height,
+                                                 tr.x, tr.y, null));
+                }
+            }
+        }
+        BufferedImage bi = new BufferedImage
+            (cm, wr, cm.isAlphaPremultiplied(), null);
+        return new BufferedImageCachableRed(bi, r.x, r.y);
+    }
+
+    /**
+     * Tells whether the source of a conversion is in the given color
+     * space.
+     */
+    protected static boolean isSourceIn(CachableRed cr, ColorSpace cs) {
+        Object src = cr.getSources().get(0);
+        if (!(src instanceof CachableRed)) {
+            return false;
+        }
+        ColorModel cm = ((CachableRed)src).getColorModel();
+        return (cm != null) && (cm.getColorSpace() == cs);
+    }
+
+    /**
+     * Returns the hints which change the rendering of a filter.
+     */
+    protected static Map getOutputHints(RenderingHints rh) {
+        Map m = new HashMap();
+        if (rh == null) {
+            return m;
+        }
+        for (int i = 0; i < OUTPUT_HINTS.length; i++) {
+            Object v = rh.get(OUTPUT_HINTS[i]);
+            if (v != null) {
+                m.put(OUTPUT_HINTS[i], v);
+            }
+        }
+        return m;
+    }
+
+    /**
+     * The key of a rendering: its owner and its filter, both compared
+     * by identity.  The filter is weakly held so that the cache does
+     * not keep the filter chains, and what they render, alive.
+     */
+    protected static class Key {
+
+        public Object owner;
+        public WeakReference filter;
+        protected int hash;
+
+        public Key(Object owner, Filter filter) {
+            this.owner = owner;
+            this.filter = new WeakReference(filter);
+            hash = System.identityHashCode(owner) * 31
+                + System.identityHashCode(filter);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            Object f = filter.get();
+            return (owner == k.owner) && (f != null)
+                && (f == k.filter.get());
+        }
+    }
+
+    /**
+     * A cached rendering.
+     */
+    protected static class Entry {
+
+        /**
+         * The time stamp of the filter when it was rendered.
+         */
+        public long timeStamp;
+
+        /**
+         * The device transform of the rendering.
+         */
+        public AffineTransform transform;
+
+        /**
+         * The hints of the rendering which change its result.
+         */
+        public Map hints;
+
+        /**
+         * The device area rendered.
+         */
+        public Rectangle area;
+
+        /**
+         * The rendering.
+         */
+        public CachableRed image;
+
+        /**
+         * The size of its raster, in bytes.
+         */
+        public long size;
+
+        /**
+         * Tells whether this rendering can be used for the given filter,
+         * transform and hints, over the given device area.
+         */
+        public boolean covers(Filter f, AffineTransform at, Map h,
+                              Rectangle needed) {
+            if (timeStamp != f.getTimeStamp()) {
+                return false;
+            }
+            if ((at.getScaleX() != transform.getScaleX())
+                    || (at.getScaleY() != transform.getScaleY())
+                    || (at.getShearX() != transform.getShearX())
+                    || (at.getShearY() != transform.getShearY())) {
+                return false;
+            }
+            double dx = at.getTranslateX() - transform.getTranslateX();
+            double dy = at.getTranslateY() - transform.getTranslateY();
+            if ((dx != Math.rint(dx)) || (dy != Math.rint(dy))) {
+                return false;
+            }
+            if (!hints.equals(h)) {
+                return false;
+            }
+            Rectangle r = new Rectangle(area);
+            r.translate((int)dx, (int)dy);
+            return r.contains(needed);
+        }
+    }
+}
@@ -445,8 +445,9 @@ public class GraphicsUtil {
         // Get our sources image...
         // System.out.println("UnOpt: " + filter);
         AffineTransform at = g2d.getTransform();
-        RenderedImage ri = filter.createRendering
-            (new RenderContext(at, g2d.getClip(), g2d.getRenderingHints()));
+        RenderedImage ri = FilterResultCache.getInstance().createRendering
+            (filter,
+             new RenderContext(at, g2d.getClip(), g2d.getRenderingHints()));
 
         if (ri == null)
             return;
@@ -683,6 +684,17 @@ public class GraphicsUtil {
         if (cs == ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB))
             return src;
 
+        if (src instanceof Any2sRGBRed) {
+            // Undo the conversion instead of converting back, which
+            // would lose precision in the dark tones.
+            CachableRed orig = (CachableRed)src.getSources().get(0);
+            ColorModel origCM = orig.getColorModel();
+            if ((origCM != null) &&
+                (origCM.getColorSpace() ==
+                 ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB)))
+                return orig;
+        }
+
         return new Any2LsRGBRed(src);
     }
 
@@ -702,6 +714,16 @@ public class GraphicsUtil {
         if (cs == ColorSpace.getInstance(ColorSpace.CS_sRGB))
             return src;
 
+        if (src instanceof Any2LsRGBRed) {
+            // Undo the conversion instead of converting back.
+            CachableRed orig = (CachableRed)src.getSources().get(0);
+            ColorModel origCM = orig.getColorModel();
+            if ((origCM != null) &&
+                (origCM.getColorSpace() ==
+                 ColorSpace.getInstance(ColorSpace.CS_sRGB)))
+                return orig;
+        }
+
         return new Any2sRGBRed(src);
     }
 
@@ -1011,6 +1033,15 @@ public class GraphicsUtil {
         if (cm.isAlphaPremultiplied() == newAlphaPreMult)
             return cm;
 
+        // Avoid building a new colormodel for the ones we use the most.
+        if (newAlphaPreMult) {
+            if (cm.equals(sRGB_Unpre))        return sRGB_Pre;
+            if (cm.equals(Linear_sRGB_Unpre)) return Linear_sRGB_Pre;
+        } else {
+            if (cm.equals(sRGB_Pre))          return sRGB_Unpre;
+            if (cm.equals(Linear_sRGB_Pre))   return Linear_sRGB_Unpre;
+        }
+
         // Easiest way to build proper colormodel for new Alpha state...
         // Eventually this should switch on known ColorModel types and
         // only fall back on this hack when the CM type is unknown.
@@ -1391,6 +1422,87 @@ public class GraphicsUtil {
             return true;
         }
 
+    /**
+     * The fixed point (8.16) inverses of the alpha values, used to
+     * divide out alpha.
+     */
+    private static final int[] ALPHA_INVERSE = new int[256];
+    static {
+        for (int a=1; a<256; a++)
+            ALPHA_INVERSE[a] = 0x00FF0000/a;
+    }
+
+    /**
+     * Returns the component value <code>c</code> of a pixel with
+     * alpha <code>a</code> once alpha is divided out, as computed by
+     * <code>divideAlpha</code> for INT_PACK data.
+     */
+    private static int divideComponent(int c, int a) {
+        if (a == 0)
+            return 0xFF;
+        if (a == 255)
+            return c;
+        return ((c*ALPHA_INVERSE[a])&0xFF0000)>>16;
+    }
+
+    /**
+     * Builds the table used by <code>divideAlphaLut_INT_PACK_Data</code>
+     * to divide out alpha and then apply <code>lut</code>.  The entry
+     * <code>(a&lt;&lt;8)|c</code> is the looked up value of the
+     * component <code>c</code> of a pixel with alpha <code>a</code>.
+     *
+     * @param lut the lookup table of the unpremultiplied components,
+     *        256 values in [0, 255].
+     */
+    public static byte[] makeDivideAlphaLut(int[] lut) {
+        byte[] table = new byte[256*256];
+        for (int a=0; a<256; a++)
+            for (int c=0; c<256; c++)
+                table[(a<<8)|c] = (byte)lut[divideComponent(c, a)];
+        return table;
+    }
+
+    /**
+     * Divides out alpha and applies a lookup table to the color
+     * components of premultiplied INT_PACK data, in place and in a
+     * single pass.  The result is the one of <code>divideAlpha</code>
+     * followed by the lookup.
+     *
+     * @param wr the raster, with INT_PACK data.
+     * @param table a table from <code>makeDivideAlphaLut</code>.
+     */
+    public static void divideAlphaLut_INT_PACK_Data(WritableRaster wr,
+                                                    byte[] table) {
+        SinglePixelPackedSampleModel sppsm;
+        sppsm = (SinglePixelPackedSampleModel)wr.getSampleModel();
+
+        final int width = wr.getWidth();
+        final int height = wr.getHeight();
+
+        final int scanStride = sppsm.getScanlineStride();
+        DataBufferInt db = (DataBufferInt)wr.getDataBuffer();
+        final int base
+            = (db.getOffset() +
+               sppsm.getOffset(wr.getMinX()-wr.getSampleModelTranslateX(),
+                               wr.getMinY()-wr.getSampleModelTranslateY()));
+
+        // Access the pixel data array
+        final int[] pixels = db.getBankData()[0];
+        for (int y=0; y<height; y++) {
+            int sp = base + y*scanStride;
+            final int end = sp + width;
+            while (sp < end) {
+                int pixel = pixels[sp];
+                int row = (pixel>>>16)&0xFF00;
+                pixels[sp] = ((pixel&0xFF000000) |
+                              ((table[row|((pixel>>16)&0xFF)]&0xFF)<<16) |
+                              ((table[row|((pixel>> 8)&0xFF)]&0xFF)<< 8) |
+                              ((table[row|((pixel    )&0xFF)]&0xFF)    ));
+                sp++;
+            }
+        }
+    }
+
     protected static void divide_INT_PACK_Data(WritableRaster wr) {
         // System.out.println("Divide Int");
 
@@ -1417,7 +1529,7 @@ public class GraphicsUtil {
                 if (a<=0) {
                     pixels[sp] = 0x00FFFFFF;
                 } else if (a<255) {
-                    int aFP = (0x00FF0000/a);
+                    int aFP = ALPHA_INVERSE[a];
                     pixels[sp] =
                         ((a << 24) |
                          (((((pixel&0xFF0000)>>16)*aFP)&0xFF0000)    ) |
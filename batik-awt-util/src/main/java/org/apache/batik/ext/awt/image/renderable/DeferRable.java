@@ -63,6 +63,14 @@ public class DeferRable implements Filter {
         return src;
     }
 
+    /**
+     * Returns the source if it has been provided, null otherwise.
+     * Unlike {@link #getSource} this never blocks.
+     */
+    public Filter peekSource() {
+        return src;
+    }
+
     /**
      * Key method that sets the src.  The source can only
      * be set once (this makes sense given the intent of the
@@ -49,6 +49,34 @@ public abstract class AbstractTiledRed
     private static int defaultTileSize = 128;
     public static int getDefaultTileSize() { return defaultTileSize; }
 
+    /**
+     * Tells, for each thread, whether the images are computed
+     * strictly tile by tile.
+     */
+    private static final ThreadLocal computeByTiles = new ThreadLocal();
+
+    /**
+     * Sets whether the current thread computes the images strictly
+     * tile by tile.  By default <code>copyData</code> computes the
+     * missing tiles of a request in the largest possible blocks,
+     * which is faster, but the anti-aliased rendering then depends
+     * slightly on the requested areas and on what is already in the
+     * cache.  Computed tile by tile, every pixel is the same whatever
+     * the order of the requests, so several threads can share the
+     * cached tiles and still produce a deterministic image.
+     */
+    public static void setComputeByTiles(boolean b) {
+        computeByTiles.set(b ? Boolean.TRUE : null);
+    }
+
+    /**
+     * Returns whether the current thread computes the images strictly
+     * tile by tile.
+     */
+    public static boolean isComputeByTiles() {
+        return computeByTiles.get() != null;
+    }
+
     /**
      * void constructor. The subclass must call one of the
      * flavors of init before the object becomes usable.
@@ -294,7 +322,10 @@ public abstract class AbstractTiledRed
     }
 
     public WritableRaster copyData(WritableRaster wr) {
-        copyToRasterByBlocks(wr);
+        if (isComputeByTiles())
+            copyToRaster(wr);
+        else
+            copyToRasterByBlocks(wr);
         return wr;
     }
 
@@ -97,6 +97,12 @@ public class Any2LsRGBRed extends AbstractRed {
         // System.out.println("");
     }
 
+    /**
+     * The table dividing out alpha and applying sRGBToLsRGBLut in one lookup.
+     */
+    private static final byte[] sRGBToLsRGBLutDivideAlpha =
+        GraphicsUtil.makeDivideAlphaLut(sRGBToLsRGBLut);
+
     public WritableRaster copyData(WritableRaster wr) {
         // Get my source.
         CachableRed src   = (CachableRed)getSources().get(0);
@@ -107,9 +113,10 @@ public class Any2LsRGBRed extends AbstractRed {
         if (srcIssRGB &&
             Any2sRGBRed.is_INT_PACK_COMP(wr.getSampleModel())) {
             src.copyData(wr);
-            if (srcCM.hasAlpha())
-                GraphicsUtil.coerceData(wr, srcCM, false);
-            Any2sRGBRed.applyLut_INT(wr, sRGBToLsRGBLut);
+            if (srcCM.hasAlpha() && srcCM.isAlphaPremultiplied())
+                GraphicsUtil.divideAlphaLut_INT_PACK_Data(wr, sRGBToLsRGBLutDivideAlpha);
+            else
+                Any2sRGBRed.applyLut_INT(wr, sRGBToLsRGBLut);
             return wr;
         }
 
@@ -115,6 +115,12 @@ public class Any2sRGBRed extends AbstractRed {
         // System.out.println("");
     }
 
+    /**
+     * The table dividing out alpha and applying linearToSRGBLut in one lookup.
+     */
+    private static final byte[] linearToSRGBLutDivideAlpha =
+        GraphicsUtil.makeDivideAlphaLut(linearToSRGBLut);
+
     public static WritableRaster applyLut_INT(WritableRaster wr,
                                               final int []lut) {
         SinglePixelPackedSampleModel sm =
@@ -164,9 +170,10 @@ public class Any2sRGBRed extends AbstractRed {
         if (srcIsLsRGB &&
             is_INT_PACK_COMP(wr.getSampleModel())) {
             src.copyData(wr);
-            if (srcCM.hasAlpha())
-                GraphicsUtil.coerceData(wr, srcCM, false);
-            applyLut_INT(wr, linearToSRGBLut);
+            if (srcCM.hasAlpha() && srcCM.isAlphaPremultiplied())
+                GraphicsUtil.divideAlphaLut_INT_PACK_Data(wr, linearToSRGBLutDivideAlpha);
+            else
+                applyLut_INT(wr, linearToSRGBLut);
             return wr;
         }
 
@@ -185,7 +185,19 @@ public class CompositeRed extends AbstractRed {
                 Rectangle crR = cr.getBounds();
                 if (crR.intersects(r)) {
                     Rectangle smR = crR.intersection(r);
-                    Raster ras = cr.getData(smR);
+                    Raster ras;
+                    if (cr.getColorModel().isAlphaPremultiplied()) {
+                        ras = cr.getData(smR);
+                    } else {
+                        // The context premultiplies the source in
+                        // place, so it must not work on tiles which
+                        // may be cached and shared with other threads.
+                        SampleModel srcSM = cr.getSampleModel()
+                            .createCompatibleSampleModel(smR.width,
+                                                         smR.height);
+                        ras = cr.copyData(Raster.createWritableRaster
+                                          (srcSM, smR.getLocation()));
+                    }
                     WritableRaster smWR = wr.createWritableChild
                         (smR.x, smR.y, smR.width, smR.height,
                          smR.x, smR.y, null);
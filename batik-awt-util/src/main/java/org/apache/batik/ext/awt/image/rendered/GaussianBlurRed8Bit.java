@@ -31,6 +31,9 @@ import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 
@@ -49,6 +52,12 @@ public class GaussianBlurRed8Bit extends AbstractRed {
     ConvolveOp [] convOp = new ConvolveOp [2];
     int dX, dY;
 
+    /**
+     * The skip, size and location of the three box filters
+     * approximating the gaussian along each axis.
+     */
+    int [][] boxesX, boxesY;
+
     /**
      * Construct a blurred version of <code>src</code>, by blurring with a
      * gaussian kernel with standard Deviation of <code>stdDev</code> pixels.
@@ -114,11 +123,13 @@ public class GaussianBlurRed8Bit extends AbstractRed {
             convOp[0] = new ConvolveOp(makeQualityKernelX(xinset*2+1));
         else
             dX = (int)Math.floor(DSQRT2PI*stdDevX+0.5f);
+        boxesX = makeBoxes(dX);
 
         if ((yinset != 0) && ((stdDevY < 2) || highQuality))
             convOp[1] = new ConvolveOp(makeQualityKernelY(yinset*2+1));
         else
             dY = (int)Math.floor(DSQRT2PI*stdDevY+0.5f);
+        boxesY = makeBoxes(dY);
     }
 
     /**
@@ -225,7 +236,22 @@ public class GaussianBlurRed8Bit extends AbstractRed {
 
         WritableRaster tmpR1=null, tmpR2=null;
 
-        tmpR1 = srcCM.createCompatibleWritableRaster(r.width, r.height);
+        // The box blur works in place, so the source copy can live in
+        // a buffer reused by the next requests of this thread.
+        int [] scratch = null;
+        if ((convOp[0] == null) && (convOp[1] == null) &&
+            (srcCM instanceof DirectColorModel) &&
+            (srcCM.getTransferType() == DataBuffer.TYPE_INT)) {
+            scratch = takeScratch(sourceScratch, r.width*r.height);
+            // The source may not cover the whole request, and a reused
+            // buffer still holds the pixels of an earlier one.
+            Arrays.fill(scratch, 0, r.width*r.height, 0);
+            tmpR1 = Raster.createWritableRaster
+                (srcCM.createCompatibleSampleModel(r.width, r.height),
+                 new DataBufferInt(scratch, r.width*r.height), null);
+        } else {
+            tmpR1 = srcCM.createCompatibleWritableRaster(r.width, r.height);
+        }
         {
             WritableRaster fill;
             fill = tmpR1.createWritableTranslatedChild(r.x, r.y);
@@ -255,17 +281,8 @@ public class GaussianBlurRed8Bit extends AbstractRed {
             tmpR1 = tmpR2;
             tmpR2 = tmp;
         } else {
-            if ((dX&0x01) == 0){
-                tmpR1 = boxFilterH(tmpR1, tmpR1, 0,    0,   dX,   dX/2);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX/2, 0,   dX,   dX/2-1);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX-1, 0,   dX+1, dX/2);
-                skipX = dX-1 + dX/2;
-            } else {
-                tmpR1 = boxFilterH(tmpR1, tmpR1, 0,    0,   dX, dX/2);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX/2, 0,   dX, dX/2);
-                tmpR1 = boxFilterH(tmpR1, tmpR1, dX-2, 0,   dX, dX/2);
-                skipX = dX-2 + dX/2;
-            }
+            boxFilter(tmpR1, true, 0, boxesX);
+            skipX = boxesX[2][0] + boxesX[2][2];
         }
 
         if (yinset == 0) {
@@ -277,269 +294,306 @@ public class GaussianBlurRed8Bit extends AbstractRed {
             }
             tmpR2 = convOp[1].filter(tmpR1, tmpR2);
         } else {
-            if ((dY&0x01) == 0){
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, 0,    dY,   dY/2);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY/2, dY,   dY/2-1);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY-1, dY+1, dY/2);
-            }
-            else {
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, 0,    dY, dY/2);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY/2, dY, dY/2);
-                tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY-2, dY, dY/2);
-            }
+            boxFilter(tmpR1, false, skipX, boxesY);
             tmpR2 = tmpR1;
         }
         // long t2 = System.currentTimeMillis();
         // System.out.println("Time: " + (t2-t1) +
         //                       (((convOp[0] != null) || (convOp[1] != null))?
         //                        " ConvOp":""));
-        // System.out.println("Rasters  WR :" + wr.getBounds());
-        // System.out.println("         tmp:" + tmpR2.getBounds());
-        // System.out.println("      bounds:" + getBounds());
-        // System.out.println("       skipX:" + skipX +
-        //                    " dx:" + dX + " Dy: " + dY);
         tmpR2 = tmpR2.createWritableTranslatedChild(r.x, r.y);
         GraphicsUtil.copyData(tmpR2, wr);
 
+        if (scratch != null)
+            releaseScratch(sourceScratch, scratch);
+
         return wr;
     }
 
-    private WritableRaster boxFilterH(Raster src, WritableRaster dest,
-                                      int skipX, int skipY,
-                                      int boxSz, int loc) {
+    /**
+     * The number of pixels above which a box blur is split across the
+     * threads of <code>filterPool</code>.  Package private, as the
+     * pool, so that the tests can force the split.
+     */
+    static int parallelThreshold = 256*256;
+
+    /**
+     * The pool running the box filters of large rasters.
+     */
+    static ForkJoinPool filterPool = ForkJoinPool.commonPool();
+
+    /**
+     * The largest buffer, in ints, kept by a thread between requests.
+     */
+    static final int MAX_SCRATCH_SIZE = 1 << 20;
+
+    /**
+     * The buffers, per thread, holding the source copy of a request.
+     */
+    static final ThreadLocal sourceScratch = new ThreadLocal();
 
-        final int w = src.getWidth();
-        final int h = src.getHeight();
+    /**
+     * The buffers, per thread, holding the lines of the box filters.
+     */
+    static final ThreadLocal lineScratch = new ThreadLocal();
 
-          // Check if the raster is wide enough to do _any_ work
-        if (w < (2*skipX)+boxSz) return dest;
-        if (h < (2*skipY))       return dest;
+    /**
+     * Returns a buffer of at least <code>size</code> ints.  The buffer
+     * belongs to the caller until it hands it back with
+     * <code>releaseScratch</code>, so nested requests on the same
+     * thread get buffers of their own.
+     */
+    static int [] takeScratch(ThreadLocal tl, int size) {
+        int [] buf = (int [])tl.get();
+        if ((buf == null) || (buf.length < size))
+            return new int[size];
+        tl.set(null);
+        return buf;
+    }
 
-        final SinglePixelPackedSampleModel srcSPPSM =
-            (SinglePixelPackedSampleModel)src.getSampleModel();
+    static void releaseScratch(ThreadLocal tl, int [] buf) {
+        if (buf.length > MAX_SCRATCH_SIZE)
+            return;
+        int [] cur = (int [])tl.get();
+        if ((cur == null) || (cur.length < buf.length))
+            tl.set(buf);
+    }
 
-        final SinglePixelPackedSampleModel dstSPPSM =
-            (SinglePixelPackedSampleModel)dest.getSampleModel();
+    /**
+     * Returns the skip, size and location of the three boxes
+     * approximating a gaussian with a box of <code>d</code> pixels.
+     */
+    static int [][] makeBoxes(int d) {
+        if ((d&0x01) == 0) {
+            return new int [][] {{ 0,    d,   d/2   },
+                                 { d/2,  d,   d/2-1 },
+                                 { d-1,  d+1, d/2   }};
+        }
+        return new int [][] {{ 0,    d, d/2 },
+                             { d/2,  d, d/2 },
+                             { d-2,  d, d/2 }};
+    }
 
-        // Stride is the distance between two consecutive column elements,
-        // in the one-dimention dataBuffer
-        final int srcScanStride = srcSPPSM.getScanlineStride();
-        final int dstScanStride = dstSPPSM.getScanlineStride();
+    /**
+     * Applies, in place, the three box filters <code>boxes</code>
+     * horizontally or vertically.  The rows, for the horizontal
+     * filters, or the columns, for the vertical ones, are independent
+     * so large rasters are split in bands blurred concurrently.
+     *
+     * @param skip the number of junk columns on each side of the raster.
+     */
+    private void boxFilter(WritableRaster wr, boolean horizontal,
+                           int skip, int [][] boxes) {
+        final int w = wr.getWidth();
+        final int h = wr.getHeight();
 
-        // Access the integer buffer for each image.
-        DataBufferInt srcDB = (DataBufferInt)src.getDataBuffer();
-        DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
+        final SinglePixelPackedSampleModel sppsm =
+            (SinglePixelPackedSampleModel)wr.getSampleModel();
+        DataBufferInt db = (DataBufferInt)wr.getDataBuffer();
 
         // Offset defines where in the stack the real data begin
-        final int srcOff
-            = (srcDB.getOffset() +
-               srcSPPSM.getOffset
-               (src.getMinX()-src.getSampleModelTranslateX(),
-                src.getMinY()-src.getSampleModelTranslateY()));
-        final int dstOff
-            = (dstDB.getOffset() +
-               dstSPPSM.getOffset
-               (dest.getMinX()-dest.getSampleModelTranslateX(),
-                dest.getMinY()-dest.getSampleModelTranslateY()));
-
-        // Access the pixel value array
-        final int[] srcPixels  = srcDB.getBankData()[0];
-        final int[] destPixels = dstDB.getBankData()[0];
-
-        final int [] buffer = new int [boxSz];
-        int curr, prev;
-
-          // Fixed point normalization factor (8.24)
-        int scale = (1<<24)/boxSz;
-
-        /*
-         * System.out.println("Info: srcOff: " + srcOff +
-         *                    " x: " + skipX +
-         *                    " y: " + skipY +
-         *                    " w: " + w +
-         *                    " h: " + h +
-         *                    " boxSz " + boxSz +
-         *                    " srcStride: " + srcScanStride);
-         */
+        final int off
+            = (db.getOffset() +
+               sppsm.getOffset
+               (wr.getMinX()-wr.getSampleModelTranslateX(),
+                wr.getMinY()-wr.getSampleModelTranslateY()));
+
+        BoxFilterTask task = new BoxFilterTask
+            (db.getBankData()[0], off, sppsm.getScanlineStride(), w, h,
+             horizontal, skip, boxes);
+        int len = horizontal ? h : w;
+        ForkJoinPool pool = filterPool;
+        if ((w*h < parallelThreshold) || (pool.getParallelism() < 2)) {
+            task.filter(0, len);
+            return;
+        }
+        task.grain = Math.max(32, len/(4*pool.getParallelism()));
+        task.end = len;
+        pool.invoke(task);
+    }
 
-        for (int y=skipY; y<(h-skipY); y++) {
-            int sp     = srcOff + y*srcScanStride;
-            int dp     = dstOff + y*dstScanStride;
-            int rowEnd = sp + (w-skipX);
-
-            int k    = 0;
-            int sumA = 0;
-            int sumR = 0;
-            int sumG = 0;
-            int sumB = 0;
-
-            sp += skipX;
-            int end  = sp+boxSz;
-
-            while (sp < end) {
-                curr = buffer[k] = srcPixels[sp];
-                sumA += (curr>>> 24);
-                sumR += (curr >> 16)&0xFF;
-                sumG += (curr >>  8)&0xFF;
-                sumB += (curr      )&0xFF;
-                k++;
-                sp++;
+    /**
+     * Runs box filters on a band of rows or columns, splitting it in
+     * two halves computed concurrently while it is larger than
+     * <code>grain</code>.
+     */
+    static class BoxFilterTask extends RecursiveAction {
+
+        final int [] pixels;
+        final int off, stride, w, h;
+        final boolean horizontal;
+        final int skip;
+        final int [][] boxes;
+        int start, end, grain;
+
+        BoxFilterTask(int [] pixels, int off, int stride, int w, int h,
+                      boolean horizontal, int skip, int [][] boxes) {
+            this.pixels     = pixels;
+            this.off        = off;
+            this.stride     = stride;
+            this.w          = w;
+            this.h          = h;
+            this.horizontal = horizontal;
+            this.skip       = skip;
+            this.boxes      = boxes;
+        }
+
+        BoxFilterTask(BoxFilterTask parent, int start, int end) {
+            this(parent.pixels, parent.off, parent.stride,
+                 parent.w, parent.h, parent.horizontal,
+                 parent.skip, parent.boxes);
+            this.start = start;
+            this.end   = end;
+            this.grain = parent.grain;
+        }
+
+        protected void compute() {
+            if (end-start <= grain) {
+                filter(start, end);
+                return;
             }
+            int mid = (start+end)/2;
+            invokeAll(new BoxFilterTask(this, start, mid),
+                      new BoxFilterTask(this, mid, end));
+        }
 
-            dp += skipX + loc;
-            prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                     (((sumR*scale)&0xFF000000)>>>8)  |
-                                     (((sumG*scale)&0xFF000000)>>>16) |
-                                     (((sumB*scale)&0xFF000000)>>>24));
-            dp++;
-            k=0;
-            while (sp < rowEnd) {
-                curr = buffer[k];
-                if (curr == srcPixels[sp]) {
-                    destPixels[dp] = prev;
-                } else {
-                    sumA -= (curr>>> 24);
-                    sumR -= (curr >> 16)&0xFF;
-                    sumG -= (curr >>  8)&0xFF;
-                    sumB -= (curr      )&0xFF;
-
-                    curr = buffer[k] = srcPixels[sp];
+        /**
+         * Filters the rows, or columns, in <code>[start, end)</code>.
+         */
+        void filter(int start, int end) {
+            for (int i=0; i<boxes.length; i++) {
+                int [] box = boxes[i];
+                if (horizontal)
+                    filterH(start, end, box[0], box[1], box[2]);
+                else
+                    filterV(start, end, box[0], box[1], box[2]);
+            }
+        }
 
+        /**
+         * Box filters the rows in <code>[y0, y1)</code>, leaving
+         * <code>skipX</code> columns untouched on each side.
+         */
+        void filterH(int y0, int y1, int skipX, int boxSz, int loc) {
+              // Check if the raster is wide enough to do _any_ work
+            if (w < (2*skipX)+boxSz) return;
+
+            final int [] pixels = this.pixels;
+            final int [] buffer = takeScratch(lineScratch, boxSz);
+              // Fixed point normalization factor (8.24)
+            final int scale = (1<<24)/boxSz;
+
+            for (int y=y0; y<y1; y++) {
+                int sp     = off + y*stride + skipX;
+                int dp     = sp + loc;
+                int rowEnd = off + y*stride + (w-skipX);
+
+                int sumA = 0;
+                int sumR = 0;
+                int sumG = 0;
+                int sumB = 0;
+
+                for (int k=0; k<boxSz; k++, sp++) {
+                    int curr = buffer[k] = pixels[sp];
                     sumA += (curr>>> 24);
                     sumR += (curr >> 16)&0xFF;
                     sumG += (curr >>  8)&0xFF;
                     sumB += (curr      )&0xFF;
-                    prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                             (((sumR*scale)&0xFF000000)>>>8)  |
-                                             (((sumG*scale)&0xFF000000)>>>16) |
-                                             (((sumB*scale)&0xFF000000)>>>24));
                 }
-                k = (k+1)%boxSz;
-                sp++;
-                dp++;
+
+                pixels[dp++] = (( (sumA*scale)&0xFF000000)       |
+                                (((sumR*scale)&0xFF000000)>>>8)  |
+                                (((sumG*scale)&0xFF000000)>>>16) |
+                                (((sumB*scale)&0xFF000000)>>>24));
+                int k = 0;
+                while (sp < rowEnd) {
+                    int prev = buffer[k];
+                    int curr = buffer[k] = pixels[sp++];
+                    sumA += (curr>>> 24)      - (prev>>> 24);
+                    sumR += ((curr >> 16)&0xFF) - ((prev >> 16)&0xFF);
+                    sumG += ((curr >>  8)&0xFF) - ((prev >>  8)&0xFF);
+                    sumB += ((curr      )&0xFF) - ((prev      )&0xFF);
+                    pixels[dp++] = (( (sumA*scale)&0xFF000000)       |
+                                    (((sumR*scale)&0xFF000000)>>>8)  |
+                                    (((sumG*scale)&0xFF000000)>>>16) |
+                                    (((sumB*scale)&0xFF000000)>>>24));
+                    if (++k == boxSz) k = 0;
+                }
             }
+            releaseScratch(lineScratch, buffer);
         }
-        return dest;
-    }
-
-    private WritableRaster boxFilterV(Raster src, WritableRaster dest,
-                                      int skipX, int skipY,
-                                      int boxSz, int loc) {
 
-        final int w = src.getWidth();
-        final int h = src.getHeight();
-
-          // Check if the raster is wide enough to do _any_ work
-        if (w < (2*skipX))       return dest;
-        if (h < (2*skipY)+boxSz) return dest;
-
-        final SinglePixelPackedSampleModel srcSPPSM =
-            (SinglePixelPackedSampleModel)src.getSampleModel();
-
-        final SinglePixelPackedSampleModel dstSPPSM =
-            (SinglePixelPackedSampleModel)dest.getSampleModel();
-
-        // Stride is the distance between two consecutive column elements,
-        // in the one-dimention dataBuffer
-        final int srcScanStride = srcSPPSM.getScanlineStride();
-        final int dstScanStride = dstSPPSM.getScanlineStride();
-
-        // Access the integer buffer for each image.
-        DataBufferInt srcDB = (DataBufferInt)src.getDataBuffer();
-        DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
-
-        // Offset defines where in the stack the real data begin
-        final int srcOff
-            = (srcDB.getOffset() +
-               srcSPPSM.getOffset
-               (src.getMinX()-src.getSampleModelTranslateX(),
-                src.getMinY()-src.getSampleModelTranslateY()));
-        final int dstOff
-            = (dstDB.getOffset() +
-               dstSPPSM.getOffset
-               (dest.getMinX()-dest.getSampleModelTranslateX(),
-                dest.getMinY()-dest.getSampleModelTranslateY()));
-
-
-        // Access the pixel value array
-        final int[] srcPixels  = srcDB.getBankData()[0];
-        final int[] destPixels = dstDB.getBankData()[0];
-
-        final int [] buffer = new int [boxSz];
-        int curr, prev;
-
-          // Fixed point normalization factor (8.24)
-        final int scale = (1<<24)/boxSz;
-
-        /*
-         * System.out.println("Info: srcOff: " + srcOff +
-         *                    " x: " + skipX +
-         *                    " y: " + skipY +
-         *                    " w: " + w +
-         *                    " h: " + h +
-         *                    " boxSz " + boxSz +
-         *                    " srcStride: " + srcScanStride);
+        /**
+         * Box filters the columns in <code>[x0, x1)</code>, leaving
+         * <code>skipY</code> rows untouched at the top and bottom.  The
+         * columns are walked together, row by row, so the pixels are
+         * read in memory order; the last <code>boxSz</code> rows read
+         * are kept in a ring since the filter works in place.
          */
-
-        for (int x=skipX; x<(w-skipX); x++) {
-            int sp = srcOff + x;
-            int dp = dstOff + x;
-            int colEnd = sp + (h-skipY)*srcScanStride;
-
-            int k=0;
-            int sumA = 0;
-            int sumR = 0;
-            int sumG = 0;
-            int sumB = 0;
-
-            sp += skipY*srcScanStride;
-            int end  = sp+(boxSz*srcScanStride);
-
-            while (sp < end) {
-                curr = buffer[k] = srcPixels[sp];
-                sumA += (curr>>> 24);
-                sumR += (curr >> 16)&0xFF;
-                sumG += (curr >>  8)&0xFF;
-                sumB += (curr      )&0xFF;
-                k++;
-                sp+=srcScanStride;
+        void filterV(int x0, int x1, int skipY, int boxSz, int loc) {
+            x0 = Math.max(x0, skip);
+            x1 = Math.min(x1, w-skip);
+              // Check if the raster is tall enough to do _any_ work
+            if ((x0 >= x1) || (h < (2*skipY)+boxSz)) return;
+
+            final int [] pixels = this.pixels;
+            final int n = x1-x0;
+            // The sums of the four channels, then the ring of rows.
+            final int [] buffer = takeScratch(lineScratch, (4+boxSz)*n);
+            final int sumA = 0, sumR = n, sumG = 2*n, sumB = 3*n;
+            final int ring = 4*n;
+              // Fixed point normalization factor (8.24)
+            final int scale = (1<<24)/boxSz;
+
+            for (int j=0; j<4*n; j++)
+                buffer[j] = 0;
+
+            int sp = off + skipY*stride + x0;
+            for (int k=0; k<boxSz; k++, sp+=stride) {
+                int rp = ring + k*n;
+                for (int j=0; j<n; j++) {
+                    int curr = buffer[rp+j] = pixels[sp+j];
+                    buffer[sumA+j] += (curr>>> 24);
+                    buffer[sumR+j] += (curr >> 16)&0xFF;
+                    buffer[sumG+j] += (curr >>  8)&0xFF;
+                    buffer[sumB+j] += (curr      )&0xFF;
+                }
             }
 
+            int dp = off + (skipY+loc)*stride + x0;
+            for (int j=0; j<n; j++) {
+                pixels[dp+j] = (( (buffer[sumA+j]*scale)&0xFF000000)       |
+                                (((buffer[sumR+j]*scale)&0xFF000000)>>>8)  |
+                                (((buffer[sumG+j]*scale)&0xFF000000)>>>16) |
+                                (((buffer[sumB+j]*scale)&0xFF000000)>>>24));
+            }
+            dp += stride;
 
-            dp += (skipY + loc)*dstScanStride;
-            prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                     (((sumR*scale)&0xFF000000)>>>8)  |
-                                     (((sumG*scale)&0xFF000000)>>>16) |
-                                     (((sumB*scale)&0xFF000000)>>>24));
-            dp+=dstScanStride;
-            k=0;
+            int colEnd = off + (h-skipY)*stride;
+            int k = 0;
             while (sp < colEnd) {
-                curr = buffer[k];
-                if (curr == srcPixels[sp]) {
-                    destPixels[dp] = prev;
-                } else {
-                    sumA -= (curr>>> 24);
-                    sumR -= (curr >> 16)&0xFF;
-                    sumG -= (curr >>  8)&0xFF;
-                    sumB -= (curr      )&0xFF;
-
-                    curr = buffer[k] = srcPixels[sp];
-
-                    sumA += (curr>>> 24);
-                    sumR += (curr >> 16)&0xFF;
-                    sumG += (curr >>  8)&0xFF;
-                    sumB += (curr      )&0xFF;
-                    prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
-                                             (((sumR*scale)&0xFF000000)>>>8)  |
-                                             (((sumG*scale)&0xFF000000)>>>16) |
-                                             (((sumB*scale)&0xFF000000)>>>24));
+                int rp = ring + k*n;
+                for (int j=0; j<n; j++) {
+                    int prev = buffer[rp+j];
+                    int curr = buffer[rp+j] = pixels[sp+j];
+                    int a = buffer[sumA+j] += (curr>>> 24) - (prev>>> 24);
+                    int r = buffer[sumR+j] +=
+                        ((curr >> 16)&0xFF) - ((prev >> 16)&0xFF);
+                    int g = buffer[sumG+j] +=
+                        ((curr >>  8)&0xFF) - ((prev >>  8)&0xFF);
+                    int b = buffer[sumB+j] +=
+                        ((curr      )&0xFF) - ((prev      )&0xFF);
+                    pixels[dp+j] = (( (a*scale)&0xFF000000)       |
+                                    (((r*scale)&0xFF000000)>>>8)  |
+                                    (((g*scale)&0xFF000000)>>>16) |
+                                    (((b*scale)&0xFF000000)>>>24));
                 }
-                k = (k+1)%boxSz;
-                sp+=srcScanStride;
-                dp+=dstScanStride;
+                if (++k == boxSz) k = 0;
+                sp += stride;
+                dp += stride;
             }
+            releaseScratch(lineScratch, buffer);
         }
-        return dest;
     }
 
     protected static ColorModel fixColorModel(CachableRed src) {
@@ -21,6 +21,9 @@ package org.apache.batik.ext.awt.image.rendered;
 import org.apache.batik.util.DoublyLinkedList;
 
 /**
+ * A least recently used cache.  The cache is bounded by a number of
+ * objects and, optionally, by the total size in bytes of the objects
+ * implementing {@link LRUCache.LRUSizedObj}.
  *
  * @version $Id$
  */
@@ -50,12 +53,24 @@ public class LRUCache {
         void    lruRemove();
         }
 
+    /**
+     * Interface for objects which know their size.  The size of these
+     * objects is charged to the byte budget of the cache.
+     */
+        public interface LRUSizedObj extends LRUObj {
+        /**
+         * Returns the size in bytes of the object.
+         */
+        long    lruSize();
+        }
+
     /**
      * Interface for nodes in the LRU cache, basicly nodes in a doubly
      * linked list.
      */
         public static class LRUNode extends DoublyLinkedList.Node {
                 private   LRUObj  obj  = null;
+                private   long    size = 0;
                 public    LRUObj  getObj ()               { return obj; }
                 protected void    setObj (LRUObj  newObj) {
                         if (obj != null) obj.lruRemove();
@@ -68,38 +83,79 @@ public class LRUCache {
         private DoublyLinkedList free    = null;
         private DoublyLinkedList used    = null;
         private int     maxSize = 0;
+        private long    maxBytes = 0;
+        private long    usedBytes = 0;
+        private long    evictionCount = 0;
 
         public LRUCache(int size) {
+                this(size, 0);
+        }
+
+        /**
+         * Creates a new cache.
+         * @param size The maximum number of objects in the cache.
+         * @param maxBytes The maximum total size in bytes of the objects
+         *        in the cache, or 0 for no limit.
+         */
+        public LRUCache(int size, long maxBytes) {
                 if (size <= 0) size=1;
                 maxSize = size;
+                this.maxBytes = (maxBytes < 0) ? 0 : maxBytes;
 
                 free = new DoublyLinkedList();
                 used = new DoublyLinkedList();
-
-                while (size > 0) {
-                        free.add(new LRUNode());
-                        size--;
-                }
         }
 
         public int getUsed() {
                 return used.getSize();
         }
 
-        public synchronized void setSize(int newSz) {
+        /**
+         * Returns the maximum total size in bytes of the objects in the
+         * cache, or 0 if there is no limit.
+         */
+        public synchronized long getMaxBytes() {
+                return maxBytes;
+        }
 
-                if (maxSize < newSz) {  // list grew...
+        /**
+         * Sets the maximum total size in bytes of the objects in the
+         * cache.  0 means no limit.
+         */
+        public synchronized void setMaxBytes(long newMaxBytes) {
+                maxBytes = (newMaxBytes < 0) ? 0 : newMaxBytes;
+                trim();
+        }
 
-                        for (int i=maxSize; i<newSz; i++)
-                                free.add(new LRUNode());
+        /**
+         * Returns the total size in bytes of the objects in the cache.
+         */
+        public synchronized long getUsedBytes() {
+                return usedBytes;
+        }
 
-                } else if (maxSize > newSz) {
+        /**
+         * Returns the number of objects which were dropped from the cache
+         * to make room for other objects.
+         */
+        public synchronized long getEvictionCount() {
+                return evictionCount;
+        }
+
+        public synchronized void setSize(int newSz) {
+
+                if (newSz <= 0) newSz=1;
+                if (maxSize > newSz) {
 
                         for (int i=used.getSize(); i>newSz; i--) {
                                 LRUNode nde = (LRUNode)used.getTail();
                                 used.remove(nde);
-                                nde.setObj(null);
+                                release(nde);
+                                evictionCount++;
                         }
+                        while (free.getSize() > 0 &&
+                               used.getSize() + free.getSize() > newSz)
+                                free.pop();
                 }
 
                 maxSize = newSz;
@@ -108,7 +164,7 @@ public class LRUCache {
         public synchronized void flush() {
                 while (used.getSize() > 0) {
                         LRUNode nde = (LRUNode)used.pop();
-                        nde.setObj(null);
+                        release(nde);
                         free.add(nde);
                 }
         }
@@ -117,7 +173,7 @@ public class LRUCache {
                 LRUNode nde = obj.lruGet();
                 if (nde == null) return;
                 used.remove(nde);
-                nde.setObj(null);
+                release(nde);
                 free.add(nde);
         }
 
@@ -133,6 +189,13 @@ public class LRUCache {
                 // already linked in...
                 if (nde != null) {
                         used.touch(nde);
+                        // The object may have changed size since it was added.
+                        long sz = sizeOf(obj);
+                        if (sz != nde.size) {
+                                usedBytes += sz - nde.size;
+                                nde.size = sz;
+                                trim();
+                        }
                         return;
                 }
 
@@ -140,11 +203,54 @@ public class LRUCache {
                         nde = (LRUNode)free.pop();
                         nde.setObj(obj);
                         used.add(nde);
+                } else if (used.getSize() < maxSize) {
+                        nde = new LRUNode();
+                        nde.setObj(obj);
+                        used.add(nde);
                 } else {
                         nde = (LRUNode)used.getTail();
+                        usedBytes -= nde.size;
+                        evictionCount++;
                         nde.setObj(obj);
                         used.touch(nde);
                 }
+                nde.size = sizeOf(obj);
+                usedBytes += nde.size;
+                trim();
+        }
+
+        /**
+         * Returns the size in bytes charged to the cache for the given
+         * object.
+         */
+        protected long sizeOf(LRUObj obj) {
+                if (!(obj instanceof LRUSizedObj))
+                        return 0;
+                return ((LRUSizedObj)obj).lruSize();
+        }
+
+        /**
+         * Unlinks the object of the given node from the cache.
+         */
+        private void release(LRUNode nde) {
+                usedBytes -= nde.size;
+                nde.size = 0;
+                nde.setObj(null);
+        }
+
+        /**
+         * Drops the least recently used objects until the cache is within
+         * its byte budget.  The most recently used object is always kept.
+         */
+        private void trim() {
+                if (maxBytes == 0) return;
+                while (usedBytes > maxBytes && used.getSize() > 1) {
+                        LRUNode nde = (LRUNode)used.getTail();
+                        used.remove(nde);
+                        release(nde);
+                        free.add(nde);
+                        evictionCount++;
+                }
         }
 
         protected synchronized void print() {
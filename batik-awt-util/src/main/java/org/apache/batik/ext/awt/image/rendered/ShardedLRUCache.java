@@ -0,0 +1,162 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+/**
+ * An <code>LRUCache</code> split in several independent shards, each
+ * with its own lock, so that threads working on different objects
+ * rarely wait for each other.  An object always goes to the same
+ * shard, and the object count and byte budget of the cache are
+ * divided evenly among the shards; each shard drops its own least
+ * recently used objects.
+ *
+ * @version $Id$
+ */
+public class ShardedLRUCache extends LRUCache {
+
+    /**
+     * The shards.
+     */
+    protected LRUCache[] shards;
+
+    /**
+     * The maximum total size in bytes of the objects in the cache.
+     */
+    protected long maxBytes;
+
+    /**
+     * Creates a new cache.
+     * @param shardCount The number of shards.
+     * @param size The maximum number of objects in the cache.
+     * @param maxBytes The maximum total size in bytes of the objects in
+     *        the cache, or 0 for no limit.
+     */
+    public ShardedLRUCache(int shardCount, int size, long maxBytes) {
+        super(1);
+        if (shardCount < 1) shardCount = 1;
+        if (size <= 0) size = 1;
+        if (maxBytes < 0) maxBytes = 0;
+        this.maxBytes = maxBytes;
+        shards = new LRUCache[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new LRUCache(shardSize(size),
+                                     shardBytes(maxBytes));
+        }
+    }
+
+    /**
+     * Returns the number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the shard the given object belongs to.
+     */
+    protected LRUCache getShard(LRUObj obj) {
+        int h = System.identityHashCode(obj);
+        h ^= (h >>> 16);
+        h *= 0x45d9f3b;
+        h ^= (h >>> 16);
+        return shards[(h & 0x7fffffff) % shards.length];
+    }
+
+    /**
+     * Returns the object count limit of one shard.
+     */
+    protected int shardSize(int sz) {
+        return (int)Math.min(Integer.MAX_VALUE,
+                             ((long)sz + shards.length - 1) / shards.length);
+    }
+
+    /**
+     * Returns the byte budget of one shard.
+     */
+    protected long shardBytes(long bytes) {
+        if (bytes == 0) return 0;
+        return Math.max(1, bytes / shards.length);
+    }
+
+    public int getUsed() {
+        int ret = 0;
+        for (LRUCache shard : shards) {
+            ret += shard.getUsed();
+        }
+        return ret;
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized void setMaxBytes(long newMaxBytes) {
+        maxBytes = (newMaxBytes < 0) ? 0 : newMaxBytes;
+        for (LRUCache shard : shards) {
+            shard.setMaxBytes(shardBytes(maxBytes));
+        }
+    }
+
+    public long getUsedBytes() {
+        long ret = 0;
+        for (LRUCache shard : shards) {
+            ret += shard.getUsedBytes();
+        }
+        return ret;
+    }
+
+    public long getEvictionCount() {
+        long ret = 0;
+        for (LRUCache shard : shards) {
+            ret += shard.getEvictionCount();
+        }
+        return ret;
+    }
+
+    public synchronized void setSize(int newSz) {
+        if (newSz <= 0) newSz = 1;
+        for (LRUCache shard : shards) {
+            shard.setSize(shardSize(newSz));
+        }
+    }
+
+    public void flush() {
+        for (LRUCache shard : shards) {
+            shard.flush();
+        }
+    }
+
+    public void remove(LRUObj obj) {
+        getShard(obj).remove(obj);
+    }
+
+    public void touch(LRUObj obj) {
+        getShard(obj).touch(obj);
+    }
+
+    public void add(LRUObj obj) {
+        getShard(obj).add(obj);
+    }
+
+    protected void print() {
+        for (LRUCache shard : shards) {
+            shard.print();
+        }
+    }
+}
@@ -21,26 +21,128 @@ package org.apache.batik.ext.awt.image.rendered;
 import java.awt.image.RenderedImage;
 
 /**
+ * The tile cache shared by all the tile stores of the process.
+ *
+ * <p>The cache is budgeted in bytes and split in shards with their own
+ * locks, so that several render threads can use it concurrently.  The
+ * budget and the number of shards can be set with the
+ * <code>org.apache.batik.tileCache.maxBytes</code> and
+ * <code>org.apache.batik.tileCache.shards</code> system properties.
+ * A budget of 0 bounds the cache by tile count instead, as
+ * <code>setSize</code> does.</p>
  *
  * @version $Id$
  */
 public class TileCache {
-        private static LRUCache cache = new LRUCache(50);
 
+        /**
+         * The system property giving the byte budget of the cache.
+         */
+        public static final String MAX_BYTES_PROPERTY =
+            "org.apache.batik.tileCache.maxBytes";
+
+        /**
+         * The system property giving the number of shards of the cache.
+         */
+        public static final String SHARDS_PROPERTY =
+            "org.apache.batik.tileCache.shards";
+
+        /**
+         * The default byte budget, further limited to an eighth of the
+         * maximum heap size.
+         */
+        public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+        /**
+         * The tile count limit used when the cache has no byte budget.
+         */
+        public static final int DEFAULT_SIZE = 50;
+
+        private static LRUCache cache = createCache();
+
+        private static TileStoreStatistics statistics =
+            new TileStoreStatistics();
+
+        private static LRUCache createCache() {
+            long maxBytes = Math.min(DEFAULT_MAX_BYTES,
+                                     Runtime.getRuntime().maxMemory() / 8);
+            int shards = Math.min(16, Runtime.getRuntime().availableProcessors());
+            try {
+                String s = System.getProperty(MAX_BYTES_PROPERTY);
+                if (s != null) maxBytes = Long.parseLong(s.trim());
+                s = System.getProperty(SHARDS_PROPERTY);
+                if (s != null) shards = Integer.parseInt(s.trim());
+            } catch (NumberFormatException e) {
+                // Keep the defaults.
+            } catch (SecurityException e) {
+                // Keep the defaults.
+            }
+            int size = (maxBytes > 0) ? Integer.MAX_VALUE : DEFAULT_SIZE;
+            return new ShardedLRUCache(shards, size, maxBytes);
+        }
+
+        /**
+         * Sets the maximum number of tiles in the cache.
+         */
         public static void setSize(int sz) { cache.setSize(sz); }
 
+        /**
+         * Sets the maximum total size in bytes of the tiles in the
+         * cache.  This resets the tile count limit: a budget of 0 bounds
+         * the cache to <code>DEFAULT_SIZE</code> tiles, any other budget
+         * lifts the tile count limit.  The cache is shared by the whole
+         * process, so the budget applies to every renderer and
+         * transcoder.
+         */
+        public static void setMaxBytes(long maxBytes) {
+            cache.setMaxBytes(maxBytes);
+            cache.setSize((maxBytes > 0) ? Integer.MAX_VALUE : DEFAULT_SIZE);
+        }
+
+        /**
+         * Returns the maximum total size in bytes of the tiles in the
+         * cache, or 0 if there is none.
+         */
+        public static long getMaxBytes() { return cache.getMaxBytes(); }
+
+        /**
+         * Returns the total size in bytes of the tiles in the cache.
+         */
+        public static long getUsedBytes() { return cache.getUsedBytes(); }
+
+        /**
+         * Returns the number of tiles dropped from the cache to make
+         * room for other tiles.
+         */
+        public static long getEvictionCount() {
+            return cache.getEvictionCount();
+        }
+
+        /**
+         * Returns the statistics of all the tile stores using the cache.
+         */
+        public static TileStoreStatistics getStatistics() {
+            return statistics;
+        }
+
+        /**
+         * Removes all the tiles from the cache.
+         */
+        public static void flush() { cache.flush(); }
+
         public static TileStore getTileGrid(int minTileX, int minTileY,
                                        int xSz, int ySz, TileGenerator src) {
-                return new TileGrid(minTileX, minTileY, xSz, ySz, src, cache);
+                return new TileGrid(minTileX, minTileY, xSz, ySz, src, cache,
+                                    statistics);
         }
 
         public static TileStore getTileGrid(RenderedImage img,
                                             TileGenerator src) {
                 return new TileGrid(img.getMinTileX(),  img.getMinTileY(),
                             img.getNumXTiles(), img.getNumYTiles(),
-                            src, cache);
+                            src, cache, statistics);
         }
         public static TileStore getTileMap(TileGenerator src) {
-                return new TileMap(src, cache);
+                return new TileMap(src, cache, statistics);
         }
 }
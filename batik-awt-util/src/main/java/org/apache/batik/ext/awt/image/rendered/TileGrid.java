@@ -38,12 +38,22 @@ public class TileGrid implements TileStore {
     private TileLRUMember   [][] rasters=null;
     private TileGenerator source = null;
     private LRUCache      cache = null;
+    private TileStoreStatistics statistics = null;
 
     public TileGrid(int minTileX, int minTileY,
                     int xSz, int ySz,
                     TileGenerator source,
                     LRUCache cache) {
+        this(minTileX, minTileY, xSz, ySz, source, cache, null);
+    }
+
+    public TileGrid(int minTileX, int minTileY,
+                    int xSz, int ySz,
+                    TileGenerator source,
+                    LRUCache cache,
+                    TileStoreStatistics parentStatistics) {
         this.cache    = cache;
+        this.statistics = new TileStoreStatistics(parentStatistics);
         this.source   = source;
         this.minTileX = minTileX;
         this.minTileY = minTileY;
@@ -53,7 +63,7 @@ public class TileGrid implements TileStore {
         rasters = new TileLRUMember[ySz][];
     }
 
-    public void setTile(int x, int y, Raster ras) {
+    public synchronized void setTile(int x, int y, Raster ras) {
         x-= minTileX;
         y-= minTileY;
         if ((x<0) || (x>=xSz)) return;
@@ -75,12 +85,12 @@ public class TileGrid implements TileStore {
         if (row != null) {
             item = row[x];
             if (item == null) {
-                item = new TileLRUMember();
+                item = new TileLRUMember(statistics);
                 row[x] = item;
             }
         } else {
             row = new TileLRUMember[xSz];
-            item = new TileLRUMember();
+            item = new TileLRUMember(statistics);
             row[x] = item;
             rasters[y] = row;
         }
@@ -94,7 +104,7 @@ public class TileGrid implements TileStore {
 
     // Returns Raster if the tile is _currently_ in the cache.
     // If it is not currently in the cache it returns null.
-    public Raster getTileNoCompute(int x, int y) {
+    public synchronized Raster getTileNoCompute(int x, int y) {
         x-=minTileX;
         y-=minTileY;
         if ((x<0) || (x>=xSz)) return null;
@@ -123,24 +133,31 @@ public class TileGrid implements TileStore {
         if (COUNT) synchronized (TileGrid.class) { requests++; }
 
         Raster       ras  = null;
-        TileLRUMember [] row  = rasters[y];
         TileLRUMember    item = null;
-        if (row != null) {
-            item = row[x];
-            if (item != null)
-                ras = item.retrieveRaster();
-            else {
-                item = new TileLRUMember();
+        // Only the bookkeeping is done under the lock, so several
+        // threads can generate different tiles at the same time.
+        synchronized (this) {
+            TileLRUMember [] row  = rasters[y];
+            if (row != null) {
+                item = row[x];
+                if (item != null)
+                    ras = item.retrieveRaster();
+                else {
+                    item = new TileLRUMember(statistics);
+                    row[x] = item;
+                }
+            } else {
+                row = new TileLRUMember[xSz];
+                rasters[y] = row;
+                item = new TileLRUMember(statistics);
                 row[x] = item;
             }
-        } else {
-            row = new TileLRUMember[xSz];
-            rasters[y] = row;
-            item = new TileLRUMember();
-            row[x] = item;
         }
 
-        if (ras == null) {
+        if (ras != null) {
+            statistics.hit();
+        } else {
+            statistics.miss();
             if (DEBUG) System.out.println("Generating: ("+(x+minTileX)+", "+
                                           (y+minTileY) + ")");
             if (COUNT) synchronized (TileGrid.class) { misses++; }
@@ -152,7 +169,9 @@ public class TileGrid implements TileStore {
             if (HaltingThread.hasBeenHalted())
                 return ras;
 
-            item.setRaster(ras);
+            synchronized (this) {
+                item.setRaster(ras);
+            }
         }
 
         // Update the item's position in the cache..
@@ -161,6 +180,10 @@ public class TileGrid implements TileStore {
         return ras;
     }
 
+    public TileStoreStatistics getStatistics() {
+        return statistics;
+    }
+
     static int requests;
     static int misses;
 }
@@ -18,7 +18,9 @@
  */
 package org.apache.batik.ext.awt.image.rendered;
 
+import  java.awt.image.DataBuffer;
 import  java.awt.image.Raster;
+import  java.awt.image.SampleModel;
 import  java.lang.ref.Reference;
 import  java.lang.ref.SoftReference;
 
@@ -27,16 +29,19 @@ import  java.lang.ref.SoftReference;
  * an LRU Cache.  When this object drops out of the LRU cache it
  * removes it's hard reference to the tile, but retains it's soft
  * reference allowing for the recovery of the tile when the JVM is
- * not under memory pressure
+ * not under memory pressure.  The size of the tile is charged to the
+ * byte budget of the cache and to the statistics of its store.
  *
  * @version $Id$
  */
-public class TileLRUMember implements LRUCache.LRUObj {
+public class TileLRUMember implements LRUCache.LRUSizedObj {
     private static final boolean DEBUG = false;
 
         protected LRUCache.LRUNode myNode  = null;
         protected Reference        wRaster = null;
         protected Raster           hRaster = null;
+        protected TileStoreStatistics statistics = null;
+        protected long             cachedSize = 0;
 
         public TileLRUMember() { }
 
@@ -44,9 +49,38 @@ public class TileLRUMember implements LRUCache.LRUObj {
             setRaster(ras);
         }
 
+        public TileLRUMember(TileStoreStatistics statistics) {
+            this.statistics = statistics;
+        }
+
         public void setRaster(Raster ras) {
             hRaster = ras;
             wRaster = new SoftReference(ras);
+            updateSize();
+        }
+
+        /**
+         * Updates the size charged to the statistics after the raster
+         * of a cached tile was replaced.
+         */
+        protected void updateSize() {
+            if (myNode == null) return;
+            long sz = lruSize();
+            if (statistics != null)
+                statistics.tileResized(sz - cachedSize);
+            cachedSize = sz;
+        }
+
+        /**
+         * Returns the size in bytes of the raster held by this object.
+         */
+        public long lruSize() {
+            Raster ras = hRaster;
+            if (ras == null) return 0;
+            SampleModel sm = ras.getSampleModel();
+            return ((long)ras.getWidth() * ras.getHeight() *
+                    sm.getNumDataElements() *
+                    DataBuffer.getDataTypeSize(sm.getDataType())) / 8;
         }
 
         public boolean checkRaster() {
@@ -59,20 +93,31 @@ public class TileLRUMember implements LRUCache.LRUObj {
         }
 
         public Raster retrieveRaster() {
-            if (hRaster != null) return hRaster;
-            if (wRaster == null) return null;
-
-            hRaster = (Raster)wRaster.get();
+            // Read the fields once: the cache may drop the hard
+            // reference from another thread.
+            Raster ras = hRaster;
+            if (ras != null) return ras;
+            Reference ref = wRaster;
+            if (ref == null) return null;
+
+            ras = (Raster)ref.get();
+            hRaster = ras;
 
-            if (hRaster == null)  // didn't manage to retrieve it...
+            if (ras == null)  // didn't manage to retrieve it...
             wRaster = null;
 
-            return hRaster;
+            return ras;
         }
 
         public LRUCache.LRUNode lruGet()         { return myNode; }
-        public void lruSet(LRUCache.LRUNode nde) { myNode = nde; }
+        public void lruSet(LRUCache.LRUNode nde) {
+            myNode     = nde;
+            cachedSize = lruSize();
+            if (statistics != null) statistics.tileCached(cachedSize);
+        }
         public void lruRemove()                  {
+            if (statistics != null) statistics.tileReleased(cachedSize);
+            cachedSize = 0;
             myNode  = null;
             hRaster = null;
             if (DEBUG) System.out.println("Removing");
@@ -45,8 +45,11 @@ public class TileMap implements TileStore {
             public void cleared() {
                 if (DEBUG) System.err.println("Cleaned: " + this);
                 TileMap tm = (TileMap)parent.get();
-                if (tm != null)
-                    tm.rasters.remove(pt);
+                if (tm != null) {
+                    synchronized (tm) {
+                        tm.rasters.remove(pt);
+                    }
+                }
             }
         }
 
@@ -54,24 +57,34 @@ public class TileMap implements TileStore {
             super(ras);
             this.parent = new SoftReference(parent);
             this.pt     = pt;
+            this.statistics = parent.statistics;
         }
 
         public void setRaster(Raster ras) {
             hRaster = ras;
             wRaster = new RasterSoftRef(ras);
+            updateSize();
         }
     }
 
     private TileGenerator source = null;
     private LRUCache      cache = null;
+    private TileStoreStatistics statistics = null;
 
     public TileMap(TileGenerator source,
                    LRUCache cache) {
+        this(source, cache, null);
+    }
+
+    public TileMap(TileGenerator source,
+                   LRUCache cache,
+                   TileStoreStatistics parentStatistics) {
         this.cache    = cache;
         this.source   = source;
+        this.statistics = new TileStoreStatistics(parentStatistics);
     }
 
-    public void setTile(int x, int y, Raster ras) {
+    public synchronized void setTile(int x, int y, Raster ras) {
         Point pt = new Point(x, y);
 
         if (ras == null) {
@@ -98,7 +111,7 @@ public class TileMap implements TileStore {
 
     // Returns Raster if the tile is _currently_ in the cache.
     // If it is not currently in the cache it returns null.
-    public Raster getTileNoCompute(int x, int y) {
+    public synchronized Raster getTileNoCompute(int x, int y) {
         Point pt = new Point(x, y);
         Object o = rasters.get(pt);
         if (o == null)
@@ -118,14 +131,21 @@ public class TileMap implements TileStore {
 
         Raster       ras  = null;
         Point pt = new Point(x, y);
-        Object o = rasters.get(pt);
         TileMapLRUMember item = null;
-        if (o != null) {
-            item = (TileMapLRUMember)o;
-            ras = item.retrieveRaster();
+        // Only the bookkeeping is done under the lock, so several
+        // threads can generate different tiles at the same time.
+        synchronized (this) {
+            Object o = rasters.get(pt);
+            if (o != null) {
+                item = (TileMapLRUMember)o;
+                ras = item.retrieveRaster();
+            }
         }
 
-        if (ras == null) {
+        if (ras != null) {
+            statistics.hit();
+        } else {
+            statistics.miss();
             if (DEBUG) System.out.println("Generating: ("+(x)+", "+
                                           (y) + ")");
             if (COUNT) synchronized (TileMap.class) { misses++; }
@@ -137,11 +157,13 @@ public class TileMap implements TileStore {
             if (HaltingThread.hasBeenHalted())
                 return ras;
 
-            if (item != null)
-                item.setRaster(ras);
-            else  {
-                item = new TileMapLRUMember(this, pt, ras);
-                rasters.put(pt, item);
+            synchronized (this) {
+                if (item != null)
+                    item.setRaster(ras);
+                else  {
+                    item = new TileMapLRUMember(this, pt, ras);
+                    rasters.put(pt, item);
+                }
             }
         }
 
@@ -151,6 +173,10 @@ public class TileMap implements TileStore {
         return ras;
     }
 
+    public TileStoreStatistics getStatistics() {
+        return statistics;
+    }
+
     static int requests;
     static int misses;
 }
@@ -37,4 +37,14 @@ public interface TileStore {
     // returns null.  It will not compute the tile if it is
     // not present.
     Raster getTileNoCompute(int x, int y);
+
+    /**
+     * Returns the statistics of the tile requests of this store and
+     * of its tiles held by the tile cache.  Stores which do not keep
+     * statistics return empty ones, so that other implementations of
+     * this interface keep compiling.
+     */
+    default TileStoreStatistics getStatistics() {
+        return new TileStoreStatistics();
+    }
 }
@@ -0,0 +1,149 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts the tile requests of a <code>TileStore</code> and
+ * the tiles it holds in the tile cache.  The counts of a store are
+ * also added to the counts of its parent, so the statistics of the
+ * whole cache are available from {@link TileCache#getStatistics}.
+ *
+ * <p>The counters are <code>LongAdder</code>s: render threads updating
+ * the same statistics, in particular those of the whole cache, add to
+ * separate cells instead of contending on a single value.  The counts
+ * read while tiles are requested are therefore only a snapshot.</p>
+ *
+ * @version $Id$
+ */
+public class TileStoreStatistics {
+
+    /**
+     * The statistics the counts are also added to, or null.
+     */
+    protected TileStoreStatistics parent;
+
+    /**
+     * The number of requested tiles found in the cache.
+     */
+    protected LongAdder hitCount = new LongAdder();
+
+    /**
+     * The number of requested tiles which had to be generated.
+     */
+    protected LongAdder missCount = new LongAdder();
+
+    /**
+     * The number of tiles held by the cache.
+     */
+    protected LongAdder cachedTileCount = new LongAdder();
+
+    /**
+     * The size in bytes of the tiles held by the cache.
+     */
+    protected LongAdder cachedBytes = new LongAdder();
+
+    /**
+     * Creates new statistics with no parent.
+     */
+    public TileStoreStatistics() {
+    }
+
+    /**
+     * Creates new statistics.
+     * @param parent The statistics the counts are also added to.
+     */
+    public TileStoreStatistics(TileStoreStatistics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the number of requested tiles found in the cache.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of requested tiles which had to be generated.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of tiles held by the cache.
+     */
+    public long getCachedTileCount() {
+        return cachedTileCount.sum();
+    }
+
+    /**
+     * Returns the size in bytes of the tiles held by the cache.
+     */
+    public long getCachedBytes() {
+        return cachedBytes.sum();
+    }
+
+    /**
+     * Records a requested tile found in the cache.
+     */
+    public void hit() {
+        hitCount.increment();
+        if (parent != null) parent.hit();
+    }
+
+    /**
+     * Records a requested tile which had to be generated.
+     */
+    public void miss() {
+        missCount.increment();
+        if (parent != null) parent.miss();
+    }
+
+    /**
+     * Records a tile entering the cache.
+     * @param size The size in bytes of the tile.
+     */
+    public void tileCached(long size) {
+        cachedTileCount.increment();
+        cachedBytes.add(size);
+        if (parent != null) parent.tileCached(size);
+    }
+
+    /**
+     * Records a tile leaving the cache.
+     * @param size The size in bytes the tile was cached with.
+     */
+    public void tileReleased(long size) {
+        cachedTileCount.decrement();
+        cachedBytes.add(-size);
+        if (parent != null) parent.tileReleased(size);
+    }
+
+    /**
+     * Records a change in the size of a cached tile.
+     * @param delta The size difference in bytes.
+     */
+    public void tileResized(long delta) {
+        cachedBytes.add(delta);
+        if (parent != null) parent.tileResized(delta);
+    }
+}
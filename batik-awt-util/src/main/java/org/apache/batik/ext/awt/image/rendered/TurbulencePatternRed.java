@@ -29,6 +29,12 @@ import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 /**
  * This class creates a RenderedImage in conformance to the one
  * defined for the feTurbulence filter of the SVG specification.  What
@@ -135,6 +141,14 @@ public final class TurbulencePatternRed extends AbstractRed {
         }
     }
 
+    /**
+     * Inner class holding the lattice selector and gradients of a seed.
+     */
+    static final class Lattice {
+        final int[] latticeSelector = new int[BSize + 1];
+        final double[] gradient = new double[(BSize+1)*8];
+    }
+
     /**
      * Used when stitching is on
      */
@@ -210,8 +224,125 @@ public final class TurbulencePatternRed extends AbstractRed {
     private static final int BSize = 0x100;
     private static final int BM = 0xff;
     private static final double PerlinN = 0x1000;
-    private final int[] latticeSelector = new int[BSize + 1];
-    private final double[] gradient = new double[(BSize+1)*8];
+    private final int[] latticeSelector;
+    private final double[] gradient;
+
+    /**
+     * The number of pixels from which a raster is filled by several
+     * threads of <code>fillPool</code>.  Package private, as the pool,
+     * so that the tests can force the parallel fill.
+     */
+    static int parallelThreshold = 256*256;
+
+    /**
+     * The pool filling the large rasters.
+     */
+    static ForkJoinPool fillPool = ForkJoinPool.commonPool();
+
+    /**
+     * The maximum number of lattices kept in <code>lattices</code>.
+     */
+    private static final int MAX_CACHED_LATTICES = 16;
+
+    /**
+     * The lattices of the recently used seeds, shared by the instances
+     * since they never change once computed.
+     */
+    private static final Map lattices =
+        new LinkedHashMap(MAX_CACHED_LATTICES, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_CACHED_LATTICES;
+            }
+        };
+
+    /**
+     * The maximum total size in bytes of the rasters kept in
+     * <code>tiles</code>, 0 when the stitched tiles are not reused.
+     */
+    private static long tileCacheMaxBytes;
+
+    /**
+     * The total size in bytes of the rasters kept in <code>tiles</code>.
+     */
+    private static long tileCacheBytes;
+
+    /**
+     * The rasters generated for stitched patterns, by pattern and
+     * raster bounds, in least recently used order.
+     */
+    private static final Map tiles = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     * Sets the maximum total size in bytes of the stitched tiles kept
+     * for reuse.
+     *
+     * <p>A stitched pattern is typically a background repeated on each
+     * rendering of a document.  With reuse enabled, the pixels
+     * generated for a raster of a stitched pattern are kept, and a
+     * later request for the same raster of an identical pattern, with
+     * the same parameters and transform, copies them instead of
+     * evaluating the noise again.  The reused pixels are identical to
+     * the ones which would be generated.  The least recently used
+     * tiles are dropped to stay within the budget, and a tile larger
+     * than the whole budget is not kept.  The default, 0, disables
+     * the reuse.</p>
+     */
+    public static void setTileCacheMaxBytes(long maxBytes) {
+        synchronized (tiles) {
+            tileCacheMaxBytes = Math.max(0, maxBytes);
+            trimTiles();
+        }
+    }
+
+    /**
+     * Returns the maximum total size in bytes of the stitched tiles
+     * kept for reuse.
+     */
+    public static long getTileCacheMaxBytes() {
+        synchronized (tiles) {
+            return tileCacheMaxBytes;
+        }
+    }
+
+    /**
+     * Returns the total size in bytes of the stitched tiles kept for
+     * reuse.
+     */
+    public static long getTileCacheBytes() {
+        synchronized (tiles) {
+            return tileCacheBytes;
+        }
+    }
+
+    /**
+     * Keeps the given pixels for reuse, dropping the least recently
+     * used ones to stay within the budget.
+     */
+    private static void putTile(Object key, int[] pixels) {
+        long size = 4L*pixels.length;
+        synchronized (tiles) {
+            if (size > tileCacheMaxBytes)
+                return;
+            int[] old = (int[])tiles.put(key, pixels);
+            if (old != null)
+                tileCacheBytes -= 4L*old.length;
+            tileCacheBytes += size;
+            trimTiles();
+        }
+    }
+
+    /**
+     * Drops the least recently used tiles until the tiles fit in the
+     * budget.  The caller must hold the lock on <code>tiles</code>.
+     */
+    private static void trimTiles() {
+        Iterator it = tiles.values().iterator();
+        while ((tileCacheBytes > tileCacheMaxBytes) && it.hasNext()) {
+            int[] pixels = (int[])it.next();
+            tileCacheBytes -= 4L*pixels.length;
+            it.remove();
+        }
+    }
 
     public double getBaseFrequencyX(){
         return baseFrequencyX;
@@ -245,26 +376,52 @@ public final class TurbulencePatternRed extends AbstractRed {
     }
 
     public final int setupSeed(int seed) {
+        return setupRandomSeed(seed);
+    }
+
+    public final int random(int seed) {
+        return nextRandom(seed);
+    }
+
+    private static int setupRandomSeed(int seed) {
         if (seed <= 0) seed = -(seed % (RAND_m - 1)) + 1;
         if (seed > RAND_m - 1) seed = RAND_m - 1;
         return seed;
     }
 
-    public final int random(int seed) {
+    private static int nextRandom(int seed) {
       int result = RAND_a * (seed % RAND_q) - RAND_r * (seed / RAND_q);
         if (result <= 0) result += RAND_m;
         return result;
     }
 
-    private void initLattice(int seed) {
+    /**
+     * Returns the lattice selector and gradients for a seed, computed
+     * by <code>initLattice</code> the first time the seed is used.
+     */
+    private static Lattice getLattice(int seed) {
+        Integer key = setupRandomSeed(seed);
+        synchronized (lattices) {
+            Lattice lattice = (Lattice)lattices.get(key);
+            if (lattice == null) {
+                lattice = new Lattice();
+                initLattice(key, lattice.latticeSelector, lattice.gradient);
+                lattices.put(key, lattice);
+            }
+            return lattice;
+        }
+    }
+
+    private static void initLattice(int seed,
+                                    final int[] latticeSelector,
+                                    final double[] gradient) {
         double u, v, s;
         int i, j, k, s1, s2;
-        seed = setupSeed(seed);
 
         for(k = 0; k < 4; k++){
             for(i = 0; i < BSize; i++){
-                u = (((seed = random(seed)) % (BSize + BSize)) - BSize);
-                v = (((seed = random(seed)) % (BSize + BSize)) - BSize);
+                u = (((seed = nextRandom(seed)) % (BSize + BSize)) - BSize);
+                v = (((seed = nextRandom(seed)) % (BSize + BSize)) - BSize);
 
                 s = 1/Math.sqrt(u*u + v*v);
                 gradient[i*8 + k*2    ] = u*s;
@@ -277,7 +434,7 @@ public final class TurbulencePatternRed extends AbstractRed {
 
         while(--i > 0){
             k = latticeSelector[i];
-            j = (seed = random(seed)) % BSize;
+            j = (seed = nextRandom(seed)) % BSize;
             latticeSelector[i] = latticeSelector[j];
             latticeSelector[j] = k;
 
@@ -1065,13 +1222,21 @@ public final class TurbulencePatternRed extends AbstractRed {
                             minY - dest.getSampleModelTranslateY());
 
         final int[] destPixels = dstDB.getBankData()[0];
-        int dstAdjust = sppsm.getScanlineStride() - w;
-
-        // Generate pixel pattern now
-        int i, end, dp=dstOff;
-        final int[] rgb = new int[4];
-        final double[] fSum = {0, 0, 0, 0};
-        final double[] noise = {0, 0, 0, 0};
+        int stride = sppsm.getScanlineStride();
+
+        Object key = null;
+        if ((stitchInfo != null) && (getTileCacheMaxBytes() > 0)) {
+            key = new TileKey(this, minX, minY, w, h);
+            int[] pixels;
+            synchronized (tiles) {
+                pixels = (int[])tiles.get(key);
+            }
+            if (pixels != null) {
+                for (int y=0, dp=dstOff; y<h; y++, dp+=stride)
+                    System.arraycopy(pixels, y*w, destPixels, dp, w);
+                return dest;
+            }
+        }
 
         final double tx0, tx1, ty0, ty1;
         tx0 = tx[0];
@@ -1086,6 +1251,61 @@ public final class TurbulencePatternRed extends AbstractRed {
         double point_0 = p[0];
         double point_1 = p[1];
 
+        ForkJoinPool pool = fillPool;
+        if ((w*h < parallelThreshold) || (pool.getParallelism() < 2)) {
+            fillRows(destPixels, dstOff, stride, w, h, point_0, point_1);
+        } else {
+            // Compute the start of each row exactly as the sequential
+            // walk of the raster would, so the bands are filled with the
+            // same values.
+            double[] rowStart = new double[2*h];
+            for (int y=0; y<h; y++) {
+                rowStart[2*y]   = point_0;
+                rowStart[2*y+1] = point_1;
+                for (int x=0; x<w; x++) {
+                    point_0 += tx0;
+                    point_1 += tx1;
+                }
+                point_0 += ty0;
+                point_1 += ty1;
+            }
+            int grain = Math.max(8, h/(4*pool.getParallelism()));
+            pool.invoke
+                (new FillTask(destPixels, dstOff, stride, w, rowStart,
+                              0, h, grain));
+        }
+
+        if (key != null) {
+            int[] pixels = new int[w*h];
+            for (int y=0, dp=dstOff; y<h; y++, dp+=stride)
+                System.arraycopy(destPixels, dp, pixels, y*w, w);
+            putTile(key, pixels);
+        }
+
+        return dest;
+    }
+
+    /**
+     * Fills <code>h</code> rows of <code>w</code> pixels with the
+     * pattern, starting at the pattern space point
+     * <code>(point_0, point_1)</code>.
+     */
+    private void fillRows(final int[] destPixels, int dp, int stride,
+                          int w, int h, double point_0, double point_1) {
+        int i, end;
+        int dstAdjust = stride - w;
+        final int[] rgb = new int[4];
+        final double[] fSum = {0, 0, 0, 0};
+        final double[] noise = {0, 0, 0, 0};
+
+        final double tx0, tx1, ty0, ty1;
+        tx0 = tx[0];
+        tx1 = tx[1];
+        // Update for y step, (note we substract all the stuff we
+        // added while going across the scan line).
+        ty0 = ty[0]-(w*tx0);
+        ty1 = ty[1]-(w*tx1);
+
         if(isFractalNoise){
             if(stitchInfo == null){
                 if (channels.length == 4) {
@@ -1198,7 +1418,73 @@ public final class TurbulencePatternRed extends AbstractRed {
             }
         }
 
-        return dest;
+    }
+
+    /**
+     * Fills a band of rows, splitting it in two halves filled
+     * concurrently while it has more than <code>grain</code> rows.
+     */
+    private final class FillTask extends RecursiveAction {
+        final int[] destPixels;
+        final int dstOff, stride, w;
+        final double[] rowStart;
+        final int y0, y1, grain;
+
+        FillTask(int[] destPixels, int dstOff, int stride, int w,
+                 double[] rowStart, int y0, int y1, int grain) {
+            this.destPixels = destPixels;
+            this.dstOff     = dstOff;
+            this.stride     = stride;
+            this.w          = w;
+            this.rowStart   = rowStart;
+            this.y0         = y0;
+            this.y1         = y1;
+            this.grain      = grain;
+        }
+
+        protected void compute() {
+            if (y1-y0 <= grain) {
+                fillRows(destPixels, dstOff + y0*stride, stride, w, y1-y0,
+                         rowStart[2*y0], rowStart[2*y0+1]);
+                return;
+            }
+            int mid = (y0+y1)/2;
+            invokeAll(new FillTask(destPixels, dstOff, stride, w, rowStart,
+                                   y0, mid, grain),
+                      new FillTask(destPixels, dstOff, stride, w, rowStart,
+                                   mid, y1, grain));
+        }
+    }
+
+    /**
+     * The key of a raster generated for a stitched pattern: the
+     * parameters of the pattern and the bounds of the raster.
+     */
+    private static final class TileKey {
+        final double[] values;
+        final int hash;
+
+        TileKey(TurbulencePatternRed red, int x, int y, int w, int h) {
+            double[] m = new double[6];
+            red.txf.getMatrix(m);
+            values = new double[] {
+                red.baseFrequencyX, red.baseFrequencyY, red.numOctaves,
+                red.seed, red.isFractalNoise ? 1 : 0, red.channels.length,
+                red.tile.getX(), red.tile.getY(),
+                red.tile.getWidth(), red.tile.getHeight(),
+                m[0], m[1], m[2], m[3], m[4], m[5],
+                x, y, w, h };
+            hash = Arrays.hashCode(values);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return (o instanceof TileKey) &&
+                Arrays.equals(values, ((TileKey)o).values);
+        }
     }
 
     /**
@@ -1326,7 +1612,9 @@ public final class TurbulencePatternRed extends AbstractRed {
             //                     " maxLatticeY = " + maxLatticeY);
         }
 
-        initLattice(seed);
+        Lattice lattice = getLattice(seed);
+        latticeSelector = lattice.latticeSelector;
+        gradient = lattice.gradient;
 
         ColorModel cm;
         if (alpha)
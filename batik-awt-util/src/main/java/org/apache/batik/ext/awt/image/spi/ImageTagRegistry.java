@@ -28,6 +28,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 
+import org.apache.batik.ext.awt.image.BoundedURLImageCache;
 import org.apache.batik.ext.awt.image.URLImageCache;
 import org.apache.batik.ext.awt.image.renderable.Filter;
 import org.apache.batik.ext.awt.image.renderable.ProfileRable;
@@ -66,6 +67,18 @@ public class ImageTagRegistry implements ErrorConstants {
         this.imgCache= imgCache;
     }
 
+    /** Returns the cache of the images read without a color space.
+     */
+    public URLImageCache getImageCache() {
+        return imgCache;
+    }
+
+    /** Returns the cache of the raw images, read for a color space.
+     */
+    public URLImageCache getRawCache() {
+        return rawCache;
+    }
+
     /** Removes all decoded raster images from the cache.
      *  All Images will be reloaded from the original source
      *  if decoded again.
@@ -322,11 +335,27 @@ public class ImageTagRegistry implements ErrorConstants {
 
     static ImageTagRegistry registry = null;
 
+    /**
+     * Returns the shared registry.  Its caches hold the images through
+     * soft references, unless the
+     * <code>org.apache.batik.image.cache_size</code> system property
+     * gives them a budget of decoded bytes, in which case they are
+     * <code>BoundedURLImageCache</code>s sharing that budget: the raw
+     * cache gets a quarter of it and the image cache the rest.
+     */
     public static synchronized ImageTagRegistry getRegistry() {
         if (registry != null)
             return registry;
 
-        registry = new ImageTagRegistry();
+        long cacheSize = 0;
+        try {
+            String s = System.getProperty("org.apache.batik.image.cache_size");
+            if (s != null)
+                cacheSize = Long.parseLong(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        }
+        registry = createRegistry(cacheSize);
 
         //registry.register(new PNGRegistryEntry());
         //registry.register(new TIFFRegistryEntry());
@@ -343,6 +372,22 @@ public class ImageTagRegistry implements ErrorConstants {
         return registry;
     }
 
+    /**
+     * Creates a registry with no entries whose caches hold at most
+     * <code>cacheSize</code> bytes of decoded images in total, or hold
+     * them through soft references if <code>cacheSize</code> is not
+     * positive.  The raw images are only read for the images with a
+     * color-profile, so the raw cache gets a quarter of the budget.
+     */
+    static ImageTagRegistry createRegistry(long cacheSize) {
+        if (cacheSize <= 0)
+            return new ImageTagRegistry();
+        long rawSize = cacheSize / 4;
+        return new ImageTagRegistry
+            (new BoundedURLImageCache(rawSize),
+             new BoundedURLImageCache(cacheSize - rawSize));
+    }
+
     static BrokenLinkProvider defaultProvider
         = new DefaultBrokenLinkProvider();
 
@@ -27,12 +27,15 @@ import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.jar.Manifest;
 
 import org.apache.batik.dom.AbstractElement;
@@ -259,6 +262,45 @@ public class BaseScriptingEnvironment {
      */
     protected WeakHashMap executedScripts = new WeakHashMap();
 
+    /**
+     * Whether the &lt;script&gt; elements are compiled before the
+     * first one is run.
+     */
+    protected static volatile boolean precompileScripts;
+    static {
+        try {
+            precompileScripts =
+                Boolean.getBoolean("org.apache.batik.script.precompile");
+        } catch (SecurityException se) {
+        }
+    }
+
+    /**
+     * Sets whether <code>loadScripts</code> compiles all the
+     * &lt;script&gt; elements, in parallel, before running them in
+     * order.  External scripts are then fetched before the first
+     * script is run.  Only the ECMAScript scripts are compiled.  The
+     * default value can be set with the
+     * <code>org.apache.batik.script.precompile</code> system property.
+     */
+    public static void setPrecompileScripts(boolean b) {
+        precompileScripts = b;
+    }
+
+    /**
+     * Returns whether <code>loadScripts</code> compiles all the
+     * &lt;script&gt; elements before running them.
+     */
+    public static boolean getPrecompileScripts() {
+        return precompileScripts;
+    }
+
+    /**
+     * Map of the &lt;script&gt; elements to the external scripts
+     * fetched by {@link #precompileScripts} and not yet run.
+     */
+    protected Map prefetchedScripts = new HashMap();
+
     /**
      * Creates a new BaseScriptingEnvironment.
      * @param ctx the bridge context
@@ -348,11 +390,69 @@ public class BaseScriptingEnvironment {
         NodeList scripts = document.getElementsByTagNameNS
             (SVGConstants.SVG_NAMESPACE_URI, SVGConstants.SVG_SCRIPT_TAG);
 
+        if (precompileScripts) {
+            precompileScripts(scripts);
+        }
         int len = scripts.getLength();
         for (int i = 0; i < len; i++) {
             AbstractElement script = (AbstractElement) scripts.item(i);
             loadScript(script);
         }
+        prefetchedScripts.clear();
+    }
+
+    /**
+     * Reads the given ECMAScript &lt;script&gt; elements and compiles
+     * them in parallel, so that running them only finds them in the
+     * {@link CompiledScriptCache}.  The errors are reported when the
+     * scripts are run.
+     */
+    protected void precompileScripts(NodeList scripts) {
+        List tasks = new ArrayList();
+        int len = scripts.getLength();
+        for (int i = 0; i < len; i++) {
+            AbstractElement script = (AbstractElement) scripts.item(i);
+            if (executedScripts.containsKey(script)) {
+                continue;
+            }
+            String type = getScriptType(script);
+            if (type.equals(SVGConstants.SVG_SCRIPT_TYPE_JAVA)) {
+                continue;
+            }
+            Interpreter interp = getInterpreter(type);
+            if (!(interp instanceof RhinoInterpreter)) {
+                continue;
+            }
+            try {
+                ScriptSource source = readScript(script, type);
+                if (source == null) {
+                    continue;
+                }
+                if (source.href.length() > 0) {
+                    prefetchedScripts.put(script, source);
+                }
+                tasks.add(new PrecompileTask((RhinoInterpreter) interp,
+                                             source));
+            } catch (IOException e) {
+                // Reported by loadScript.
+            } catch (SecurityException e) {
+                // Reported by loadScript.
+            }
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * Returns the type of the given &lt;script&gt; element.
+     */
+    protected String getScriptType(AbstractElement script) {
+        String type = script.getAttributeNS
+            (null, SVGConstants.SVG_TYPE_ATTRIBUTE);
+
+        if (type.length() == 0) {
+            type = SVGConstants.SVG_SCRIPT_TYPE_DEFAULT_VALUE;
+        }
+        return type;
     }
 
     /**
@@ -377,12 +477,7 @@ public class BaseScriptingEnvironment {
             } while (n.getNodeType() != Node.DOCUMENT_NODE);
         }
 
-        String type = script.getAttributeNS
-            (null, SVGConstants.SVG_TYPE_ATTRIBUTE);
-
-        if (type.length() == 0) {
-            type = SVGConstants.SVG_SCRIPT_TYPE_DEFAULT_VALUE;
-        }
+        String type = getScriptType(script);
 
         //
         // Java code invocation.
@@ -454,111 +549,18 @@ public class BaseScriptingEnvironment {
         }
 
         try {
-            String href = XLinkSupport.getXLinkHref(script);
-            String desc = null;
-            Reader reader = null;
-
-            if (href.length() > 0) {
-                desc = href;
-
-                // External script.
-                ParsedURL purl = new ParsedURL(script.getBaseURI(), href);
-
-                checkCompatibleScriptURL(type, purl);
-                InputStream is = purl.openStream();
-                String mediaType = purl.getContentTypeMediaType();
-                String enc = purl.getContentTypeCharset();
-                if (enc != null) {
-                    try {
-                        reader = new InputStreamReader(is, enc);
-                    } catch (UnsupportedEncodingException uee) {
-                        enc = null;
-                    }
-                }
-                if (reader == null) {
-                    if (APPLICATION_ECMASCRIPT.equals(mediaType)) {
-                        // No encoding was specified in the MIME type, so
-                        // infer it according to RFC 4329.
-                        if (purl.hasContentTypeParameter("version")) {
-                            // Future versions of application/ecmascript 
-                            // are not supported, so skip this script 
-                            // element if the version parameter is present.
-                            return;
-                        }
-
-                        PushbackInputStream pbis =
-                            new PushbackInputStream(is, 8);
-                        byte[] buf = new byte[4];
-                        int read = pbis.read(buf);
-                        if (read > 0) {
-                            pbis.unread(buf, 0, read);
-                            if (read >= 2) {
-                                if (buf[0] == (byte)0xff &&
-                                        buf[1] == (byte)0xfe) {
-                                    if (read >= 4 && buf[2] == 0 &&
-                                            buf[3] == 0) {
-                                        enc = "UTF32-LE";
-                                        pbis.skip(4);
-                                    } else {
-                                        enc = "UTF-16LE";
-                                        pbis.skip(2);
-                                    }
-                                } else if (buf[0] == (byte)0xfe &&
-                                        buf[1] == (byte)0xff) {
-                                    enc = "UTF-16BE";
-                                    pbis.skip(2);
-                                } else if (read >= 3
-                                        && buf[0] == (byte)0xef 
-                                        && buf[1] == (byte)0xbb
-                                        && buf[2] == (byte)0xbf) {
-                                    enc = "UTF-8";
-                                    pbis.skip(3);
-                                } else if (read >= 4 && buf[0] == 0 &&
-                                        buf[1] == 0 &&
-                                        buf[2] == (byte)0xfe &&
-                                        buf[3] == (byte)0xff) {
-                                    enc = "UTF-32BE";
-                                    pbis.skip(4);
-                                }
-                            }
-                            if (enc == null) {
-                                enc = "UTF-8";
-                            }
-                        }
-                        reader = new InputStreamReader(pbis, enc);
-                    } else {
-                        reader = new InputStreamReader(is);
-                    }
-                }
-            } else {
-                checkCompatibleScriptURL(type, docPURL);
-                DocumentLoader dl = bridgeContext.getDocumentLoader();
-                Element e = script;
-                SVGDocument d = (SVGDocument)e.getOwnerDocument();
-                int line = dl.getLineNumber(script);
-                desc = Messages.formatMessage
-                    (INLINE_SCRIPT_DESCRIPTION,
-                     new Object [] {d.getURL(),
-                                    "<"+script.getNodeName()+">",
-                             line});
-                // Inline script.
-                Node n = script.getFirstChild();
-                if (n != null) {
-                    StringBuffer sb = new StringBuffer();
-                    while (n != null) {
-                        if (n.getNodeType() == Node.CDATA_SECTION_NODE
-                            || n.getNodeType() == Node.TEXT_NODE)
-                            sb.append(n.getNodeValue());
-                        n = n.getNextSibling();
-                    }
-                    reader = new StringReader(sb.toString());
-                } else {
+            ScriptSource source = (ScriptSource) prefetchedScripts.remove(script);
+            if (source == null
+                    || !source.href.equals(XLinkSupport.getXLinkHref(script))) {
+                source = readScript(script, type);
+                if (source == null) {
                     return;
                 }
             }
 
             executedScripts.put(script, null);
-            interpreter.evaluate(reader, desc);
+            interpreter.evaluate(new StringReader(source.text),
+                                 source.description);
 
         } catch (IOException e) {
             if (userAgent != null) {
@@ -576,6 +578,170 @@ public class BaseScriptingEnvironment {
         }
     }
 
+    /**
+     * Reads the source of the given &lt;script&gt; element, fetching
+     * it if it is external.
+     * @return null if the script should be skipped.
+     */
+    protected ScriptSource readScript(AbstractElement script, String type)
+        throws IOException {
+        String href = XLinkSupport.getXLinkHref(script);
+        String desc = null;
+        Reader reader = null;
+
+        if (href.length() > 0) {
+            desc = href;
+
+            // External script.
+            ParsedURL purl = new ParsedURL(script.getBaseURI(), href);
+
+            checkCompatibleScriptURL(type, purl);
+            InputStream is = purl.openStream();
+            String mediaType = purl.getContentTypeMediaType();
+            String enc = purl.getContentTypeCharset();
+            if (enc != null) {
+                try {
+                    reader = new InputStreamReader(is, enc);
+                } catch (UnsupportedEncodingException uee) {
+                    enc = null;
+                }
+            }
+            if (reader == null) {
+                if (APPLICATION_ECMASCRIPT.equals(mediaType)) {
+                    // No encoding was specified in the MIME type, so
+                    // infer it according to RFC 4329.
+                    if (purl.hasContentTypeParameter("version")) {
+                        // Future versions of application/ecmascript 
+                        // are not supported, so skip this script 
+                        // element if the version parameter is present.
+                        return null;
+                    }
+
+                    PushbackInputStream pbis =
+                        new PushbackInputStream(is, 8);
+                    byte[] buf = new byte[4];
+                    int read = pbis.read(buf);
+                    if (read > 0) {
+                        pbis.unread(buf, 0, read);
+                        if (read >= 2) {
+                            if (buf[0] == (byte)0xff &&
+                                    buf[1] == (byte)0xfe) {
+                                if (read >= 4 && buf[2] == 0 &&
+                                        buf[3] == 0) {
+                                    enc = "UTF32-LE";
+                                    pbis.skip(4);
+                                } else {
+                                    enc = "UTF-16LE";
+                                    pbis.skip(2);
+                                }
+                            } else if (buf[0] == (byte)0xfe &&
+                                    buf[1] == (byte)0xff) {
+                                enc = "UTF-16BE";
+                                pbis.skip(2);
+                            } else if (read >= 3
+                                    && buf[0] == (byte)0xef 
+                                    && buf[1] == (byte)0xbb
+                                    && buf[2] == (byte)0xbf) {
+                                enc = "UTF-8";
+                                pbis.skip(3);
+                            } else if (read >= 4 && buf[0] == 0 &&
+                                    buf[1] == 0 &&
+                                    buf[2] == (byte)0xfe &&
+                                    buf[3] == (byte)0xff) {
+                                enc = "UTF-32BE";
+                                pbis.skip(4);
+                            }
+                        }
+                        if (enc == null) {
+                            enc = "UTF-8";
+                        }
+                    }
+                    reader = new InputStreamReader(pbis, enc);
+                } else {
+                    reader = new InputStreamReader(is);
+                }
+            }
+        } else {
+            checkCompatibleScriptURL(type, docPURL);
+            DocumentLoader dl = bridgeContext.getDocumentLoader();
+            Element e = script;
+            SVGDocument d = (SVGDocument)e.getOwnerDocument();
+            int line = dl.getLineNumber(script);
+            desc = Messages.formatMessage
+                (INLINE_SCRIPT_DESCRIPTION,
+                 new Object [] {d.getURL(),
+                                "<"+script.getNodeName()+">",
+                         line});
+            // Inline script.
+            Node n = script.getFirstChild();
+            if (n != null) {
+                StringBuffer sb = new StringBuffer();
+                while (n != null) {
+                    if (n.getNodeType() == Node.CDATA_SECTION_NODE
+                        || n.getNodeType() == Node.TEXT_NODE)
+                        sb.append(n.getNodeValue());
+                    n = n.getNextSibling();
+                }
+                return new ScriptSource(sb.toString(), desc, href);
+            } else {
+                return null;
+            }
+        }
+
+        try {
+            return new ScriptSource(RhinoInterpreter.readScript(reader), desc,
+                                    href);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The source of a &lt;script&gt; element.
+     */
+    protected static class ScriptSource {
+
+        /**
+         * The text of the script.
+         */
+        public String text;
+
+        /**
+         * The description of the script, used in error messages.
+         */
+        public String description;
+
+        /**
+         * The href of the script, empty for an inline script.
+         */
+        public String href;
+
+        public ScriptSource(String text, String description, String href) {
+            this.text = text;
+            this.description = description;
+            this.href = href;
+        }
+    }
+
+    /**
+     * Compiles the source of a &lt;script&gt; element.
+     */
+    protected static class PrecompileTask extends RecursiveAction {
+
+        protected RhinoInterpreter interpreter;
+        protected ScriptSource source;
+
+        public PrecompileTask(RhinoInterpreter interpreter,
+                              ScriptSource source) {
+            this.interpreter = interpreter;
+            this.source = source;
+        }
+
+        protected void compute() {
+            interpreter.precompile(source.text, source.description);
+        }
+    }
+
     /**
      * Checks that the script URLs and the document url are
      * compatible. A SecurityException is thrown if loading
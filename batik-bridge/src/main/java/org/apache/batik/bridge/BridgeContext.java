@@ -174,6 +174,18 @@ public class BridgeContext implements ErrorConstants, CSSContext {
      */
     protected Set reservedNamespaceSet;
 
+    /**
+     * The shared registry the bridges are taken from, or null when the
+     * bridges are registered in namespaceURIMap.
+     */
+    protected BridgeRegistry bridgeRegistry;
+
+    /**
+     * The instances of the bridges of the registry used by this context,
+     * keyed by prototype.
+     */
+    protected Map registryBridgeMap;
+
     /**
      * Element Data Map:
      * This is a general location for elements to 'cache'
@@ -950,12 +962,19 @@ public class BridgeContext implements ErrorConstants, CSSContext {
      * @param element the element
      */
     public boolean hasGraphicsNodeBridge(Element element) {
-        if (namespaceURIMap == null || element == null) {
+        if (element == null) {
             return false;
         }
         String localName = element.getLocalName();
         String namespaceURI = element.getNamespaceURI();
         namespaceURI = ((namespaceURI == null)? "" : namespaceURI);
+        if (bridgeRegistry != null) {
+            return bridgeRegistry.getBridge(namespaceURI, localName)
+                instanceof GraphicsNodeBridge;
+        }
+        if (namespaceURIMap == null) {
+            return false;
+        }
         HashMap localNameMap = (HashMap) namespaceURIMap.get(namespaceURI);
         if (localNameMap == null) {
             return false;
@@ -976,7 +995,8 @@ public class BridgeContext implements ErrorConstants, CSSContext {
      * @param element the element
      */
     public Bridge getBridge(Element element) {
-        if (namespaceURIMap == null || element == null) {
+        if ((namespaceURIMap == null && bridgeRegistry == null)
+                || element == null) {
             return null;
         }
         String localName = element.getLocalName();
@@ -994,7 +1014,20 @@ public class BridgeContext implements ErrorConstants, CSSContext {
      */
     public Bridge getBridge(String namespaceURI, String localName) {
         Bridge bridge = null;
-        if (namespaceURIMap != null) {
+        if (bridgeRegistry != null) {
+            Bridge proto = bridgeRegistry.getBridge(namespaceURI, localName);
+            if (proto != null) {
+                bridge = (Bridge)registryBridgeMap.get(proto);
+                if (bridge == null) {
+                    bridge = bridgeRegistry.createBridge(proto);
+                    registryBridgeMap.put(proto, bridge);
+                }
+                if (isDynamic()) {
+                    return bridge.getInstance();
+                }
+                return bridge;
+            }
+        } else if (namespaceURIMap != null) {
             HashMap localNameMap = (HashMap) namespaceURIMap.get(namespaceURI);
             if (localNameMap != null) {
                 bridge = (Bridge)localNameMap.get(localName);
@@ -1029,6 +1062,7 @@ public class BridgeContext implements ErrorConstants, CSSContext {
                             bridge.getClass());
         }
         // end assert
+        detachBridgeRegistry();
         if (namespaceURIMap == null) {
             namespaceURIMap = new HashMap();
         }
@@ -1059,6 +1093,7 @@ public class BridgeContext implements ErrorConstants, CSSContext {
      * @param localName the local name
      */
     public void removeBridge(String namespaceURI, String localName) {
+        detachBridgeRegistry();
         if (namespaceURIMap == null) {
             return;
         }
@@ -1092,6 +1127,7 @@ public class BridgeContext implements ErrorConstants, CSSContext {
         if (namespaceURI == null) {
             namespaceURI = "";
         }
+        detachBridgeRegistry();
         if (reservedNamespaceSet == null) {
             reservedNamespaceSet = new HashSet();
         }
@@ -1105,6 +1141,7 @@ public class BridgeContext implements ErrorConstants, CSSContext {
         if (namespaceURI == null) {
             namespaceURI = "";
         }
+        detachBridgeRegistry();
         if (reservedNamespaceSet != null) {
             reservedNamespaceSet.remove(namespaceURI);
             if (reservedNamespaceSet.isEmpty()) {
@@ -2037,31 +2074,125 @@ public class BridgeContext implements ErrorConstants, CSSContext {
     protected List extensions = null;
 
     /**
-     * Registers the bridges to handle SVG 1.0 elements.
+     * Registers the bridges to handle SVG 1.0 elements.  They are taken
+     * from the shared registry, unless this context already has bridges
+     * of its own or uses other extensions than the registry.
      */
     public void registerSVGBridges() {
         UserAgent ua = getUserAgent();
         List ext = getBridgeExtensions(document);
+        BridgeRegistry registry = getSharedBridgeRegistry(document);
+        if ((registry != null) && (namespaceURIMap == null)
+                && registry.getBridgeExtensions().equals(ext)) {
+            setBridgeRegistry(registry);
+        } else {
+            for (Object anExt : ext) {
+                ((BridgeExtension) anExt).registerTags(this);
+            }
+        }
 
         for (Object anExt : ext) {
-            BridgeExtension be = (BridgeExtension) anExt;
-            be.registerTags(this);
-            ua.registerExtension(be);
+            ua.registerExtension((BridgeExtension) anExt);
         }
     }
 
-    public List getBridgeExtensions(Document doc) {
+    /**
+     * Returns the shared registry holding the bridges for the given
+     * document, or null if the bridge extensions must register their
+     * bridges in this context.  The registry is only used if it was built
+     * from the extensions returned by {@link #getBridgeExtensions}, so a
+     * subclass returning other extensions gets them registered in this
+     * context.  Subclasses may return null to never share the bridges.
+     */
+    protected BridgeRegistry getSharedBridgeRegistry(Document doc) {
+        BridgeRegistry registry =
+            BridgeRegistry.getRegistry(isSVG12Version(doc));
+        return registry.isShareable() ? registry : null;
+    }
+
+    /**
+     * Returns the shared registry the bridges of this context are taken
+     * from, or null.
+     */
+    public BridgeRegistry getBridgeRegistry() {
+        return bridgeRegistry;
+    }
+
+    /**
+     * Makes this context take its bridges from the given shared registry,
+     * in place of the ones registered so far.
+     */
+    public void setBridgeRegistry(BridgeRegistry registry) {
+        bridgeRegistry = registry;
+        if (registry == null) {
+            registryBridgeMap = null;
+            return;
+        }
+        registryBridgeMap = new HashMap();
+        namespaceURIMap = null;
+        reservedNamespaceSet = registry.getReservedNamespaceURIs();
+        Bridge b = registry.getDefaultBridge();
+        defaultBridge = (b == null) ? null : registry.createBridge(b);
+    }
+
+    /**
+     * Replaces the shared registry used by this context, if any, by
+     * a modifiable copy of its bridges.  Invoked before the bridges of
+     * this context are modified.
+     */
+    protected void detachBridgeRegistry() {
+        BridgeRegistry registry = bridgeRegistry;
+        if (registry == null) {
+            return;
+        }
+        Map bridges = registryBridgeMap;
+        Bridge b = defaultBridge;
+        bridgeRegistry = null;
+        registryBridgeMap = null;
+        reservedNamespaceSet = null;
+        registry.registerTags(this, bridges);
+        defaultBridge = b;
+    }
+
+    /**
+     * Tells whether the given document is handled with the SVG 1.2
+     * bridges, according to its version attribute.
+     */
+    protected static boolean isSVG12Version(Document doc) {
         Element root = ((SVGOMDocument)doc).getRootElement();
         String ver = root.getAttributeNS
             (null, SVGConstants.SVG_VERSION_ATTRIBUTE);
+        return !((ver.length()==0) || ver.equals("1.0") || ver.equals("1.1"));
+    }
+
+    /**
+     * Returns a new list of the extensions used for the given document:
+     * the global extensions and the extension for its SVG version, in
+     * priority order.
+     */
+    public List getBridgeExtensions(Document doc) {
+        BridgeRegistry registry = getSharedBridgeRegistry(doc);
+        if (registry != null) {
+            extensions = new LinkedList(registry.getBridgeExtensions());
+        } else {
+            extensions = createBridgeExtensions(isSVG12Version(doc));
+        }
+        return extensions;
+    }
+
+    /**
+     * Returns a new list of the global extensions and the extension for
+     * the given SVG version, in priority order.
+     */
+    static List createBridgeExtensions(boolean svg12) {
         BridgeExtension svgBE;
-        if ((ver.length()==0) || ver.equals("1.0") || ver.equals("1.1"))
+        if (!svg12)
             svgBE = new SVGBridgeExtension();
         else
             svgBE = new SVG12BridgeExtension();
 
         float priority = svgBE.getPriority();
-        extensions = new LinkedList(getGlobalBridgeExtensions());
+        List extensions = new LinkedList(getGlobalBridgeExtensions());
 
         ListIterator li = extensions.listIterator();
         for (;;) {
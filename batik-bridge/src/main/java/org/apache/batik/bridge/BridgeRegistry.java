@@ -0,0 +1,286 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable set of bridge registrations, built once from a list of
+ * <code>BridgeExtension</code>s and shared by all the
+ * <code>BridgeContext</code>s using the same extensions.  This avoids
+ * instantiating and registering every bridge of every extension for each
+ * document.
+ *
+ * <p>The bridges held by a registry are prototypes: a bridge context never
+ * uses them directly but creates its own bridge of the same class with
+ * {@link #createBridge(Bridge)}, the first time it needs one.  Bridges
+ * are therefore never shared between contexts, as most of them keep the
+ * element and the context they handle.  A registry is only shareable if
+ * the class of each of its bridges has a constructor with no
+ * argument; otherwise the contexts register their own bridges.</p>
+ *
+ * <p>The extensions' <code>registerTags</code> method is invoked once on a
+ * scratch bridge context, so it must only register bridges, default
+ * bridges and reserved namespaces, as the SVG extensions do, and the
+ * bridges must be created with their constructor with no argument.</p>
+ *
+ * @version $Id$
+ */
+public class BridgeRegistry {
+
+    /**
+     * The registry used for SVG 1.0 and 1.1 documents.
+     */
+    protected static BridgeRegistry svgRegistry;
+
+    /**
+     * The registry used for SVG 1.2 documents.
+     */
+    protected static BridgeRegistry svg12Registry;
+
+    /**
+     * Returns the registry built from the global bridge extensions and
+     * the SVG extension for the given SVG version.
+     * @param svg12 whether the registry is for SVG 1.2 documents
+     */
+    public static synchronized BridgeRegistry getRegistry(boolean svg12) {
+        if (svg12) {
+            if (svg12Registry == null) {
+                svg12Registry = new BridgeRegistry
+                    (BridgeContext.createBridgeExtensions(true));
+            }
+            return svg12Registry;
+        }
+        if (svgRegistry == null) {
+            svgRegistry = new BridgeRegistry
+                (BridgeContext.createBridgeExtensions(false));
+        }
+        return svgRegistry;
+    }
+
+    /**
+     * The extensions, in priority order.
+     */
+    protected final List extensions;
+
+    /**
+     * Keys are namespace URIs, values are maps from local names to
+     * bridge prototypes.
+     */
+    protected final Map namespaceURIMap;
+
+    /**
+     * The default bridge prototype, or null.
+     */
+    protected final Bridge defaultBridge;
+
+    /**
+     * The namespace URIs for which the default bridge is not used.
+     */
+    protected final Set reservedNamespaceSet;
+
+    /**
+     * The constructors of the bridges, keyed by prototype, or null if a
+     * bridge cannot be created from its class.
+     */
+    protected final Map constructors;
+
+    /**
+     * Creates a new registry with the bridges registered by the given
+     * extensions, in order.
+     */
+    public BridgeRegistry(List extensions) {
+        this.extensions = Collections.unmodifiableList(extensions);
+
+        BridgeContext ctx = new BridgeContext();
+        Iterator it = extensions.iterator();
+        while (it.hasNext()) {
+            ((BridgeExtension)it.next()).registerTags(ctx);
+        }
+
+        Map m = new HashMap();
+        if (ctx.namespaceURIMap != null) {
+            it = ctx.namespaceURIMap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry e = (Map.Entry)it.next();
+                m.put(e.getKey(), Collections.unmodifiableMap
+                      (new HashMap((Map)e.getValue())));
+            }
+        }
+        namespaceURIMap = Collections.unmodifiableMap(m);
+        defaultBridge = ctx.defaultBridge;
+        if (ctx.reservedNamespaceSet == null) {
+            reservedNamespaceSet = Collections.EMPTY_SET;
+        } else {
+            reservedNamespaceSet = Collections.unmodifiableSet
+                (new HashSet(ctx.reservedNamespaceSet));
+        }
+        constructors = findConstructors();
+    }
+
+    /**
+     * Returns the constructors with no argument of the bridges, keyed by
+     * prototype, or null if a bridge has none or it cannot be made
+     * accessible.
+     */
+    protected Map findConstructors() {
+        Map m = new HashMap();
+        List prototypes = new ArrayList();
+        Iterator it = namespaceURIMap.values().iterator();
+        while (it.hasNext()) {
+            prototypes.addAll(((Map)it.next()).values());
+        }
+        if (defaultBridge != null) {
+            prototypes.add(defaultBridge);
+        }
+        it = prototypes.iterator();
+        while (it.hasNext()) {
+            Bridge b = (Bridge)it.next();
+            try {
+                Constructor c =
+                    b.getClass().getDeclaredConstructor(new Class[0]);
+                // Some bridges, like SVGMarkerElementBridge, have a
+                // protected constructor.
+                c.setAccessible(true);
+                m.put(b, c);
+            } catch (NoSuchMethodException e) {
+                return null;
+            } catch (RuntimeException e) {
+                // SecurityException or inaccessible module.
+                return null;
+            }
+        }
+        return Collections.unmodifiableMap(m);
+    }
+
+    /**
+     * Tells whether the bridge contexts can take their bridges from this
+     * registry, that is whether each bridge can be created from its class.
+     */
+    public boolean isShareable() {
+        return constructors != null;
+    }
+
+    /**
+     * Returns a new bridge of the class of the given prototype, for the
+     * exclusive use of one bridge context.
+     * @param prototype a bridge of this registry
+     * @throws IllegalStateException if this registry is not shareable or
+     *         the bridge cannot be created
+     */
+    public Bridge createBridge(Bridge prototype) {
+        if (constructors == null) {
+            throw new IllegalStateException("Registry not shareable");
+        }
+        Constructor c = (Constructor)constructors.get(prototype);
+        if (c == null) {
+            throw new IllegalArgumentException
+                ("Not a bridge of this registry: " + prototype);
+        }
+        try {
+            return (Bridge)c.newInstance(new Object[0]);
+        } catch (Exception e) {
+            throw new IllegalStateException
+                ("Cannot create bridge " + c.getDeclaringClass().getName()
+                 + ": " + e);
+        }
+    }
+
+    /**
+     * Returns the extensions this registry was built from, in priority
+     * order.  The returned list cannot be modified.
+     */
+    public List getBridgeExtensions() {
+        return extensions;
+    }
+
+    /**
+     * Returns the bridge prototype registered for the given element type,
+     * or null.  This does not take the default bridge into account.
+     * @param namespaceURI the namespace URI, "" for no namespace
+     * @param localName the local name
+     */
+    public Bridge getBridge(String namespaceURI, String localName) {
+        Map localNameMap = (Map)namespaceURIMap.get(namespaceURI);
+        if (localNameMap == null) {
+            return null;
+        }
+        return (Bridge)localNameMap.get(localName);
+    }
+
+    /**
+     * Returns the default bridge prototype, or null.
+     */
+    public Bridge getDefaultBridge() {
+        return defaultBridge;
+    }
+
+    /**
+     * Returns the namespace URIs for which the default bridge is not
+     * used.  The returned set cannot be modified.
+     */
+    public Set getReservedNamespaceURIs() {
+        return reservedNamespaceSet;
+    }
+
+    /**
+     * Registers a new bridge for each bridge of this registry in the
+     * given bridge context, for contexts which need their own modifiable
+     * set of bridges.
+     */
+    public void registerTags(BridgeContext ctx) {
+        registerTags(ctx, Collections.EMPTY_MAP);
+    }
+
+    /**
+     * Registers a bridge for each bridge of this registry in the given
+     * bridge context, taking the bridges the context already created
+     * from <code>bridges</code> and creating the others.
+     * @param ctx the bridge context
+     * @param bridges the bridges of the context, keyed by prototype
+     */
+    public void registerTags(BridgeContext ctx, Map bridges) {
+        Iterator it = namespaceURIMap.values().iterator();
+        while (it.hasNext()) {
+            Iterator it2 = ((Map)it.next()).values().iterator();
+            while (it2.hasNext()) {
+                Bridge proto = (Bridge)it2.next();
+                Bridge b = (Bridge)bridges.get(proto);
+                ctx.putBridge((b == null) ? createBridge(proto) : b);
+            }
+        }
+        if (defaultBridge != null) {
+            Bridge b = (Bridge)bridges.get(defaultBridge);
+            ctx.setDefaultBridge
+                ((b == null) ? createBridge(defaultBridge) : b);
+        }
+        it = reservedNamespaceSet.iterator();
+        while (it.hasNext()) {
+            ctx.putReservedNamespaceURI((String)it.next());
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mozilla.javascript.Script;
+
+/**
+ * A process-wide cache of the scripts compiled by the
+ * <code>RhinoInterpreter</code>s, so that documents loading the same
+ * scripts do not compile them again.
+ *
+ * <p>A compiled script carries the security domain of the document it
+ * was compiled for, so the scripts are cached per security key: they
+ * are only shared by documents whose scripts are given the same
+ * permissions, that is documents in the same directory or from the
+ * same server.  Within a security key, the scripts are identified by
+ * their source name and by a digest of their source.</p>
+ *
+ * <p>The cache is bounded by the total length of the sources of the
+ * cached scripts, the least recently used scripts being dropped
+ * first.  The default bound can be set with the
+ * <code>org.apache.batik.script.cache_size</code> system property, a
+ * number of characters, 0 disabling the cache.</p>
+ *
+ * @version $Id$
+ */
+public class CompiledScriptCache {
+
+    /**
+     * The default maximum total length of the cached sources.
+     */
+    public static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The shared instance.
+     */
+    protected static final CompiledScriptCache instance;
+    static {
+        int value = DEFAULT_MAX_SIZE;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.script.cache_size");
+            if (s != null) {
+                value = Integer.parseInt(s);
+            }
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        }
+        instance = new CompiledScriptCache(value);
+    }
+
+    /**
+     * Returns the cache shared by all the interpreters.
+     */
+    public static CompiledScriptCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * The cached entries, in least recently used first order.
+     */
+    protected LinkedHashMap entries = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     * The maximum total length of the cached sources.
+     */
+    protected int maxSize;
+
+    /**
+     * The total length of the cached sources.
+     */
+    protected int size;
+
+    /**
+     * The number of scripts found in the cache.
+     */
+    protected long hitCount;
+
+    /**
+     * The number of scripts not found in the cache.
+     */
+    protected long missCount;
+
+    /**
+     * The time spent compiling the scripts added to the cache, in
+     * nanoseconds.
+     */
+    protected long compileTime;
+
+    /**
+     * The compile time of the scripts found in the cache, in
+     * nanoseconds.
+     */
+    protected long compileTimeSaved;
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum total length of the cached sources.
+     */
+    public CompiledScriptCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the key of a script.
+     * @param securityKey the security key of the document using the
+     *        script.
+     * @param sourceName the name given to the script when compiled.
+     * @param source the source of the script.
+     */
+    public static Object createKey(String securityKey,
+                                   String sourceName,
+                                   String source) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(securityKey);
+        sb.append('\n');
+        sb.append(sourceName);
+        sb.append('\n');
+        sb.append(source.length());
+        sb.append(':');
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(source.getBytes("UTF-8"));
+            for (int i = 0; i < digest.length; i++) {
+                int b = digest[i] & 0xff;
+                sb.append(Character.forDigit(b >> 4, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+        } catch (NoSuchAlgorithmException e) {
+            // Every platform has SHA-256, but fall back to the source.
+            sb.append(source);
+        } catch (UnsupportedEncodingException e) {
+            sb.append(source);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the script cached under the given key, or null.
+     */
+    public synchronized Script get(Object key) {
+        Entry e = (Entry) entries.get(key);
+        if (e == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        compileTimeSaved += e.compileTime;
+        return e.script;
+    }
+
+    /**
+     * Adds a script to the cache.
+     * @param key the key returned by {@link #createKey}.
+     * @param script the compiled script.
+     * @param sourceLength the length of the source of the script.
+     * @param time the time spent compiling the script, in nanoseconds.
+     */
+    public synchronized void put(Object key, Script script,
+                                 int sourceLength, long time) {
+        compileTime += time;
+        if (sourceLength > maxSize) {
+            return;
+        }
+        Entry old = (Entry) entries.put(key,
+                                        new Entry(script, sourceLength, time));
+        if (old != null) {
+            size -= old.size;
+        }
+        size += sourceLength;
+        trim();
+    }
+
+    /**
+     * Drops the least recently used scripts until the cache fits in
+     * its maximum size.
+     */
+    protected void trim() {
+        Iterator it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Entry e = (Entry) ((Map.Entry) it.next()).getValue();
+            size -= e.size;
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes all the scripts from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the maximum total length of the cached sources.
+     */
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum total length of the cached sources.  0
+     * disables the cache.
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    /**
+     * Returns the total length of the cached sources.
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of cached scripts.
+     */
+    public synchronized int getScriptCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of scripts found in the cache.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of scripts which had to be compiled.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the time spent compiling scripts, in milliseconds.
+     */
+    public synchronized long getCompileTime() {
+        return compileTime / 1000000;
+    }
+
+    /**
+     * Returns the time the scripts found in the cache took to compile
+     * the first time, in milliseconds.
+     */
+    public synchronized long getCompileTimeSaved() {
+        return compileTimeSaved / 1000000;
+    }
+
+    /**
+     * Resets the hit and miss counts and the compile times.
+     */
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+        compileTime = 0;
+        compileTimeSaved = 0;
+    }
+
+    /**
+     * A cached script.
+     */
+    protected static class Entry {
+
+        /**
+         * The compiled script.
+         */
+        public Script script;
+
+        /**
+         * The length of its source.
+         */
+        public int size;
+
+        /**
+         * The time spent compiling it, in nanoseconds.
+         */
+        public long compileTime;
+
+        public Entry(Script script, int size, long compileTime) {
+            this.script = script;
+            this.size = size;
+            this.compileTime = compileTime;
+        }
+    }
+}
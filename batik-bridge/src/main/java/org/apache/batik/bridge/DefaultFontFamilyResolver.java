@@ -22,11 +22,16 @@ import java.awt.Font;
 import java.awt.GraphicsEnvironment;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.batik.gvt.font.AWTFontFamily;
 import org.apache.batik.gvt.font.AWTGVTFont;
@@ -35,6 +40,13 @@ import org.apache.batik.gvt.font.GVTFontFamily;
 
 /**
  * The is a utility class that is used for resolving UnresolvedFontFamilies.
+ * It is safe to use from several threads.
+ *
+ * <p>The family used to display a character no requested font can
+ * display is looked up in an index of the characters each installed
+ * font covers.  The index is built by pages of
+ * {@link #COVERAGE_PAGE_SIZE} characters the first time a character of
+ * the page is looked up, or all at once by {@link #buildCoverageIndex()}.</p>
  *
  * @author <a href="mailto:bella.robinson@cmis.csiro.au">Bella Robinson</a>
  * @version $Id$
@@ -63,6 +75,13 @@ public final class DefaultFontFamilyResolver implements FontFamilyResolver {
 
     protected static final List awtFonts = new ArrayList();
 
+    /**
+     * The indices in awtFontFamilies of the families which can be used
+     * to display characters, in the order they are tried.  Families are
+     * only tried once, whatever the number of names they are known by.
+     */
+    private static final int[] fallbackFamilies;
+
     /**
      * This sets up the list of available fonts.
      */
@@ -125,13 +144,39 @@ public final class DefaultFontFamilyResolver implements FontFamilyResolver {
             awtFonts.add(font);
         }
 
+        List fallback = new ArrayList();
+        Set names = new HashSet();
+        for (int i = 0; i < awtFontFamilies.size(); i++) {
+            String name = ((AWTFontFamily)awtFontFamilies.get(i)).getFamilyName();
+            // the awt font for "MS Song" doesn't display chinese glyphs correctly
+            if (name.indexOf("Song") == -1 && names.add(name)) {
+                fallback.add(i);
+            }
+        }
+        fallbackFamilies = new int[fallback.size()];
+        for (int i = 0; i < fallbackFamilies.length; i++) {
+            fallbackFamilies[i] = (Integer)fallback.get(i);
+        }
     }
 
     /**
      * This keeps track of all the resolved font families. This is to hopefully
      * reduce the number of font family objects used.
      */
-    protected static final Map resolvedFontFamilies = new HashMap();
+    protected static final Map resolvedFontFamilies = new ConcurrentHashMap();
+
+    /**
+     * The number of characters in a page of the coverage index.
+     */
+    public static final int COVERAGE_PAGE_SIZE = 256;
+
+    /**
+     * The coverage index.  Each page holds, for each of its characters,
+     * the index in awtFontFamilies of the first family which can display
+     * it, or -1.  Pages are null until computed.
+     */
+    private static final AtomicReferenceArray coveragePages
+        = new AtomicReferenceArray(0x10000 / COVERAGE_PAGE_SIZE);
 
     public AWTFontFamily resolve(String familyName, FontFace fontFace) {
         String fontName = (String)fonts.get(fontFace.getFamilyName().toLowerCase());
@@ -165,7 +210,13 @@ public final class DefaultFontFamilyResolver implements FontFamilyResolver {
                 resolvedFF = new AWTFontFamily(awtFamilyName);
             }
 
-            resolvedFontFamilies.put(familyName, resolvedFF);
+            if (resolvedFF != null) {
+                GVTFontFamily ff = (GVTFontFamily)resolvedFontFamilies.putIfAbsent
+                    (familyName, resolvedFF);
+                if (ff != null) {
+                    resolvedFF = ff;
+                }
+            }
         }
 
         //  if (resolvedFF != null) {
@@ -180,16 +231,47 @@ public final class DefaultFontFamilyResolver implements FontFamilyResolver {
 
     /** {@inheritDoc} */
     public GVTFontFamily getFamilyThatCanDisplay(char c) {
-        for (int i = 0; i < awtFontFamilies.size(); i++) {
-            AWTFontFamily fontFamily = (AWTFontFamily)awtFontFamilies.get(i);
+        int i = getCoveragePage(c / COVERAGE_PAGE_SIZE)[c % COVERAGE_PAGE_SIZE];
+        return (i < 0) ? null : (GVTFontFamily)awtFontFamilies.get(i);
+    }
+
+    /**
+     * Computes the whole coverage index, so that no lookup of the family
+     * displaying a character has to probe the fonts.  This can take a
+     * while when many fonts are installed, so it is best done while the
+     * application starts.
+     */
+    public static void buildCoverageIndex() {
+        for (int p = 0; p < coveragePages.length(); p++) {
+            getCoveragePage(p);
+        }
+    }
+
+    /**
+     * Returns the given page of the coverage index, computing it if
+     * needed.  Threads racing to compute a page compute the same values.
+     */
+    private static int[] getCoveragePage(int p) {
+        int[] page = (int[])coveragePages.get(p);
+        if (page != null) {
+            return page;
+        }
+        page = new int[COVERAGE_PAGE_SIZE];
+        Arrays.fill(page, -1);
+        int base = p * COVERAGE_PAGE_SIZE;
+        int left = COVERAGE_PAGE_SIZE;
+        for (int k = 0; (k < fallbackFamilies.length) && (left > 0); k++) {
+            int i = fallbackFamilies[k];
             AWTGVTFont font = (AWTGVTFont)awtFonts.get(i);
-            if (font.canDisplay(c) && fontFamily.getFamilyName().indexOf("Song") == -1) {
-                // the awt font for "MS Song" doesn't display chinese glyphs correctly
-                return fontFamily;
+            for (int j = 0; j < COVERAGE_PAGE_SIZE; j++) {
+                if ((page[j] < 0) && font.canDisplay((char)(base + j))) {
+                    page[j] = i;
+                    left--;
+                }
             }
         }
-
-        return null;
+        coveragePages.set(p, page);
+        return page;
     }
 
     /** {@inheritDoc} */
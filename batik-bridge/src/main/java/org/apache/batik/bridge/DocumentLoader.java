@@ -21,25 +21,57 @@ package org.apache.batik.bridge;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
 import org.apache.batik.dom.svg.SVGDocumentFactory;
 import org.apache.batik.dom.util.DocumentDescriptor;
 import org.apache.batik.util.CleanerThread;
 
+import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.w3c.dom.svg.SVGDocument;
 
 /**
  * This class is responsible on loading an SVG document and
  * maintaining a cache.
  *
+ * <p>The cache holds its documents through soft references, so that
+ * they can be reclaimed under memory pressure, and is also bounded by
+ * the number of documents and their estimated size (see
+ * {@link UserAgent#getMaxCachedDocuments} and
+ * {@link UserAgent#getMaxCachedDocumentSize}): the least recently used
+ * documents are dropped first. When several threads request the same
+ * document, only one of them parses it while the others wait for the
+ * result.</p>
+ *
  * @author <a href="mailto:Thierry.Kormann@sophia.inria.fr">Thierry Kormann</a>
  * @version $Id$
  */
 public class DocumentLoader {
 
+    /**
+     * The default maximum number of cached documents.
+     */
+    public static final int DEFAULT_MAX_CACHED_DOCUMENTS = 64;
+
+    /**
+     * The default maximum estimated size, in bytes, of the cached
+     * documents.
+     */
+    public static final long DEFAULT_MAX_CACHED_DOCUMENT_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The approximate number of bytes used by a DOM node, in addition
+     * to its character data.
+     */
+    protected static final int NODE_SIZE = 64;
+
     /**
      * The document factory used to create the document according a
      * DOM implementation.
@@ -47,12 +79,47 @@ public class DocumentLoader {
     protected SVGDocumentFactory documentFactory;
 
     /**
-     * The map that contains the Document indexed by the URI.
+     * Whether <code>documentFactory</code> is currently parsing a
+     * document. Concurrent loads use their own factory.
+     */
+    private boolean documentFactoryInUse;
+
+    /**
+     * The map that contains the Document indexed by the URI, in least
+     * recently used order.
      *
      * WARNING: tagged private as no element of this Map should be
      * referenced outise of this class
      */
-    protected HashMap cacheMap = new HashMap();
+    protected HashMap cacheMap = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     * The documents being loaded, indexed by URI.
+     */
+    protected Map pendingMap = new HashMap();
+
+    /**
+     * The maximum number of cached documents, no limit if not positive.
+     */
+    protected int maxCachedDocuments;
+
+    /**
+     * The maximum estimated size, in bytes, of the cached documents,
+     * no limit if not positive.
+     */
+    protected long maxCachedDocumentSize;
+
+    /**
+     * The estimated size, in bytes, of the cached documents.
+     */
+    protected long cachedDocumentSize;
+
+    /**
+     * Cache statistics.
+     */
+    protected long hitCount;
+    protected long missCount;
+    protected long evictionCount;
 
     /**
      * The user agent.
@@ -70,12 +137,26 @@ public class DocumentLoader {
      */
     public DocumentLoader(UserAgent userAgent) {
         this.userAgent = userAgent;
-        documentFactory = new SAXSVGDocumentFactory
+        documentFactory = createDocumentFactory();
+        maxCachedDocuments = userAgent.getMaxCachedDocuments();
+        maxCachedDocumentSize = userAgent.getMaxCachedDocumentSize();
+    }
+
+    /**
+     * Creates the factory used to parse documents.
+     */
+    protected SVGDocumentFactory createDocumentFactory() {
+        SVGDocumentFactory f = new SAXSVGDocumentFactory
             (userAgent.getXMLParserClassName(), true);
-        documentFactory.setValidating(userAgent.isXMLParserValidating());
+        f.setValidating(userAgent.isXMLParserValidating());
+        return f;
     }
 
-    public Document checkCache(String uri) {
+    /**
+     * Returns the key under which the document at the given URI is
+     * cached, i.e. the URI without its fragment identifier.
+     */
+    protected String getCacheKey(String uri) {
         int n = uri.lastIndexOf('/');
         if (n == -1) 
             n = 0;
@@ -83,6 +164,11 @@ public class DocumentLoader {
         if (n != -1) {
             uri = uri.substring(0, n);
         }
+        return uri;
+    }
+
+    public Document checkCache(String uri) {
+        uri = getCacheKey(uri);
         DocumentState state;
         synchronized (cacheMap) {
             state = (DocumentState)cacheMap.get(uri);
@@ -99,42 +185,202 @@ public class DocumentLoader {
      * the document
      */
     public Document loadDocument(String uri) throws IOException {
-        Document ret = checkCache(uri);
-        if (ret != null)
-            return ret;
-
-        SVGDocument document = documentFactory.createSVGDocument(uri);
-
-        DocumentDescriptor desc = documentFactory.getDocumentDescriptor();
-        DocumentState state = new DocumentState(uri, document, desc);
-        synchronized (cacheMap) {
-            cacheMap.put(uri, state);
-        }
-
-        return state.getDocument();
+        return loadDocument(uri, null);
     }
 
     /**
      * Returns a document from the specified uri.
      * @param uri the uri of the document
+     * @param is the stream to read the document from, or null to
+     *        open <code>uri</code>
      * @exception IOException if an I/O error occured while loading
      * the document
      */
     public Document loadDocument(String uri, InputStream is)
         throws IOException {
-        Document ret = checkCache(uri);
-        if (ret != null)
-            return ret;
+        String key = getCacheKey(uri);
+        PendingLoad load;
+        boolean loader = false;
+        synchronized (cacheMap) {
+            DocumentState state = (DocumentState)cacheMap.get(key);
+            Document doc = (state == null) ? null : state.getDocument();
+            if (doc != null) {
+                hitCount++;
+                return doc;
+            }
+            missCount++;
+            load = (PendingLoad)pendingMap.get(key);
+            if (load == null) {
+                load = new PendingLoad();
+                pendingMap.put(key, load);
+                loader = true;
+            }
+        }
+
+        if (!loader) {
+            return load.waitForDocument();
+        }
+
+        try {
+            SVGDocumentFactory f = acquireDocumentFactory();
+            SVGDocument document;
+            DocumentDescriptor desc;
+            try {
+                document = (is == null)
+                    ? f.createSVGDocument(uri)
+                    : f.createSVGDocument(uri, is);
+                desc = f.getDocumentDescriptor();
+            } finally {
+                releaseDocumentFactory(f);
+            }
+
+            DocumentState state = new DocumentState
+                (key, document, desc, estimateSize(document));
+            synchronized (cacheMap) {
+                DocumentState old = (DocumentState)cacheMap.put(key, state);
+                if (old != null) {
+                    cachedDocumentSize -= old.size;
+                }
+                cachedDocumentSize += state.size;
+                pendingMap.remove(key);
+                trimCache(state);
+            }
+            load.setDocument(document);
+            return document;
+        } catch (IOException e) {
+            synchronized (cacheMap) {
+                pendingMap.remove(key);
+            }
+            load.setError(e);
+            throw e;
+        } catch (RuntimeException e) {
+            synchronized (cacheMap) {
+                pendingMap.remove(key);
+            }
+            load.setError(e);
+            throw e;
+        } catch (Error e) {
+            synchronized (cacheMap) {
+                pendingMap.remove(key);
+            }
+            load.setError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a factory which is not in use by another thread.
+     */
+    private SVGDocumentFactory acquireDocumentFactory() {
+        synchronized (cacheMap) {
+            if (!documentFactoryInUse) {
+                documentFactoryInUse = true;
+                return documentFactory;
+            }
+        }
+        return createDocumentFactory();
+    }
+
+    private void releaseDocumentFactory(SVGDocumentFactory f) {
+        if (f == documentFactory) {
+            synchronized (cacheMap) {
+                documentFactoryInUse = false;
+            }
+        }
+    }
+
+    /**
+     * Drops the least recently used documents until the cache is
+     * within its bounds. The most recently loaded document is always
+     * kept. Must be called with the lock on <code>cacheMap</code> held.
+     */
+    private void trimCache(DocumentState keep) {
+        Iterator it = cacheMap.values().iterator();
+        while (it.hasNext()
+               && ((maxCachedDocuments > 0
+                    && cacheMap.size() > maxCachedDocuments)
+                   || (maxCachedDocumentSize > 0
+                       && cachedDocumentSize > maxCachedDocumentSize))) {
+            DocumentState state = (DocumentState)it.next();
+            if (state == keep) {
+                continue;
+            }
+            it.remove();
+            cachedDocumentSize -= state.size;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Returns an estimation of the number of bytes used by the given
+     * document.
+     */
+    protected long estimateSize(Node n) {
+        long size = NODE_SIZE;
+        String v = n.getNodeValue();
+        if (v != null) {
+            size += 2L * v.length();
+        }
+        if (n.hasAttributes()) {
+            NamedNodeMap attrs = n.getAttributes();
+            for (int i = 0; i < attrs.getLength(); i++) {
+                Attr a = (Attr)attrs.item(i);
+                size += NODE_SIZE + 2L * a.getValue().length();
+            }
+        }
+        for (Node c = n.getFirstChild(); c != null; c = c.getNextSibling()) {
+            size += estimateSize(c);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of documents currently in the cache.
+     */
+    public int getCachedDocumentCount() {
+        synchronized (cacheMap) {
+            return cacheMap.size();
+        }
+    }
+
+    /**
+     * Returns the estimated size, in bytes, of the cached documents.
+     */
+    public long getCachedDocumentSize() {
+        synchronized (cacheMap) {
+            return cachedDocumentSize;
+        }
+    }
 
-        SVGDocument document = documentFactory.createSVGDocument(uri, is);
+    /**
+     * Returns the number of <code>loadDocument</code> calls which found
+     * the document in the cache.
+     */
+    public long getCacheHitCount() {
+        synchronized (cacheMap) {
+            return hitCount;
+        }
+    }
 
-        DocumentDescriptor desc = documentFactory.getDocumentDescriptor();
-        DocumentState state = new DocumentState(uri, document, desc);
+    /**
+     * Returns the number of <code>loadDocument</code> calls which did
+     * not find the document in the cache, including those which waited
+     * for a load started by another thread.
+     */
+    public long getCacheMissCount() {
         synchronized (cacheMap) {
-            cacheMap.put(uri, state);
+            return missCount;
         }
+    }
 
-        return state.getDocument();
+    /**
+     * Returns the number of documents dropped from the cache to keep it
+     * within its bounds.
+     */
+    public long getCacheEvictionCount() {
+        synchronized (cacheMap) {
+            return evictionCount;
+        }
     }
 
     /**
@@ -151,6 +397,7 @@ public class DocumentLoader {
         // new Exception("purge the cache").printStackTrace();
         synchronized (cacheMap) {
             cacheMap.clear();
+            cachedDocumentSize = 0;
         }
     }
 
@@ -176,24 +423,30 @@ public class DocumentLoader {
     }
 
     /**
-     * A simple class that contains a Document and its number of nodes.
+     * A simple class that contains a Document and its estimated size.
      */
     private class DocumentState extends CleanerThread.SoftReferenceCleared {
 
         private String uri;
         private DocumentDescriptor desc;
+        private long size;
 
         public DocumentState(String uri,
                              Document document,
-                             DocumentDescriptor desc) {
+                             DocumentDescriptor desc,
+                             long size) {
             super(document);
             this.uri = uri;
             this.desc = desc;
+            this.size = size;
         }
 
         public void cleared() {
             synchronized (cacheMap) {
-                cacheMap.remove(uri);
+                if (cacheMap.get(uri) == this) {
+                    cacheMap.remove(uri);
+                    cachedDocumentSize -= size;
+                }
             }
         }
 
@@ -210,4 +463,51 @@ public class DocumentLoader {
         }
     }
 
+    /**
+     * A document being loaded by one thread, which other threads
+     * requesting the same URI wait for.
+     */
+    private static class PendingLoad {
+
+        private boolean done;
+        private Document document;
+        private Throwable error;
+
+        public synchronized void setDocument(Document document) {
+            this.document = document;
+            done = true;
+            notifyAll();
+        }
+
+        public synchronized void setError(Throwable error) {
+            this.error = error;
+            done = true;
+            notifyAll();
+        }
+
+        public synchronized Document waitForDocument() throws IOException {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error instanceof IOException) {
+                throw (IOException)error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException)error;
+            }
+            if (error != null) {
+                throw (Error)error;
+            }
+            return document;
+        }
+    }
+
 }
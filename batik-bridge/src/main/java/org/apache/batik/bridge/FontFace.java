@@ -200,7 +200,8 @@ public abstract class FontFace extends GVTFontFace
         }
         // Must be a reference to a 'Web Font'.
         try {
-            return ctx.getFontFamilyResolver().loadFont(purl.openStream(), this);
+            return WebFontCache.getInstance().loadFont
+                (purl, this, ctx.getFontFamilyResolver());
         } catch (Exception ex) {
         }
         return null;
@@ -57,6 +57,14 @@ public class GVTBuilder implements SVGConstants {
         // inform the bridge context the builder to use
         ctx.setGVTBuilder(this);
 
+        // start fetching the external images and documents
+        ResourcePrefetcher prefetcher = null;
+        UserAgent ua = ctx.getUserAgent();
+        if (ua != null && ua.getPrefetchThreads() > 0) {
+            prefetcher = new ResourcePrefetcher(ctx, ua.getPrefetchThreads());
+            prefetcher.prefetch(document);
+        }
+
         // build the GVT tree
         DocumentBridge dBridge = ctx.getDocumentBridge();
         RootGraphicsNode rootNode = null;
@@ -89,6 +97,10 @@ public class GVTBuilder implements SVGConstants {
             ex.setGraphicsNode(rootNode);
             //ex.printStackTrace();
             throw ex; // re-throw the udpated exception
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.cancel();
+            }
         }
 
         // For cursor handling
@@ -0,0 +1,359 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.batik.dom.AbstractNode;
+import org.apache.batik.css.engine.SVGCSSEngine;
+import org.apache.batik.dom.util.XLinkSupport;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.spi.ImageTagRegistry;
+import org.apache.batik.util.MimeTypeConstants;
+import org.apache.batik.util.ParsedURL;
+import org.apache.batik.util.SVGConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.svg.SVGDocument;
+
+/**
+ * Fetches the external resources of a document in parallel before its
+ * GVT tree is built.
+ *
+ * <p>The &lt;image&gt;, &lt;use&gt; and &lt;feImage&gt; elements are
+ * collected in document order.  The raster images they reference are
+ * read through the <code>ImageTagRegistry</code> and the SVG documents
+ * through the <code>DocumentLoader</code> of the bridge context, by at
+ * most the requested number of threads of a bounded pool shared by all
+ * the prefetchers.  Both caches make a later request for a resource
+ * being fetched wait for it, so the bridges simply pick up the
+ * prefetched resources when they build their nodes.</p>
+ *
+ * <p>Images with a <code>color-profile</code> are not prefetched: the
+ * bridge reads them as raw data, in another cache than the one the
+ * prefetcher would fill.</p>
+ *
+ * @version $Id$
+ */
+public class ResourcePrefetcher implements SVGConstants {
+
+    /**
+     * The maximum number of threads of the shared pool: the value of
+     * the <code>org.apache.batik.bridge.prefetch_pool_size</code>
+     * system property, or the number of processors.
+     */
+    protected static final int POOL_SIZE = getPoolSize();
+
+    /**
+     * The pool fetching the resources.  The fetches of all the
+     * prefetchers beyond its size wait in its queue.  Its idle threads
+     * terminate, so it is never shut down.
+     */
+    protected static final ExecutorService POOL = createPool();
+
+    /**
+     * The bridge context of the document.
+     */
+    protected BridgeContext ctx;
+
+    /**
+     * The maximum number of threads fetching the resources.
+     */
+    protected int threads;
+
+    /**
+     * The fetches which have not started.
+     */
+    protected LinkedList pending = new LinkedList();
+
+    /**
+     * The URLs already submitted.
+     */
+    protected Set urls = new HashSet();
+
+    /**
+     * The URL of the document.
+     */
+    protected ParsedURL docPURL;
+
+    /**
+     * Returns the maximum number of threads of the shared pool.
+     */
+    private static int getPoolSize() {
+        int size = Runtime.getRuntime().availableProcessors();
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.bridge.prefetch_pool_size");
+            if (s != null)
+                size = Integer.parseInt(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        }
+        return Math.max(1, size);
+    }
+
+    /**
+     * Creates the shared pool.
+     */
+    private static ExecutorService createPool() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor
+            (POOL_SIZE, POOL_SIZE, 10, TimeUnit.SECONDS,
+             new LinkedBlockingQueue(),
+             new ThreadFactory() {
+                 public Thread newThread(Runnable r) {
+                     Thread t = new Thread(r, "ResourcePrefetcher");
+                     t.setDaemon(true);
+                     return t;
+                 }
+             });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Creates a new prefetcher.
+     * @param ctx the bridge context of the document.
+     * @param threads the number of threads fetching the resources.
+     */
+    public ResourcePrefetcher(BridgeContext ctx, int threads) {
+        this.ctx = ctx;
+        this.threads = threads;
+    }
+
+    /**
+     * Starts fetching the resources referenced by the given document.
+     * This method returns once the fetches are submitted.
+     */
+    public void prefetch(Document doc) {
+        String docURL = ((SVGDocument)doc).getURL();
+        docPURL = (docURL == null) ? null : new ParsedURL(docURL);
+        prefetch(doc.getDocumentElement());
+        int n;
+        synchronized (pending) {
+            n = Math.min(threads, pending.size());
+        }
+        for (int i = 0; i < n; i++) {
+            POOL.execute(new Worker());
+        }
+    }
+
+    /**
+     * Cancels the fetches which have not started.
+     */
+    public void cancel() {
+        synchronized (pending) {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Submits the fetches for the given element and its descendants.
+     */
+    protected void prefetch(Element e) {
+        if (SVG_NAMESPACE_URI.equals(e.getNamespaceURI())) {
+            String ln = e.getLocalName();
+            if ((SVG_IMAGE_TAG.equals(ln) && !hasColorProfile(e))
+                    || SVG_USE_TAG.equals(ln)
+                    || SVG_FE_IMAGE_TAG.equals(ln)) {
+                prefetchReference(e);
+            }
+        }
+        for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                prefetch((Element)n);
+            }
+        }
+    }
+
+    /**
+     * Tells whether the given image element has a
+     * <code>color-profile</code>, and is read as raw data.
+     */
+    protected boolean hasColorProfile(Element e) {
+        String cp = CSSUtilities.getComputedStyle
+            (e, SVGCSSEngine.COLOR_PROFILE_INDEX).getStringValue();
+        return !CSS_AUTO_VALUE.equalsIgnoreCase(cp) && (cp.length() != 0);
+    }
+
+    /**
+     * Queues the fetch of the resource referenced by the given
+     * element, if it is external.
+     */
+    protected void prefetchReference(Element e) {
+        String uriStr = XLinkSupport.getXLinkHref(e);
+        int frag = uriStr.indexOf('#');
+        boolean isImage = frag == -1;
+        if (isImage && SVG_USE_TAG.equals(e.getLocalName())) {
+            return;
+        }
+        if (!isImage) {
+            // A <use> like reference, only external documents matter.
+            uriStr = uriStr.substring(0, frag);
+        }
+        if (uriStr.length() == 0) {
+            return;
+        }
+
+        String baseURI = AbstractNode.getBaseURI(e);
+        ParsedURL purl;
+        if (baseURI == null) {
+            purl = new ParsedURL(uriStr);
+        } else {
+            purl = new ParsedURL(baseURI, uriStr);
+        }
+        if (!urls.add(purl.toString())) {
+            return;
+        }
+
+        try {
+            ctx.getUserAgent().checkLoadExternalResource(purl, docPURL);
+        } catch (SecurityException ex) {
+            // The bridge will report it.
+            return;
+        }
+
+        Runnable r;
+        if (isImage) {
+            r = new ImageFetch(purl);
+        } else {
+            r = new DocumentFetch(purl);
+        }
+        submit(r);
+    }
+
+    /**
+     * Queues the given fetch.  It is run by one of the workers started
+     * once the whole document has been walked.
+     */
+    protected void submit(Runnable r) {
+        synchronized (pending) {
+            pending.add(r);
+        }
+    }
+
+    /**
+     * Runs the pending fetches until there are none left.
+     */
+    protected class Worker implements Runnable {
+
+        public void run() {
+            for (;;) {
+                Runnable r;
+                synchronized (pending) {
+                    if (pending.isEmpty())
+                        return;
+                    r = (Runnable)pending.removeFirst();
+                }
+                r.run();
+            }
+        }
+    }
+
+    /**
+     * Reads an image like <code>SVGImageElementBridge</code> does: as a
+     * raster image if the registry recognizes it, as an SVG document
+     * otherwise.
+     */
+    protected class ImageFetch implements Runnable {
+
+        protected ParsedURL purl;
+
+        public ImageFetch(ParsedURL purl) {
+            this.purl = purl;
+        }
+
+        public void run() {
+            ImageTagRegistry reg = ImageTagRegistry.getRegistry();
+            List mimeTypes = new ArrayList(reg.getRegisteredMimeTypes());
+            mimeTypes.addAll(MimeTypeConstants.MIME_TYPES_SVG_LIST);
+            SVGImageElementBridge.ProtectedStream reference;
+            try {
+                reference = new SVGImageElementBridge.ProtectedStream
+                    (purl.openStream(mimeTypes.iterator()));
+            } catch (IOException ex) {
+                return;
+            }
+
+            Filter img;
+            try {
+                img = reg.readURL(reference, purl, null, false, false);
+            } catch (RuntimeException ex) {
+                // Free the cache entry claimed by readURL.
+                reg.flushImage(purl);
+                reference.release();
+                return;
+            }
+            if (img != null) {
+                try {
+                    reference.tie();
+                } catch (IOException ioe) {
+                    // From a close, as in the bridge.
+                }
+                return;
+            }
+
+            try {
+                reference.retry();
+            } catch (IOException ioe) {
+                reference.release();
+                new DocumentFetch(purl).run();
+                return;
+            }
+            try {
+                ctx.getDocumentLoader().loadDocument(purl.toString(),
+                                                     reference);
+            } catch (Exception ex) {
+                // Not an SVG document, the bridge will report it.
+            } finally {
+                reference.release();
+            }
+        }
+    }
+
+    /**
+     * Loads an SVG document.
+     */
+    protected class DocumentFetch implements Runnable {
+
+        protected ParsedURL purl;
+
+        public DocumentFetch(ParsedURL purl) {
+            this.purl = purl;
+        }
+
+        public void run() {
+            try {
+                ctx.getDocumentLoader().loadDocument(purl.toString());
+            } catch (Exception ex) {
+                // The bridge will report it.
+            }
+        }
+    }
+}
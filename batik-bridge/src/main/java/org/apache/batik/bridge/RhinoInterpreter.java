@@ -20,7 +20,6 @@ package org.apache.batik.bridge;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
 import java.io.Writer;
 import java.net.URL;
 import java.security.AccessControlContext;
@@ -62,11 +61,6 @@ import org.w3c.dom.events.EventTarget;
  */
 public class RhinoInterpreter implements Interpreter {
 
-    /**
-     * The number of cached compiled scripts to store.
-     */
-    private static final int MAX_CACHED_SCRIPTS = 32;
-
     /**
      * Constant used to describe an SVG source
      */
@@ -95,9 +89,18 @@ public class RhinoInterpreter implements Interpreter {
 
     /**
      * List of cached compiled scripts.
+     * @deprecated the compiled scripts are cached by the shared
+     *             {@link CompiledScriptCache}.
      */
     protected LinkedList compiledScripts = new LinkedList();
 
+    /**
+     * The key identifying, in the {@link CompiledScriptCache}, the
+     * scripts compiled for documents with the same code source as
+     * this interpreter's document.
+     */
+    protected String securityKey;
+
     /**
      * Factory for Java wrapper objects.
      */
@@ -170,6 +173,7 @@ public class RhinoInterpreter implements Interpreter {
         } catch (SecurityException se) {
             rhinoClassLoader = null;
         }
+        securityKey = createSecurityKey(documentURL);
         ContextAction initAction = new ContextAction() {
             public Object run(Context cx) {
                 Scriptable scriptable = cx.initStandardObjects(null, false);
@@ -206,6 +210,48 @@ public class RhinoInterpreter implements Interpreter {
         contextFactory.call(initAction);
     }
 
+    /**
+     * Returns the security key of the scripts compiled for the given
+     * document.  The classes of the compiled scripts are defined by
+     * the <code>RhinoClassLoader</code> of the document, which grants
+     * them the permissions of its code base: they are only shared by
+     * documents with the same code base (see {@link #getCodeBase}).
+     * Scripts interpreted without a class loader have no security
+     * domain, so they are shared by all the documents.
+     */
+    protected String createSecurityKey(URL documentURL) {
+        if (rhinoClassLoader == null) {
+            return "interpreted:";
+        }
+        return "compiled:" + getCodeBase(documentURL);
+    }
+
+    /**
+     * Returns the part of a document URL the permissions given by the
+     * <code>RhinoClassLoader</code> depend on: the directory of a
+     * file, whose content can be read, or the protocol, host and port
+     * of a remote document, which can be connected to.  Other URLs
+     * are returned whole.
+     */
+    protected static String getCodeBase(URL documentURL) {
+        if (documentURL == null) {
+            return "";
+        }
+        String protocol = documentURL.getProtocol();
+        if (protocol.equals("file")) {
+            String path = documentURL.getPath();
+            String host = documentURL.getHost();
+            return "file://" + (host == null ? "" : host)
+                + path.substring(0, path.lastIndexOf('/') + 1);
+        }
+        if (protocol.equals("http") || protocol.equals("https")
+            || protocol.equals("ftp")) {
+            return protocol + "://" + documentURL.getHost()
+                + ':' + documentURL.getPort() + '/';
+        }
+        return documentURL.toString();
+    }
+
     /**
      * Returns the content types of the scripting languages this interpreter
      * handles.
@@ -286,16 +332,11 @@ public class RhinoInterpreter implements Interpreter {
     public Object evaluate(final Reader scriptReader, final String description)
         throws IOException {
 
+        final String source = readScript(scriptReader);
         ContextAction evaluateAction = new ContextAction() {
             public Object run(Context cx) {
-                try {
-                    return cx.evaluateReader(globalObject,
-                                             scriptReader,
-                                             description,
-                                             1, rhinoClassLoader);
-                } catch (IOException ioe) {
-                    throw new WrappedException(ioe);
-                }
+                Script script = compile(cx, source, description);
+                return script.exec(cx, globalObject);
             }
         };
         try {
@@ -333,55 +374,7 @@ public class RhinoInterpreter implements Interpreter {
 
         ContextAction evalAction = new ContextAction() {
             public Object run(final Context cx) {
-                Script script = null;
-                Entry entry = null;
-                Iterator it = compiledScripts.iterator();
-                // between nlog(n) and log(n) because it is
-                // an AbstractSequentialList
-                while (it.hasNext()) {
-                    if ((entry = (Entry) it.next()).str.equals(scriptStr)) {
-                        // if it is not at the end, remove it because
-                        // it will change from place (it is faster
-                        // to remove it now)
-                        script = entry.script;
-                        it.remove();
-                        break;
-                    }
-                }
-
-                if (script == null) {
-                    // this script has not been compiled yet or has been
-                    // forgotten since the compilation:
-                    // compile it and store it for future use.
-
-                    PrivilegedAction compile = new PrivilegedAction() {
-                        public Object run() {
-                            try {
-                                return cx.compileReader
-                                    (new StringReader(scriptStr),
-                                     SOURCE_NAME_SVG, 1, rhinoClassLoader);
-                            } catch (IOException ioEx ) {
-                                // Should never happen: using a string
-                                throw new RuntimeException( ioEx.getMessage() );
-                            }
-                        }
-                    };
-                    script = (Script)AccessController.doPrivileged(compile);
-
-                    if (compiledScripts.size() + 1 > MAX_CACHED_SCRIPTS) {
-                        // too many cached items - we should delete the
-                        // oldest entry.  all of this is very fast on
-                        // linkedlist
-                        compiledScripts.removeFirst();
-                    }
-                    // storing is done here:
-                    compiledScripts.addLast(new Entry(scriptStr, script));
-                } else {
-                    // this script has been compiled before,
-                    // just update its index so it won't get deleted soon.
-                    compiledScripts.addLast(entry);
-                }
-
+                Script script = compile(cx, scriptStr, SOURCE_NAME_SVG);
                 return script.exec(cx, globalObject);
             }
         };
@@ -407,6 +400,67 @@ public class RhinoInterpreter implements Interpreter {
         }
     }
 
+    /**
+     * Compiles a script and adds it to the {@link CompiledScriptCache},
+     * so that evaluating it later, in this interpreter or in one for
+     * a document with the same code base, does not compile it.
+     * This method can be called from any thread.  Errors are ignored,
+     * they are reported when the script is evaluated.
+     * @param source the source of the script.
+     * @param description the description given to the script when
+     *        it is evaluated.
+     */
+    public void precompile(final String source, final String description) {
+        try {
+            contextFactory.call(new ContextAction() {
+                public Object run(Context cx) {
+                    return compile(cx, source, description);
+                }
+            });
+        } catch (RuntimeException re) {
+            // Reported by evaluate.
+        }
+    }
+
+    /**
+     * Returns the compiled script for the given source, from the
+     * {@link CompiledScriptCache} if it is there.
+     */
+    protected Script compile(final Context cx,
+                             final String source,
+                             final String description) {
+        CompiledScriptCache cache = CompiledScriptCache.getInstance();
+        Object key = CompiledScriptCache.createKey(securityKey,
+                                                   description,
+                                                   source);
+        Script script = cache.get(key);
+        if (script == null) {
+            long t0 = System.nanoTime();
+            PrivilegedAction compile = new PrivilegedAction() {
+                public Object run() {
+                    return cx.compileString(source, description, 1,
+                                            rhinoClassLoader);
+                }
+            };
+            script = (Script)AccessController.doPrivileged(compile);
+            cache.put(key, script, source.length(), System.nanoTime() - t0);
+        }
+        return script;
+    }
+
+    /**
+     * Reads the whole content of a script reader.
+     */
+    protected static String readScript(Reader reader) throws IOException {
+        StringBuffer sb = new StringBuffer();
+        char[] buf = new char[4096];
+        int n;
+        while ((n = reader.read(buf)) != -1) {
+            sb.append(buf, 0, n);
+        }
+        return sb.toString();
+    }
+
     /**
      * For <code>RhinoInterpreter</code> this method flushes the
      * Rhino caches to avoid memory leaks.
@@ -562,6 +616,8 @@ public class RhinoInterpreter implements Interpreter {
 
     /**
      * Class to store cached compiled scripts.
+     * @deprecated the compiled scripts are cached by the shared
+     *             {@link CompiledScriptCache}.
      */
     protected static class Entry {
 
@@ -31,11 +31,17 @@ import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -129,9 +135,26 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
     };
 
     /**
-     * The timer for periodic or delayed tasks.
+     * The timer for periodic or delayed tasks, or null if they are run
+     * by the executor of the update manager.
      */
-    protected Timer timer = new Timer(true);
+    protected Timer timer;
+
+    /**
+     * The executor of the update manager, which runs the periodic or
+     * delayed tasks when it is not null.
+     */
+    protected ScheduledExecutorService executor;
+
+    /**
+     * The tasks scheduled in the executor and not yet run or cancelled.
+     */
+    protected Set scheduledTasks = Collections.synchronizedSet(new HashSet());
+
+    /**
+     * Whether the periodic tasks have been interrupted.
+     */
+    protected volatile boolean interrupted;
 
     /**
      * The update manager.
@@ -330,6 +353,10 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
         super(ctx);
         updateManager = ctx.getUpdateManager();
         updateRunnableQueue = updateManager.getUpdateRunnableQueue();
+        executor = updateManager.getExecutor();
+        if (executor == null) {
+            timer = new Timer(true);
+        }
 
         // Add the scripting listeners.
         addScriptingListeners(document.getDocumentElement());
@@ -415,7 +442,14 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
      * Interrupts the periodic tasks and dispose this ScriptingEnvironment.
      */
     public void interrupt() {
-        timer.cancel();
+        interrupted = true;
+        if (timer != null) {
+            timer.cancel();
+        }
+        Object[] tasks = scheduledTasks.toArray();
+        for (int i = 0; i < tasks.length; i++) {
+            ((TimerTask)tasks[i]).cancel();
+        }
         // Remove the scripting listeners.
         removeScriptingListeners(document.getDocumentElement());
 
@@ -791,6 +825,80 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
         }
     }
 
+    /**
+     * Schedules the given task for execution after the given delay,
+     * then every <code>period</code> milliseconds if the period is
+     * positive.  As with <code>Timer.schedule</code>, the period is
+     * counted from the end of the previous execution.
+     */
+    protected void schedule(final ScheduledTimerTask task,
+                            long delay, long period) {
+        if (executor == null) {
+            if (period > 0) {
+                timer.schedule(task, delay, period);
+            } else {
+                timer.schedule(task, delay);
+            }
+            return;
+        }
+        if (interrupted) {
+            throw new IllegalStateException("Timer already cancelled.");
+        }
+        scheduledTasks.add(task);
+        ScheduledFuture f;
+        if (period > 0) {
+            f = executor.scheduleWithFixedDelay
+                (task, delay, period, TimeUnit.MILLISECONDS);
+        } else {
+            f = executor.schedule(new Runnable() {
+                    public void run() {
+                        scheduledTasks.remove(task);
+                        task.run();
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+        }
+        task.setFuture(f);
+    }
+
+    /**
+     * A <code>TimerTask</code> which can also be scheduled in the
+     * executor of the update manager, and then cancelled the same way.
+     */
+    protected abstract class ScheduledTimerTask extends TimerTask {
+
+        /**
+         * The executor future of this task, if it was scheduled in
+         * the executor.
+         */
+        protected ScheduledFuture future;
+
+        /**
+         * Whether this task was cancelled.
+         */
+        protected boolean cancelled;
+
+        /**
+         * Sets the executor future of this task.
+         */
+        protected synchronized void setFuture(ScheduledFuture f) {
+            future = f;
+            if (cancelled) {
+                f.cancel(false);
+            }
+        }
+
+        public boolean cancel() {
+            synchronized (this) {
+                cancelled = true;
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+            scheduledTasks.remove(this);
+            return super.cancel();
+        }
+    }
+
     /**
      * Represents the window object of this environment.
      */
@@ -801,7 +909,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          * <code>setInterval()</code>-scheduled function that is specified
          * by a String.
          */
-        protected class IntervalScriptTimerTask extends TimerTask {
+        protected class IntervalScriptTimerTask extends ScheduledTimerTask {
 
             protected EvaluateIntervalRunnable eir;
 
@@ -816,7 +924,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
                     eir.count++;
                 }
                 synchronized (updateRunnableQueue.getIteratorLock()) {
-                    if (updateRunnableQueue.getThread() == null) {
+                    if (!updateRunnableQueue.isAlive()) {
                         cancel();
                         return;
                     }
@@ -834,7 +942,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          * <code>setInterval()</code>-scheduled function that is specified
          * by a <code>Runnable</code>.
          */
-        protected class IntervalRunnableTimerTask extends TimerTask {
+        protected class IntervalRunnableTimerTask extends ScheduledTimerTask {
 
             protected EvaluateRunnableRunnable eihr;
 
@@ -863,7 +971,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          * <code>setTimeout()</code>-scheduled function that is specified
          * by a String.
          */
-        protected class TimeoutScriptTimerTask extends TimerTask {
+        protected class TimeoutScriptTimerTask extends ScheduledTimerTask {
 
             private String script;
 
@@ -882,7 +990,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          * <code>setTimeout()</code>-scheduled function that is specified
          * by a Runnable.
          */
-        protected class TimeoutRunnableTimerTask extends TimerTask {
+        protected class TimeoutRunnableTimerTask extends ScheduledTimerTask {
 
             private Runnable r;
 
@@ -934,7 +1042,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          */
         public Object setInterval(final String script, long interval) {
             IntervalScriptTimerTask tt = new IntervalScriptTimerTask(script);
-            timer.schedule(tt, interval, interval);
+            schedule(tt, interval, interval);
             return tt;
         }
 
@@ -944,7 +1052,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          */
         public Object setInterval(final Runnable r, long interval) {
             IntervalRunnableTimerTask tt = new IntervalRunnableTimerTask(r);
-            timer.schedule(tt, interval, interval);
+            schedule(tt, interval, interval);
             return tt;
         }
 
@@ -963,7 +1071,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          */
         public Object setTimeout(final String script, long timeout) {
             TimeoutScriptTimerTask tt = new TimeoutScriptTimerTask(script);
-            timer.schedule(tt, timeout);
+            schedule(tt, timeout, 0);
             return tt;
         }
 
@@ -973,7 +1081,7 @@ public class ScriptingEnvironment extends BaseScriptingEnvironment {
          */
         public Object setTimeout(final Runnable r, long timeout) {
             TimeoutRunnableTimerTask tt = new TimeoutRunnableTimerTask(r);
-            timer.schedule(tt, timeout);
+            schedule(tt, timeout, 0);
             return tt;
         }
 
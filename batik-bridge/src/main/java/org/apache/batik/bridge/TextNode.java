@@ -237,7 +237,7 @@ public class TextNode extends AbstractGraphicsNode implements Selectable {
     /**
      * Returns the bounds of the area covered by this node's primitive paint.
      */
-    public Rectangle2D getPrimitiveBounds(){
+    public synchronized Rectangle2D getPrimitiveBounds(){
         if (primitiveBounds == null) {
             if (aci != null) {
                 primitiveBounds = textPainter.getBounds2D(this);
@@ -252,7 +252,7 @@ public class TextNode extends AbstractGraphicsNode implements Selectable {
      * exclusive of any clipping, masking, filtering or stroking, for
      * example.
      */
-    public Rectangle2D getGeometryBounds(){
+    public synchronized Rectangle2D getGeometryBounds(){
         if (geometryBounds == null){
             if (aci != null) {
                 geometryBounds = textPainter.getGeometryBounds(this);
@@ -273,7 +273,7 @@ public class TextNode extends AbstractGraphicsNode implements Selectable {
     /**
      * Returns the outline of this node.
      */
-    public Shape getOutline() {
+    public synchronized Shape getOutline() {
         if (outline == null) {
             if (aci != null) {
                 outline = textPainter.getOutline(this);
@@ -398,8 +398,11 @@ public class TextNode extends AbstractGraphicsNode implements Selectable {
         if (clip != null && !(clip instanceof GeneralPath)) {
             g2d.setClip(new GeneralPath(clip));
         }
-        // Paint the text
-        textPainter.paint(this, g2d);
+        // Paint the text. The layout is computed lazily and walks the
+        // character iterator, so tiles painted by other threads wait.
+        synchronized (this) {
+            textPainter.paint(this, g2d);
+        }
     }
 
     //
@@ -28,6 +28,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.batik.anim.dom.SVGOMDocument;
 import org.apache.batik.bridge.svg12.DefaultXBLManager;
@@ -68,11 +70,44 @@ public class UpdateManager  {
         }
     }
 
+    /**
+     * The executor shared by the update managers created from now on,
+     * or null if each update manager has its own threads.
+     */
+    protected static volatile ScheduledExecutorService sharedExecutor;
+
+    /**
+     * Sets the executor shared by the update managers created from
+     * now on.  The runnables of each document are still run one at a
+     * time, in order, but no thread is created per document: the
+     * update runnable queues, the repaint timers and the script timers
+     * all run in the given executor, which may for instance create
+     * virtual threads.  Pass null to go back to one thread per
+     * document.
+     */
+    public static void setSharedExecutor(ScheduledExecutorService executor) {
+        sharedExecutor = executor;
+    }
+
+    /**
+     * Returns the executor shared by the update managers created from
+     * now on, or null.
+     */
+    public static ScheduledExecutorService getSharedExecutor() {
+        return sharedExecutor;
+    }
+
     /**
      * The bridge context.
      */
     protected BridgeContext bridgeContext;
 
+    /**
+     * The executor running this manager, or null if it has its own
+     * threads.
+     */
+    protected ScheduledExecutorService executor;
+
     /**
      * The document to manage.
      */
@@ -158,7 +193,12 @@ public class UpdateManager  {
 
         document = doc;
 
-        updateRunnableQueue = RunnableQueue.createRunnableQueue();
+        executor = sharedExecutor;
+        if (executor == null) {
+            updateRunnableQueue = RunnableQueue.createRunnableQueue();
+        } else {
+            updateRunnableQueue = RunnableQueue.createRunnableQueue(executor);
+        }
         runHandler = createRunHandler();
         updateRunnableQueue.setRunHandler(runHandler);
 
@@ -186,6 +226,14 @@ public class UpdateManager  {
         minRepaintTime = MIN_REPAINT_TIME;
     }
 
+    /**
+     * Returns the executor running this manager, or null if it has
+     * its own threads.
+     */
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
     public int getMinRepaintTime() {
         return minRepaintTime;
     }
@@ -388,7 +436,7 @@ public class UpdateManager  {
                         } else {
                             running = false;
                             scriptingEnvironment.interrupt();
-                            updateRunnableQueue.getThread().halt();
+                            updateRunnableQueue.halt();
                         }
                     }
                 }
@@ -437,7 +485,7 @@ public class UpdateManager  {
                         // everything before we send the
                         // UpdateMangerStopped event.
                         scriptingEnvironment.interrupt();
-                        updateRunnableQueue.getThread().halt();
+                        updateRunnableQueue.halt();
                         bridgeContext.dispose();
 
                         // Send the UpdateManagerStopped event.
@@ -644,13 +692,10 @@ public class UpdateManager  {
     void createRepaintTimer() {
         if (repaintTimerTask != null) return;
         if (allResumeTime < 0)        return;
-        if (repaintTriggerTimer == null)
-            repaintTriggerTimer = new Timer(true);
 
         long delay = allResumeTime - System.currentTimeMillis();
         if (delay < 0) delay = 0;
-        repaintTimerTask = new RepaintTimerTask(this);
-        repaintTriggerTimer.schedule(repaintTimerTask, delay);
+        scheduleRepaintTimer(delay);
         // System.err.println("CTimer delay: " + delay);
     }
     /**
@@ -662,14 +707,26 @@ public class UpdateManager  {
     void resetRepaintTimer() {
         if (repaintTimerTask == null) return;
         if (allResumeTime < 0)        return;
-        if (repaintTriggerTimer == null)
-            repaintTriggerTimer = new Timer(true);
 
         long delay = allResumeTime - System.currentTimeMillis();
         if (delay < 0) delay = 0;
+        scheduleRepaintTimer(delay);
+        // System.err.println("Timer delay: " + delay);
+    }
+
+    /**
+     * Schedules a new repaint timer task, in the shared executor if
+     * there is one.
+     */
+    void scheduleRepaintTimer(long delay) {
         repaintTimerTask = new RepaintTimerTask(this);
+        if (executor != null) {
+            executor.schedule(repaintTimerTask, delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        if (repaintTriggerTimer == null)
+            repaintTriggerTimer = new Timer(true);
         repaintTriggerTimer.schedule(repaintTimerTask, delay);
-        // System.err.println("Timer delay: " + delay);
     }
 
     int addRedrawSuspension(int max_wait_milliseconds) {
@@ -307,6 +307,37 @@ public interface UserAgent {
      */
     void loadDocument(String url);
 
+    /**
+     * Returns the maximum number of external documents a
+     * {@link DocumentLoader} keeps in its cache. A value less than or
+     * equal to zero means that the number of documents is not limited.
+     * Defaults to {@link DocumentLoader#DEFAULT_MAX_CACHED_DOCUMENTS}.
+     */
+    default int getMaxCachedDocuments() {
+        return DocumentLoader.DEFAULT_MAX_CACHED_DOCUMENTS;
+    }
+
+    /**
+     * Returns the maximum estimated size, in bytes, of the external
+     * documents a {@link DocumentLoader} keeps in its cache. A value
+     * less than or equal to zero means that the size is not limited.
+     * Defaults to {@link DocumentLoader#DEFAULT_MAX_CACHED_DOCUMENT_SIZE}.
+     */
+    default long getMaxCachedDocumentSize() {
+        return DocumentLoader.DEFAULT_MAX_CACHED_DOCUMENT_SIZE;
+    }
+
+    /**
+     * Returns the number of threads fetching, in parallel, the images
+     * and documents referenced by a document before its GVT tree is
+     * built.  A value less than or equal to zero disables the
+     * prefetching, which is the default.
+     * @see ResourcePrefetcher
+     */
+    default int getPrefetchThreads() {
+        return 0;
+    }
+
     /** Returns the Font Family Resolver */
     FontFamilyResolver getFontFamilyResolver();
 
@@ -0,0 +1,238 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.Font;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.batik.gvt.font.AWTFontFamily;
+import org.apache.batik.gvt.font.GVTFontFamily;
+import org.apache.batik.util.BoundedCache;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * A process-wide cache of the web fonts referenced by @font-face rules
+ * and &lt;font-face-uri&gt; elements, shared by all the bridge contexts.
+ *
+ * <p>Fonts are keyed by their resolved URL and a digest of their content,
+ * so a font is only created once however many documents use it, and a
+ * font changed at the same URL is loaded again.  When several threads
+ * ask for the same font at the same time, one of them loads it and the
+ * others wait for the result.  The cache holds the fonts within a budget
+ * of bytes, the size of a font being the size of its file; the least
+ * recently used ones are dropped first.</p>
+ *
+ * <p>The budget is given by the
+ * <code>org.apache.batik.font.cache_size</code> system property, in
+ * bytes.  A budget of 0 disables the cache.  Only the families created
+ * as <code>AWTFontFamily</code>, as <code>DefaultFontFamilyResolver</code>
+ * does, are cached; the fonts loaded by other resolvers are loaded for
+ * each use.  SVG fonts are not cached as their glyphs are built from the
+ * elements of the document using them.</p>
+ *
+ * @see BoundedCache
+ * @version $Id$
+ */
+public class WebFontCache {
+
+    /**
+     * The default budget of the shared cache, in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The bytes accounted for each cached font, on top of its file.
+     */
+    public static final int ENTRY_OVERHEAD = 1024;
+
+    /**
+     * The shared instance.
+     */
+    protected static final WebFontCache instance;
+    static {
+        long value = DEFAULT_MAX_SIZE;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.font.cache_size");
+            if (s != null) {
+                value = Long.parseLong(s);
+            }
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        }
+        instance = new WebFontCache(value);
+    }
+
+    /**
+     * Returns the cache used by <code>FontFace</code>.
+     */
+    public static WebFontCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * The cache holding the fonts, keyed by URL and digest.
+     */
+    protected final BoundedCache cache;
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum total size of the cached fonts, in bytes.
+     */
+    public WebFontCache(long maxSize) {
+        cache = new BoundedCache(maxSize);
+    }
+
+    /**
+     * Returns the font family for the web font at the given URL, loading
+     * it with the given resolver if it is not cached yet.
+     * @param purl the resolved URL of the font
+     * @param ff the font face the family is for
+     * @param resolver the resolver loading the font
+     */
+    public GVTFontFamily loadFont(ParsedURL purl, FontFace ff,
+                                  FontFamilyResolver resolver)
+        throws Exception {
+        byte[] data = readFully(purl.openStream());
+        long bytes = data.length + ENTRY_OVERHEAD;
+        if (bytes > cache.getMaxSize()) {
+            return resolver.loadFont(new ByteArrayInputStream(data), ff);
+        }
+
+        String key = purl.toString() + ' ' + getDigest(data);
+        Font font = (Font)cache.request(key);
+        if (font != null) {
+            return new AWTFontFamily(ff, font);
+        }
+        // We are on the hook for the font.
+        GVTFontFamily family = null;
+        try {
+            family = resolver.loadFont(new ByteArrayInputStream(data), ff);
+        } finally {
+            font = null;
+            if ((family != null)
+                    && (family.getClass() == AWTFontFamily.class)) {
+                font = ((AWTFontFamily)family).getFont();
+            }
+            // A null font lets the next requester try again.
+            cache.put(key, font, bytes);
+        }
+        return family;
+    }
+
+    /**
+     * Removes all the fonts from the cache.
+     */
+    public void clear() {
+        cache.flush();
+    }
+
+    /**
+     * Returns the maximum total size of the cached fonts, in bytes.
+     */
+    public long getMaxSize() {
+        return cache.getMaxSize();
+    }
+
+    /**
+     * Sets the maximum total size of the cached fonts, in bytes.
+     */
+    public void setMaxSize(long maxSize) {
+        cache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Returns the total size of the cached fonts, in bytes.
+     */
+    public long getSize() {
+        return cache.getSize();
+    }
+
+    /**
+     * Returns the number of cached fonts, including the ones being
+     * loaded.
+     */
+    public int getFontCount() {
+        return cache.getCount();
+    }
+
+    /**
+     * Returns the number of requests which found their font.
+     */
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * Returns the number of requests which loaded their font.
+     */
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * Returns the number of fonts dropped to fit the budget.
+     */
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public void resetStatistics() {
+        cache.resetStatistics();
+    }
+
+    /**
+     * Reads the given stream to its end and closes it.
+     */
+    protected static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the hexadecimal SHA-256 digest of the given bytes.
+     */
+    protected static String getDigest(byte[] data)
+        throws NoSuchAlgorithmException {
+        byte[] d = MessageDigest.getInstance("SHA-256").digest(data);
+        StringBuffer sb = new StringBuffer(d.length * 2);
+        for (byte b : d) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
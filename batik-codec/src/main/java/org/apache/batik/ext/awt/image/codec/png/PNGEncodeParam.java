@@ -28,6 +28,7 @@ import java.awt.image.SampleModel;
 import java.util.Date;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.zip.Deflater;
 
 /**
  * An instance of <code>ImageEncodeParam</code> for encoding images in
@@ -67,6 +68,12 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
     /** Constant for use in filtering. */
     public static final int PNG_FILTER_PAETH = 4;
 
+    /**
+     * Constant for use with <code>setFilterType</code>: the filter of
+     * each row is chosen by <code>filterRow</code>.
+     */
+    public static final int PNG_FILTER_ADAPTIVE = -1;
+
 
     /**
      * Returns an instance of <code>PNGEncodeParam.Palette</code>,
@@ -587,6 +594,99 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
         return useInterlacing;
     }
 
+    private int compressionLevel = Deflater.BEST_COMPRESSION;
+
+    /**
+     * Sets the deflate compression level, from 0 (no compression) to
+     * 9 (best compression), or -1 for the default zlib level.  Lower
+     * levels encode much faster for a somewhat larger file.  The
+     * default is 9.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < -1 || compressionLevel > 9) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam25"));
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the deflate compression level.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+
+    /**
+     * Sets the deflate compression strategy, one of
+     * <code>Deflater.DEFAULT_STRATEGY</code>,
+     * <code>Deflater.FILTERED</code> or
+     * <code>Deflater.HUFFMAN_ONLY</code>.
+     */
+    public void setCompressionStrategy(int compressionStrategy) {
+        if (compressionStrategy != Deflater.DEFAULT_STRATEGY &&
+            compressionStrategy != Deflater.FILTERED &&
+            compressionStrategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam26"));
+        }
+        this.compressionStrategy = compressionStrategy;
+    }
+
+    /**
+     * Returns the deflate compression strategy.
+     */
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    private int filterType = PNG_FILTER_ADAPTIVE;
+
+    /**
+     * Sets the filter applied to the rows of the image: one of the
+     * <code>PNG_FILTER_*</code> constants.  With
+     * <code>PNG_FILTER_ADAPTIVE</code>, the default, the filter of each
+     * row is chosen by <code>filterRow</code>, which tries them all;
+     * any other value applies that filter to every row, which is
+     * faster.  <code>PNG_FILTER_NONE</code> is fastest but usually
+     * compresses worst.
+     */
+    public void setFilterType(int filterType) {
+        if (filterType < PNG_FILTER_ADAPTIVE || filterType > PNG_FILTER_PAETH) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam27"));
+        }
+        this.filterType = filterType;
+    }
+
+    /**
+     * Returns the filter applied to the rows of the image.
+     */
+    public int getFilterType() {
+        return filterType;
+    }
+
+    private int compressionThreads = 1;
+
+    /**
+     * Sets the number of threads compressing the image data.  With
+     * more than one thread the image data is split in blocks which
+     * are compressed concurrently; the result is a regular PNG file,
+     * slightly larger than with a single thread.  The default is 1.
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        if (compressionThreads < 1) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam28"));
+        }
+        this.compressionThreads = compressionThreads;
+    }
+
+    /**
+     * Returns the number of threads compressing the image data.
+     */
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
     // bKGD chunk - delegate to subclasses
 
     // In JAI 1.0, 'backgroundSet' was private.  The JDK 1.2 compiler
@@ -1336,7 +1436,8 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
      * encoding with each of the filter types, and computes the sum of
      * absolute values of the differences between the raw bytes of the
      * current row and the predicted values.  The index of the filter
-     * producing the smallest result is returned.
+     * producing the smallest result is returned.  If a filter type was
+     * set with <code>setFilterType</code>, only that filter is applied.
      *
      * <p> As an example, to perform only 'sub' filtering, this method
      * could be implemented (non-optimally) as follows:
@@ -1379,6 +1480,11 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
                          int bytesPerRow,
                          int bytesPerPixel) {
 
+        if (filterType != PNG_FILTER_ADAPTIVE) {
+            return filterRow(filterType, currRow, prevRow, scratchRows,
+                             bytesPerRow, bytesPerPixel);
+        }
+
         int [] badness = {0, 0, 0, 0, 0};
         int curr, left, up, upleft, diff;
         int pa, pb, pc;
@@ -1502,4 +1608,53 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
 
         return filterType;
     }
+
+    /**
+     * Applies the given filter to a row of an image.  The parameters
+     * are the same as the ones of <code>filterRow</code>.
+     *
+     * @return <code>filterType</code>.
+     */
+    protected int filterRow(int filterType,
+                            byte[] currRow,
+                            byte[] prevRow,
+                            byte[][] scratchRows,
+                            int bytesPerRow,
+                            int bytesPerPixel) {
+        byte[] out = scratchRows[filterType];
+        int end = bytesPerRow + bytesPerPixel;
+        switch (filterType) {
+        case PNG_FILTER_NONE:
+            System.arraycopy(currRow, bytesPerPixel,
+                             out, bytesPerPixel,
+                             bytesPerRow);
+            break;
+        case PNG_FILTER_SUB:
+            for (int i = bytesPerPixel; i < end; i++) {
+                out[i] = (byte)(currRow[i] - currRow[i - bytesPerPixel]);
+            }
+            break;
+        case PNG_FILTER_UP:
+            for (int i = bytesPerPixel; i < end; i++) {
+                out[i] = (byte)(currRow[i] - prevRow[i]);
+            }
+            break;
+        case PNG_FILTER_AVERAGE:
+            for (int i = bytesPerPixel; i < end; i++) {
+                int left = currRow[i - bytesPerPixel] & 0xff;
+                int up   = prevRow[i] & 0xff;
+                out[i] = (byte)(currRow[i] - ((left + up) >> 1));
+            }
+            break;
+        case PNG_FILTER_PAETH:
+            for (int i = bytesPerPixel; i < end; i++) {
+                int left   = currRow[i - bytesPerPixel] & 0xff;
+                int up     = prevRow[i] & 0xff;
+                int upleft = prevRow[i - bytesPerPixel] & 0xff;
+                out[i] = (byte)(currRow[i] - paethPredictor(left, up, upleft));
+            }
+            break;
+        }
+        return filterType;
+    }
 }
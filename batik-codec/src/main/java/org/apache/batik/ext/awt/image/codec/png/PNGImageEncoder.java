@@ -31,11 +31,20 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.LinkedList;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Adler32;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
@@ -257,6 +266,223 @@ class IDATOutputStream extends FilterOutputStream {
     }
 }
 
+/**
+ * A zlib compressing output stream which deflates blocks of its input
+ * on several threads.  Each block is compressed with the end of the
+ * previous block as preset dictionary and ends on a byte boundary, so
+ * the compressed blocks concatenate into a single regular zlib stream.
+ */
+class ParallelDeflaterOutputStream extends FilterOutputStream {
+
+    /**
+     * The size of the blocks compressed independently.
+     */
+    private static final int BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * The size of the deflate window.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private int level;
+    private int strategy;
+    private int threads;
+    private ExecutorService executor;
+    private LinkedList pending = new LinkedList();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength;
+    private byte[] dictionary;
+    private Adler32 adler = new Adler32();
+    private boolean headerWritten;
+    private boolean finished;
+
+    public ParallelDeflaterOutputStream(OutputStream output,
+                                        int level,
+                                        int strategy,
+                                        int threads) {
+        super(output);
+        this.level = level;
+        this.strategy = strategy;
+        this.threads = threads;
+    }
+
+    public void write(int b) throws IOException {
+        block[blockLength++] = (byte)b;
+        if (blockLength == BLOCK_SIZE) {
+            submitBlock(false);
+        }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(BLOCK_SIZE - blockLength, len);
+            System.arraycopy(b, off, block, blockLength, n);
+            off += n;
+            len -= n;
+            blockLength += n;
+            if (blockLength == BLOCK_SIZE) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Compresses the remaining input and writes the end of the zlib
+     * stream.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+        try {
+            submitBlock(true);
+            while (!pending.isEmpty()) {
+                writeBlock(pending.removeFirst());
+            }
+            int a = (int)adler.getValue();
+            out.write(a >>> 24);
+            out.write((a >>> 16) & 0xff);
+            out.write((a >>> 8) & 0xff);
+            out.write(a & 0xff);
+        } finally {
+            shutdown();
+        }
+    }
+
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * Stops the compressing threads.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void submitBlock(final boolean last) throws IOException {
+        final byte[] data = block;
+        final int len = blockLength;
+        final byte[] dict = dictionary;
+        adler.update(data, 0, len);
+        if (last && pending.isEmpty()) {
+            // Nothing to overlap with, compress on this thread.
+            writeBlock(deflate(data, len, dict, true));
+            return;
+        }
+        Callable task = new Callable() {
+                public Object call() {
+                    return deflate(data, len, dict, last);
+                }
+            };
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "PNGImageEncoder");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+        pending.add(executor.submit(task));
+        if (last) return;
+
+        // Only full blocks are followed by another block.
+        dictionary = new byte[DICTIONARY_SIZE];
+        System.arraycopy(data, len - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+
+        // Bound the memory held by blocks waiting to be written.
+        while (pending.size() > threads * 2) {
+            writeBlock(pending.removeFirst());
+        }
+    }
+
+    private void writeBlock(Object o) throws IOException {
+        byte[] b;
+        if (o instanceof Future) {
+            try {
+                b = (byte[])((Future)o).get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                IOException ioe = new IOException(e.getCause().getMessage());
+                ioe.initCause(e.getCause());
+                throw ioe;
+            }
+        } else {
+            b = (byte[])o;
+        }
+        if (!headerWritten) {
+            writeHeader();
+        }
+        out.write(b);
+    }
+
+    /**
+     * Writes the zlib stream header.
+     */
+    private void writeHeader() throws IOException {
+        int cmf = 0x78; // deflate, 32K window
+        int flevel;
+        if (level == 0 || level == 1) {
+            flevel = 0;
+        } else if (level >= 2 && level <= 5) {
+            flevel = 1;
+        } else if (level == 6 || level == Deflater.DEFAULT_COMPRESSION) {
+            flevel = 2;
+        } else {
+            flevel = 3;
+        }
+        int flg = flevel << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        out.write(cmf);
+        out.write(flg);
+        headerWritten = true;
+    }
+
+    /**
+     * Compresses a block as raw deflate data.  All the blocks but the
+     * last end with a sync flush so that they end on a byte boundary.
+     */
+    private byte[] deflate(byte[] data, int len, byte[] dict, boolean last) {
+        Deflater d = new Deflater(level, true);
+        try {
+            byte[] buf = new byte[16 * 1024];
+            // The strategy is only applied by the next call to deflate;
+            // make that call before there is any input or dictionary,
+            // so it does not flush or cut the block short.
+            d.setStrategy(strategy);
+            d.deflate(buf);
+            if (dict != null) {
+                d.setDictionary(dict);
+            }
+            d.setInput(data, 0, len);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(len / 2 + 64);
+            if (last) {
+                d.finish();
+                while (!d.finished()) {
+                    int n = d.deflate(buf);
+                    bos.write(buf, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = d.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    bos.write(buf, 0, n);
+                } while (n == buf.length || !d.needsInput());
+            }
+            return bos.toByteArray();
+        } finally {
+            d.end();
+        }
+    }
+}
+
 /**
  * An ImageEncoder for the PNG file format.
  *
@@ -447,8 +673,40 @@ public class PNGImageEncoder extends ImageEncoderImpl {
 
     private void writeIDAT() throws IOException {
         IDATOutputStream ios = new IDATOutputStream(dataOutput, 8192);
-        DeflaterOutputStream dos =
-            new DeflaterOutputStream(ios, new Deflater(9));
+        int level = param.getCompressionLevel();
+        int strategy = param.getCompressionStrategy();
+        Deflater deflater = null;
+        ParallelDeflaterOutputStream pdos = null;
+        FilterOutputStream dos;
+        if (param.getCompressionThreads() > 1) {
+            pdos = new ParallelDeflaterOutputStream
+                (ios, level, strategy, param.getCompressionThreads());
+            dos = pdos;
+        } else {
+            deflater = new Deflater(level);
+            deflater.setStrategy(strategy);
+            dos = new DeflaterOutputStream(ios, deflater);
+        }
+        try {
+            writeIDAT(dos);
+            if (pdos != null) {
+                pdos.finish();
+            } else {
+                ((DeflaterOutputStream)dos).finish();
+            }
+            dos.close();
+            ios.flush();
+            ios.close();
+        } finally {
+            if (pdos != null) {
+                pdos.shutdown();
+            } else {
+                deflater.end();
+            }
+        }
+    }
+
+    private void writeIDAT(OutputStream dos) throws IOException {
 
         // Future work - don't convert entire image to a Raster It
         // might seem that you could just call image.getData() but
@@ -502,11 +760,6 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         } else {
             encodePass(dos, ras, 0, 0, 1, 1);
         }
-
-        dos.finish();
-        dos.close();
-        ios.flush();
-        ios.close();
     }
 
     private void writeIEND() throws IOException {
@@ -83,6 +83,27 @@ public class PNGTranscoderInternalCodecWriteAdapter implements
         int numPix      = (int)((1000/PixSzMM)+0.5);
         params.setPhysicalDimension(numPix, numPix, 1); // 1 means 'pix/meter'
 
+        try {
+            if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_LEVEL)) {
+                params.setCompressionLevel
+                    ((Integer) hints.get(PNGTranscoder.KEY_COMPRESSION_LEVEL));
+            }
+            if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_STRATEGY)) {
+                params.setCompressionStrategy
+                    ((Integer) hints.get(PNGTranscoder.KEY_COMPRESSION_STRATEGY));
+            }
+            if (hints.containsKey(PNGTranscoder.KEY_FILTER_TYPE)) {
+                params.setFilterType
+                    ((Integer) hints.get(PNGTranscoder.KEY_FILTER_TYPE));
+            }
+            if (hints.containsKey(PNGTranscoder.KEY_COMPRESSION_THREADS)) {
+                params.setCompressionThreads
+                    ((Integer) hints.get(PNGTranscoder.KEY_COMPRESSION_THREADS));
+            }
+        } catch (IllegalArgumentException ex) {
+            throw new TranscoderException(ex);
+        }
+
         try {
             OutputStream ostream = output.getOutputStream();
             PNGImageEncoder pngEncoder = new PNGImageEncoder(ostream, params);
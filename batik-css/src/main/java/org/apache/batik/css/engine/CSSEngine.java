@@ -1304,6 +1304,11 @@ public abstract class CSSEngine {
                                     StyleSheet ss,
                                     Element elt,
                                     String pseudo) {
+        SelectorIndex index = ss.getSelectorIndex();
+        if (index != null) {
+            addMatchingRules(rules, index, elt, pseudo);
+            return;
+        }
         int len = ss.getSize();
         for (int i = 0; i < len; i++) {
             Rule r = ss.getRule(i);
@@ -1331,6 +1336,31 @@ public abstract class CSSEngine {
         }
     }
 
+    /**
+     * Adds the rules of an indexed style-sheet matching the given
+     * element to the given list.
+     */
+    protected void addMatchingRules(List rules,
+                                    SelectorIndex index,
+                                    Element elt,
+                                    String pseudo) {
+        SelectorIndex.Entry[] entries = index.getCandidates(elt);
+        for (SelectorIndex.Entry entry : entries) {
+            Rule r = entry.getRule();
+            ExtendedSelector s = entry.getSelector();
+            if (s != null) {
+                if (s.match(elt, pseudo)) {
+                    rules.add(r);
+                }
+            } else {
+                MediaRule mr = (MediaRule)r;
+                if (mediaMatch(mr.getMediaList())) {
+                    addMatchingRules(rules, mr, elt, pseudo);
+                }
+            }
+        }
+    }
+
     /**
      * Adds the rules contained in the given list to a stylemap.
      */
@@ -0,0 +1,366 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.batik.css.engine.sac.AbstractDescendantSelector;
+import org.apache.batik.css.engine.sac.AbstractSiblingSelector;
+import org.apache.batik.css.engine.sac.CSSAndCondition;
+import org.apache.batik.css.engine.sac.CSSClassCondition;
+import org.apache.batik.css.engine.sac.CSSConditionalSelector;
+import org.apache.batik.css.engine.sac.CSSElementSelector;
+import org.apache.batik.css.engine.sac.CSSIdCondition;
+import org.apache.batik.css.engine.sac.ExtendedSelector;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.dom.Element;
+
+/**
+ * This class indexes the rules of a style-sheet by the rightmost
+ * compound selector of their selectors, so that only the rules which
+ * can possibly match an element have to be tested against it.
+ *
+ * <p>A selector whose rightmost compound selector has an id condition
+ * is filed under that id, else under its class condition, else under
+ * its element name. The other selectors, and the nested media and
+ * import rules, are filed in a universal bucket which is always
+ * searched. The candidates are returned in style-sheet order, so the
+ * cascade is the same as with a linear scan of the rules.</p>
+ *
+ * @version $Id$
+ */
+public class SelectorIndex {
+
+    /**
+     * The empty candidate list.
+     */
+    protected static final Entry[] EMPTY_ENTRIES = new Entry[0];
+
+    /**
+     * Orders the entries by position in the style-sheet.
+     */
+    protected static final Comparator ENTRY_COMPARATOR = new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return ((Entry)o1).position - ((Entry)o2).position;
+            }
+        };
+
+    /**
+     * The entries keyed by id (String -&gt; Entry[]).
+     */
+    protected Map ids = new HashMap();
+
+    /**
+     * The entries keyed by class name (String -&gt; Entry[]).
+     */
+    protected Map classes = new HashMap();
+
+    /**
+     * The entries keyed by element name (String -&gt; Entry[]).
+     */
+    protected Map names = new HashMap();
+
+    /**
+     * The entries which must be tested against every element.
+     */
+    protected Entry[] universal;
+
+    /**
+     * Creates a new index of the rules of the given style-sheet.
+     */
+    public SelectorIndex(StyleSheet ss) {
+        List universalList = new ArrayList();
+        int position = 0;
+        int len = ss.getSize();
+        for (int i = 0; i < len; i++) {
+            Rule r = ss.getRule(i);
+            switch (r.getType()) {
+            case StyleRule.TYPE:
+                SelectorList sl = ((StyleRule)r).getSelectorList();
+                int slen = sl.getLength();
+                for (int j = 0; j < slen; j++) {
+                    ExtendedSelector s = (ExtendedSelector)sl.item(j);
+                    addEntry(new Entry(position++, r, s), universalList);
+                }
+                break;
+
+            case MediaRule.TYPE:
+            case ImportRule.TYPE:
+                universalList.add(new Entry(position++, r, null));
+                break;
+            }
+        }
+        universal = toArray(universalList);
+        toArrays(ids);
+        toArrays(classes);
+        toArrays(names);
+    }
+
+    /**
+     * Returns the entries which can match the given element, in
+     * style-sheet order.
+     */
+    public Entry[] getCandidates(Element elt) {
+        List lists = new ArrayList(4);
+        String name = (elt.getPrefix() == null)
+            ? elt.getNodeName()
+            : elt.getLocalName();
+        addCandidates(lists, names, name);
+        if (elt instanceof CSSStylableElement) {
+            CSSStylableElement celt = (CSSStylableElement)elt;
+            addCandidates(lists, ids, celt.getXMLId());
+            if (!classes.isEmpty()) {
+                addClassCandidates(lists, celt.getCSSClass());
+            }
+        }
+        if (lists.isEmpty()) {
+            return universal;
+        }
+        if (universal.length > 0) {
+            lists.add(universal);
+        }
+        if (lists.size() == 1) {
+            return (Entry[])lists.get(0);
+        }
+
+        int count = 0;
+        Iterator it = lists.iterator();
+        while (it.hasNext()) {
+            count += ((Entry[])it.next()).length;
+        }
+        Entry[] result = new Entry[count];
+        int pos = 0;
+        it = lists.iterator();
+        while (it.hasNext()) {
+            Entry[] entries = (Entry[])it.next();
+            System.arraycopy(entries, 0, result, pos, entries.length);
+            pos += entries.length;
+        }
+        Arrays.sort(result, ENTRY_COMPARATOR);
+        return result;
+    }
+
+    /**
+     * Adds the entries filed under the class names of the given
+     * 'class' attribute value.
+     */
+    protected void addClassCandidates(List lists, String cls) {
+        int len = cls.length();
+        List seen = null;
+        int i = 0;
+        while (i < len) {
+            while (i < len && Character.isSpaceChar(cls.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < len && !Character.isSpaceChar(cls.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+            String c = cls.substring(start, i);
+            Entry[] entries = (Entry[])classes.get(c);
+            if (entries == null) {
+                continue;
+            }
+            if (seen == null) {
+                seen = new ArrayList(2);
+            } else if (seen.contains(c)) {
+                continue;
+            }
+            seen.add(c);
+            lists.add(entries);
+        }
+    }
+
+    /**
+     * Adds the entries filed under the given key, if any.
+     */
+    protected void addCandidates(List lists, Map map, String key) {
+        if (key == null) {
+            return;
+        }
+        Entry[] entries = (Entry[])map.get(key);
+        if (entries != null) {
+            lists.add(entries);
+        }
+    }
+
+    /**
+     * Files the given entry in the right bucket.
+     */
+    protected void addEntry(Entry e, List universalList) {
+        Selector s = e.selector;
+        if (s instanceof AbstractDescendantSelector) {
+            s = ((AbstractDescendantSelector)s).getSimpleSelector();
+        } else if (s instanceof AbstractSiblingSelector) {
+            s = ((AbstractSiblingSelector)s).getSiblingSelector();
+        }
+        if (s instanceof CSSConditionalSelector) {
+            CSSConditionalSelector cs = (CSSConditionalSelector)s;
+            Condition c = cs.getCondition();
+            CSSIdCondition id = (CSSIdCondition)findCondition(c, CSSIdCondition.class);
+            if (id != null) {
+                addEntry(ids, id.getValue(), e);
+                return;
+            }
+            CSSClassCondition cc =
+                (CSSClassCondition)findCondition(c, CSSClassCondition.class);
+            if (cc != null && isClassName(cc.getValue())) {
+                addEntry(classes, cc.getValue(), e);
+                return;
+            }
+            s = cs.getSimpleSelector();
+        }
+        if (s instanceof CSSElementSelector) {
+            String name = ((CSSElementSelector)s).getLocalName();
+            if (name != null) {
+                addEntry(names, name, e);
+                return;
+            }
+        }
+        universalList.add(e);
+    }
+
+    /**
+     * Returns the first condition of the given class in the given
+     * condition or in the conditions it combines with 'and'.
+     */
+    protected static Condition findCondition(Condition c, Class cls) {
+        if (cls.isInstance(c)) {
+            return c;
+        }
+        if (c instanceof CSSAndCondition) {
+            CSSAndCondition ac = (CSSAndCondition)c;
+            Condition r = findCondition(ac.getFirstCondition(), cls);
+            if (r == null) {
+                r = findCondition(ac.getSecondCondition(), cls);
+            }
+            return r;
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether the given class condition value can only match
+     * a single token of the 'class' attribute.
+     */
+    protected static boolean isClassName(String s) {
+        int len = s.length();
+        if (len == 0) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (Character.isSpaceChar(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds an entry to the list filed under the given key.
+     */
+    protected static void addEntry(Map map, String key, Entry e) {
+        if (key == null) {
+            key = "";
+        }
+        List l = (List)map.get(key);
+        if (l == null) {
+            l = new ArrayList(2);
+            map.put(key, l);
+        }
+        l.add(e);
+    }
+
+    /**
+     * Replaces the entry lists of the given map with arrays.
+     */
+    protected static void toArrays(Map map) {
+        Iterator it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry me = (Map.Entry)it.next();
+            me.setValue(toArray((List)me.getValue()));
+        }
+    }
+
+    /**
+     * Converts a list of entries to an array.
+     */
+    protected static Entry[] toArray(List l) {
+        if (l.isEmpty()) {
+            return EMPTY_ENTRIES;
+        }
+        return (Entry[])l.toArray(new Entry[l.size()]);
+    }
+
+    /**
+     * An indexed selector.
+     */
+    public static class Entry {
+
+        /**
+         * The position of the selector in the style-sheet.
+         */
+        protected int position;
+
+        /**
+         * The rule.
+         */
+        protected Rule rule;
+
+        /**
+         * The selector, or null for media and import rules.
+         */
+        protected ExtendedSelector selector;
+
+        /**
+         * Creates a new Entry.
+         */
+        public Entry(int position, Rule rule, ExtendedSelector selector) {
+            this.position = position;
+            this.rule = rule;
+            this.selector = selector;
+        }
+
+        /**
+         * Returns the rule.
+         */
+        public Rule getRule() {
+            return rule;
+        }
+
+        /**
+         * Returns the selector, or null if the rule is a media or
+         * import rule.
+         */
+        public ExtendedSelector getSelector() {
+            return selector;
+        }
+    }
+}
@@ -28,6 +28,11 @@ import org.w3c.css.sac.SACMediaList;
  */
 public class StyleSheet {
 
+    /**
+     * The minimum number of rules a style-sheet must have to be indexed.
+     */
+    public static final int MIN_INDEXED_RULES = 16;
+
     /**
      * The rules.
      */
@@ -58,6 +63,11 @@ public class StyleSheet {
      */
     protected String title;
 
+    /**
+     * The selector index, built on demand.
+     */
+    protected SelectorIndex selectorIndex;
+
     /**
      * Sets the media to use to compute the styles.
      */
@@ -129,9 +139,12 @@ public class StyleSheet {
     }
 
     /**
-     * Clears the content.
+     * Clears the content.  Like <code>append</code>, this method is
+     * synchronized with <code>getSelectorIndex</code>, so that an index
+     * is never built from, or kept for, rules being modified.
      */
-    public void clear() {
+    public synchronized void clear() {
+        selectorIndex = null;
         size = 0;
         rules = new Rule[10];
     }
@@ -139,7 +152,8 @@ public class StyleSheet {
     /**
      * Appends a rule to the stylesheet.
      */
-    public void append(Rule r) {
+    public synchronized void append(Rule r) {
+        selectorIndex = null;
         if (size == rules.length) {
             Rule[] t = new Rule[size * 2];
             System.arraycopy( rules, 0, t, 0, size );
@@ -148,6 +162,20 @@ public class StyleSheet {
         rules[size++] = r;
     }
 
+    /**
+     * Returns the index of the selectors of this style-sheet, or null
+     * if the style-sheet is too small to be worth indexing.
+     */
+    public synchronized SelectorIndex getSelectorIndex() {
+        if (size < MIN_INDEXED_RULES) {
+            return null;
+        }
+        if (selectorIndex == null) {
+            selectorIndex = new SelectorIndex(this);
+        }
+        return selectorIndex;
+    }
+
     /**
      * Returns a printable representation of this style-sheet.
      */
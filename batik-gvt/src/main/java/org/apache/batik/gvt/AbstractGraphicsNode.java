@@ -35,10 +35,12 @@ import java.util.Map;
 import javax.swing.event.EventListenerList;
 
 import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.FilterResultCache;
 import org.apache.batik.ext.awt.image.renderable.ClipRable;
 import org.apache.batik.ext.awt.image.renderable.Filter;
 import org.apache.batik.gvt.event.GraphicsNodeChangeEvent;
 import org.apache.batik.gvt.event.GraphicsNodeChangeListener;
+import org.apache.batik.gvt.filter.BackgroundRable8Bit;
 import org.apache.batik.gvt.filter.GraphicsNodeRable;
 import org.apache.batik.gvt.filter.GraphicsNodeRable8Bit;
 import org.apache.batik.gvt.filter.Mask;
@@ -546,8 +548,22 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
                 Rectangle2D filterBounds = filteredImage.getBounds2D();
                 g2d.clip(filterBounds);
 
-                org.apache.batik.ext.awt.image.GraphicsUtil.drawImage
-                    (g2d, filteredImage);
+                // Let the renderings of the filter be cached for this
+                // node, they only depend on its content unless the
+                // filter reads the background.
+                FilterResultCache frc = FilterResultCache.getInstance();
+                boolean cacheResults = (filter != null) && frc.isEnabled()
+                    && !readsBackground(filter);
+                Object prevOwner = null;
+                if (cacheResults)
+                    prevOwner = frc.enter(getWeakReference());
+                try {
+                    org.apache.batik.ext.awt.image.GraphicsUtil.drawImage
+                        (g2d, filteredImage);
+                } finally {
+                    if (cacheResults)
+                        frc.exit(prevOwner);
+                }
 
                 g2d.dispose();
                 g2d = baseG2d;
@@ -569,6 +585,23 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
         }
     }
 
+    /**
+     * Tells whether the given filter, or one of its sources, reads the
+     * background image.
+     */
+    protected static boolean readsBackground(Filter f) {
+        if (f instanceof BackgroundRable8Bit)
+            return true;
+        List sources = f.getSources();
+        if (sources == null)
+            return false;
+        for (Object source : sources) {
+            if ((source instanceof Filter) && readsBackground((Filter)source))
+                return true;
+        }
+        return false;
+    }
+
     /**
      * DEBUG: Trace filter chain
      */
@@ -764,27 +797,30 @@ public abstract class AbstractGraphicsNode implements GraphicsNode {
             // The painted region, before cliping, masking and compositing is
             // either the area painted by the primitive paint or the area
             // painted by the filter.
+            Rectangle2D b;
             if(filter == null){
-                bounds = getPrimitiveBounds();
+                b = getPrimitiveBounds();
             } else {
-                bounds = filter.getBounds2D();
+                b = filter.getBounds2D();
             }
             // Factor in the clipping area, if any
-            if(bounds != null){
+            if(b != null){
                 if (clip != null) {
                     Rectangle2D clipR = clip.getClipPath().getBounds2D();
-                    if (clipR.intersects(bounds))
-                        Rectangle2D.intersect(bounds, clipR, bounds);
+                    if (clipR.intersects(b))
+                        Rectangle2D.intersect(b, clipR, b);
                 }
                 // Factor in the mask, if any
                 if (mask != null) {
                     Rectangle2D maskR = mask.getBounds2D();
-                    if (maskR.intersects(bounds))
-                        Rectangle2D.intersect(bounds, maskR, bounds);
+                    if (maskR.intersects(b))
+                        Rectangle2D.intersect(b, maskR, b);
                 }
             }
 
-            bounds = normalizeRectangle(bounds);
+            // Only publish the final bounds, other threads may be
+            // painting this node.
+            bounds = normalizeRectangle(b);
 
             // Check If we should halt early.
             if (HaltingThread.hasBeenHalted()) {
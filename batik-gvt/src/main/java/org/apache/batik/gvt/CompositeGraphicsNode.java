@@ -25,12 +25,14 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.batik.util.HaltingThread;
 
@@ -80,6 +82,12 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
      */
     private volatile Rectangle2D primitiveBounds;
 
+    /**
+     * The number of times the geometry cache has been invalidated,
+     * used to drop bounds computed while it changed.
+     */
+    private volatile int geometryVersion;
+
     /**
      * Internal Cache: Sensitive bounds.
      */
@@ -90,6 +98,51 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
      */
     private Shape outline;
 
+    /**
+     * Internal Cache: the grid of the children's sensitive bounds,
+     * used for hit testing.
+     */
+    private volatile GraphicsNodeGrid sensitiveGrid;
+
+    /**
+     * Internal Cache: the grid of the children's bounds, used to skip
+     * the children outside the clip when painting.
+     */
+    private volatile GraphicsNodeGrid boundsGrid;
+
+    /**
+     * The number of children skipped by primitivePaint because they
+     * were outside the clip, summed over all the composite nodes.  It
+     * is striped so that threads painting at once do not contend on it.
+     */
+    protected static final LongAdder culledNodeCount = new LongAdder();
+
+    /**
+     * The number of children from which the spatial index is used.
+     */
+    protected static volatile int spatialIndexThreshold = 256;
+
+    /**
+     * Returns the number of children from which a composite node
+     * indexes its children by their bounds.
+     */
+    public static int getSpatialIndexThreshold() {
+        return spatialIndexThreshold;
+    }
+
+    /**
+     * Sets the number of children from which a composite node
+     * indexes its children by their bounds.  The index is used by
+     * hit testing and to skip the children outside the clip when
+     * painting.  It is rebuilt lazily after a change of geometry.
+     *
+     * @param n the minimum number of children, less than 1 to never
+     *        use the index.
+     */
+    public static void setSpatialIndexThreshold(int n) {
+        spatialIndexThreshold = n;
+    }
+
     /**
      * Constructs a new empty <code>CompositeGraphicsNode</code>.
      */
@@ -153,18 +206,94 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         // Thread.currentThread() is potentially expensive, so reuse my instance in hasBeenHalted()
         Thread currentThread = Thread.currentThread();
 
+        // Only paint the children which can intersect the clip.
+        Rectangle2D clipBounds = null;
+        BitSet visible = null;
+        Shape clip = g2d.getClip();
+        if (clip != null) {
+            clipBounds = clip.getBounds2D();
+            GraphicsNodeGrid grid = getBoundsGrid();
+            if (grid != null) {
+                visible = new BitSet(count);
+                if (!grid.query(clipBounds, visible)) {
+                    culledNodeCount.add(count);
+                    return;
+                }
+            }
+        }
+
         // Paint children
+        int culled = 0;
         for (int i=0; i < count; ++i) {
             if (HaltingThread.hasBeenHalted( currentThread ))
-                return;
+                break;
+
+            if (visible != null) {
+                int next = visible.nextSetBit(i);
+                if ((next < 0) || (next >= count)) {
+                    culled += count - i;
+                    break;
+                }
+                culled += next - i;
+                i = next;
+            }
 
             GraphicsNode node = children[i];
             if (node == null) {
                 continue;
             }
+            if ((clipBounds != null) && !intersectsClip(node, clipBounds)) {
+                culled++;
+                continue;
+            }
             node.paint(g2d);
 
         }
+        if (culled > 0)
+            culledNodeCount.add(culled);
+    }
+
+    /**
+     * Returns true if the bounds of <code>node</code>, in the user
+     * space of this node, may intersect <code>clipBounds</code>.  The
+     * test uses the bounds cached by the node, so it is much cheaper
+     * than setting up the graphics context to paint the node, which
+     * does the same test in the node's user space.
+     */
+    protected static boolean intersectsClip(GraphicsNode node,
+                                            Rectangle2D clipBounds) {
+        Rectangle2D b = node.getBounds();
+        if (b == null)
+            return false;
+        AffineTransform t = node.getTransform();
+        if (t != null) {
+            if ((t.getShearX() == 0) && (t.getShearY() == 0))
+                b = getTransformedBBox(b, t);
+            else
+                b = t.createTransformedShape(b).getBounds2D();
+        }
+        // The bounds may be rounded to float precision.
+        double pad = GraphicsNodeGrid.pad(b);
+        return ((b.getMaxX() + pad >= clipBounds.getMinX()) &&
+                (b.getMaxY() + pad >= clipBounds.getMinY()) &&
+                (b.getMinX() - pad <= clipBounds.getMaxX()) &&
+                (b.getMinY() - pad <= clipBounds.getMaxY()));
+    }
+
+    /**
+     * Returns the number of children which were not painted because
+     * they were outside the clip, by all the composite nodes of the
+     * process, since the last call to {@link #resetCulledNodeCount}.
+     */
+    public static long getCulledNodeCount() {
+        return culledNodeCount.sum();
+    }
+
+    /**
+     * Resets the count of culled children.
+     */
+    public static void resetCulledNodeCount() {
+        culledNodeCount.reset();
     }
 
     //
@@ -183,10 +312,71 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
      */
     protected void invalidateGeometryCache() {
         super.invalidateGeometryCache();
+        geometryVersion++;
         geometryBounds = null;
         primitiveBounds = null;
         sensitiveBounds = null;
         outline = null;
+        sensitiveGrid = null;
+        boundsGrid = null;
+    }
+
+    /**
+     * Returns the grid of the children's sensitive bounds, or null if
+     * this node has too few children to use one.
+     */
+    protected GraphicsNodeGrid getSensitiveGrid() {
+        if (!isSpatiallyIndexed())
+            return null;
+        GraphicsNodeGrid grid = sensitiveGrid;
+        if ((grid != null) && (grid.getSize() == count))
+            return grid;
+
+        int n = count;
+        Rectangle2D[] bounds = new Rectangle2D[n];
+        for (int i = 0; i < n; i++) {
+            GraphicsNode node = children[i];
+            if (node != null)
+                bounds[i] = node.getTransformedSensitiveBounds(IDENTITY);
+        }
+        if (HaltingThread.hasBeenHalted())
+            return null;
+        grid = new GraphicsNodeGrid(bounds, n);
+        sensitiveGrid = grid;
+        return grid;
+    }
+
+    /**
+     * Returns the grid of the children's bounds, or null if this node
+     * has too few children to use one.
+     */
+    protected GraphicsNodeGrid getBoundsGrid() {
+        if (!isSpatiallyIndexed())
+            return null;
+        GraphicsNodeGrid grid = boundsGrid;
+        if ((grid != null) && (grid.getSize() == count))
+            return grid;
+
+        int n = count;
+        Rectangle2D[] bounds = new Rectangle2D[n];
+        for (int i = 0; i < n; i++) {
+            GraphicsNode node = children[i];
+            if (node != null)
+                bounds[i] = node.getTransformedBounds(IDENTITY);
+        }
+        if (HaltingThread.hasBeenHalted())
+            return null;
+        grid = new GraphicsNodeGrid(bounds, n);
+        boundsGrid = grid;
+        return grid;
+    }
+
+    /**
+     * Returns true if this node has enough children to index them.
+     */
+    protected boolean isSpatiallyIndexed() {
+        int threshold = spatialIndexThreshold;
+        return (threshold > 0) && (count >= threshold);
     }
 
     /**
@@ -200,6 +390,7 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
 
         // Thread.currentThread() is potentially expensive, so reuse my instance in hasBeenHalted()
         Thread currentThread = Thread.currentThread();
+        int version = geometryVersion;
 
         int i=0;
         Rectangle2D bounds = null;
@@ -218,24 +409,30 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
             return null;
         }
 
-        primitiveBounds = bounds;
-
+        // The union is built before it is published, so a thread
+        // painting another tile never sees partial bounds.
         while (i < count) {
             Rectangle2D ctb = children[i++].getTransformedBounds(IDENTITY);
             if (ctb != null) {
-                if (primitiveBounds == null) {
-                    // another thread has set the primitive bounds to null,
-                    // need to recall this function
-                    return null;
-                } else {
-                    primitiveBounds.add(ctb);
-                }
+                bounds.add(ctb);
             }
 
             if (((i & 0x0F) == 0) && HaltingThread.hasBeenHalted( currentThread ))
                 break; // check every 16 children if we have been interrupted.
         }
 
+        // Publish the union only if nothing invalidated the cache
+        // since the walk started.  The version is checked again once
+        // published, as invalidateGeometryCache bumps it before it
+        // clears the bounds.
+        primitiveBounds = bounds;
+        if (version != geometryVersion) {
+            // another thread has set the primitive bounds to null,
+            // need to recall this function
+            primitiveBounds = null;
+            return null;
+        }
+
         // Check If we should halt early.
         if (HaltingThread.hasBeenHalted( currentThread )) {
             // The Thread has been halted.
@@ -460,9 +657,15 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
     public boolean contains(Point2D p) {
         Rectangle2D bounds = getSensitiveBounds();
         if (count > 0 && bounds != null && bounds.contains(p)) {
+            BitSet hits = queryHits(p);
             Point2D pt = null;
             Point2D cp = null; // Propagated to children
             for (int i=0; i < count; ++i) {
+                if (hits != null) {
+                    i = hits.nextSetBit(i);
+                    if ((i < 0) || (i >= count))
+                        break;
+                }
                 AffineTransform t = children[i].getInverseTransform();
                 if(t != null){
                     pt = t.transform(p, pt);
@@ -489,10 +692,16 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
     public GraphicsNode nodeHitAt(Point2D p) {
         Rectangle2D bounds = getSensitiveBounds();
         if (count > 0 && bounds != null && bounds.contains(p)) {
+            BitSet hits = queryHits(p);
             // Go backward because the children are in rendering order
             Point2D pt = null;
             Point2D cp = null; // Propagated to children
             for (int i=count-1; i >= 0; --i) {
+                if (hits != null) {
+                    i = hits.previousSetBit(i);
+                    if (i < 0)
+                        break;
+                }
                 AffineTransform t = children[i].getInverseTransform();
                 if(t != null){
                     pt = t.transform(p, pt);
@@ -510,6 +719,19 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         return null;
     }
 
+    /**
+     * Returns the indices of the children whose sensitive bounds may
+     * contain <code>p</code>, or null if the children are not indexed.
+     */
+    protected BitSet queryHits(Point2D p) {
+        GraphicsNodeGrid grid = getSensitiveGrid();
+        if (grid == null)
+            return null;
+        BitSet hits = new BitSet(count);
+        grid.query(new Rectangle2D.Double(p.getX(), p.getY(), 0, 0), hits);
+        return hits;
+    }
+
     /**
      * Returns the outline of this node.
      */
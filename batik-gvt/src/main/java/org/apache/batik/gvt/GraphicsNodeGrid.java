@@ -0,0 +1,258 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.geom.Rectangle2D;
+import java.util.BitSet;
+
+/**
+ * A uniform grid over the bounds of the children of a
+ * <code>CompositeGraphicsNode</code>.  Each cell lists, in increasing
+ * order, the indices of the children whose bounds overlap it, so a
+ * query only has to look at the children near a point or a rectangle
+ * instead of all of them.
+ *
+ * <p>The grid is immutable: it is built from the child bounds and is
+ * dropped by the composite node when its geometry changes.  The
+ * queries are conservative, they may return children which do not
+ * intersect the query area but never miss one which does.</p>
+ *
+ * @version $Id$
+ */
+public class GraphicsNodeGrid {
+
+    /**
+     * The maximum number of cells along each axis.
+     */
+    protected static final int MAX_CELLS = 256;
+
+    /**
+     * The area covered by the grid, the union of the indexed bounds.
+     */
+    protected double x0, y0, x1, y1;
+
+    /**
+     * The number of cells along the x and y axis.
+     */
+    protected int nx, ny;
+
+    /**
+     * The size of a cell.
+     */
+    protected double cw, ch;
+
+    /**
+     * The offset in <code>cellItems</code> of the first item of each
+     * cell.  The items of cell <code>c</code> are in
+     * <code>[cellStart[c], cellStart[c+1])</code>.
+     */
+    protected int[] cellStart;
+
+    /**
+     * The child indices of all the cells.
+     */
+    protected int[] cellItems;
+
+    /**
+     * The indices of the children covering a large part of the grid.
+     * They are returned by every query instead of being stored in
+     * many cells.
+     */
+    protected int[] large;
+
+    /**
+     * The number of indexed bounds.
+     */
+    protected int size;
+
+    /**
+     * Builds a grid over the given bounds.
+     *
+     * @param bounds the bounds of the children, in the coordinate
+     *        system of their parent.  Null entries are not indexed.
+     * @param n the number of entries of <code>bounds</code> to use.
+     */
+    public GraphicsNodeGrid(Rectangle2D[] bounds, int n) {
+        size = n;
+        x0 = y0 = Double.POSITIVE_INFINITY;
+        x1 = y1 = Double.NEGATIVE_INFINITY;
+        int valid = 0;
+        for (int i = 0; i < n; i++) {
+            Rectangle2D r = bounds[i];
+            if (!isIndexable(r)) {
+                bounds[i] = null;
+                continue;
+            }
+            valid++;
+            double eps = pad(r);
+            x0 = Math.min(x0, r.getMinX() - eps);
+            y0 = Math.min(y0, r.getMinY() - eps);
+            x1 = Math.max(x1, r.getMaxX() + eps);
+            y1 = Math.max(y1, r.getMaxY() + eps);
+        }
+
+        if (valid == 0) {
+            nx = ny = 0;
+            cellStart = new int[1];
+            cellItems = new int[0];
+            large     = new int[0];
+            return;
+        }
+
+        // About one child per cell, with square-ish cells.
+        double w = Math.max(x1 - x0, 1e-9);
+        double h = Math.max(y1 - y0, 1e-9);
+        double side = Math.sqrt(w * h / valid);
+        nx = clamp((int)Math.ceil(w / side));
+        ny = clamp((int)Math.ceil(h / side));
+        cw = w / nx;
+        ch = h / ny;
+
+        int ncells = nx * ny;
+        int largeCells = Math.max(16, ncells / 16);
+        int[] cx0 = new int[n];
+        int[] cy0 = new int[n];
+        int[] cx1 = new int[n];
+        int[] cy1 = new int[n];
+        int[] counts = new int[ncells + 1];
+        int nlarge = 0;
+        for (int i = 0; i < n; i++) {
+            Rectangle2D r = bounds[i];
+            if (r == null)
+                continue;
+            double eps = pad(r);
+            cx0[i] = cellX(r.getMinX() - eps);
+            cy0[i] = cellY(r.getMinY() - eps);
+            cx1[i] = cellX(r.getMaxX() + eps);
+            cy1[i] = cellY(r.getMaxY() + eps);
+            int cells = (cx1[i] - cx0[i] + 1) * (cy1[i] - cy0[i] + 1);
+            if (cells > largeCells) {
+                cx0[i] = -1;
+                nlarge++;
+                continue;
+            }
+            for (int y = cy0[i]; y <= cy1[i]; y++)
+                for (int x = cx0[i]; x <= cx1[i]; x++)
+                    counts[y * nx + x + 1]++;
+        }
+
+        cellStart = new int[ncells + 1];
+        for (int c = 0; c < ncells; c++)
+            cellStart[c + 1] = cellStart[c] + counts[c + 1];
+
+        int[] fill = new int[ncells];
+        System.arraycopy(cellStart, 0, fill, 0, ncells);
+        cellItems = new int[cellStart[ncells]];
+        large = new int[nlarge];
+        nlarge = 0;
+        for (int i = 0; i < n; i++) {
+            if (bounds[i] == null)
+                continue;
+            if (cx0[i] == -1) {
+                large[nlarge++] = i;
+                continue;
+            }
+            for (int y = cy0[i]; y <= cy1[i]; y++)
+                for (int x = cx0[i]; x <= cx1[i]; x++)
+                    cellItems[fill[y * nx + x]++] = i;
+        }
+    }
+
+    /**
+     * Returns the number of indexed bounds, including the null ones.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Sets, in <code>result</code>, the indices of the children whose
+     * bounds may intersect <code>r</code>, or contain it when it is
+     * empty.
+     *
+     * @return true if at least one index has been set.
+     */
+    public boolean query(Rectangle2D r, BitSet result) {
+        double rx0 = r.getMinX();
+        double ry0 = r.getMinY();
+        double rx1 = r.getMaxX();
+        double ry1 = r.getMaxY();
+        if ((nx == 0) ||
+            (rx1 < x0) || (ry1 < y0) || (rx0 > x1) || (ry0 > y1) ||
+            Double.isNaN(rx0) || Double.isNaN(ry0) ||
+            Double.isNaN(rx1) || Double.isNaN(ry1)) {
+            return false;
+        }
+
+        boolean found = false;
+        for (int i = 0; i < large.length; i++) {
+            result.set(large[i]);
+            found = true;
+        }
+
+        int qx0 = cellX(rx0);
+        int qy0 = cellY(ry0);
+        int qx1 = cellX(rx1);
+        int qy1 = cellY(ry1);
+        for (int y = qy0; y <= qy1; y++) {
+            for (int x = qx0; x <= qx1; x++) {
+                int c = y * nx + x;
+                for (int j = cellStart[c]; j < cellStart[c + 1]; j++) {
+                    result.set(cellItems[j]);
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns true if <code>r</code> can be placed in the grid.
+     */
+    protected static boolean isIndexable(Rectangle2D r) {
+        if (r == null)
+            return false;
+        double s = r.getX() + r.getY() + r.getWidth() + r.getHeight();
+        return !Double.isNaN(s) && !Double.isInfinite(s);
+    }
+
+    /**
+     * Returns the margin added around <code>r</code>.  The bounds are
+     * often computed in float precision, so they are padded to keep
+     * the queries conservative.
+     */
+    protected static double pad(Rectangle2D r) {
+        return 1e-6 * (Math.abs(r.getX()) + Math.abs(r.getY())
+                       + r.getWidth() + r.getHeight());
+    }
+
+    protected int cellX(double x) {
+        int c = (int)Math.floor((x - x0) / cw);
+        return (c < 0) ? 0 : ((c >= nx) ? nx - 1 : c);
+    }
+
+    protected int cellY(double y) {
+        int c = (int)Math.floor((y - y0) / ch);
+        return (c < 0) ? 0 : ((c >= ny) ? ny - 1 : c);
+    }
+
+    private static int clamp(int n) {
+        return (n < 1) ? 1 : ((n > MAX_CELLS) ? MAX_CELLS : n);
+    }
+}
@@ -30,6 +30,7 @@ import java.awt.image.Raster;
 import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.renderable.Filter;
 import org.apache.batik.ext.awt.image.renderable.PadRable8Bit;
+import org.apache.batik.ext.awt.image.rendered.AbstractTiledRed;
 
 /**
  * The PatternPaint class provides a way to fill a Shape with a a pattern
@@ -70,7 +71,7 @@ public class PatternPaint implements Paint {
      */
     private boolean overflow;
 
-    private PatternPaintContext lastContext;
+    private volatile PatternPaintContext lastContext;
 
     /**
      * Constructs a new <code>PatternPaint</code>.
@@ -162,33 +163,55 @@ public class PatternPaint implements Paint {
             xform.concatenate(patternTransform);
         }
 
-        if ((lastContext!= null) &&
-            lastContext.getColorModel().equals(cm)) {
+        // When the tiles of an image are computed one by one, possibly
+        // by several threads, the shared context is created at a device
+        // position which does not depend on the tile being rendered,
+        // so the pattern is the same whatever the order of the tiles.
+        int dx = 0;
+        int dy = 0;
+        if (AbstractTiledRed.isComputeByTiles()) {
+            dx = (int)Math.floor(xform.getTranslateX());
+            dy = (int)Math.floor(xform.getTranslateY());
+            if ((dx != 0) || (dy != 0)) {
+                AffineTransform at =
+                    AffineTransform.getTranslateInstance(-dx, -dy);
+                at.concatenate(xform);
+                xform = at;
+            }
+        }
+
+        // The paint may be used by several render threads at once.
+        PatternPaintContext ppc = lastContext;
+        if ((ppc != null) &&
+            ppc.getColorModel().equals(cm)) {
 
             double[] p = new double[6];
             double[] q = new double[6];
             xform.getMatrix(p);
-            lastContext.getUsr2Dev().getMatrix(q);
+            ppc.getUsr2Dev().getMatrix(q);
             if ((p[0] == q[0]) && (p[1] == q[1]) &&
                 (p[2] == q[2]) && (p[3] == q[3])) {
-                if ((p[4] == q[4]) && (p[5] == q[5]))
-                    return lastContext;
+                int xShift = (int)Math.floor(q[4]-p[4]+0.5) - dx;
+                int yShift = (int)Math.floor(q[5]-p[5]+0.5) - dy;
+                if ((xShift == 0) && (yShift == 0))
+                    return ppc;
                 else
                     return new PatternPaintContextWrapper
-                        (lastContext,
-                         (int)(q[4]-p[4]+0.5),
-                         (int)(q[5]-p[5]+0.5));
+                        (ppc, xShift, yShift);
             }
         }
         // System.out.println("CreateContext Called: " + this);
         // System.out.println("CM : " + cm);
         // System.out.println("xForm : " + xform);
 
-        lastContext = new PatternPaintContext(cm, xform,
-                                       hints, tile,
-                                       patternRegion,
-                                       overflow);
-        return lastContext;
+        ppc = new PatternPaintContext(cm, xform,
+                                      hints, tile,
+                                      patternRegion,
+                                      overflow);
+        lastContext = ppc;
+        if ((dx != 0) || (dy != 0))
+            return new PatternPaintContextWrapper(ppc, -dx, -dy);
+        return ppc;
     }
 
     /**
@@ -56,6 +56,13 @@ public class PatternPaintContext implements PaintContext {
      */
     private WritableRaster raster;
 
+    /**
+     * The thread the working raster belongs to.  The context may be
+     * shared by the threads rendering the tiles of an image; the
+     * other threads use rasters of their own.
+     */
+    private Thread rasterThread;
+
     /**
      * Tile
      */
@@ -143,7 +150,7 @@ public class PatternPaintContext implements PaintContext {
         }
     }
 
-    public void dispose(){
+    public synchronized void dispose(){
         raster = null;
     }
 
@@ -155,10 +162,24 @@ public class PatternPaintContext implements PaintContext {
 
         // System.out.println("GetRaster: [" + x + ", " + y + ", " 
         //                    + width + ", " + height + "]");
-        if ((raster == null)             ||
-            (raster.getWidth() < width)  ||
-            (raster.getHeight() < height)) {
-            raster = rasterCM.createCompatibleWritableRaster(width, height);
+        WritableRaster raster;
+        synchronized (this) {
+            if (rasterThread == null)
+                rasterThread = Thread.currentThread();
+            if (rasterThread == Thread.currentThread()) {
+                if ((this.raster == null)             ||
+                    (this.raster.getWidth() < width)  ||
+                    (this.raster.getHeight() < height)) {
+                    this.raster = rasterCM.createCompatibleWritableRaster
+                        (width, height);
+                }
+                raster = this.raster;
+            } else {
+                // The context is shared with another thread, which
+                // owns the reusable raster.
+                raster = rasterCM.createCompatibleWritableRaster
+                    (width, height);
+            }
         }
 
         WritableRaster wr
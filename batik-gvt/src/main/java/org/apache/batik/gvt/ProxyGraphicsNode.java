@@ -72,12 +72,14 @@ public class ProxyGraphicsNode extends AbstractGraphicsNode {
 
     /**
      * Returns the bounds of the area covered by this node's primitive paint.
+     * The source is painted with its own transform, so its bounds are
+     * returned in this node's user space.
      */
     public Rectangle2D getPrimitiveBounds() {
         if (source == null) 
             return null;
 
-        return source.getBounds();
+        return source.getTransformedBounds(IDENTITY);
     }
 
     /**
@@ -109,7 +111,7 @@ public class ProxyGraphicsNode extends AbstractGraphicsNode {
         if (source == null) 
             return null;
 
-        return source.getGeometryBounds();
+        return source.getTransformedGeometryBounds(IDENTITY);
     }
 
     /**
@@ -144,7 +146,7 @@ public class ProxyGraphicsNode extends AbstractGraphicsNode {
         if (source == null) 
             return null;
 
-        return source.getSensitiveBounds();
+        return source.getTransformedSensitiveBounds(IDENTITY);
     }
 
     /**
@@ -32,6 +32,7 @@ import java.util.Set;
 
 import org.apache.batik.gvt.event.GraphicsNodeChangeAdapter;
 import org.apache.batik.gvt.event.GraphicsNodeChangeEvent;
+import org.apache.batik.ext.awt.image.FilterResultCache;
 import org.apache.batik.ext.awt.image.renderable.Filter;
 
 /**
@@ -229,6 +230,7 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
     public void changeStarted(GraphicsNodeChangeEvent gnce) {
         // System.out.println("A node has changed for: " + this);
         GraphicsNode gn = gnce.getGraphicsNode();
+        invalidateFilterResults(gn);
         WeakReference gnWRef = gn.getWeakReference();
 
         boolean doPut = false;
@@ -282,6 +284,27 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
         fromBounds.put(gnWRef, r2d);
     }
 
+    /**
+     * Receives notification of the end of a change to a GraphicsNode.
+     * @param gnce The event object describing the GraphicsNode change.
+     */
+    public void changeCompleted(GraphicsNodeChangeEvent gnce) {
+        invalidateFilterResults(gnce.getGraphicsNode());
+    }
+
+    /**
+     * Drops the cached filter renderings of gn and of its ancestors,
+     * which all include the content of gn.
+     */
+    protected void invalidateFilterResults(GraphicsNode gn) {
+        FilterResultCache frc = FilterResultCache.getInstance();
+        if (!frc.isEnabled())
+            return;
+        for (; gn != null; gn = gn.getParent())
+            if (gn.getFilter() != null)
+                frc.invalidate(gn.getWeakReference());
+    }
+
     static class ChngSrcRect extends Rectangle2D.Float {
         ChngSrcRect(Rectangle2D r2d) {
             super((float)r2d.getX(), (float)r2d.getY(),
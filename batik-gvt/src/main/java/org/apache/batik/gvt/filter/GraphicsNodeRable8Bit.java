@@ -32,6 +32,7 @@ import org.apache.batik.ext.awt.image.SVGComposite;
 import org.apache.batik.ext.awt.image.renderable.AbstractRable;
 import org.apache.batik.ext.awt.image.renderable.Filter;
 import org.apache.batik.ext.awt.image.renderable.PaintRable;
+import org.apache.batik.ext.awt.image.rendered.AbstractTiledRed;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.ext.awt.image.rendered.TranslateRed;
 import org.apache.batik.gvt.GraphicsNode;
@@ -101,7 +102,7 @@ public class GraphicsNodeRable8Bit
     /**
      * Clear any cached Red.
      */
-    public void clearCache() {
+    public synchronized void clearCache() {
         cachedRed     = null;
         cachedUsr2dev = null;
         cachedGn2dev  = null;
@@ -240,10 +241,34 @@ public class GraphicsNodeRable8Bit
      * @param renderContext the RenderContext to use to produce the rendering.
      * @return a RenderedImage containing the rendered data.
      */
-    public RenderedImage createRendering(RenderContext renderContext){
+    public synchronized RenderedImage createRendering
+        (RenderContext renderContext){
         // Get user space to device space transform
         AffineTransform usr2dev = renderContext.getTransform();
 
+        // When the tiles of an image are computed one by one, possibly
+        // by several threads, the cached rendering is made at a device
+        // position which does not depend on the tile being rendered,
+        // so the result is the same whatever the order of the tiles.
+        boolean byTiles = AbstractTiledRed.isComputeByTiles();
+        if (byTiles && (usr2dev != null)) {
+            int dx = (int)Math.floor(usr2dev.getTranslateX());
+            int dy = (int)Math.floor(usr2dev.getTranslateY());
+            if ((dx != 0) || (dy != 0)) {
+                AffineTransform at =
+                    AffineTransform.getTranslateInstance(-dx, -dy);
+                at.concatenate(usr2dev);
+                CachableRed cr = (CachableRed)createRendering
+                    (new RenderContext(at,
+                                       renderContext.getAreaOfInterest(),
+                                       renderContext.getRenderingHints()));
+                if (cr == null)
+                    return null;
+                return new TranslateRed(cr, cr.getMinX()+dx,
+                                        cr.getMinY()+dy);
+            }
+        }
+
         AffineTransform gn2dev;
         if (usr2dev == null) {
             usr2dev = new AffineTransform();
@@ -276,6 +301,15 @@ public class GraphicsNodeRable8Bit
 
             // System.out.println("Using Cached Red!!! " + 
             //                    deltaX + "x" + deltaY);
+            if (byTiles) {
+                // The positions of the tiles differ by whole pixels,
+                // up to rounding errors.
+                if (Math.abs(deltaX - Math.rint(deltaX)) < 1e-6)
+                    deltaX = Math.rint(deltaX);
+                if (Math.abs(deltaY - Math.rint(deltaY)) < 1e-6)
+                    deltaY = Math.rint(deltaY);
+            }
+
             if ((deltaX ==0) && (deltaY == 0))
                 // Actually no translation
                 return cachedRed;
@@ -85,6 +85,14 @@ public class AWTFontFamily implements GVTFontFamily {
         return fontFace;
     }
 
+    /**
+     * Returns the AWT font this family was created with, or null if it
+     * is looked up by family name.
+     */
+    public Font getFont() {
+        return font;
+    }
+
     /**
      * Derives a GVTFont object of the correct size.
      *
@@ -293,8 +293,10 @@ public class AWTGVTFont implements GVTFont {
                                                      int glyphIndex,
                                                      Point2D glyphPos) {
 
-        AWTGlyphGeometryCache glyphCache =
-            (AWTGlyphGeometryCache)fontCache.get(font.awtFont);
+        AWTGlyphGeometryCache glyphCache;
+        synchronized (AWTGVTFont.class) {
+            glyphCache = (AWTGlyphGeometryCache)fontCache.get(font.awtFont);
+        }
 
         AWTGlyphGeometryCache.Value v = glyphCache.get(c);
         if (v == null) {
@@ -319,17 +321,17 @@ public class AWTGVTFont implements GVTFont {
 
     static Map fontCache = new HashMap(11);
 
-    static void initializeFontCache(Font awtFont) {
+    static synchronized void initializeFontCache(Font awtFont) {
         if (!fontCache.containsKey(awtFont)) {
             fontCache.put(awtFont, new AWTGlyphGeometryCache());
         }
     }
 
-    static void putAWTGVTFont(AWTGVTFont font) {
+    static synchronized void putAWTGVTFont(AWTGVTFont font) {
         fontCache.put(font.awtFont, font);
     }
 
-    static AWTGVTFont getAWTGVTFont(Font awtFont) {
+    static synchronized AWTGVTFont getAWTGVTFont(Font awtFont) {
         return (AWTGVTFont)fontCache.get(awtFont);
     }
 
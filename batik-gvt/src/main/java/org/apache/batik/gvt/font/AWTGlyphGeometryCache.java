@@ -38,21 +38,21 @@ public class AWTGlyphGeometryCache {
      * Gets the value of a variable
      * @return the value or null
      */
-    public Value get(char c) {
+    public synchronized Value get(char c) {
         return (Value) table.get(c);
     }
 
     /**
      * Sets a new value for the given variable
      */
-    public void put(char c, Value value) {
+    public synchronized void put(char c, Value value) {
         table.put(c, value);
     }
 
     /**
      * Clears the table.
      */
-    public void clear() {
+    public synchronized void clear() {
         table.clear();
     }
 
@@ -33,12 +33,18 @@ import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.awt.image.renderable.RenderContext;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.batik.ext.awt.geom.RectListManager;
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.rendered.AbstractTiledRed;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.ext.awt.image.rendered.PadRed;
 import org.apache.batik.ext.awt.image.rendered.TileCacheRed;
@@ -89,6 +95,19 @@ public class StaticRenderer implements ImageRenderer {
     protected RenderingHints renderingHints;
     protected AffineTransform usr2dev;
 
+    /**
+     * The number of threads rendering the offscreen.
+     */
+    protected int threadCount = 1;
+
+    /**
+     * The pool rendering the tiles of the offscreen when more than
+     * one thread is used.  It is shared by all the renderers and is
+     * never shut down: each rendering limits itself to its own
+     * thread count.
+     */
+    protected static ForkJoinPool renderPool;
+
     protected static RenderingHints defaultRenderingHints;
     static {
         defaultRenderingHints = new RenderingHints(null);
@@ -254,6 +273,53 @@ public class StaticRenderer implements ImageRenderer {
     }
 
 
+    /**
+     * Returns the number of threads rendering the offscreen.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads rendering the offscreen.  With more
+     * than one thread, the offscreen is split along the tile grid of
+     * the rendering and the pieces are computed on a fork-join pool.
+     * The tiles are then always computed one by one (see {@link
+     * AbstractTiledRed#setComputeByTiles}), so the result does not
+     * depend on the number of threads or on the order in which they
+     * run.  It is not identical to the single thread rendering
+     * though: each tile is painted with its own device origin, so
+     * anti-aliased edges, stroke normalization and clipped paths
+     * may round differently near the tile seams.  This mode is
+     * therefore only used when asked for.
+     *
+     * The threads come from a pool shared by all the renderers, so
+     * the actual parallelism is also bounded by the number of
+     * available processors.
+     *
+     * @param threadCount the number of threads, 1 to render on the
+     *        calling thread.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException
+                ("Invalid thread count: " + threadCount);
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Returns the pool rendering the tiles, creating it on first use
+     * with one thread per available processor.
+     */
+    protected static synchronized ForkJoinPool getRenderPool() {
+        if (renderPool == null) {
+            renderPool = new ForkJoinPool
+                (Runtime.getRuntime().availableProcessors());
+        }
+        return renderPool;
+    }
+
     /**
      * Update the size of the image to be returned by getOffScreen.
      * Note that this change will not be reflected by calls to
@@ -390,7 +456,7 @@ public class StaticRenderer implements ImageRenderer {
 
         // Ensure only one thread works on baseRaster at a time...
         synchronized (syncRaster) {
-            cr.copyData(copyRaster);
+            copyDataByTiles(cr, copyRaster);
         }
 
         if (!HaltingThread.hasBeenHalted()) {
@@ -409,6 +475,144 @@ public class StaticRenderer implements ImageRenderer {
         }
     }
 
+    /**
+     * Copies <code>cr</code> into <code>wr</code> tile by tile.
+     * <code>wr</code> is split in tile aligned rectangles of the
+     * rendering, so that the threads never compute the same tile, and
+     * at most <code>threadCount</code> tasks of the render pool render
+     * these pieces concurrently.  With a single thread the pieces are
+     * rendered by the calling thread, in the same way, so that the
+     * image does not depend on the number of threads.
+     */
+    protected void copyDataByTiles(CachableRed cr, WritableRaster wr) {
+        Rectangle r = wr.getBounds().intersection(cr.getBounds());
+        if (r.isEmpty())
+            return;
+
+        int tw  = cr.getTileWidth();
+        int th  = cr.getTileHeight();
+        int tgx = cr.getTileGridXOffset();
+        int tgy = cr.getTileGridYOffset();
+        int tx0 = floorDiv(r.x - tgx, tw);
+        int ty0 = floorDiv(r.y - tgy, th);
+        int tx1 = floorDiv(r.x + r.width  - 1 - tgx, tw);
+        int ty1 = floorDiv(r.y + r.height - 1 - tgy, th);
+
+        // A few pieces per thread balance the load without painting
+        // the tree once per tile.
+        int tiles = (tx1-tx0+1)*(ty1-ty0+1);
+        int grain = Math.max(1, tiles/(threadCount*4));
+        List pieces = new ArrayList();
+        splitTiles(cr, r, tx0, ty0, tx1, ty1, grain, pieces);
+
+        AtomicInteger next = new AtomicInteger();
+        Thread caller = Thread.currentThread();
+        if (threadCount == 1) {
+            new TileRenderTask(cr, wr, pieces, next, caller).compute();
+            return;
+        }
+        int n = Math.min(threadCount, pieces.size());
+        final TileRenderTask[] tasks = new TileRenderTask[n];
+        for (int i = 0; i < n; i++) {
+            tasks[i] = new TileRenderTask(cr, wr, pieces, next, caller);
+        }
+        getRenderPool().invoke(new RecursiveAction() {
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+    }
+
+    /**
+     * Splits a rectangle of tiles in halves until they hold no more
+     * than <code>grain</code> tiles, and adds the part of
+     * <code>bounds</code> covered by each of them to
+     * <code>pieces</code>.
+     */
+    protected static void splitTiles(CachableRed cr, Rectangle bounds,
+                                     int tx0, int ty0, int tx1, int ty1,
+                                     int grain, List pieces) {
+        int xtiles = tx1-tx0+1;
+        int ytiles = ty1-ty0+1;
+        if (xtiles*ytiles <= grain) {
+            int tw = cr.getTileWidth();
+            int th = cr.getTileHeight();
+            Rectangle r = new Rectangle
+                (tx0*tw + cr.getTileGridXOffset(),
+                 ty0*th + cr.getTileGridYOffset(),
+                 xtiles*tw, ytiles*th);
+            r = r.intersection(bounds);
+            if (!r.isEmpty())
+                pieces.add(r);
+            return;
+        }
+
+        if (ytiles >= xtiles) {
+            int ty = ty0 + ytiles/2;
+            splitTiles(cr, bounds, tx0, ty0, tx1, ty-1, grain, pieces);
+            splitTiles(cr, bounds, tx0, ty, tx1, ty1, grain, pieces);
+        } else {
+            int tx = tx0 + xtiles/2;
+            splitTiles(cr, bounds, tx0, ty0, tx-1, ty1, grain, pieces);
+            splitTiles(cr, bounds, tx, ty0, tx1, ty1, grain, pieces);
+        }
+    }
+
+    private static int floorDiv(int a, int b) {
+        return (a >= 0) ? a/b : (a-b+1)/b;
+    }
+
+    /**
+     * Renders pieces of the offscreen taken in turn from a list
+     * shared with the other tasks of the same rendering, until none
+     * is left.
+     */
+    protected static class TileRenderTask extends RecursiveAction {
+
+        protected CachableRed cr;
+        protected WritableRaster wr;
+        protected List pieces;
+
+        /**
+         * The index of the next piece to render.
+         */
+        protected AtomicInteger next;
+
+        /**
+         * The thread which requested the rendering, checked for
+         * halting before each piece.
+         */
+        protected Thread caller;
+
+        public TileRenderTask(CachableRed cr, WritableRaster wr,
+                              List pieces, AtomicInteger next,
+                              Thread caller) {
+            this.cr     = cr;
+            this.wr     = wr;
+            this.pieces = pieces;
+            this.next   = next;
+            this.caller = caller;
+        }
+
+        protected void compute() {
+            boolean byTiles = AbstractTiledRed.isComputeByTiles();
+            AbstractTiledRed.setComputeByTiles(true);
+            try {
+                int i;
+                while ((i = next.getAndIncrement()) < pieces.size()) {
+                    if (HaltingThread.hasBeenHalted(caller))
+                        return;
+                    Rectangle r = (Rectangle)pieces.get(i);
+                    cr.copyData(wr.createWritableChild
+                                (r.x, r.y, r.width, r.height,
+                                 r.x, r.y, null));
+                }
+            } finally {
+                AbstractTiledRed.setComputeByTiles(byTiles);
+            }
+        }
+    }
+
     /**
      * Flush any cached image data.
      */
@@ -27,7 +27,6 @@ import java.util.MissingResourceException;
 import org.apache.batik.i18n.LocalizableSupport;
 import org.apache.batik.util.io.NormalizingReader;
 import org.apache.batik.util.io.StreamNormalizingReader;
-import org.apache.batik.util.io.StringNormalizingReader;
 
 /**
  * This class is the superclass of all parsers. It provides localization
@@ -57,10 +56,59 @@ public abstract class AbstractParser implements Parser {
                                AbstractParser.class.getClassLoader());
 
     /**
-     * The normalizing reader.
+     * The normalizing reader, when parsing a stream.
      */
     protected NormalizingReader reader;
 
+    /**
+     * The characters being parsed, when parsing a string or a character
+     * array, or null when parsing a stream.  They are scanned directly by
+     * {@link #read()}.
+     */
+    protected char[] buffer;
+
+    /**
+     * The index of the next character in the buffer.
+     */
+    protected int position;
+
+    /**
+     * The index following the last character to parse in the buffer.
+     */
+    protected int count;
+
+    /**
+     * The current line in the buffer.
+     */
+    protected int line;
+
+    /**
+     * The index in the buffer of the first character of the current line.
+     */
+    protected int lineStart;
+
+    /**
+     * A buffer kept to parse the next strings, or null.
+     */
+    protected char[] stringBuffer;
+
+    /**
+     * The reader over the buffer, for subclasses using the reader
+     * directly, or null.
+     */
+    protected NormalizingReader bufferReader;
+
+    /**
+     * The maximum length of the strings copied to a buffer kept across
+     * parses.  The buffers of longer strings are released once parsed.
+     */
+    protected static final int MAX_KEPT_BUFFER_LENGTH = 4096;
+
+    /**
+     * The buffer left once characters are parsed.
+     */
+    protected static final char[] NO_CHARS = new char[0];
+
     /**
      * The current character.
      */
@@ -117,6 +165,7 @@ public abstract class AbstractParser implements Parser {
      */
     public void parse(Reader r) throws ParseException {
         try {
+            buffer = null;
             reader = new StreamNormalizingReader(r);
             doParse();
         } catch (IOException e) {
@@ -132,6 +181,7 @@ public abstract class AbstractParser implements Parser {
      */
     public void parse(InputStream is, String enc) throws ParseException {
         try {
+            buffer = null;
             reader = new StreamNormalizingReader(is, enc);
             doParse();
         } catch (IOException e) {
@@ -142,16 +192,113 @@ public abstract class AbstractParser implements Parser {
     }
 
     /**
-     * Parses the given string.
+     * Parses the given string.  Its characters are copied to a buffer
+     * which is kept for the next strings when they are short, so a
+     * parser reused for many attribute values does not allocate.
      */
     public void parse(String s) throws ParseException {
+        int len = s.length();
+        char[] buf = stringBuffer;
+        if ((buf == null) || (buf.length < len)) {
+            buf = new char[len];
+            if (len <= MAX_KEPT_BUFFER_LENGTH) {
+                stringBuffer = buf;
+            }
+        }
+        s.getChars(0, len, buf, 0);
+        parse(buf, 0, len);
+    }
+
+    /**
+     * Parses the given characters.  The array must not be modified
+     * while it is parsed.
+     * @param buf the array holding the characters
+     * @param off the index of the first character to parse
+     * @param len the number of characters to parse
+     */
+    public void parse(char[] buf, int off, int len) throws ParseException {
+        if (bufferReader == null) {
+            bufferReader = new BufferReader();
+        }
+        reader = bufferReader;
+        buffer = buf;
+        position = off;
+        count = off + len;
+        line = 1;
+        lineStart = off;
         try {
-            reader = new StringNormalizingReader(s);
             doParse();
         } catch (IOException e) {
             errorHandler.error
                 (new ParseException
                  (createErrorMessage("io.exception", null), e));
+        } finally {
+            // Release the characters, the reader stays at their end.
+            buffer = NO_CHARS;
+            position = count = lineStart = 0;
+        }
+    }
+
+    /**
+     * Returns the next character to parse, or -1 at the end of the input.
+     * Line terminators are normalized to '\n'.
+     */
+    protected final int read() throws IOException {
+        if (buffer == null) {
+            return reader.read();
+        }
+        if (position == count) {
+            return -1;
+        }
+        int c = buffer[position++];
+        if (c <= 13) {
+            switch (c) {
+            case 13:
+                if ((position < count) && (buffer[position] == 10)) {
+                    position++;
+                }
+                c = 10;
+                // fallthrough
+            case 10:
+                line++;
+                lineStart = position;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Returns the line of the last character read.
+     */
+    protected int getLine() {
+        return (buffer == null) ? reader.getLine() : line;
+    }
+
+    /**
+     * Returns the column of the last character read.
+     */
+    protected int getColumn() {
+        return (buffer == null) ? reader.getColumn() : position - lineStart;
+    }
+
+    /**
+     * The reader giving the characters of the buffer.
+     */
+    protected class BufferReader extends NormalizingReader {
+
+        public int read() throws IOException {
+            return AbstractParser.this.read();
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return position - lineStart;
+        }
+
+        public void close() throws IOException {
         }
     }
 
@@ -170,8 +317,8 @@ public abstract class AbstractParser implements Parser {
     protected void reportError(String key, Object[] args)
         throws ParseException {
         errorHandler.error(new ParseException(createErrorMessage(key, args),
-                                              reader.getLine(),
-                                              reader.getColumn()));
+                                              getLine(),
+                                              getColumn()));
     }
 
     /**
@@ -234,7 +381,7 @@ public abstract class AbstractParser implements Parser {
             case 0x0D:
             case 0x0A:
             }
-            current = reader.read();
+            current = read();
         }
     }
 
@@ -251,11 +398,11 @@ public abstract class AbstractParser implements Parser {
             case 0xD:
             case 0xA:
             }
-            current = reader.read();
+            current = read();
         }
         if (current == ',') {
             wsp2: for (;;) {
-                switch (current = reader.read()) {
+                switch (current = read()) {
                 default:
                     break wsp2;
                 case 0x20:
@@ -62,7 +62,7 @@ public class AngleParser extends NumberParser {
     protected void doParse() throws ParseException, IOException {
         angleHandler.startAngle();
 
-        current = reader.read();
+        current = read();
         skipSpaces();
 
         try {
@@ -78,51 +78,51 @@ public class AngleParser extends NumberParser {
 
                 switch (current) {
                 case 'd':
-                    current = reader.read();
+                    current = read();
                     if (current != 'e') {
                         reportCharacterExpectedError('e', current );
                         break;
                     }
-                    current = reader.read();
+                    current = read();
                     if (current != 'g') {
                         reportCharacterExpectedError('g', current );
                         break;
                     }
                     angleHandler.deg();
-                    current = reader.read();
+                    current = read();
                     break;
                 case 'g':
-                    current = reader.read();
+                    current = read();
                     if (current != 'r') {
                         reportCharacterExpectedError('r', current );
                         break;
                     }
-                    current = reader.read();
+                    current = read();
                     if (current != 'a') {
                         reportCharacterExpectedError('a', current );
                         break;
                     }
-                    current = reader.read();
+                    current = read();
                     if (current != 'd') {
                         reportCharacterExpectedError('d', current );
                         break;
                     }
                     angleHandler.grad();
-                    current = reader.read();
+                    current = read();
                     break;
                 case 'r':
-                    current = reader.read();
+                    current = read();
                     if (current != 'a') {
                         reportCharacterExpectedError('a', current );
                         break;
                     }
-                    current = reader.read();
+                    current = read();
                     if (current != 'd') {
                         reportCharacterExpectedError('d', current );
                         break;
                     }
                     angleHandler.rad();
-                    current = reader.read();
+                    current = read();
                     break;
                 default:
                     reportUnexpectedCharacterError( current );
@@ -47,7 +47,7 @@ public abstract class NumberParser extends AbstractParser {
             mantPos = false;
             // fallthrough
         case '+':
-            current = reader.read();
+            current = read();
         }
 
         m1: switch (current) {
@@ -61,7 +61,7 @@ public abstract class NumberParser extends AbstractParser {
         case '0':
             mantRead = true;
             l: for (;;) {
-                current = reader.read();
+                current = read();
                 switch (current) {
                 case '1': case '2': case '3': case '4':
                 case '5': case '6': case '7': case '8': case '9':
@@ -84,7 +84,7 @@ public abstract class NumberParser extends AbstractParser {
                 } else {
                     expAdj++;
                 }
-                current = reader.read();
+                current = read();
                 switch (current) {
                 default:
                     break l;
@@ -95,7 +95,7 @@ public abstract class NumberParser extends AbstractParser {
         }
 
         if (current == '.') {
-            current = reader.read();
+            current = read();
             m2: switch (current) {
             default:
             case 'e': case 'E':
@@ -108,7 +108,7 @@ public abstract class NumberParser extends AbstractParser {
             case '0':
                 if (mantDig == 0) {
                     l: for (;;) {
-                        current = reader.read();
+                        current = read();
                         expAdj--;
                         switch (current) {
                         case '1': case '2': case '3': case '4':
@@ -131,7 +131,7 @@ public abstract class NumberParser extends AbstractParser {
                         mant = mant * 10 + (current - '0');
                         expAdj--;
                     }
-                    current = reader.read();
+                    current = read();
                     switch (current) {
                     default:
                         break l;
@@ -144,7 +144,7 @@ public abstract class NumberParser extends AbstractParser {
 
         switch (current) {
         case 'e': case 'E':
-            current = reader.read();
+            current = read();
             switch (current) {
             default:
                 reportUnexpectedCharacterError( current );
@@ -152,7 +152,7 @@ public abstract class NumberParser extends AbstractParser {
             case '-':
                 expPos = false;
             case '+':
-                current = reader.read();
+                current = read();
                 switch (current) {
                 default:
                     reportUnexpectedCharacterError( current );
@@ -167,7 +167,7 @@ public abstract class NumberParser extends AbstractParser {
             en: switch (current) {
             case '0':
                 l: for (;;) {
-                    current = reader.read();
+                    current = read();
                     switch (current) {
                     case '1': case '2': case '3': case '4':
                     case '5': case '6': case '7': case '8': case '9':
@@ -185,7 +185,7 @@ public abstract class NumberParser extends AbstractParser {
                         expDig++;
                         exp = exp * 10 + (current - '0');
                     }
-                    current = reader.read();
+                    current = read();
                     switch (current) {
                     default:
                         break l;
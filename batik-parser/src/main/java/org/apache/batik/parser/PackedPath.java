@@ -0,0 +1,258 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.parser;
+
+import org.w3c.dom.svg.SVGPathSeg;
+
+/**
+ * An immutable, compact representation of parsed path data: one byte per
+ * path segment, holding its <code>SVGPathSeg.PATHSEG_*</code> type, and a
+ * packed array of the segment parameters, in the order they appear in the
+ * path data.  The flags of the arc segments are stored as 0 or 1.
+ *
+ * <p>Instances can be shared freely.  The same instance can be replayed
+ * into any {@link PathHandler}, to build the DOM path segment lists, and
+ * be rendered directly through {@link PackedPathShape}.</p>
+ *
+ * @version $Id$
+ */
+public class PackedPath {
+
+    /**
+     * The path without segments.
+     */
+    public static final PackedPath EMPTY =
+        new PackedPath(new byte[0], new float[0]);
+
+    /**
+     * The segment types.
+     */
+    protected final byte[] commands;
+
+    /**
+     * The segment parameters.
+     */
+    protected final float[] parameters;
+
+    /**
+     * Creates a new PackedPath from arrays of path commands and parameters,
+     * as returned by {@link PathArrayProducer}.  The arrays are copied.
+     * @throws IllegalArgumentException if a command is unknown or the
+     *         parameters do not match the commands.
+     */
+    public PackedPath(short[] commands, float[] parameters) {
+        this(commands, commands.length, parameters, parameters.length);
+    }
+
+    /**
+     * Creates a new PackedPath from the beginning of arrays of path commands
+     * and parameters.  The arrays are copied.
+     * @throws IllegalArgumentException if a command is unknown or the
+     *         parameters do not match the commands.
+     */
+    public PackedPath(short[] commands, int commandCount,
+                      float[] parameters, int parameterCount) {
+        int n = 0;
+        byte[] cmds = new byte[commandCount];
+        for (int i = 0; i < commandCount; i++) {
+            n += getArgumentCount(commands[i]);
+            cmds[i] = (byte)commands[i];
+        }
+        if (n != parameterCount) {
+            throw new IllegalArgumentException
+                ("Expected " + n + " parameters, got " + parameterCount);
+        }
+        float[] params = new float[parameterCount];
+        System.arraycopy(parameters, 0, params, 0, parameterCount);
+        this.commands = cmds;
+        this.parameters = params;
+    }
+
+    /**
+     * Creates a new PackedPath which uses the given arrays.
+     */
+    protected PackedPath(byte[] commands, float[] parameters) {
+        this.commands = commands;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Returns the number of parameters of the given path segment type.
+     * @throws IllegalArgumentException if the type is unknown.
+     */
+    public static int getArgumentCount(short command) {
+        switch (command) {
+        case SVGPathSeg.PATHSEG_CLOSEPATH:
+            return 0;
+        case SVGPathSeg.PATHSEG_LINETO_HORIZONTAL_ABS:
+        case SVGPathSeg.PATHSEG_LINETO_HORIZONTAL_REL:
+        case SVGPathSeg.PATHSEG_LINETO_VERTICAL_ABS:
+        case SVGPathSeg.PATHSEG_LINETO_VERTICAL_REL:
+            return 1;
+        case SVGPathSeg.PATHSEG_MOVETO_ABS:
+        case SVGPathSeg.PATHSEG_MOVETO_REL:
+        case SVGPathSeg.PATHSEG_LINETO_ABS:
+        case SVGPathSeg.PATHSEG_LINETO_REL:
+        case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_SMOOTH_ABS:
+        case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_SMOOTH_REL:
+            return 2;
+        case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_ABS:
+        case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_REL:
+        case SVGPathSeg.PATHSEG_CURVETO_CUBIC_SMOOTH_ABS:
+        case SVGPathSeg.PATHSEG_CURVETO_CUBIC_SMOOTH_REL:
+            return 4;
+        case SVGPathSeg.PATHSEG_CURVETO_CUBIC_ABS:
+        case SVGPathSeg.PATHSEG_CURVETO_CUBIC_REL:
+            return 6;
+        case SVGPathSeg.PATHSEG_ARC_ABS:
+        case SVGPathSeg.PATHSEG_ARC_REL:
+            return 7;
+        default:
+            throw new IllegalArgumentException
+                ("Unknown path segment type " + command);
+        }
+    }
+
+    /**
+     * Returns the number of segments of this path.
+     */
+    public int getCommandCount() {
+        return commands.length;
+    }
+
+    /**
+     * Returns the type of the given segment.
+     */
+    public short getCommand(int index) {
+        return commands[index];
+    }
+
+    /**
+     * Returns the number of parameters of this path.
+     */
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    /**
+     * Returns the given parameter.
+     */
+    public float getParameter(int index) {
+        return parameters[index];
+    }
+
+    /**
+     * Returns a copy of the segment types, in the format of
+     * {@link PathArrayProducer#getPathCommands()}.
+     */
+    public short[] getPathCommands() {
+        short[] result = new short[commands.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = commands[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the segment parameters, in the format of
+     * {@link PathArrayProducer#getPathParameters()}.
+     */
+    public float[] getPathParameters() {
+        float[] result = new float[parameters.length];
+        System.arraycopy(parameters, 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Sends the segments of this path to the given handler, as a
+     * {@link PathParser} parsing the path data would.
+     */
+    public void handle(PathHandler h) throws ParseException {
+        float[] p = parameters;
+        int j = 0;
+        h.startPath();
+        for (byte command : commands) {
+            switch (command) {
+            case SVGPathSeg.PATHSEG_CLOSEPATH:
+                h.closePath();
+                break;
+            case SVGPathSeg.PATHSEG_MOVETO_ABS:
+                h.movetoAbs(p[j], p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_MOVETO_REL:
+                h.movetoRel(p[j], p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_ABS:
+                h.linetoAbs(p[j], p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_REL:
+                h.linetoRel(p[j], p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_CUBIC_ABS:
+                h.curvetoCubicAbs(p[j], p[j + 1], p[j + 2], p[j + 3],
+                                  p[j + 4], p[j + 5]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_CUBIC_REL:
+                h.curvetoCubicRel(p[j], p[j + 1], p[j + 2], p[j + 3],
+                                  p[j + 4], p[j + 5]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_ABS:
+                h.curvetoQuadraticAbs(p[j], p[j + 1], p[j + 2], p[j + 3]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_REL:
+                h.curvetoQuadraticRel(p[j], p[j + 1], p[j + 2], p[j + 3]);
+                break;
+            case SVGPathSeg.PATHSEG_ARC_ABS:
+                h.arcAbs(p[j], p[j + 1], p[j + 2], p[j + 3] != 0,
+                         p[j + 4] != 0, p[j + 5], p[j + 6]);
+                break;
+            case SVGPathSeg.PATHSEG_ARC_REL:
+                h.arcRel(p[j], p[j + 1], p[j + 2], p[j + 3] != 0,
+                         p[j + 4] != 0, p[j + 5], p[j + 6]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_HORIZONTAL_ABS:
+                h.linetoHorizontalAbs(p[j]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_HORIZONTAL_REL:
+                h.linetoHorizontalRel(p[j]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_VERTICAL_ABS:
+                h.linetoVerticalAbs(p[j]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_VERTICAL_REL:
+                h.linetoVerticalRel(p[j]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_CUBIC_SMOOTH_ABS:
+                h.curvetoCubicSmoothAbs(p[j], p[j + 1], p[j + 2], p[j + 3]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_CUBIC_SMOOTH_REL:
+                h.curvetoCubicSmoothRel(p[j], p[j + 1], p[j + 2], p[j + 3]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_SMOOTH_ABS:
+                h.curvetoQuadraticSmoothAbs(p[j], p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_SMOOTH_REL:
+                h.curvetoQuadraticSmoothRel(p[j], p[j + 1]);
+                break;
+            }
+            j += getArgumentCount(command);
+        }
+        h.endPath();
+    }
+}
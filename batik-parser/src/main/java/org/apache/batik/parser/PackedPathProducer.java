@@ -0,0 +1,332 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.parser;
+
+import org.w3c.dom.svg.SVGPathSeg;
+
+/**
+ * A handler class that generates a {@link PackedPath} from parsing path
+ * data.
+ *
+ * @version $Id$
+ */
+public class PackedPathProducer implements PathHandler {
+
+    /**
+     * The segment types stored so far.
+     */
+    protected byte[] c;
+
+    /**
+     * The number of segment types stored so far.
+     */
+    protected int ccount;
+
+    /**
+     * The segment parameters stored so far.
+     */
+    protected float[] p;
+
+    /**
+     * The number of segment parameters stored so far.
+     */
+    protected int pcount;
+
+    /**
+     * The path produced by the last parse.
+     */
+    protected PackedPath path = PackedPath.EMPTY;
+
+    /**
+     * Returns the path produced by the last parse.
+     */
+    public PackedPath getPackedPath() {
+        return path;
+    }
+
+    /**
+     * Parses the given path data and returns the corresponding path.
+     */
+    public static PackedPath createPackedPath(String s) throws ParseException {
+        PathParser p = new PathParser();
+        PackedPathProducer ph = new PackedPathProducer();
+        p.setPathHandler(ph);
+        p.parse(s);
+        return ph.getPackedPath();
+    }
+
+    // PathHandler ///////////////////////////////////////////////////////////
+
+    /**
+     * Implements {@link PathHandler#startPath()}.
+     */
+    public void startPath() throws ParseException {
+        c = new byte[16];
+        p = new float[64];
+        ccount = 0;
+        pcount = 0;
+        path = PackedPath.EMPTY;
+    }
+
+    /**
+     * Implements {@link PathHandler#movetoRel(float,float)}.
+     */
+    public void movetoRel(float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_MOVETO_REL, 2);
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link PathHandler#movetoAbs(float,float)}.
+     */
+    public void movetoAbs(float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_MOVETO_ABS, 2);
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link PathHandler#closePath()}.
+     */
+    public void closePath() throws ParseException {
+        command(SVGPathSeg.PATHSEG_CLOSEPATH, 0);
+    }
+
+    /**
+     * Implements {@link PathHandler#linetoRel(float,float)}.
+     */
+    public void linetoRel(float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_LINETO_REL, 2);
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link PathHandler#linetoAbs(float,float)}.
+     */
+    public void linetoAbs(float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_LINETO_ABS, 2);
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link PathHandler#linetoHorizontalRel(float)}.
+     */
+    public void linetoHorizontalRel(float x) throws ParseException {
+        command(SVGPathSeg.PATHSEG_LINETO_HORIZONTAL_REL, 1);
+        p[pcount++] = x;
+    }
+
+    /**
+     * Implements {@link PathHandler#linetoHorizontalAbs(float)}.
+     */
+    public void linetoHorizontalAbs(float x) throws ParseException {
+        command(SVGPathSeg.PATHSEG_LINETO_HORIZONTAL_ABS, 1);
+        p[pcount++] = x;
+    }
+
+    /**
+     * Implements {@link PathHandler#linetoVerticalRel(float)}.
+     */
+    public void linetoVerticalRel(float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_LINETO_VERTICAL_REL, 1);
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link PathHandler#linetoVerticalAbs(float)}.
+     */
+    public void linetoVerticalAbs(float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_LINETO_VERTICAL_ABS, 1);
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link
+     * PathHandler#curvetoCubicRel(float,float,float,float,float,float)}.
+     */
+    public void curvetoCubicRel(float x1, float y1,
+                                float x2, float y2,
+                                float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_CURVETO_CUBIC_REL, 6);
+        p[pcount++] = x1;
+        p[pcount++] = y1;
+        p[pcount++] = x2;
+        p[pcount++] = y2;
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link
+     * PathHandler#curvetoCubicAbs(float,float,float,float,float,float)}.
+     */
+    public void curvetoCubicAbs(float x1, float y1,
+                                float x2, float y2,
+                                float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_CURVETO_CUBIC_ABS, 6);
+        p[pcount++] = x1;
+        p[pcount++] = y1;
+        p[pcount++] = x2;
+        p[pcount++] = y2;
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link
+     * PathHandler#curvetoCubicSmoothRel(float,float,float,float)}.
+     */
+    public void curvetoCubicSmoothRel(float x2, float y2,
+                                      float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_CURVETO_CUBIC_SMOOTH_REL, 4);
+        p[pcount++] = x2;
+        p[pcount++] = y2;
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link
+     * PathHandler#curvetoCubicSmoothAbs(float,float,float,float)}.
+     */
+    public void curvetoCubicSmoothAbs(float x2, float y2,
+                                      float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_CURVETO_CUBIC_SMOOTH_ABS, 4);
+        p[pcount++] = x2;
+        p[pcount++] = y2;
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link
+     * PathHandler#curvetoQuadraticRel(float,float,float,float)}.
+     */
+    public void curvetoQuadraticRel(float x1, float y1,
+                                    float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_REL, 4);
+        p[pcount++] = x1;
+        p[pcount++] = y1;
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link
+     * PathHandler#curvetoQuadraticAbs(float,float,float,float)}.
+     */
+    public void curvetoQuadraticAbs(float x1, float y1,
+                                    float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_ABS, 4);
+        p[pcount++] = x1;
+        p[pcount++] = y1;
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link PathHandler#curvetoQuadraticSmoothRel(float,float)}.
+     */
+    public void curvetoQuadraticSmoothRel(float x, float y)
+        throws ParseException {
+        command(SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_SMOOTH_REL, 2);
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link PathHandler#curvetoQuadraticSmoothAbs(float,float)}.
+     */
+    public void curvetoQuadraticSmoothAbs(float x, float y)
+        throws ParseException {
+        command(SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_SMOOTH_ABS, 2);
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link
+     * PathHandler#arcRel(float,float,float,boolean,boolean,float,float)}.
+     */
+    public void arcRel(float rx, float ry,
+                       float xAxisRotation,
+                       boolean largeArcFlag, boolean sweepFlag,
+                       float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_ARC_REL, 7);
+        p[pcount++] = rx;
+        p[pcount++] = ry;
+        p[pcount++] = xAxisRotation;
+        p[pcount++] = largeArcFlag ? 1 : 0;
+        p[pcount++] = sweepFlag ? 1 : 0;
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link
+     * PathHandler#arcAbs(float,float,float,boolean,boolean,float,float)}.
+     */
+    public void arcAbs(float rx, float ry,
+                       float xAxisRotation,
+                       boolean largeArcFlag, boolean sweepFlag,
+                       float x, float y) throws ParseException {
+        command(SVGPathSeg.PATHSEG_ARC_ABS, 7);
+        p[pcount++] = rx;
+        p[pcount++] = ry;
+        p[pcount++] = xAxisRotation;
+        p[pcount++] = largeArcFlag ? 1 : 0;
+        p[pcount++] = sweepFlag ? 1 : 0;
+        p[pcount++] = x;
+        p[pcount++] = y;
+    }
+
+    /**
+     * Implements {@link PathHandler#endPath()}.  The arrays are trimmed to
+     * their content.
+     */
+    public void endPath() throws ParseException {
+        byte[] cmds = new byte[ccount];
+        System.arraycopy(c, 0, cmds, 0, ccount);
+        float[] params = new float[pcount];
+        System.arraycopy(p, 0, params, 0, pcount);
+        path = new PackedPath(cmds, params);
+        c = null;
+        p = null;
+    }
+
+    /**
+     * Stores a segment type and makes room for its parameters.
+     */
+    protected void command(short val, int params) {
+        if (ccount == c.length) {
+            byte[] a = new byte[c.length * 2];
+            System.arraycopy(c, 0, a, 0, ccount);
+            c = a;
+        }
+        c[ccount++] = (byte)val;
+        if (pcount + params > p.length) {
+            float[] a = new float[p.length * 2];
+            System.arraycopy(p, 0, a, 0, pcount);
+            p = a;
+        }
+    }
+}
@@ -0,0 +1,749 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.parser;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+import org.apache.batik.ext.awt.geom.ExtendedGeneralPath;
+import org.apache.batik.ext.awt.geom.ExtendedPathIterator;
+import org.apache.batik.ext.awt.geom.ExtendedShape;
+
+import org.w3c.dom.svg.SVGPathSeg;
+
+/**
+ * An immutable shape which reads its geometry from a {@link PackedPath}.
+ * Relative coordinates, shorthand segments and arcs are resolved each
+ * time the shape is iterated, so the path is only stored once, in its
+ * packed form.
+ *
+ * <p>The segments returned by the iterators are the ones of the
+ * <code>ExtendedGeneralPath</code> built by an {@link AWTPathProducer}
+ * from the same path data, so both shapes render, hit-test and decorate
+ * the same way.</p>
+ *
+ * @version $Id$
+ */
+public class PackedPathShape implements ExtendedShape {
+
+    /**
+     * The path data.
+     */
+    protected final PackedPath path;
+
+    /**
+     * The winding rule.
+     */
+    protected final int windingRule;
+
+    /**
+     * The bounds, computed on first use.
+     */
+    protected volatile Rectangle2D bounds;
+
+    /**
+     * Creates a new shape for the given path.
+     * @param path the path data
+     * @param windingRule the winding rule, <code>PathIterator.WIND_*</code>
+     */
+    public PackedPathShape(PackedPath path, int windingRule) {
+        this.path = path;
+        this.windingRule = windingRule;
+    }
+
+    /**
+     * Returns the path data of this shape.
+     */
+    public PackedPath getPackedPath() {
+        return path;
+    }
+
+    /**
+     * Returns the winding rule of this shape.
+     */
+    public int getWindingRule() {
+        return windingRule;
+    }
+
+    /**
+     * Implements {@link Shape#getBounds()}.
+     */
+    public Rectangle getBounds() {
+        return getBounds2D().getBounds();
+    }
+
+    /**
+     * Implements {@link Shape#getBounds2D()}.  As for a
+     * <code>GeneralPath</code>, the bounds include the control points.
+     */
+    public Rectangle2D getBounds2D() {
+        Rectangle2D b = bounds;
+        if (b == null) {
+            float x1 = 0, y1 = 0, x2 = 0, y2 = 0;
+            boolean first = true;
+            float[] c = new float[6];
+            PathIterator pi = getPathIterator(null);
+            while (!pi.isDone()) {
+                int n = getPointCount(pi.currentSegment(c)) * 2;
+                for (int i = 0; i < n; i += 2) {
+                    float x = c[i];
+                    float y = c[i + 1];
+                    if (first) {
+                        x1 = x2 = x;
+                        y1 = y2 = y;
+                        first = false;
+                    } else {
+                        if (x < x1) x1 = x;
+                        if (y < y1) y1 = y;
+                        if (x > x2) x2 = x;
+                        if (y > y2) y2 = y;
+                    }
+                }
+                pi.next();
+            }
+            b = new Rectangle2D.Float(x1, y1, x2 - x1, y2 - y1);
+            bounds = b;
+        }
+        return (Rectangle2D)b.clone();
+    }
+
+    /**
+     * Implements {@link Shape#contains(double,double)}.
+     */
+    public boolean contains(double x, double y) {
+        return Path2D.contains(getPathIterator(null), x, y);
+    }
+
+    /**
+     * Implements {@link Shape#contains(Point2D)}.
+     */
+    public boolean contains(Point2D p) {
+        return Path2D.contains(getPathIterator(null), p);
+    }
+
+    /**
+     * Implements {@link Shape#contains(double,double,double,double)}.
+     */
+    public boolean contains(double x, double y, double w, double h) {
+        return Path2D.contains(getPathIterator(null), x, y, w, h);
+    }
+
+    /**
+     * Implements {@link Shape#contains(Rectangle2D)}.
+     */
+    public boolean contains(Rectangle2D r) {
+        return Path2D.contains(getPathIterator(null), r);
+    }
+
+    /**
+     * Implements {@link Shape#intersects(double,double,double,double)}.
+     */
+    public boolean intersects(double x, double y, double w, double h) {
+        return Path2D.intersects(getPathIterator(null), x, y, w, h);
+    }
+
+    /**
+     * Implements {@link Shape#intersects(Rectangle2D)}.
+     */
+    public boolean intersects(Rectangle2D r) {
+        return Path2D.intersects(getPathIterator(null), r);
+    }
+
+    /**
+     * Implements {@link Shape#getPathIterator(AffineTransform)}.
+     */
+    public PathIterator getPathIterator(AffineTransform at) {
+        return new PackedPathIterator(at);
+    }
+
+    /**
+     * Implements {@link Shape#getPathIterator(AffineTransform,double)}.
+     */
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return new FlatteningPathIterator(getPathIterator(at), flatness);
+    }
+
+    /**
+     * Implements {@link ExtendedShape#getExtendedPathIterator()}.
+     */
+    public ExtendedPathIterator getExtendedPathIterator() {
+        return new PackedExtendedPathIterator();
+    }
+
+    /**
+     * Returns the number of points of the given segment type.
+     */
+    protected static int getPointCount(int type) {
+        switch (type) {
+        case PathIterator.SEG_MOVETO:
+        case PathIterator.SEG_LINETO:
+            return 1;
+        case PathIterator.SEG_QUADTO:
+            return 2;
+        case PathIterator.SEG_CUBICTO:
+            return 3;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Resolves the segments of the path, one path command at a time.
+     * Each step tells which segment the <code>ExtendedGeneralPath</code>
+     * would record, if any, and what it would add to its enclosed
+     * <code>GeneralPath</code>.
+     */
+    protected class SegmentWalker {
+
+        /**
+         * The index of the next command and of its first parameter.
+         */
+        protected int command, parameter;
+
+        /**
+         * The current point and the last control point, as maintained by
+         * <code>AWTPathProducer</code>.
+         */
+        protected float currentX, currentY, xCenter, yCenter;
+
+        /**
+         * The start of the current subpath.
+         */
+        protected float mx, my;
+
+        /**
+         * The types of the last two recorded segments, or -1.
+         */
+        protected int last = -1, beforeLast = -1;
+
+        /**
+         * The type of the segment recorded by the last step, or -1.
+         */
+        protected int segmentType;
+
+        /**
+         * The values of the segment recorded by the last step.
+         */
+        protected float[] segment = new float[7];
+
+        /**
+         * Whether the last step moved the general path to (mx, my).
+         */
+        protected boolean moved;
+
+        /**
+         * The type of the segment added to the general path by the last
+         * step, SEG_ARCTO when it appended <code>arc</code>, or -1.
+         */
+        protected int drawType;
+
+        /**
+         * The arc appended to the general path by the last step.
+         */
+        protected Shape arc;
+
+        /**
+         * Whether there are commands left.
+         */
+        public boolean hasNext() {
+            return command < path.commands.length;
+        }
+
+        /**
+         * Processes the next command.
+         */
+        public void step() {
+            segmentType = -1;
+            drawType = -1;
+            moved = false;
+            arc = null;
+
+            short cmd = path.commands[command++];
+            float[] p = path.parameters;
+            int j = parameter;
+            parameter += PackedPath.getArgumentCount(cmd);
+            float x0 = currentX;
+            float y0 = currentY;
+            switch (cmd) {
+            case SVGPathSeg.PATHSEG_CLOSEPATH:
+                closePath();
+                currentX = mx;
+                currentY = my;
+                break;
+            case SVGPathSeg.PATHSEG_MOVETO_REL:
+                moveTo(xCenter = currentX += p[j], yCenter = currentY += p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_MOVETO_ABS:
+                moveTo(xCenter = currentX = p[j], yCenter = currentY = p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_REL:
+                lineTo(xCenter = currentX += p[j], yCenter = currentY += p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_ABS:
+                lineTo(xCenter = currentX = p[j], yCenter = currentY = p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_HORIZONTAL_REL:
+                lineTo(xCenter = currentX += p[j], yCenter = currentY);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_HORIZONTAL_ABS:
+                lineTo(xCenter = currentX = p[j], yCenter = currentY);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_VERTICAL_REL:
+                lineTo(xCenter = currentX, yCenter = currentY += p[j]);
+                break;
+            case SVGPathSeg.PATHSEG_LINETO_VERTICAL_ABS:
+                lineTo(xCenter = currentX, yCenter = currentY = p[j]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_CUBIC_REL:
+                curveTo(currentX + p[j], currentY + p[j + 1],
+                        xCenter = currentX + p[j + 2],
+                        yCenter = currentY + p[j + 3],
+                        currentX += p[j + 4], currentY += p[j + 5]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_CUBIC_ABS:
+                curveTo(p[j], p[j + 1], xCenter = p[j + 2], yCenter = p[j + 3],
+                        currentX = p[j + 4], currentY = p[j + 5]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_CUBIC_SMOOTH_REL:
+                curveTo(currentX * 2 - xCenter, currentY * 2 - yCenter,
+                        xCenter = currentX + p[j], yCenter = currentY + p[j + 1],
+                        currentX += p[j + 2], currentY += p[j + 3]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_CUBIC_SMOOTH_ABS:
+                curveTo(currentX * 2 - xCenter, currentY * 2 - yCenter,
+                        xCenter = p[j], yCenter = p[j + 1],
+                        currentX = p[j + 2], currentY = p[j + 3]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_REL:
+                quadTo(xCenter = currentX + p[j], yCenter = currentY + p[j + 1],
+                       currentX += p[j + 2], currentY += p[j + 3]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_ABS:
+                quadTo(xCenter = p[j], yCenter = p[j + 1],
+                       currentX = p[j + 2], currentY = p[j + 3]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_SMOOTH_REL:
+                quadTo(xCenter = currentX * 2 - xCenter,
+                       yCenter = currentY * 2 - yCenter,
+                       currentX += p[j], currentY += p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_CURVETO_QUADRATIC_SMOOTH_ABS:
+                quadTo(xCenter = currentX * 2 - xCenter,
+                       yCenter = currentY * 2 - yCenter,
+                       currentX = p[j], currentY = p[j + 1]);
+                break;
+            case SVGPathSeg.PATHSEG_ARC_REL:
+                arcTo(p[j], p[j + 1], p[j + 2], p[j + 3] != 0, p[j + 4] != 0,
+                      x0, y0,
+                      xCenter = currentX += p[j + 5],
+                      yCenter = currentY += p[j + 6]);
+                break;
+            case SVGPathSeg.PATHSEG_ARC_ABS:
+                arcTo(p[j], p[j + 1], p[j + 2], p[j + 3] != 0, p[j + 4] != 0,
+                      x0, y0,
+                      xCenter = currentX = p[j + 5],
+                      yCenter = currentY = p[j + 6]);
+                break;
+            }
+        }
+
+        /**
+         * Records a segment of the given type.
+         */
+        protected void record(int type) {
+            segmentType = type;
+            beforeLast = last;
+            last = type;
+        }
+
+        protected void moveTo(float x, float y) {
+            record(PathIterator.SEG_MOVETO);
+            segment[0] = mx = x;
+            segment[1] = my = y;
+        }
+
+        protected void lineTo(float x, float y) {
+            checkMoveTo();
+            drawType = PathIterator.SEG_LINETO;
+            record(PathIterator.SEG_LINETO);
+            segment[0] = x;
+            segment[1] = y;
+        }
+
+        protected void quadTo(float x1, float y1, float x2, float y2) {
+            checkMoveTo();
+            drawType = PathIterator.SEG_QUADTO;
+            record(PathIterator.SEG_QUADTO);
+            segment[0] = x1;
+            segment[1] = y1;
+            segment[2] = x2;
+            segment[3] = y2;
+        }
+
+        protected void curveTo(float x1, float y1, float x2, float y2,
+                               float x3, float y3) {
+            checkMoveTo();
+            drawType = PathIterator.SEG_CUBICTO;
+            record(PathIterator.SEG_CUBICTO);
+            segment[0] = x1;
+            segment[1] = y1;
+            segment[2] = x2;
+            segment[3] = y2;
+            segment[4] = x3;
+            segment[5] = y3;
+        }
+
+        protected void closePath() {
+            // Don't double close path.
+            if (last == PathIterator.SEG_CLOSE) {
+                return;
+            }
+            // Only close the general path after something was drawn.
+            if ((last != -1) && (last != PathIterator.SEG_MOVETO)) {
+                drawType = PathIterator.SEG_CLOSE;
+            }
+            record(PathIterator.SEG_CLOSE);
+        }
+
+        protected void arcTo(float rx, float ry, float angle,
+                             boolean largeArcFlag, boolean sweepFlag,
+                             float x0, float y0, float x, float y) {
+            if (rx == 0 || ry == 0) {
+                lineTo(x, y);
+                return;
+            }
+            checkMoveTo();
+            if (x0 == x && y0 == y) {
+                return;
+            }
+            Arc2D a = ExtendedGeneralPath.computeArc
+                (x0, y0, rx, ry, angle, largeArcFlag, sweepFlag, x, y);
+            AffineTransform t = AffineTransform.getRotateInstance
+                (Math.toRadians(angle), a.getCenterX(), a.getCenterY());
+            arc = t.createTransformedShape(a);
+            drawType = ExtendedPathIterator.SEG_ARCTO;
+            record(ExtendedPathIterator.SEG_ARCTO);
+            segment[0] = rx;
+            segment[1] = ry;
+            segment[2] = angle;
+            segment[3] = largeArcFlag ? 1 : 0;
+            segment[4] = sweepFlag ? 1 : 0;
+            segment[5] = x;
+            segment[6] = y;
+        }
+
+        /**
+         * Moves the general path to the start of the subpath when nothing
+         * was drawn since the last moveto.
+         */
+        protected void checkMoveTo() {
+            if (last == PathIterator.SEG_MOVETO
+                    || (last == PathIterator.SEG_CLOSE
+                        && beforeLast == PathIterator.SEG_MOVETO)) {
+                moved = true;
+            }
+        }
+    }
+
+    /**
+     * Iterates over the segments recorded by the extended general path,
+     * arcs included.
+     */
+    protected class PackedExtendedPathIterator implements ExtendedPathIterator {
+
+        protected SegmentWalker walker = new SegmentWalker();
+
+        protected boolean done;
+
+        public PackedExtendedPathIterator() {
+            advance();
+        }
+
+        /**
+         * Moves to the next recorded segment.
+         */
+        protected void advance() {
+            do {
+                if (!walker.hasNext()) {
+                    done = true;
+                    return;
+                }
+                walker.step();
+            } while (walker.segmentType == -1);
+        }
+
+        public int currentSegment() {
+            return walker.segmentType;
+        }
+
+        public int currentSegment(double[] coords) {
+            int type = walker.segmentType;
+            int n = (type == SEG_ARCTO) ? 7 : getPointCount(type) * 2;
+            for (int i = 0; i < n; i++) {
+                coords[i] = walker.segment[i];
+            }
+            return type;
+        }
+
+        public int currentSegment(float[] coords) {
+            int type = walker.segmentType;
+            int n = (type == SEG_ARCTO) ? 7 : getPointCount(type) * 2;
+            System.arraycopy(walker.segment, 0, coords, 0, n);
+            return type;
+        }
+
+        public int getWindingRule() {
+            return windingRule;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public void next() {
+            advance();
+        }
+    }
+
+    /**
+     * Iterates over the segments of the general path enclosed by the
+     * extended general path: a moveto is only kept when something is
+     * drawn after it or at the end of the path, and arcs are converted to
+     * cubic curves.
+     */
+    protected class PackedPathIterator implements PathIterator {
+
+        protected AffineTransform transform;
+
+        protected SegmentWalker walker = new SegmentWalker();
+
+        /**
+         * The segments produced by the last step of the walker.
+         */
+        protected int[] types = new int[8];
+        protected float[] points = new float[48];
+        protected int count, index;
+
+        /**
+         * The last segment produced so far.
+         */
+        protected boolean empty = true;
+        protected int lastType;
+        protected float lastX, lastY;
+
+        /**
+         * The moveto which is not produced yet.
+         */
+        protected boolean pending;
+        protected float pendingX, pendingY;
+
+        protected float[] arcPoints = new float[6];
+
+        public PackedPathIterator(AffineTransform at) {
+            transform = at;
+            fill();
+        }
+
+        /**
+         * Runs the walker until it produces segments.
+         */
+        protected void fill() {
+            count = 0;
+            index = 0;
+            while (count == 0) {
+                if (!walker.hasNext()) {
+                    flush();
+                    return;
+                }
+                walker.step();
+                if (walker.moved) {
+                    moveTo(walker.mx, walker.my);
+                }
+                float[] s = walker.segment;
+                switch (walker.drawType) {
+                case SEG_LINETO:
+                    add(SEG_LINETO, s[0], s[1], 0, 0, 0, 0);
+                    break;
+                case SEG_QUADTO:
+                    add(SEG_QUADTO, s[0], s[1], s[2], s[3], 0, 0);
+                    break;
+                case SEG_CUBICTO:
+                    add(SEG_CUBICTO, s[0], s[1], s[2], s[3], s[4], s[5]);
+                    break;
+                case SEG_CLOSE:
+                    add(SEG_CLOSE, 0, 0, 0, 0, 0, 0);
+                    break;
+                case ExtendedPathIterator.SEG_ARCTO:
+                    appendArc(walker.arc);
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Sets the pending moveto.  A moveto following a moveto replaces
+         * it, as in a <code>GeneralPath</code>.
+         */
+        protected void moveTo(float x, float y) {
+            pending = true;
+            pendingX = x;
+            pendingY = y;
+        }
+
+        /**
+         * Produces the pending moveto, if any.
+         */
+        protected void flush() {
+            if (pending) {
+                pending = false;
+                emit(SEG_MOVETO, pendingX, pendingY, 0, 0, 0, 0);
+            }
+        }
+
+        /**
+         * Adds a segment after the pending moveto.
+         */
+        protected void add(int type, float x1, float y1, float x2, float y2,
+                           float x3, float y3) {
+            flush();
+            if (type == SEG_CLOSE && !empty && lastType == SEG_CLOSE) {
+                return;
+            }
+            emit(type, x1, y1, x2, y2, x3, y3);
+        }
+
+        /**
+         * Appends an arc, connecting it to the current point as
+         * <code>GeneralPath.append(Shape, true)</code> does.
+         */
+        protected void appendArc(Shape s) {
+            float[] c = arcPoints;
+            boolean connect = true;
+            PathIterator pi = s.getPathIterator(null);
+            while (!pi.isDone()) {
+                switch (pi.currentSegment(c)) {
+                case SEG_MOVETO:
+                    if (!connect || (empty && !pending)) {
+                        moveTo(c[0], c[1]);
+                        break;
+                    }
+                    int lt = pending ? SEG_MOVETO : lastType;
+                    float lx = pending ? pendingX : lastX;
+                    float ly = pending ? pendingY : lastY;
+                    if (lt != SEG_CLOSE && lx == c[0] && ly == c[1]) {
+                        // Collapse out initial moveto/lineto
+                        break;
+                    }
+                    add(SEG_LINETO, c[0], c[1], 0, 0, 0, 0);
+                    break;
+                case SEG_LINETO:
+                    add(SEG_LINETO, c[0], c[1], 0, 0, 0, 0);
+                    break;
+                case SEG_QUADTO:
+                    add(SEG_QUADTO, c[0], c[1], c[2], c[3], 0, 0);
+                    break;
+                case SEG_CUBICTO:
+                    add(SEG_CUBICTO, c[0], c[1], c[2], c[3], c[4], c[5]);
+                    break;
+                case SEG_CLOSE:
+                    add(SEG_CLOSE, 0, 0, 0, 0, 0, 0);
+                    break;
+                }
+                pi.next();
+                connect = false;
+            }
+        }
+
+        /**
+         * Stores a produced segment.
+         */
+        protected void emit(int type, float x1, float y1, float x2, float y2,
+                            float x3, float y3) {
+            if (count == types.length) {
+                int[] t = new int[count * 2];
+                System.arraycopy(types, 0, t, 0, count);
+                types = t;
+                float[] p = new float[count * 12];
+                System.arraycopy(points, 0, p, 0, count * 6);
+                points = p;
+            }
+            int i = count * 6;
+            points[i] = x1;
+            points[i + 1] = y1;
+            points[i + 2] = x2;
+            points[i + 3] = y2;
+            points[i + 4] = x3;
+            points[i + 5] = y3;
+            types[count++] = type;
+            empty = false;
+            lastType = type;
+            int n = getPointCount(type);
+            if (n > 0) {
+                lastX = points[i + n * 2 - 2];
+                lastY = points[i + n * 2 - 1];
+            }
+        }
+
+        public int getWindingRule() {
+            return windingRule;
+        }
+
+        public boolean isDone() {
+            return index >= count;
+        }
+
+        public void next() {
+            index++;
+            if (index >= count) {
+                fill();
+            }
+        }
+
+        public int currentSegment(float[] coords) {
+            int type = types[index];
+            int n = getPointCount(type);
+            if (transform == null) {
+                System.arraycopy(points, index * 6, coords, 0, n * 2);
+            } else {
+                transform.transform(points, index * 6, coords, 0, n);
+            }
+            return type;
+        }
+
+        public int currentSegment(double[] coords) {
+            int type = types[index];
+            int n = getPointCount(type);
+            if (transform == null) {
+                for (int i = 0; i < n * 2; i++) {
+                    coords[i] = points[index * 6 + i];
+                }
+            } else {
+                transform.transform(points, index * 6, coords, 0, n);
+            }
+            return type;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.parser;
+
+/**
+ * Keeps a parser per thread for the attribute values it parses, so
+ * that parsing many short values does not create a parser for each.
+ *
+ * <p>A parser is removed from the cache while in use: a parse nested
+ * in another one on the same thread, from a handler for instance, gets
+ * a new parser.</p>
+ *
+ * @version $Id$
+ */
+public abstract class ParserCache {
+
+    /**
+     * The parser kept by each thread for the next value it parses.
+     */
+    private final ThreadLocal parsers = new ThreadLocal();
+
+    /**
+     * Returns a parser which belongs to the caller until it hands it
+     * back with {@link #release(Parser)}.
+     */
+    public Parser take() {
+        Parser p = (Parser)parsers.get();
+        if (p == null) {
+            return createParser();
+        }
+        parsers.set(null);
+        return p;
+    }
+
+    /**
+     * Hands back a parser returned by {@link #take()}, so that the next
+     * parse of the current thread reuses it.
+     */
+    public void release(Parser p) {
+        reset(p);
+        parsers.set(p);
+    }
+
+    /**
+     * Creates a new parser.
+     */
+    protected abstract Parser createParser();
+
+    /**
+     * Restores the default handler of the given parser, so that the
+     * cache does not keep the handler of the last parse.
+     */
+    protected abstract void reset(Parser p);
+}
@@ -66,7 +66,7 @@ public class PathParser extends NumberParser {
     protected void doParse() throws ParseException, IOException {
         pathHandler.startPath();
 
-        current = reader.read();
+        current = read();
         loop: for (;;) {
             try {
                 switch (current) {
@@ -74,11 +74,11 @@ public class PathParser extends NumberParser {
                 case 0xA:
                 case 0x20:
                 case 0x9:
-                    current = reader.read();
+                    current = read();
                     break;
                 case 'z':
                 case 'Z':
-                    current = reader.read();
+                    current = read();
                     pathHandler.closePath();
                     break;
                 case 'm': parsem(); break;
@@ -123,7 +123,7 @@ public class PathParser extends NumberParser {
      * Parses a 'm' command.
      */
     protected void parsem() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
 
         float x = parseFloat();
@@ -139,7 +139,7 @@ public class PathParser extends NumberParser {
      * Parses a 'M' command.
      */
     protected void parseM() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
 
         float x = parseFloat();
@@ -155,7 +155,7 @@ public class PathParser extends NumberParser {
      * Parses a 'l' command.
      */
     protected void parsel() throws ParseException, IOException {
-            current = reader.read();
+            current = read();
         skipSpaces();
         _parsel(true);
     }
@@ -185,7 +185,7 @@ public class PathParser extends NumberParser {
      * Parses a 'L' command.
      */
     protected void parseL() throws ParseException, IOException {
-            current = reader.read();
+            current = read();
         skipSpaces();
         _parseL(true);
     }
@@ -215,7 +215,7 @@ public class PathParser extends NumberParser {
      * Parses a 'h' command.
      */
     protected void parseh() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -239,7 +239,7 @@ public class PathParser extends NumberParser {
      * Parses a 'H' command.
      */
     protected void parseH() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -264,7 +264,7 @@ public class PathParser extends NumberParser {
      * Parses a 'v' command.
      */
     protected void parsev() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -290,7 +290,7 @@ public class PathParser extends NumberParser {
      * Parses a 'V' command.
      */
     protected void parseV() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -316,7 +316,7 @@ public class PathParser extends NumberParser {
      * Parses a 'c' command.
      */
     protected void parsec() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -353,7 +353,7 @@ public class PathParser extends NumberParser {
      * Parses a 'C' command.
      */
     protected void parseC() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -390,7 +390,7 @@ public class PathParser extends NumberParser {
      * Parses a 'q' command.
      */
     protected void parseq() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -423,7 +423,7 @@ public class PathParser extends NumberParser {
      * Parses a 'Q' command.
      */
     protected void parseQ() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -456,7 +456,7 @@ public class PathParser extends NumberParser {
      * Parses a 's' command.
      */
     protected void parses() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -489,7 +489,7 @@ public class PathParser extends NumberParser {
      * Parses a 'S' command.
      */
     protected void parseS() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -522,7 +522,7 @@ public class PathParser extends NumberParser {
      * Parses a 't' command.
      */
     protected void parset() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -551,7 +551,7 @@ public class PathParser extends NumberParser {
      * Parses a 'T' command.
      */
     protected void parseT() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -580,7 +580,7 @@ public class PathParser extends NumberParser {
      * Parses a 'a' command.
      */
     protected void parsea() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -610,7 +610,7 @@ public class PathParser extends NumberParser {
             case '1': laf = true;  break;
             }
 
-            current = reader.read();
+            current = read();
             skipCommaSpaces();
 
             boolean sf;
@@ -620,7 +620,7 @@ public class PathParser extends NumberParser {
             case '1': sf = true;  break;
             }
 
-            current = reader.read();
+            current = read();
             skipCommaSpaces();
 
             float x = parseFloat();
@@ -636,7 +636,7 @@ public class PathParser extends NumberParser {
      * Parses a 'A' command.
      */
     protected void parseA() throws ParseException, IOException {
-        current = reader.read();
+        current = read();
         skipSpaces();
         boolean expectNumber = true;
 
@@ -666,7 +666,7 @@ public class PathParser extends NumberParser {
             case '1': laf = true;  break;
             }
 
-            current = reader.read();
+            current = read();
             skipCommaSpaces();
 
             boolean sf;
@@ -676,7 +676,7 @@ public class PathParser extends NumberParser {
             case '1': sf = true; break;
             }
 
-            current = reader.read();
+            current = read();
             skipCommaSpaces();
             float x = parseFloat();
             skipCommaSpaces();
@@ -696,7 +696,7 @@ public class PathParser extends NumberParser {
             case -1: case 'm': case 'M': return;
             default:                     break;
             }
-            current = reader.read();
+            current = read();
         }
     }
 
@@ -716,14 +716,14 @@ public class PathParser extends NumberParser {
             default: break wsp1;
             case 0x20: case 0x9: case 0xD: case 0xA: break;
             }
-            current = reader.read();
+            current = read();
         }
 
         if (current != ',')
             return false; // no comma.
 
         wsp2: for (;;) {
-            switch (current = reader.read()) {
+            switch (current = read()) {
             default: break wsp2;
             case 0x20: case 0x9: case 0xD: case 0xA: break;
             }
@@ -88,7 +88,7 @@ public abstract class TimingParser extends AbstractParser {
         boolean escaped = false;
         if (current == '\\') {
             escaped = true;
-            current = reader.read();
+            current = read();
         }
         Object[] ret = null;
         if (current == '+' || (current == '-' && !escaped)
@@ -111,11 +111,11 @@ public abstract class TimingParser extends AbstractParser {
         boolean midEscaped = false;
         do {
             sb.append((char) current);
-            current = reader.read();
+            current = read();
             midEscaped = false;
             if (current == '\\') {
                 midEscaped = true;
-                current = reader.read();
+                current = read();
             }
         } while (XMLUtilities.isXMLNameCharacter((char) current)
                 && (midEscaped || (current != '-' && current != '.')));
@@ -135,16 +135,16 @@ public abstract class TimingParser extends AbstractParser {
             if (current != '(') {
                 reportUnexpectedCharacterError( current );
             }
-            current = reader.read();
+            current = read();
             if (current == -1) {
                 reportError("end.of.stream", new Object[0]);
             }
             char key = (char) current;
-            current = reader.read();
+            current = read();
             if (current != ')') {
                 reportUnexpectedCharacterError( current );
             }
-            current = reader.read();
+            current = read();
             skipSpaces();
             float offset = 0;
             if (current == '+' || current == '-') {
@@ -157,19 +157,19 @@ public abstract class TimingParser extends AbstractParser {
             if (current != '(') {
                 reportUnexpectedCharacterError( current );
             }
-            current = reader.read();
+            current = read();
             StringBuffer keyName = new StringBuffer();
             while (current >= 'A' && current <= 'Z'
                     || current >= 'a' && current <= 'z'
                     || current >= '0' && current <= '9'
                     || current == '+') {
                 keyName.append((char) current);
-                current = reader.read();
+                current = read();
             }
             if (current != ')') {
                 reportUnexpectedCharacterError( current );
             }
-            current = reader.read();
+            current = read();
             skipSpaces();
             float offset = 0;
             if (current == '+' || current == '-') {
@@ -182,7 +182,7 @@ public abstract class TimingParser extends AbstractParser {
             if (current != '(') {
                 reportUnexpectedCharacterError( current );
             }
-            current = reader.read();
+            current = read();
             skipSpaces();
             Calendar wallclockValue = parseWallclockValue();
             skipSpaces();
@@ -190,16 +190,16 @@ public abstract class TimingParser extends AbstractParser {
                 reportError("character.unexpected",
                             new Object[] {current});
             }
-            current = reader.read();
+            current = read();
             return new Object[] {TIME_WALLCLOCK, wallclockValue };
         } else if (id.equals("indefinite") && !escaped) {
             return new Object[] {TIME_INDEFINITE};
         } else {
             if (current == '.') {
-                current = reader.read();
+                current = read();
                 if (current == '\\') {
                     escaped = true;
-                    current = reader.read();
+                    current = read();
                 }
                 if (!XMLUtilities.isXMLNameFirstCharacter((char) current)) {
                     reportUnexpectedCharacterError( current );
@@ -218,12 +218,12 @@ public abstract class TimingParser extends AbstractParser {
                 } else if (id2.equals("repeat") && !escaped) {
                     Integer repeatIteration = null;
                     if (current == '(') {
-                        current = reader.read();
+                        current = read();
                         repeatIteration = parseDigits();
                         if (current != ')') {
                             reportUnexpectedCharacterError( current );
                         }
-                        current = reader.read();
+                        current = read();
                     }
                     skipSpaces();
                     float offset = 0;
@@ -242,7 +242,7 @@ public abstract class TimingParser extends AbstractParser {
                     if (current != ')') {
                         reportUnexpectedCharacterError( current );
                     }
-                    current = reader.read();
+                    current = read();
                     return new Object[] {TIME_MEDIA_MARKER,
                                           id,
                                           markerName };
@@ -278,21 +278,21 @@ public abstract class TimingParser extends AbstractParser {
         int d1 = parseDigits();
         float offset;
         if (current == ':') {
-            current = reader.read();
+            current = read();
             int d2 = parseDigits();
             if (current == ':') {
-                current = reader.read();
+                current = read();
                 int d3 = parseDigits();
                 offset = d1 * 3600 + d2 * 60 + d3;
             } else {
                 offset = d1 * 60 + d2;
             }
             if (current == '.') {
-                current = reader.read();
+                current = read();
                 offset += parseFraction();
             }
         } else if (current == '.') {
-            current = reader.read();
+            current = read();
             offset = (parseFraction() + d1) * parseUnit();
         } else {
             offset = d1 * parseUnit();
@@ -307,10 +307,10 @@ public abstract class TimingParser extends AbstractParser {
         boolean offsetNegative = false;
         if (current == '-') {
             offsetNegative = true;
-            current = reader.read();
+            current = read();
             skipSpaces();
         } else if (current == '+') {
-            current = reader.read();
+            current = read();
             skipSpaces();
         }
         if (offsetNegative) {
@@ -329,7 +329,7 @@ public abstract class TimingParser extends AbstractParser {
         }
         do {
             value = value * 10 + (current - '0');
-            current = reader.read();
+            current = read();
         } while (current >= '0' && current <= '9');
         return value;
     }
@@ -346,7 +346,7 @@ public abstract class TimingParser extends AbstractParser {
         do {
             value += weight * (current - '0');
             weight *= 0.1f;
-            current = reader.read();
+            current = read();
         } while (current >= '0' && current <= '9');
         return value;
     }
@@ -356,25 +356,25 @@ public abstract class TimingParser extends AbstractParser {
      */
     protected float parseUnit() throws ParseException, IOException {
         if (current == 'h') {
-            current = reader.read();
+            current = read();
             return 3600;
         } else if (current == 'm') {
-            current = reader.read();
+            current = read();
             if (current == 'i') {
-                current = reader.read();
+                current = read();
                 if (current != 'n') {
                     reportUnexpectedCharacterError( current );
                 }
-                current = reader.read();
+                current = read();
                 return 60;
             } else if (current == 's') {
-                current = reader.read();
+                current = read();
                 return 0.001f;
             } else {
                 reportUnexpectedCharacterError( current );
             }
         } else if (current == 's') {
-            current = reader.read();
+            current = read();
         }
         return 1;
     }
@@ -397,17 +397,17 @@ public abstract class TimingParser extends AbstractParser {
             if (current == '-') {
                 dateSpecified = true;
                 y = digits1;
-                current = reader.read();
+                current = read();
                 M = parseDigits();
                 if (current != '-') {
                     reportUnexpectedCharacterError( current );
                 }
-                current = reader.read();
+                current = read();
                 d = parseDigits();
                 if (current != 'T') {
                     break;
                 }
-                current = reader.read();
+                current = read();
                 digits1 = parseDigits();
                 if (current != ':') {
                     reportUnexpectedCharacterError( current );
@@ -416,20 +416,20 @@ public abstract class TimingParser extends AbstractParser {
             if (current == ':') {
                 timeSpecified = true;
                 h = digits1;
-                current = reader.read();
+                current = read();
                 m = parseDigits();
                 if (current == ':') {
-                    current = reader.read();
+                    current = read();
                     s = parseDigits();
                     if (current == '.') {
-                        current = reader.read();
+                        current = read();
                         frac = parseFraction();
                     }
                 }
                 if (current == 'Z') {
                     tzSpecified = true;
                     tzn = "UTC";
-                    current = reader.read();
+                    current = read();
                 } else if (current == '+' || current == '-') {
                     StringBuffer tznb = new StringBuffer();
                     tzSpecified = true;
@@ -439,7 +439,7 @@ public abstract class TimingParser extends AbstractParser {
                     } else {
                         tznb.append('+');
                     }
-                    current = reader.read();
+                    current = read();
                     tzh = parseDigits();
                     if (tzh < 10) {
                         tznb.append('0');
@@ -449,7 +449,7 @@ public abstract class TimingParser extends AbstractParser {
                         reportUnexpectedCharacterError( current );
                     }
                     tznb.append(':');
-                    current = reader.read();
+                    current = read();
                     tzm = parseDigits();
                     if (tzm < 10) {
                         tznb.append('0');
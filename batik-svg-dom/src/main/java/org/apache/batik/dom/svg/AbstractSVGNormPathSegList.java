@@ -25,6 +25,7 @@ import java.awt.geom.PathIterator;
 
 import org.apache.batik.ext.awt.geom.ExtendedGeneralPath;
 import org.apache.batik.parser.DefaultPathHandler;
+import org.apache.batik.parser.PackedPath;
 import org.apache.batik.parser.ParseException;
 import org.apache.batik.parser.PathParser;
 import org.w3c.dom.svg.SVGPathSeg;
@@ -52,12 +53,24 @@ public abstract class AbstractSVGNormPathSegList extends AbstractSVGPathSegList
      * @param handler : list handler
      */
     protected void doParse(String value, ListHandler handler) throws ParseException {
-        PathParser pathParser = new PathParser();
+        PathParser pathParser = (PathParser)pathParsers.take();
 
         NormalizedPathSegListBuilder builder = new NormalizedPathSegListBuilder(handler);
 
-        pathParser.setPathHandler(builder);
-        pathParser.parse(value);
+        try {
+            pathParser.setPathHandler(builder);
+            pathParser.parse(value);
+        } finally {
+            pathParsers.release(pathParser);
+        }
+    }
+
+    /**
+     * Builds the normalized list from already parsed path data.
+     */
+    protected void doParse(PackedPath path, ListHandler handler)
+        throws ParseException {
+        path.handle(new NormalizedPathSegListBuilder(handler));
     }
 
     protected static class NormalizedPathSegListBuilder extends DefaultPathHandler {
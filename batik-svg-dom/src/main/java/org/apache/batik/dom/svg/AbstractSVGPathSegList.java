@@ -19,7 +19,11 @@
 package org.apache.batik.dom.svg;
 
 import org.apache.batik.parser.DefaultPathHandler;
+import org.apache.batik.parser.PackedPath;
+import org.apache.batik.parser.PackedPathProducer;
 import org.apache.batik.parser.ParseException;
+import org.apache.batik.parser.Parser;
+import org.apache.batik.parser.ParserCache;
 import org.apache.batik.parser.PathParser;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.svg.SVGException;
@@ -152,15 +156,58 @@ public abstract class AbstractSVGPathSegList
     protected void doParse(String value, ListHandler handler)
         throws ParseException{
 
-        PathParser pathParser = new PathParser();
+        PathParser pathParser = (PathParser)pathParsers.take();
 
         PathSegListBuilder builder = new PathSegListBuilder(handler);
 
-        pathParser.setPathHandler(builder);
-        pathParser.parse(value);
+        try {
+            pathParser.setPathHandler(builder);
+            pathParser.parse(value);
+        } finally {
+            pathParsers.release(pathParser);
+        }
+    }
 
+    /**
+     * Builds the list from already parsed path data.
+     *
+     * @param path the parsed 'd' attribute value
+     * @param handler : list handler
+     */
+    protected void doParse(PackedPath path, ListHandler handler)
+        throws ParseException {
+        path.handle(new PathSegListBuilder(handler));
     }
 
+    /**
+     * Parses a 'd' attribute value into its packed form, using the parser
+     * of the current thread.
+     */
+    public static PackedPath parsePackedPath(String value)
+        throws ParseException {
+        PathParser pathParser = (PathParser)pathParsers.take();
+        PackedPathProducer producer = new PackedPathProducer();
+        try {
+            pathParser.setPathHandler(producer);
+            pathParser.parse(value);
+        } finally {
+            pathParsers.release(pathParser);
+        }
+        return producer.getPackedPath();
+    }
+
+    /**
+     * The parsers of the 'd' attributes.
+     */
+    protected static final ParserCache pathParsers = new ParserCache() {
+            protected Parser createParser() {
+                return new PathParser();
+            }
+            protected void reset(Parser p) {
+                ((PathParser)p).setPathHandler(DefaultPathHandler.INSTANCE);
+            }
+        };
+
     /**
      * Check if the item is an SVGPathSeg.
      */
@@ -18,7 +18,10 @@
  */
 package org.apache.batik.dom.svg;
 
+import org.apache.batik.parser.DefaultPointsHandler;
 import org.apache.batik.parser.ParseException;
+import org.apache.batik.parser.Parser;
+import org.apache.batik.parser.ParserCache;
 import org.apache.batik.parser.PointsHandler;
 import org.apache.batik.parser.PointsParser;
 import org.w3c.dom.DOMException;
@@ -121,12 +124,29 @@ public abstract class AbstractSVGPointList
      */
     protected void doParse(String value, ListHandler handler)
             throws ParseException {
-        PointsParser pointsParser = new PointsParser();
+        PointsParser pointsParser = (PointsParser)pointsParsers.take();
         PointsListBuilder builder = new PointsListBuilder(handler);
-        pointsParser.setPointsHandler(builder);
-        pointsParser.parse(value);
+        try {
+            pointsParser.setPointsHandler(builder);
+            pointsParser.parse(value);
+        } finally {
+            pointsParsers.release(pointsParser);
+        }
     }
 
+    /**
+     * The parsers of the points attributes.
+     */
+    private static final ParserCache pointsParsers = new ParserCache() {
+            protected Parser createParser() {
+                return new PointsParser();
+            }
+            protected void reset(Parser p) {
+                ((PointsParser)p).setPointsHandler
+                    (DefaultPointsHandler.INSTANCE);
+            }
+        };
+
     /**
      * Asserts that the given item is an {@link SVGPoint}.
      */
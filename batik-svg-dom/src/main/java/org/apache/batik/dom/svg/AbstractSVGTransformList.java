@@ -20,7 +20,10 @@ package org.apache.batik.dom.svg;
 
 import java.awt.geom.AffineTransform;
 
+import org.apache.batik.parser.DefaultTransformListHandler;
 import org.apache.batik.parser.ParseException;
+import org.apache.batik.parser.Parser;
+import org.apache.batik.parser.ParserCache;
 import org.apache.batik.parser.TransformListHandler;
 import org.apache.batik.parser.TransformListParser;
 
@@ -173,12 +176,30 @@ public abstract class AbstractSVGTransformList
     protected void doParse(String value, ListHandler handler)
             throws ParseException {
 
-        TransformListParser transformListParser = new TransformListParser();
+        TransformListParser transformListParser =
+            (TransformListParser)transformListParsers.take();
         TransformListBuilder builder = new TransformListBuilder(handler);
-        transformListParser.setTransformListHandler(builder);
-        transformListParser.parse(value);
+        try {
+            transformListParser.setTransformListHandler(builder);
+            transformListParser.parse(value);
+        } finally {
+            transformListParsers.release(transformListParser);
+        }
     }
 
+    /**
+     * The parsers of the transform lists.
+     */
+    private static final ParserCache transformListParsers = new ParserCache() {
+            protected Parser createParser() {
+                return new TransformListParser();
+            }
+            protected void reset(Parser p) {
+                ((TransformListParser)p).setTransformListHandler
+                    (DefaultTransformListHandler.INSTANCE);
+            }
+        };
+
     /**
      * Asserts that the given item is an {@link SVGTransformList}.
      */
@@ -190,6 +190,7 @@ public class DOMGroupManager implements SVGSyntax, ErrorConstants {
                         setStyle(element, deltaGC.getContext(),
                                  domTreeManager.getGeneratorContext());
                     setTransform(element, deltaGC.getTransformStack());
+                    domTreeManager.elementAppended();
                 } else {
                     //
                     // Need to create a new current group
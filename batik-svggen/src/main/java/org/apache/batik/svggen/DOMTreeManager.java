@@ -18,6 +18,8 @@
  */
 package org.apache.batik.svggen;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +30,7 @@ import org.apache.batik.ext.awt.g2d.GraphicContext;
 import org.w3c.dom.Comment;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 /**
@@ -56,6 +59,12 @@ import org.w3c.dom.NodeList;
  *        +-- ...
  *        +-- [g]    Group n
  *
+ * In streaming mode, started with <code>startStreaming</code>, the
+ * groups are written to a <code>Writer</code> and removed from the
+ * tree as they are completed, together with the definitions they
+ * reference, so the memory used does not grow with the number of
+ * drawing operations.
+ *
  * @author <a href="mailto:cjolif">Christophe Jolif</a>
  * @author <a href="mailto:vincent.hardy@eng.sun.com">Vincent Hardy</a>
  * @version $Id$
@@ -115,6 +124,37 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
      */
     protected List otherDefs;
 
+    /**
+     * The number of elements added to the tree between two writes of
+     * the streamed content.
+     */
+    protected static final int STREAM_FLUSH_THRESHOLD = 100;
+
+    /**
+     * The writer of the streamed content, or null when the content is
+     * kept in the tree.
+     */
+    private XmlWriter.IndentWriter streamWriter;
+
+    private boolean streamUseCss;
+
+    private boolean streamEscaped;
+
+    /**
+     * The root element of the streamed document.
+     */
+    private Element streamRoot;
+
+    /**
+     * The group whose start tag has been written but not its end tag.
+     */
+    private Element streamOpenGroup;
+
+    /**
+     * The number of elements added since the last write.
+     */
+    private int streamPending;
+
     /**
      * Constructor
      * @param gc default graphic context state
@@ -183,6 +223,213 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
                     gm.recycleCurrentGroup();
             }
         }
+        elementAppended();
+    }
+
+    /**
+     * Called by the group managers when an element has been added to
+     * a group which is already in the tree.  In streaming mode, this
+     * writes the completed content once enough of it is pending.
+     */
+    void elementAppended() {
+        if ((streamWriter == null) ||
+            (++streamPending < STREAM_FLUSH_THRESHOLD))
+            return;
+
+        try {
+            flushStream(false);
+        } catch (IOException io) {
+            generatorContext.errorHandler.handleError
+                (new SVGGraphics2DRuntimeException(ERR_STREAM_WRITE, io));
+        }
+    }
+
+    /**
+     * Starts writing the content to <code>writer</code> as it is
+     * drawn, instead of keeping it in the tree.  The header, the
+     * start tag of <code>svgRoot</code> and its current children are
+     * written immediately and the children are removed.  The content
+     * drawn until <code>endStreaming</code> is called is then written
+     * in a new top level group.
+     *
+     * <p>While streaming, the top level group cannot be retrieved or
+     * changed.  The attributes of <code>svgRoot</code> are written
+     * when streaming starts, so an <code>enable-background</code>
+     * attribute required by a composite drawn later is not
+     * written.</p>
+     *
+     * @param svgRoot the root element of the document, as returned by
+     *        <code>getRoot</code>
+     * @param writer the output of the streamed content
+     * @param useCss defines whether the output should use CSS style
+     *        properties as opposed to plain attributes
+     * @param escaped defines if the characters will be escaped
+     */
+    public void startStreaming(Element svgRoot, Writer writer,
+                               boolean useCss, boolean escaped)
+        throws SVGGraphics2DIOException {
+        if (streamWriter != null)
+            throw new SVGGraphics2DRuntimeException(ERR_STREAMING);
+
+        XmlWriter.IndentWriter out = new XmlWriter.IndentWriter(writer);
+        try {
+            if (useCss)
+                SVGCSSStyler.style(svgRoot);
+            XmlWriter.writeDocumentHeader(out);
+            XmlWriter.writeStartTag(svgRoot, out, escaped);
+            Node child;
+            while ((child = svgRoot.getFirstChild()) != null) {
+                // Skip the top level group if nothing has been drawn yet
+                if (child.hasChildNodes() ||
+                    !SVG_G_TAG.equals(child.getNodeName()))
+                    XmlWriter.writeChildXml(child, out, escaped);
+                svgRoot.removeChild(child);
+            }
+
+            streamWriter = out;
+            streamUseCss = useCss;
+            streamEscaped = escaped;
+            streamRoot = svgRoot;
+            streamPending = 0;
+            writeStreamedStartTag(topLevelGroup);
+        } catch (SVGGraphics2DIOException e) {
+            generatorContext.errorHandler.handleError(e);
+        } catch (IOException io) {
+            generatorContext.errorHandler.
+                handleError(new SVGGraphics2DIOException(io));
+        }
+    }
+
+    /**
+     * Writes the content drawn since the last write and closes the
+     * streamed document.  The writer is flushed but not closed.  The
+     * content drawn afterwards is kept in the tree again.
+     */
+    public void endStreaming() throws SVGGraphics2DIOException {
+        if (streamWriter == null)
+            throw new SVGGraphics2DRuntimeException(ERR_NOT_STREAMING);
+
+        try {
+            flushStream(true);
+            XmlWriter.writeEndTag(topLevelGroup, streamWriter);
+            XmlWriter.writeEndTag(streamRoot, streamWriter);
+            streamWriter.printIndent();
+            streamWriter.flush();
+        } catch (SVGGraphics2DIOException e) {
+            generatorContext.errorHandler.handleError(e);
+        } catch (IOException io) {
+            generatorContext.errorHandler.
+                handleError(new SVGGraphics2DIOException(io));
+        } finally {
+            streamWriter = null;
+            streamRoot = null;
+            streamOpenGroup = null;
+            recycleTopLevelGroup(false);
+        }
+    }
+
+    /**
+     * Returns true if the content is being streamed.
+     */
+    public boolean isStreaming() {
+        return streamWriter != null;
+    }
+
+    /**
+     * Writes the pending content and removes it from the tree.  Unless
+     * <code>all</code> is true, the last element of the current group
+     * is kept, as it may still be modified by its producer.
+     */
+    private void flushStream(boolean all) throws IOException {
+        streamPending = 0;
+        List defs = getNewDefinitions();
+        Node current = all ? null : topLevelGroup.getLastChild();
+
+        // The definitions are written at the top level, where they do
+        // not inherit the properties of a group: the open group is
+        // closed before them and reopened afterwards if needed.  This
+        // is safe because the group opacity is never set on a group.
+        if ((streamOpenGroup != null) &&
+            ((streamOpenGroup != current) || !defs.isEmpty())) {
+            Node last = null;
+            if (streamOpenGroup == current)
+                last = streamOpenGroup.getLastChild();
+            writeStreamedChildren(streamOpenGroup, last);
+            XmlWriter.writeEndTag(streamOpenGroup, streamWriter);
+            if (streamOpenGroup != current)
+                topLevelGroup.removeChild(streamOpenGroup);
+            streamOpenGroup = null;
+        }
+
+        if (!defs.isEmpty()) {
+            Element defsElement = generatorContext.domFactory.
+                createElementNS(SVG_NAMESPACE_URI, SVG_DEFS_TAG);
+            defsElement.setAttributeNS(null, SVG_ID_ATTRIBUTE,
+                                       generatorContext.idGenerator.
+                                       generateID(ID_PREFIX_DEFS));
+            for (Object def : defs)
+                defsElement.appendChild((Element) def);
+            writeStreamedStartTag(defsElement);
+            writeStreamedChildren(defsElement, null);
+            XmlWriter.writeEndTag(defsElement, streamWriter);
+        }
+
+        writeStreamedChildren(topLevelGroup, current);
+
+        if (current != null) {
+            if (streamOpenGroup == null) {
+                streamOpenGroup = (Element)current;
+                writeStreamedStartTag(streamOpenGroup);
+            }
+            writeStreamedChildren(streamOpenGroup,
+                                  streamOpenGroup.getLastChild());
+        }
+    }
+
+    /**
+     * Returns the definitions created since the last write.  They are
+     * removed from the converters, so that only their caches keep the
+     * definitions once written and each write costs the number of new
+     * definitions.
+     */
+    private List getNewDefinitions() {
+        List defSet = gcConverter.getDefinitionSet();
+        defSet.removeAll(genericDefSet);
+        defSet.addAll(filterConverter.getDefinitionSet());
+        if (otherDefs != null){
+            defSet.addAll(otherDefs);
+            otherDefs = null;
+        }
+        gcConverter.clearDefinitionSet();
+        filterConverter.clearDefinitionSet();
+        return defSet;
+    }
+
+    /**
+     * Writes the start tag of <code>element</code>.  Its children are
+     * styled when they are written.
+     */
+    private void writeStreamedStartTag(Element element) throws IOException {
+        if (streamUseCss) {
+            element = (Element)element.cloneNode(false);
+            SVGCSSStyler.style(element);
+        }
+        XmlWriter.writeStartTag(element, streamWriter, streamEscaped);
+    }
+
+    /**
+     * Writes and removes the children of <code>parent</code> which
+     * precede <code>last</code>, or all of them if it is null.
+     */
+    private void writeStreamedChildren(Element parent, Node last)
+        throws IOException {
+        Node child;
+        while ((child = parent.getFirstChild()) != last) {
+            if (streamUseCss)
+                SVGCSSStyler.style(child);
+            XmlWriter.writeChildXml(child, streamWriter, streamEscaped);
+            parent.removeChild(child);
+        }
     }
 
     /**
@@ -228,6 +475,9 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
      * null.
      */
     public void setTopLevelGroup(Element topLevelGroup){
+        if (streamWriter != null)
+            throw new SVGGraphics2DRuntimeException(ERR_STREAMING);
+
         if(topLevelGroup == null)
             throw new SVGGraphics2DRuntimeException(ERR_TOP_LEVEL_GROUP_NULL);
 
@@ -378,6 +628,9 @@ public class DOMTreeManager implements SVGSyntax, ErrorConstants {
      * @return top level group
      */
     public Element getTopLevelGroup(boolean includeDefinitionSet){
+        if (streamWriter != null)
+            throw new SVGGraphics2DRuntimeException(ERR_STREAMING);
+
         Element topLevelGroup = this.topLevelGroup;
 
         //
@@ -73,6 +73,12 @@ public interface ErrorConstants {
         "topLevelGroup should not be null";
     String ERR_TOP_LEVEL_GROUP_NOT_G =
         "topLevelGroup should be a group <g>";
+    String ERR_STREAMING =
+        "the content is already being streamed";
+    String ERR_NOT_STREAMING =
+        "the content is not being streamed";
+    String ERR_STREAM_WRITE =
+        "could not write the streamed content";
 
     // SVGClip/Font/Hint/Stroke descriptor
     String ERR_CLIP_NULL = "clipPathValue should not be null";
@@ -85,6 +85,13 @@ public class SVGBufferedImageOp extends AbstractSVGFilterConverter {
         return filterSet;
     }
 
+    public void clearDefinitionSet() {
+        svgLookupOp.clearDefinitionSet();
+        svgRescaleOp.clearDefinitionSet();
+        svgConvolveOp.clearDefinitionSet();
+        svgCustomBufferedImageOp.clearDefinitionSet();
+    }
+
     public SVGLookupOp getLookupOpConverter(){
         return svgLookupOp;
     }
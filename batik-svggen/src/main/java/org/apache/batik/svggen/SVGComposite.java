@@ -72,6 +72,11 @@ public class SVGComposite implements SVGConverter {
         return compositeDefs;
     }
 
+    public void clearDefinitionSet() {
+        svgAlphaComposite.clearDefinitionSet();
+        svgCustomComposite.clearDefinitionSet();
+    }
+
     public SVGAlphaComposite getAlphaCompositeConverter() {
         return svgAlphaComposite;
     }
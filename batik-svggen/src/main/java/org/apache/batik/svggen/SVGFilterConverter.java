@@ -53,4 +53,16 @@ public interface SVGFilterConverter extends SVGSyntax {
      *         returned.
      */
     List getDefinitionSet();
+
+    /**
+     * Removes from the definition set the definitions it holds, once
+     * they have been written out.  The converter keeps reusing them
+     * for equal values, but only reports the definitions created
+     * afterwards.  This implementation clears the list returned by
+     * {@link #getDefinitionSet}, which is the converter's own list
+     * for the converters of this package.
+     */
+    default void clearDefinitionSet() {
+        getDefinitionSet().clear();
+    }
 }
@@ -118,4 +118,13 @@ public class SVGGraphicContextConverter {
 
         return defSet;
     }
+
+    /**
+     * Removes the definitions returned so far by
+     * {@link #getDefinitionSet} from the converters, once they have
+     * been written out.
+     */
+    public void clearDefinitionSet() {
+        for (SVGConverter converter : converters) converter.clearDefinitionSet();
+    }
 }
@@ -510,6 +510,51 @@ public class SVGGraphics2D extends AbstractGraphics2D
         }
     }
 
+    /**
+     * Starts writing the SVG content to <code>writer</code> as it is
+     * drawn. The groups of elements and the definitions they reference
+     * are written and removed from the DOM tree as they are completed,
+     * so the memory used does not grow with the number of drawing
+     * operations. The content drawn before this call is written
+     * immediately.
+     *
+     * <p>Until <code>endStreaming</code> is called, the root and the
+     * top level group cannot be retrieved or changed.</p>
+     *
+     * @param writer used to write out the SVG content
+     * @param useCss defines whether the output SVG should use CSS
+     *        style properties as opposed to plain attributes.
+     * @param escaped defines if the characters will be escaped
+     * @see DOMTreeManager#startStreaming
+     */
+    public void startStreaming(Writer writer, boolean useCss, boolean escaped)
+        throws SVGGraphics2DIOException {
+        Element svgRoot = getRoot();
+        svgRoot.setAttributeNS(XMLNS_NAMESPACE_URI,
+                               XMLNS_PREFIX,
+                               SVG_NAMESPACE_URI);
+        svgRoot.setAttributeNS(XMLNS_NAMESPACE_URI,
+                               XMLNS_PREFIX + ":" + XLINK_PREFIX,
+                               XLINK_NAMESPACE_URI);
+        domTreeManager.startStreaming(svgRoot, writer, useCss, escaped);
+    }
+
+    /**
+     * Writes the content drawn since the last write and ends the
+     * SVG document started by <code>startStreaming</code>. The writer
+     * is flushed but not closed.
+     */
+    public void endStreaming() throws SVGGraphics2DIOException {
+        domTreeManager.endStreaming();
+    }
+
+    /**
+     * Returns true if the SVG content is being streamed.
+     */
+    public boolean isStreaming() {
+        return domTreeManager.isStreaming();
+    }
+
     /**
      * Invoking this method will return a set of definition element that
      * contain all the definitions referenced by the attributes generated by
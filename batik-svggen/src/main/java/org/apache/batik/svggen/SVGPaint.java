@@ -86,6 +86,13 @@ public class SVGPaint implements SVGConverter {
         return paintDefs;
     }
 
+    public void clearDefinitionSet() {
+        svgLinearGradient.clearDefinitionSet();
+        svgTexturePaint.clearDefinitionSet();
+        svgCustomPaint.clearDefinitionSet();
+        svgColor.clearDefinitionSet();
+    }
+
     public SVGTexturePaint getTexturePaintConverter(){
         return svgTexturePaint;
     }
@@ -365,16 +365,7 @@ class XmlWriter implements SVGConstants {
         throws IOException, SVGGraphics2DIOException {
         out.write (TAG_START, 0, 1);    // "<"
         out.write (element.getTagName());
-
-        NamedNodeMap attributes = element.getAttributes();
-        if (attributes != null){
-            int nAttr = attributes.getLength();
-            for(int i=0; i<nAttr; i++){
-                Attr attr = (Attr)attributes.item(i);
-                out.write(' ');
-                writeXml(attr, out, escaped);
-            }
-        }
+        writeAttributesXml(element, out, escaped);
 
         boolean lastElem = (element.getParentNode().getLastChild()==element);
 
@@ -408,6 +399,60 @@ class XmlWriter implements SVGConstants {
         out.write (TAG_END, 1, 1);  // ">"
     }
 
+    private static void writeAttributesXml(Element element, IndentWriter out,
+                                           boolean escaped)
+        throws IOException {
+        NamedNodeMap attributes = element.getAttributes();
+        if (attributes != null){
+            int nAttr = attributes.getLength();
+            for(int i=0; i<nAttr; i++){
+                Attr attr = (Attr)attributes.item(i);
+                out.write(' ');
+                writeXml(attr, out, escaped);
+            }
+        }
+    }
+
+    /**
+     * Writes the start tag of an element whose children are written
+     * later, one by one, with <code>writeChildXml</code>.  This is used
+     * to stream content which is not all available at once.
+     */
+    static void writeStartTag(Element element, IndentWriter out,
+                              boolean escaped)
+        throws IOException {
+        out.write (TAG_START, 0, 1);    // "<"
+        out.write (element.getTagName());
+        writeAttributesXml(element, out, escaped);
+        out.printIndent ();
+        out.write (TAG_END, 1, 1);  // ">"
+        out.setIndentLevel(out.getIndentLevel()+2);
+    }
+
+    /**
+     * Writes a child of an element opened with
+     * <code>writeStartTag</code>.
+     */
+    static void writeChildXml(Node child, IndentWriter out, boolean escaped)
+        throws IOException {
+        int indentLevel = out.getIndentLevel();
+        writeXml(child, out, escaped);
+        out.setIndentLevel(indentLevel);
+    }
+
+    /**
+     * Writes the end tag of an element opened with
+     * <code>writeStartTag</code>.
+     */
+    static void writeEndTag(Element element, IndentWriter out)
+        throws IOException {
+        out.setIndentLevel(out.getIndentLevel()-2);
+        out.write (TAG_START, 0, 2);        // "</"
+        out.write (element.getTagName());
+        out.printIndent ();
+        out.write (TAG_END, 1, 1);  // ">"
+    }
+
     private static void writeChildrenXml(Element element, IndentWriter out,
                                          boolean escaped)
         throws IOException, SVGGraphics2DIOException {
@@ -418,7 +463,7 @@ class XmlWriter implements SVGConstants {
         }
     }
 
-    private static void writeDocumentHeader(IndentWriter out)
+    static void writeDocumentHeader(IndentWriter out)
         throws IOException {
         String  encoding = null;
 
@@ -0,0 +1,251 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.apps.rasterizer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+
+/**
+ * Generates the list of the classes loaded while warming up the
+ * transcoders and, optionally, while converting a set of sample
+ * documents.  The result uses the format expected by the
+ * <code>-XX:SharedClassListFile</code> option of the virtual machine, so
+ * that it can be used to dump a class data sharing (CDS/AppCDS) archive
+ * which makes the rasterizer start faster:
+ *
+ * <pre>
+ * java -cp batik-rasterizer.jar org.apache.batik.apps.rasterizer.ClassListGenerator batik.classlist samples/
+ * java -Xshare:dump -XX:SharedClassListFile=batik.classlist -XX:SharedArchiveFile=batik.jsa -cp batik-rasterizer.jar
+ * java -XX:SharedArchiveFile=batik.jsa -jar batik-rasterizer.jar ...
+ * </pre>
+ *
+ * The warm-up and the conversions are run in a separate class loader on
+ * top of the class path of this virtual machine, which records all the
+ * classes it is asked for.
+ *
+ * @version $Id$
+ */
+public class ClassListGenerator {
+
+    /**
+     * The class performing the warm-up.
+     */
+    public static final String WARM_UP_CLASS
+        = "org.apache.batik.transcoder.image.WarmUp";
+
+    /**
+     * The class used to convert the sample documents.
+     */
+    public static final String CONVERTER_CLASS
+        = "org.apache.batik.apps.rasterizer.SVGConverter";
+
+    public static final String USAGE
+        = Messages.get("ClassListGenerator.usage", "No usage");
+
+    public static final String MESSAGE_CLASS_LIST_WRITTEN
+        = "ClassListGenerator.message.class.list.written";
+
+    /**
+     * The names of the classes loaded so far.
+     */
+    protected TreeSet classNames = new TreeSet();
+
+    /**
+     * The documents to convert, in addition to the warm-up.
+     */
+    protected List sources = new ArrayList();
+
+    /**
+     * Creates a new generator.
+     * @param sources the files or directories of the documents to
+     *        convert, in addition to the warm-up document.
+     */
+    public ClassListGenerator(List sources) {
+        Iterator it = sources.iterator();
+        while (it.hasNext()) {
+            File f = new File((String)it.next());
+            if (f.isDirectory()) {
+                File[] fl = f.listFiles(new SVGConverter.SVGFileFilter());
+                for (File aFl : fl) {
+                    this.sources.add(aFl.getPath());
+                }
+            } else {
+                this.sources.add(f.getPath());
+            }
+        }
+    }
+
+    /**
+     * Runs the warm-up and the conversions and returns the names of the
+     * loaded classes, using '/' as the package separator.
+     */
+    public List generate() throws Exception {
+        URLClassLoader loader = new RecordingClassLoader(getClassPath());
+        Thread t = Thread.currentThread();
+        ClassLoader ccl = t.getContextClassLoader();
+        t.setContextClassLoader(loader);
+        try {
+            Class c = loader.loadClass(WARM_UP_CLASS);
+            invoke(c.getMethod("warmUp"), null, null);
+            if (!sources.isEmpty()) {
+                convert(loader);
+            }
+        } finally {
+            t.setContextClassLoader(ccl);
+            loader.close();
+        }
+
+        List result = new ArrayList();
+        synchronized (classNames) {
+            Iterator it = classNames.iterator();
+            while (it.hasNext()) {
+                result.add(((String)it.next()).replace('.', '/'));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts the sources to PNG images in a temporary directory, using
+     * the converter loaded by the given class loader.
+     */
+    protected void convert(ClassLoader loader) throws Exception {
+        File dst = File.createTempFile("batik", "classlist");
+        dst.delete();
+        dst.mkdir();
+        try {
+            Class c = loader.loadClass(CONVERTER_CLASS);
+            Object converter = c.getDeclaredConstructor().newInstance();
+            String[] s = new String[sources.size()];
+            sources.toArray(s);
+            invoke(c.getMethod("setSources", new Class[] { String[].class }),
+                   converter, new Object[] { s });
+            invoke(c.getMethod("setDst", new Class[] { File.class }),
+                   converter, new Object[] { dst });
+            invoke(c.getMethod("execute"), converter, null);
+        } finally {
+            File[] fl = dst.listFiles();
+            if (fl != null) {
+                for (File aFl : fl) {
+                    aFl.delete();
+                }
+            }
+            dst.delete();
+        }
+    }
+
+    /**
+     * Invokes the given method, unwrapping the exceptions it throws.
+     */
+    protected static Object invoke(Method m, Object target, Object[] args)
+        throws Exception {
+        try {
+            return m.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable th = e.getTargetException();
+            if (th instanceof Exception) {
+                throw (Exception)th;
+            }
+            throw (Error)th;
+        }
+    }
+
+    /**
+     * Returns the entries of the class path of this virtual machine.
+     */
+    protected static URL[] getClassPath() throws MalformedURLException {
+        String cp = System.getProperty("java.class.path");
+        StringTokenizer st = new StringTokenizer(cp, File.pathSeparator);
+        List urls = new ArrayList();
+        while (st.hasMoreTokens()) {
+            urls.add(new File(st.nextToken()).toURI().toURL());
+        }
+        URL[] result = new URL[urls.size()];
+        urls.toArray(result);
+        return result;
+    }
+
+    /**
+     * Writes the given class names to the given file, one per line.
+     */
+    public static void write(List names, File f) throws IOException {
+        PrintWriter w = new PrintWriter
+            (new OutputStreamWriter(new FileOutputStream(f), "UTF-8"));
+        try {
+            Iterator it = names.iterator();
+            while (it.hasNext()) {
+                w.println(it.next());
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+        List sources = new ArrayList();
+        for (int i = 1; i < args.length; i++) {
+            sources.add(args[i]);
+        }
+        List names = new ClassListGenerator(sources).generate();
+        File f = new File(args[0]);
+        write(names, f);
+        System.out.println(Messages.formatMessage
+                           (MESSAGE_CLASS_LIST_WRITTEN,
+                            new Object[] { "" + names.size(), f.getPath() }));
+        System.exit(0);
+    }
+
+    /**
+     * A class loader which does not delegate the loading of the classes
+     * of the class path to the application class loader, and records the
+     * names of all the classes it returns.
+     */
+    protected class RecordingClassLoader extends URLClassLoader {
+
+        public RecordingClassLoader(URL[] urls) {
+            super(urls, ClassLoader.getSystemClassLoader().getParent());
+        }
+
+        protected Class loadClass(String name, boolean resolve)
+            throws ClassNotFoundException {
+            Class c = super.loadClass(name, resolve);
+            synchronized (classNames) {
+                classNames.add(name);
+            }
+            return c;
+        }
+    }
+}
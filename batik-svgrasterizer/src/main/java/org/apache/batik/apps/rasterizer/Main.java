@@ -153,6 +153,24 @@ public class Main implements SVGConverterController {
         public abstract void handleOption(float optionValue, SVGConverter c);
     }
 
+    /**
+     * Base class for options which expect the single optionValue to
+     * be an integer. Subclasses should implement the <code>handleOption</code>
+     * method which takes an int and an <code>SVGConverter</code> as
+     * parameters.
+     */
+    public abstract static class IntegerOptionHandler extends SingleValueOptionHandler {
+        public void handleOption(String optionValue, SVGConverter c){
+            try{
+                handleOption(Integer.parseInt(optionValue), c);
+            } catch(NumberFormatException e){
+                throw new IllegalArgumentException();
+            }
+        }
+
+        public abstract void handleOption(int optionValue, SVGConverter c);
+    }
+
     /**
      * Base class for options which expect the single optionValue to
      * be a time value. Subclasses should implement the <code>handleOption</code>
@@ -482,6 +500,15 @@ public class Main implements SVGConverterController {
     public static String CL_OPTION_INDEXED_DESCRIPTION
         = Messages.get("Main.cl.option.indexed.description", "No description");
 
+    /**
+     * Option to specify the number of worker threads
+     */
+    public static String CL_OPTION_THREADS
+        = Messages.get("Main.cl.option.threads", "-threads");
+
+    public static String CL_OPTION_THREADS_DESCRIPTION
+        = Messages.get("Main.cl.option.threads.description", "No description");
+
     /**
      * Option to specify the set of allowed scripts
      */
@@ -768,6 +795,20 @@ public class Main implements SVGConverterController {
                                   return CL_OPTION_INDEXED_DESCRIPTION;
                               }
                           });
+        optionMap.put(CL_OPTION_THREADS,
+                      new IntegerOptionHandler(){
+                              public void handleOption(int optionValue,
+                                                       SVGConverter c){
+                                  if (optionValue < 1)
+                                      throw new IllegalArgumentException();
+
+                                  c.setThreadCount(optionValue);
+                              }
+
+                              public String getOptionDescription(){
+                                  return CL_OPTION_THREADS_DESCRIPTION;
+                              }
+                          });
         optionMap.put(CL_OPTION_VALIDATE,
                       new NoValueOptionHandler(){
                               public void handleOption(SVGConverter c){
@@ -854,6 +895,13 @@ public class Main implements SVGConverterController {
      */
     protected List args;
 
+    /**
+     * Whether sources are converted by several worker threads. In that
+     * case, the per-source message is only printed once the outcome of
+     * the conversion is known, so that lines do not get mixed up.
+     */
+    protected boolean parallel;
+
     public Main(String[] args){
         this.args = new ArrayList();
         for (String arg : args) {
@@ -1034,17 +1082,25 @@ public class Main implements SVGConverterController {
         return true;
     }
 
+    public int getThreadCount(int threadCount, List sources){
+        parallel = threadCount > 1;
+        return threadCount;
+    }
+
     public boolean proceedWithSourceTranscoding(SVGConverterSource source,
                                                 File dest){
-        System.out.print(Messages.formatMessage(MESSAGE_ABOUT_TO_TRANSCODE_SOURCE,
-                                                new Object[]{source.toString(),
-                                                             dest.toString()}));
+        if (!parallel){
+            printAboutToTranscode(source, dest);
+        }
         return true;
     }
 
     public boolean proceedOnSourceTranscodingFailure(SVGConverterSource source,
                                                      File dest,
                                                      String errorCode){
+        if (parallel){
+            printAboutToTranscode(source, dest);
+        }
         System.out.println(Messages.formatMessage(MESSAGE_CONVERSION_FAILED,
                                                   new Object[]{errorCode}));
 
@@ -1053,8 +1109,17 @@ public class Main implements SVGConverterController {
 
     public void onSourceTranscodingSuccess(SVGConverterSource source,
                                            File dest){
+        if (parallel){
+            printAboutToTranscode(source, dest);
+        }
         System.out.println(Messages.formatMessage(MESSAGE_CONVERSION_SUCCESS,
                                                   null));
     }
-}
 
+    protected void printAboutToTranscode(SVGConverterSource source,
+                                         File dest){
+        System.out.print(Messages.formatMessage(MESSAGE_ABOUT_TO_TRANSCODE_SOURCE,
+                                                new Object[]{source.toString(),
+                                                             dest.toString()}));
+    }
+}
@@ -29,9 +29,16 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.batik.transcoder.Transcoder;
 import org.apache.batik.transcoder.TranscoderInput;
@@ -90,6 +97,8 @@ import org.apache.batik.util.ParsedURL;
  *     SVG documents.</li>
  * <li>pixelUnitToMillimeter: defines the size of a pixel in millimeters
  *     to use when processing the SVG documents.</li>
+ * <li>threadCount: controls how many sources are converted concurrently.
+ *     Each worker thread uses its own <code>Transcoder</code>.</li>
  * </ul>
  *
  * @version $Id$
@@ -204,6 +213,16 @@ public class SVGConverter {
     /** Default height */
     protected static final float DEFAULT_HEIGHT = -1;
 
+    /** Default number of worker threads */
+    protected static final int DEFAULT_THREAD_COUNT = 1;
+
+    /**
+     * Number of sources which may be waiting for, or being processed
+     * by, each worker thread. This bounds the work queue so that memory
+     * use does not depend on the number of sources.
+     */
+    protected static final int SOURCES_PER_THREAD = 2;
+
     /** Result type */
     protected DestinationType destinationType = DEFAULT_RESULT_TYPE;
 
@@ -258,6 +277,9 @@ public class SVGConverter {
     /** Controls whether scripts should be run securely or not */
     protected boolean securityOff = false;
 
+    /** Number of worker threads used to convert the sources */
+    protected int threadCount = DEFAULT_THREAD_COUNT;
+
     /** Sources files or URLs */
     protected List sources = null;
 
@@ -651,6 +673,25 @@ public class SVGConverter {
         return securityOff;
     }
 
+    /**
+     * Sets the number of worker threads used to convert the sources.
+     * With a value greater than 1, the sources are converted
+     * concurrently, each worker using its own <code>Transcoder</code>.
+     * Controller notifications are still delivered in the order of the
+     * sources, on the thread calling {@link #execute}.
+     */
+    public void setThreadCount(int threadCount) throws IllegalArgumentException {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount(){
+        return threadCount;
+    }
+
     /**
      * Returns true if f is a File. <code>f</code> is found to be a file if
      * it exists and is a file. If it does not exist, it is declared
@@ -708,6 +749,13 @@ public class SVGConverter {
             return;
         }
 
+        int threads = controller.getThreadCount(threadCount, sources);
+        if (threads > 1 && sources.size() > 1) {
+            executeInParallel(sources, dstFiles, hints,
+                              Math.min(threads, sources.size()));
+            return;
+        }
+
         // Convert files one by one
         for(int i = 0 ; i < sources.size() ; i++) {
             // Get the file from the vector.
@@ -720,6 +768,101 @@ public class SVGConverter {
         }
     }
 
+    /**
+     * Converts the sources on <code>threads</code> worker threads. Each
+     * worker creates its own <code>Transcoder</code> for the destination
+     * type, configured with its own copy of <code>hints</code>. At most
+     * <code>SOURCES_PER_THREAD * threads</code> sources are pending at
+     * any time, and the controller is notified in the order of the
+     * sources, on the calling thread.
+     */
+    protected void executeInParallel(List sources,
+                                     List dstFiles,
+                                     final Map hints,
+                                     int threads)
+        throws SVGConverterException {
+        final ThreadLocal transcoders = new ThreadLocal() {
+                protected Object initialValue() {
+                    Transcoder t = destinationType.getTranscoder();
+                    t.setTranscodingHints(new HashMap(hints));
+                    return t;
+                }
+            };
+
+        ExecutorService executor = Executors.newFixedThreadPool
+            (threads, new ThreadFactory() {
+                    int count;
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "SVGConverter-" + (++count));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+        LinkedList pending = new LinkedList();
+        int maxPending = threads * SOURCES_PER_THREAD;
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                final SVGConverterSource currentFile
+                    = (SVGConverterSource)sources.get(i);
+                final File outputFile = (File)dstFiles.get(i);
+
+                if (!controller.proceedWithSourceTranscoding(currentFile,
+                                                             outputFile)){
+                    continue;
+                }
+
+                Future result = executor.submit(new Callable() {
+                        public Object call() {
+                            try {
+                                createOutputDir(outputFile);
+                            } catch (SVGConverterException e) {
+                                return e;
+                            }
+                            return transcodeSource
+                                (currentFile, outputFile,
+                                 (Transcoder)transcoders.get());
+                        }
+                    });
+                pending.add(new PendingSource(currentFile, outputFile, result));
+
+                if (pending.size() >= maxPending) {
+                    reportPendingResult((PendingSource)pending.removeFirst());
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                reportPendingResult((PendingSource)pending.removeFirst());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the result of a source submitted by
+     * {@link #executeInParallel} and reports it to the controller.
+     */
+    private void reportPendingResult(PendingSource p)
+        throws SVGConverterException {
+        SVGConverterSource inputFile = p.source;
+        File outputFile = p.dest;
+        SVGConverterException error;
+        try {
+            error = (SVGConverterException)p.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = new SVGConverterException(ERROR_WHILE_RASTERIZING_FILE,
+                                              new Object[] {outputFile.getName(),
+                                                            e.toString()});
+        } catch (ExecutionException e) {
+            error = new SVGConverterException(ERROR_WHILE_RASTERIZING_FILE,
+                                              new Object[] {outputFile.getName(),
+                                                            e.getCause().toString()});
+        }
+        reportTranscodingResult(inputFile, outputFile, error);
+    }
+
     /**
      * Populates a vector with destination files names
      * computed from the names of the files in the sources vector
@@ -946,15 +1089,54 @@ public class SVGConverter {
                              File outputFile,
                              Transcoder transcoder)
         throws SVGConverterException {
-        TranscoderInput input = null;
-        TranscoderOutput output = null;
-        OutputStream outputStream = null;
-
         if (!controller.proceedWithSourceTranscoding(inputFile,
                                                      outputFile)){
             return;
         }
 
+        reportTranscodingResult(inputFile, outputFile,
+                                transcodeSource(inputFile, outputFile, transcoder));
+    }
+
+    /**
+     * Notifies the controller of the outcome of a source conversion.
+     * If <code>error</code> is not null and the controller decides not
+     * to proceed, the error is thrown.
+     */
+    protected void reportTranscodingResult(SVGConverterSource inputFile,
+                                           File outputFile,
+                                           SVGConverterException error)
+        throws SVGConverterException {
+        if (error == null) {
+            controller.onSourceTranscodingSuccess(inputFile, outputFile);
+            return;
+        }
+
+        boolean proceed = controller.proceedOnSourceTranscodingFailure
+            (inputFile, outputFile, error.getErrorCode());
+        if (!proceed){
+            throw error;
+        }
+        if (!ERROR_WHILE_RASTERIZING_FILE.equals(error.getErrorCode())) {
+            error.printStackTrace();
+        }
+    }
+
+    /**
+     * Converts the input image to the result image with the given
+     * transcoder, without notifying the controller. This may be called
+     * concurrently, as long as each thread uses its own transcoder.
+     *
+     * @return null if the conversion succeeded, or the error which
+     *         prevented it otherwise.
+     */
+    protected SVGConverterException transcodeSource(SVGConverterSource inputFile,
+                                                    File outputFile,
+                                                    Transcoder transcoder) {
+        TranscoderInput input = null;
+        TranscoderOutput output = null;
+        OutputStream outputStream = null;
+
         try {
             if (inputFile.isSameAs(outputFile.getPath())) {
                 throw new SVGConverterException(ERROR_SOURCE_SAME_AS_DESTINATION,
@@ -992,38 +1174,18 @@ public class SVGConverter {
 
             output = new TranscoderOutput(outputStream);
         } catch(SVGConverterException e){
-            boolean proceed = controller.proceedOnSourceTranscodingFailure
-                (inputFile, outputFile, e.getErrorCode());
-            if (proceed){
-                e.printStackTrace();
-                return;
-            } else {
-                throw e;
-            }
+            return e;
         }
 
         // Transcode now
-        boolean success = false;
+        SVGConverterException error = null;
         try {
             transcoder.transcode(input, output);
-            success = true;
         } catch(Exception te) {
             te.printStackTrace();
-            try {
-                outputStream.flush();
-                outputStream.close();
-            } catch(IOException ioe) {}
-
-            // Report error to the controller. If controller decides
-            // to stop, throw an exception
-            boolean proceed = controller.proceedOnSourceTranscodingFailure
-                (inputFile, outputFile, ERROR_WHILE_RASTERIZING_FILE);
-
-            if (!proceed){
-                throw new SVGConverterException(ERROR_WHILE_RASTERIZING_FILE,
-                                                 new Object[] {outputFile.getName(),
-                                                               te.getMessage()});
-            }
+            error = new SVGConverterException(ERROR_WHILE_RASTERIZING_FILE,
+                                              new Object[] {outputFile.getName(),
+                                                            te.getMessage()});
         }
 
         // Close streams and clean up.
@@ -1031,12 +1193,14 @@ public class SVGConverter {
             outputStream.flush();
             outputStream.close();
         } catch(IOException ioe) {
-            return;
+            if (error == null) {
+                error = new SVGConverterException(ERROR_WHILE_RASTERIZING_FILE,
+                                                  new Object[] {outputFile.getName(),
+                                                                ioe.getMessage()});
+            }
         }
 
-        if (success){
-            controller.onSourceTranscodingSuccess(inputFile, outputFile);
-        }
+        return error;
     }
 
     /**
@@ -1140,6 +1304,22 @@ public class SVGConverter {
     //   Inner classes
     // -----------------------------------------------------------------------
 
+    /**
+     * A source handed over to a worker thread, along with the
+     * <code>Future</code> of its conversion.
+     */
+    private static class PendingSource {
+        SVGConverterSource source;
+        File dest;
+        Future result;
+
+        PendingSource(SVGConverterSource source, File dest, Future result) {
+            this.source = source;
+            this.dest = dest;
+            this.result = result;
+        }
+    }
+
     /**
      * Convenience class to filter svg files
      */
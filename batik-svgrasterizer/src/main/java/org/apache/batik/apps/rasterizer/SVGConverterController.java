@@ -48,11 +48,31 @@ public interface SVGConverterController {
                                            List sources,
                                            List dest);
 
+    /**
+     * Invoked once the task has been accepted, to let the controller
+     * choose how many worker threads transcode the sources. Each
+     * worker uses its own <code>Transcoder</code> and copy of the
+     * hints. A value less than 2 means that the sources are converted
+     * one after the other on the calling thread. The default
+     * implementation uses the thread count set on the converter.
+     *
+     * @param threadCount thread count set on the converter
+     *        (see {@link SVGConverter#setThreadCount})
+     * @param sources list of SVG sources it will convert.
+     */
+    default int getThreadCount(int threadCount, List sources) {
+        return threadCount;
+    }
+
     /**
      * Invoked when the rasterizer is about to start transcoding
      * of a given source.
      * The controller should return true if the source should be
      * transcoded and false otherwise.
+     * When several worker threads are used, this is invoked in the
+     * order of the sources, on the thread which called
+     * {@link SVGConverter#execute}, before the source is handed over
+     * to a worker.
      */
     boolean proceedWithSourceTranscoding(SVGConverterSource source,
                                                 File dest);
@@ -63,6 +83,8 @@ public interface SVGConverterController {
      * The controller should return true if the transcoding process
      * should continue on other sources and it should return false
      * if it should not.
+     * Failures and successes are always reported in the order of
+     * the sources, on the thread which called {@link SVGConverter#execute}.
      *
      * @param errorCode see the {@link SVGConverter} error code descriptions.
      */
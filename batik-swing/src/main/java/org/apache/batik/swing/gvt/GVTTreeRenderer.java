@@ -149,6 +149,13 @@ public class GVTTreeRenderer extends HaltingThread {
         EventDispatcher.fireEvent(dispatcher, listeners, event, true);
     }
 
+    /**
+     * Returns the user to device transform of the rendering.
+     */
+    public AffineTransform getUser2DeviceTransform() {
+        return user2DeviceTransform;
+    }
+
     /**
      * Adds a GVTTreeRendererListener to this GVTTreeRenderer.
      */
@@ -124,6 +124,42 @@ public class JGVTComponent extends JComponent {
      */
     protected BufferedImage image;
 
+    /**
+     * The transform the image was rendered with.
+     */
+    protected AffineTransform imageTransform;
+
+    /**
+     * The default budget of the tile cache, in bytes, from the
+     * <code>org.apache.batik.swing.tile_cache_size</code> system
+     * property.  0 disables the tile cache.
+     */
+    protected static final long DEFAULT_TILE_CACHE_SIZE;
+    static {
+        long value = 0;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.swing.tile_cache_size");
+            if (s != null) {
+                value = Long.parseLong(s);
+            }
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        }
+        DEFAULT_TILE_CACHE_SIZE = value;
+    }
+
+    /**
+     * The cache of tiles painted while the image does not match the
+     * view, or null.
+     */
+    protected TilePyramid tilePyramid;
+
+    /**
+     * The image the tiles are composed in.
+     */
+    protected BufferedImage tileImage;
+
     /**
      * The initial rendering transform.
      */
@@ -231,6 +267,10 @@ public class JGVTComponent extends JComponent {
 
         addGVTTreeRendererListener(listener);
 
+        if (DEFAULT_TILE_CACHE_SIZE > 0) {
+            tilePyramid = createTilePyramid(DEFAULT_TILE_CACHE_SIZE);
+        }
+
         addComponentListener(new ComponentAdapter() {
                 public void componentResized(ComponentEvent e) {
                     if (updateRenderingTransform())
@@ -365,6 +405,9 @@ public class JGVTComponent extends JComponent {
      */
     protected void setGraphicsNode(GraphicsNode gn, boolean createDispatcher) {
         gvtRoot = gn;
+        if (tilePyramid != null) {
+            tilePyramid.setGraphicsNode(gn);
+        }
         if (gn != null && createDispatcher) {
             initializeEventHandling();
         }
@@ -522,6 +565,74 @@ public class JGVTComponent extends JComponent {
         return progressivePaint;
     }
 
+    /**
+     * Sets the budget of the tile cache, in bytes.  0 disables the
+     * cache.
+     *
+     * <p>While the cache is enabled, a view whose transform changed is
+     * painted at once from the tiles rendered for the previous views,
+     * and refined as the tiles of the new view are rendered in the
+     * background, until the rendering of the whole view completes.
+     * The cache is only used when {@link #useTileCache} returns true:
+     * its tiles are rendered concurrently with the other renderings,
+     * so the GVT tree must not change while it is displayed.</p>
+     */
+    public void setTileCacheSize(long size) {
+        if (size <= 0) {
+            if (tilePyramid != null) {
+                tilePyramid.setGraphicsNode(null);
+                tilePyramid = null;
+                tileImage = null;
+            }
+        } else if (tilePyramid == null) {
+            tilePyramid = createTilePyramid(size);
+            tilePyramid.setGraphicsNode(gvtRoot);
+            if (renderer != null) {
+                tilePyramid.setRenderingHints(renderer.getRenderingHints());
+            }
+        } else {
+            tilePyramid.setMaxSize(size);
+        }
+        repaint();
+    }
+
+    /**
+     * Returns the budget of the tile cache, in bytes, 0 if the cache is
+     * disabled.
+     */
+    public long getTileCacheSize() {
+        return (tilePyramid == null) ? 0 : tilePyramid.getMaxSize();
+    }
+
+    /**
+     * Creates the tile cache.
+     */
+    protected TilePyramid createTilePyramid(long size) {
+        return new TilePyramid(this, size);
+    }
+
+    /**
+     * Tells whether the tile cache is used to paint the tree.
+     */
+    protected boolean useTileCache() {
+        return tilePyramid != null && gvtRoot != null;
+    }
+
+    /**
+     * Returns the transform the tree is currently displayed with: the
+     * transform of the image, followed by the painting transform, while
+     * there is one, and the rendering transform otherwise.
+     */
+    protected AffineTransform getViewTransform() {
+        if (paintingTransform != null && image != null &&
+            imageTransform != null) {
+            AffineTransform at = new AffineTransform(paintingTransform);
+            at.concatenate(imageTransform);
+            return at;
+        }
+        return renderingTransform;
+    }
+
     public Rectangle getRenderRect() {
         Dimension d = getSize();
         return new Rectangle(0, 0, d.width, d.height);
@@ -571,11 +682,18 @@ public class JGVTComponent extends JComponent {
         g2d.fillRect(visRect.x,     visRect.y,
                      visRect.width, visRect.height);
 
+        boolean tiles = useTileCache();
+        if (tiles) {
+            paintTiles(g2d, visRect);
+        }
+
         if (image != null) {
             if (paintingTransform != null) {
                 g2d.transform(paintingTransform);
             }
-            g2d.drawRenderedImage(image, null);
+            if (!tiles) {
+                g2d.drawRenderedImage(image, null);
+            }
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                                  RenderingHints.VALUE_ANTIALIAS_OFF);
             for (Object overlay : overlays) {
@@ -584,6 +702,52 @@ public class JGVTComponent extends JComponent {
         }
     }
 
+    /**
+     * Paints the image and the tile cache.  While the image does not
+     * match the view, the cached tiles of the other views, the image, if
+     * it is at the right place, and the cached tiles of the view replace
+     * each other in that order, so that each pixel comes from the best
+     * of them.  The missing tiles of the view are then scheduled for
+     * rendering, unless the view is being zoomed or rotated.
+     */
+    protected void paintTiles(Graphics2D g2d, Rectangle visRect) {
+        AffineTransform view = getViewTransform();
+        if (image != null && paintingTransform == null &&
+            renderingTransform.equals(imageTransform)) {
+            g2d.drawRenderedImage(image, null);
+        } else {
+            if (tileImage == null ||
+                tileImage.getWidth() != visRect.width ||
+                tileImage.getHeight() != visRect.height) {
+                tileImage = new BufferedImage(visRect.width, visRect.height,
+                                              BufferedImage.TYPE_INT_ARGB_PRE);
+            }
+            Graphics2D g = tileImage.createGraphics();
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, visRect.width, visRect.height);
+            g.setComposite(AlphaComposite.Src);
+            tilePyramid.paintOtherLevels(g, view, visRect);
+            if (image != null && (paintingTransform != null ||
+                                  renderingTransform.equals(imageTransform))) {
+                if (paintingTransform != null) {
+                    g.transform(paintingTransform);
+                }
+                g.drawRenderedImage(image, null);
+                g.setTransform(new AffineTransform());
+            }
+            tilePyramid.paint(g, view, visRect);
+            g.dispose();
+            g2d.drawImage(tileImage, visRect.x, visRect.y, null);
+        }
+
+        if (view.getScaleX() == renderingTransform.getScaleX() &&
+            view.getScaleY() == renderingTransform.getScaleY() &&
+            view.getShearX() == renderingTransform.getShearX() &&
+            view.getShearY() == renderingTransform.getShearY()) {
+            tilePyramid.request(view, visRect);
+        }
+    }
+
     /**
      * Sets the painting transform. A null transform is the same as
      * an identity transform.
@@ -686,6 +850,9 @@ public class JGVTComponent extends JComponent {
      */
     public void flush() {
         renderer.flush();
+        if (tilePyramid != null) {
+            tilePyramid.clear();
+        }
     }
 
     /**
@@ -694,6 +861,9 @@ public class JGVTComponent extends JComponent {
      */
     public void flush(Rectangle r) {
         renderer.flush(r);
+        if (tilePyramid != null) {
+            tilePyramid.clear();
+        }
     }
 
     /**
@@ -717,6 +887,9 @@ public class JGVTComponent extends JComponent {
             renderer = createImageRenderer();
             renderer.setTree(gvtRoot);
         }
+        if (tilePyramid != null) {
+            tilePyramid.setRenderingHints(renderer.getRenderingHints());
+        }
 
         // Area of interest computation.
         AffineTransform inv;
@@ -788,6 +961,10 @@ public class JGVTComponent extends JComponent {
         renderer = null;
         image = null;
         gvtRoot = null;
+        tileImage = null;
+        if (tilePyramid != null) {
+            tilePyramid.setGraphicsNode(null);
+        }
     }
 
     /**
@@ -849,6 +1026,7 @@ public class JGVTComponent extends JComponent {
         public void gvtRenderingStarted(GVTTreeRendererEvent e) {
             if (progressivePaint && !doubleBufferedRendering) {
                 image = e.getImage();
+                imageTransform = getRenderedTransform(e);
                 progressivePaintThread = new HaltingThread() {
                     public void run() {
                         final Thread thisThread = this;
@@ -900,6 +1078,11 @@ public class JGVTComponent extends JComponent {
                 needRender = false;
             } else {
                 image = e.getImage();
+                imageTransform = getRenderedTransform(e);
+                if (image != null && imageTransform != null &&
+                    useTileCache()) {
+                    tilePyramid.addImage(image, imageTransform);
+                }
                 immediateRepaint();
             }
             if (eventDispatcher != null) {
@@ -907,6 +1090,18 @@ public class JGVTComponent extends JComponent {
             }
         }
 
+        /**
+         * Returns the transform of the rendering which fired the given
+         * event.
+         */
+        protected AffineTransform getRenderedTransform(GVTTreeRendererEvent e) {
+            Object src = e.getSource();
+            if (src instanceof GVTTreeRenderer) {
+                return ((GVTTreeRenderer)src).getUser2DeviceTransform();
+            }
+            return null;
+        }
+
         /**
          * Called when a rendering was cancelled.
          */
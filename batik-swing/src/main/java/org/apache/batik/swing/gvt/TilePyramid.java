@@ -0,0 +1,678 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.swing.gvt;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.gvt.GraphicsNode;
+
+/**
+ * A cache of renderings of a GVT tree split in fixed size tiles, used by
+ * {@link JGVTComponent} to display a view as soon as its transform
+ * changes, before the rendering of the whole view completes.
+ *
+ * <p>The tiles are grouped in levels.  A level holds the tiles rendered
+ * with one user to device transform, up to its translation, which is
+ * rounded to whole pixels as the renderers of the component do: panning
+ * reuses the tiles of the current level, while each zoom factor or
+ * rotation has its own level.  The tiles of the level of
+ * a view are drawn at their exact place.  The tiles of the other levels
+ * are scaled to the view, to fill in what the former do not cover
+ * yet.</p>
+ *
+ * <p>The missing tiles of a view, and a ring of tiles around it, are
+ * rendered by a few background threads, the visible tiles nearest the
+ * center of the view first, and the component is repainted as they
+ * complete.  The tiles that a complete rendering of the view covers are
+ * copied from it instead of being rendered again.  The least recently
+ * used tiles are dropped first when the cache exceeds its budget, a
+ * number of bytes of image data.</p>
+ *
+ * <p>The tree is painted by the tile threads concurrently with the
+ * other renderings of the component, so it must not be modified while
+ * the cache is in use.</p>
+ *
+ * @version $Id$
+ */
+public class TilePyramid {
+
+    /**
+     * The width and height of the tiles, in pixels.
+     */
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * The size of a tile, in bytes.
+     */
+    protected static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+
+    /**
+     * The time, in milliseconds, after which an idle tile thread stops.
+     */
+    protected static final long IDLE_TIMEOUT = 5000;
+
+    /**
+     * The component to repaint when tiles are rendered.
+     */
+    protected Component component;
+
+    /**
+     * The tree to render.
+     */
+    protected GraphicsNode gvtRoot;
+
+    /**
+     * The hints used to render the tiles.
+     */
+    protected RenderingHints renderingHints;
+
+    /**
+     * The maximum number of threads rendering tiles.
+     */
+    protected int threadCount;
+
+    /**
+     * The number of threads currently rendering tiles.
+     */
+    protected int threads;
+
+    /**
+     * Incremented each time the cached tiles are dropped, so that the
+     * tiles rendered before are not stored.
+     */
+    protected int generation;
+
+    /**
+     * The cached tiles, in least recently used first order.
+     */
+    protected LinkedHashMap tiles = new LinkedHashMap(64, 0.75f, true);
+
+    /**
+     * The tiles waiting to be rendered, in rendering order.
+     */
+    protected LinkedList pending = new LinkedList();
+
+    /**
+     * The tiles being rendered.
+     */
+    protected Set rendering = new HashSet();
+
+    /**
+     * The maximum total size of the cached tiles, in bytes.
+     */
+    protected long maxSize;
+
+    /**
+     * The total size of the cached tiles, in bytes.
+     */
+    protected long size;
+
+    /**
+     * Creates a new TilePyramid rendering its tiles with one thread
+     * less than there are processors, between 1 and 4.
+     * @param c the component to repaint when tiles are rendered.
+     * @param maxSize the maximum total size of the cached tiles, in
+     *        bytes.
+     */
+    public TilePyramid(Component c, long maxSize) {
+        this(c, maxSize, Math.max(1, Math.min
+            (4, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    /**
+     * Creates a new TilePyramid.
+     * @param c the component to repaint when tiles are rendered.
+     * @param maxSize the maximum total size of the cached tiles, in
+     *        bytes.
+     * @param threadCount the maximum number of threads rendering tiles.
+     */
+    public TilePyramid(Component c, long maxSize, int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException
+                ("Invalid thread count: " + threadCount);
+        }
+        component = c;
+        this.maxSize = maxSize;
+        this.threadCount = threadCount;
+        renderingHints = new RenderingHints(null);
+        renderingHints.put(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+        renderingHints.put(RenderingHints.KEY_INTERPOLATION,
+                           RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    }
+
+    /**
+     * Sets the tree to render.  The cached tiles are dropped.
+     */
+    public synchronized void setGraphicsNode(GraphicsNode gn) {
+        gvtRoot = gn;
+        clear();
+    }
+
+    /**
+     * Sets the hints used to render the tiles.  The cached tiles are
+     * dropped if the hints change.
+     */
+    public synchronized void setRenderingHints(RenderingHints rh) {
+        if (rh != null && !rh.equals(renderingHints)) {
+            renderingHints = (RenderingHints)rh.clone();
+            clear();
+        }
+    }
+
+    /**
+     * Removes all the tiles from the cache.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        pending.clear();
+        size = 0;
+        generation++;
+    }
+
+    /**
+     * Returns the maximum total size of the cached tiles, in bytes.
+     */
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum total size of the cached tiles, in bytes.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    /**
+     * Returns the total size of the cached tiles, in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Paints the cached tiles of the level of the given view.
+     * @param g the graphics, in device space.
+     * @param at the user to device transform of the view.
+     * @param area the device area to paint.
+     */
+    public void paint(Graphics2D g, AffineTransform at, Rectangle area) {
+        View v = new View(at);
+        int c0 = floorDiv(area.x - v.x, TILE_SIZE);
+        int r0 = floorDiv(area.y - v.y, TILE_SIZE);
+        int c1 = floorDiv(area.x + area.width - 1 - v.x, TILE_SIZE);
+        int r1 = floorDiv(area.y + area.height - 1 - v.y, TILE_SIZE);
+
+        List found = new ArrayList();
+        synchronized (this) {
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    Key k = new Key(v.level, c, r);
+                    Tile t = (Tile)tiles.get(k);
+                    if (t != null && t.image != null) {
+                        found.add(new Object[] { k, t.image });
+                    }
+                }
+            }
+        }
+        for (Object aFound : found) {
+            Key k = (Key)((Object[])aFound)[0];
+            g.drawImage((BufferedImage)((Object[])aFound)[1],
+                        v.x + k.col * TILE_SIZE, v.y + k.row * TILE_SIZE,
+                        null);
+        }
+    }
+
+    /**
+     * Paints the cached tiles of the levels other than the level of the
+     * given view, scaled to the view.  The levels whose scale is the
+     * nearest to the scale of the view are painted last.
+     * @param g the graphics, in device space.
+     * @param at the user to device transform of the view.
+     * @param area the device area to paint.
+     */
+    public void paintOtherLevels(Graphics2D g, AffineTransform at,
+                                 Rectangle area) {
+        View v = new View(at);
+        List found = new ArrayList();
+        synchronized (this) {
+            // Iterating does not change the access order, so these
+            // tiles are evicted before the tiles of the view.
+            Iterator it = tiles.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry e = (Map.Entry)it.next();
+                Key k = (Key)e.getKey();
+                Tile t = (Tile)e.getValue();
+                if (t.image != null && !k.level.equals(v.level)) {
+                    found.add(new Object[] { k, t.image });
+                }
+            }
+        }
+        if (found.isEmpty()) {
+            return;
+        }
+        final double scale = v.level.getScale();
+        Collections.sort(found, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    double d1 = distance(((Key)((Object[])o1)[0]).level);
+                    double d2 = distance(((Key)((Object[])o2)[0]).level);
+                    return Double.compare(d2, d1);
+                }
+                private double distance(Level l) {
+                    return Math.abs(Math.log(l.getScale() / scale));
+                }
+            });
+
+        Object interpolation =
+            g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                           RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        Rectangle tr = new Rectangle(0, 0, TILE_SIZE, TILE_SIZE);
+        Level level = null;
+        AffineTransform l2d = null;
+        for (Object aFound : found) {
+            Key k = (Key)((Object[])aFound)[0];
+            if (level == null || !k.level.equals(level)) {
+                level = k.level;
+                try {
+                    l2d = new AffineTransform(at);
+                    l2d.concatenate(level.getTransform().createInverse());
+                } catch (NoninvertibleTransformException e) {
+                    l2d = null;
+                }
+            }
+            if (l2d == null) {
+                continue;
+            }
+            AffineTransform t2d = new AffineTransform(l2d);
+            t2d.translate(k.col * TILE_SIZE, k.row * TILE_SIZE);
+            if (t2d.createTransformedShape(tr).intersects(area)) {
+                g.drawImage((BufferedImage)((Object[])aFound)[1], t2d, null);
+            }
+        }
+        if (interpolation != null) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                               interpolation);
+        }
+    }
+
+    /**
+     * Schedules the rendering of the missing tiles of the given view,
+     * and of a ring of tiles around it if the budget allows it.  The
+     * tiles scheduled by a previous call and not started yet are
+     * dropped.
+     * @param at the user to device transform of the view.
+     * @param area the device area of the view.
+     */
+    public void request(AffineTransform at, Rectangle area) {
+        final View v = new View(at);
+        final int vc0 = floorDiv(area.x - v.x, TILE_SIZE);
+        final int vr0 = floorDiv(area.y - v.y, TILE_SIZE);
+        final int vc1 = floorDiv(area.x + area.width - 1 - v.x, TILE_SIZE);
+        final int vr1 = floorDiv(area.y + area.height - 1 - v.y, TILE_SIZE);
+
+        synchronized (this) {
+            if (gvtRoot == null || v.level.getScale() == 0) {
+                return;
+            }
+            long capacity = maxSize / TILE_BYTES;
+            int c0 = vc0 - 1;
+            int r0 = vr0 - 1;
+            int c1 = vc1 + 1;
+            int r1 = vr1 + 1;
+            if ((long)(c1 - c0 + 1) * (r1 - r0 + 1) > capacity) {
+                // Rendering the ring would evict the tiles of the view.
+                c0 = vc0;
+                r0 = vr0;
+                c1 = vc1;
+                r1 = vr1;
+            }
+
+            List wanted = new ArrayList();
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    Key k = new Key(v.level, c, r);
+                    // Also makes the tiles of the view the most recently
+                    // used ones.
+                    if (tiles.get(k) == null && !rendering.contains(k)) {
+                        wanted.add(k);
+                    }
+                }
+            }
+
+            final double cx = (area.getCenterX() - v.x) / TILE_SIZE - 0.5;
+            final double cy = (area.getCenterY() - v.y) / TILE_SIZE - 0.5;
+            Collections.sort(wanted, new Comparator() {
+                    public int compare(Object o1, Object o2) {
+                        return Double.compare(distance((Key)o1),
+                                              distance((Key)o2));
+                    }
+                    private double distance(Key k) {
+                        double d = Math.hypot(k.col - cx, k.row - cy);
+                        if (k.col < vc0 || k.col > vc1 ||
+                            k.row < vr0 || k.row > vr1) {
+                            d += Integer.MAX_VALUE;
+                        }
+                        return d;
+                    }
+                });
+
+            pending.clear();
+            int n = (int)Math.min(wanted.size(), capacity);
+            pending.addAll(wanted.subList(0, n));
+            while (threads < threadCount && threads < pending.size()) {
+                Thread t = new Worker();
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                t.start();
+                threads++;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stores the tiles of the level of the given transform which are
+     * fully covered by the given rendering.
+     * @param image a rendering of the tree, whose pixel (0, 0) is at
+     *        the device origin.
+     * @param at the user to device transform of the rendering.
+     */
+    public void addImage(BufferedImage image, AffineTransform at) {
+        View v = new View(at);
+        int c0 = floorDiv(TILE_SIZE - 1 - v.x, TILE_SIZE);
+        int r0 = floorDiv(TILE_SIZE - 1 - v.y, TILE_SIZE);
+        int c1 = floorDiv(image.getWidth() - v.x, TILE_SIZE) - 1;
+        int r1 = floorDiv(image.getHeight() - v.y, TILE_SIZE) - 1;
+        if (c0 > c1 || r0 > r1) {
+            return;
+        }
+
+        ColorModel cm = image.getColorModel();
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                Key k = new Key(v.level, c, r);
+                synchronized (this) {
+                    if (gvtRoot == null || tiles.containsKey(k)) {
+                        continue;
+                    }
+                }
+                WritableRaster wr = cm.createCompatibleWritableRaster
+                    (TILE_SIZE, TILE_SIZE);
+                wr.setRect(-(v.x + c * TILE_SIZE), -(v.y + r * TILE_SIZE),
+                           image.getRaster());
+                BufferedImage bi = new BufferedImage
+                    (cm, wr, cm.isAlphaPremultiplied(), null);
+                synchronized (this) {
+                    pending.remove(k);
+                    put(k, bi);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders a tile.
+     */
+    protected BufferedImage render(GraphicsNode gn, RenderingHints rh,
+                                   Key k) {
+        BufferedImage bi = new BufferedImage
+            (TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = GraphicsUtil.createGraphics(bi, rh);
+        try {
+            g.translate(-k.col * TILE_SIZE, -k.row * TILE_SIZE);
+            g.transform(k.level.getTransform());
+            gn.paint(g);
+        } finally {
+            g.dispose();
+        }
+        return bi;
+    }
+
+    /**
+     * Adds a tile to the cache and trims it.  A null image records a
+     * tile which failed to render, so that it is not scheduled again.
+     */
+    protected void put(Key k, BufferedImage image) {
+        Tile t = new Tile();
+        t.image = image;
+        if (image != null) {
+            t.size = (long)image.getWidth() * image.getHeight()
+                * image.getColorModel().getPixelSize() / 8;
+        }
+        Tile old = (Tile)tiles.put(k, t);
+        if (old != null) {
+            size -= old.size;
+        }
+        size += t.size;
+        trim();
+    }
+
+    /**
+     * Drops the least recently used tiles until the cache fits in its
+     * budget.
+     */
+    protected void trim() {
+        Iterator it = tiles.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Tile t = (Tile)it.next();
+            size -= t.size;
+            it.remove();
+        }
+    }
+
+    private static int floorDiv(int a, int b) {
+        return (a >= 0) ? a / b : (a - b + 1) / b;
+    }
+
+    /**
+     * A thread rendering the pending tiles.  It stops when no tile was
+     * scheduled for {@link #IDLE_TIMEOUT} milliseconds.
+     */
+    protected class Worker extends Thread {
+
+        public void run() {
+            for (;;) {
+                Key k;
+                GraphicsNode gn;
+                RenderingHints rh;
+                int gen;
+                synchronized (TilePyramid.this) {
+                    if (pending.isEmpty()) {
+                        try {
+                            TilePyramid.this.wait(IDLE_TIMEOUT);
+                        } catch (InterruptedException ie) {
+                        }
+                    }
+                    if (pending.isEmpty() || gvtRoot == null) {
+                        threads--;
+                        return;
+                    }
+                    k = (Key)pending.removeFirst();
+                    rendering.add(k);
+                    gn = gvtRoot;
+                    rh = renderingHints;
+                    gen = generation;
+                }
+
+                BufferedImage bi = null;
+                try {
+                    bi = render(gn, rh, k);
+                } catch (ThreadDeath td) {
+                    synchronized (TilePyramid.this) {
+                        rendering.remove(k);
+                        threads--;
+                    }
+                    throw td;
+                } catch (Throwable t) {
+                    // Recorded as an empty tile.
+                }
+
+                synchronized (TilePyramid.this) {
+                    rendering.remove(k);
+                    if (gen == generation) {
+                        put(k, bi);
+                    }
+                }
+                component.repaint();
+            }
+        }
+    }
+
+    /**
+     * The position of the tiles of a view: their level and the device
+     * position of the origin of the level.
+     */
+    protected static class View {
+
+        public Level level;
+        public int x;
+        public int y;
+
+        public View(AffineTransform at) {
+            level = new Level(at);
+            x = Math.round((float)at.getTranslateX());
+            y = Math.round((float)at.getTranslateY());
+        }
+    }
+
+    /**
+     * A level: the user to device transform of its tiles, without its
+     * translation.
+     */
+    protected static class Level {
+
+        protected double m00, m10, m01, m11;
+        protected int hash;
+
+        public Level(AffineTransform at) {
+            // Adding 0 turns -0 into 0, which compare equal but do not
+            // hash the same.
+            m00 = at.getScaleX() + 0.0;
+            m10 = at.getShearY() + 0.0;
+            m01 = at.getShearX() + 0.0;
+            m11 = at.getScaleY() + 0.0;
+            long bits = Double.doubleToLongBits(m00);
+            bits = bits * 31 + Double.doubleToLongBits(m10);
+            bits = bits * 31 + Double.doubleToLongBits(m01);
+            bits = bits * 31 + Double.doubleToLongBits(m11);
+            hash = (int)bits ^ (int)(bits >>> 32);
+        }
+
+        /**
+         * Returns the transform from user space to the space of the
+         * level, where tile (c, r) covers the square at
+         * (c * TILE_SIZE, r * TILE_SIZE).
+         */
+        public AffineTransform getTransform() {
+            return new AffineTransform(m00, m10, m01, m11, 0, 0);
+        }
+
+        /**
+         * Returns the mean scale factor of the level.
+         */
+        public double getScale() {
+            return Math.sqrt(Math.abs(m00 * m11 - m01 * m10));
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Level)) {
+                return false;
+            }
+            Level l = (Level)o;
+            return m00 == l.m00 && m10 == l.m10 && m01 == l.m01
+                && m11 == l.m11;
+        }
+    }
+
+    /**
+     * The key of a tile: its level, column and row.
+     */
+    protected static class Key {
+
+        public Level level;
+        public int col;
+        public int row;
+
+        public Key(Level level, int col, int row) {
+            this.level = level;
+            this.col = col;
+            this.row = row;
+        }
+
+        public int hashCode() {
+            return level.hashCode() * 31 * 31 + col * 31 + row;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            return col == k.col && row == k.row && level.equals(k.level);
+        }
+    }
+
+    /**
+     * A cached tile.
+     */
+    protected static class Tile {
+
+        /**
+         * The rendering of the tile, or null if it failed.
+         */
+        public BufferedImage image;
+
+        /**
+         * The size of its image, in bytes.
+         */
+        public long size;
+    }
+}
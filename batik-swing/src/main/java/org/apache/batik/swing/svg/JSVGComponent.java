@@ -902,6 +902,15 @@ public class JSVGComponent extends JGVTComponent {
         }
     }
 
+    /**
+     * Tells whether the tile cache is used to paint the tree.  It is
+     * not used for interactive documents, whose renderings go through
+     * the update manager, which may modify the tree.
+     */
+    protected boolean useTileCache() {
+        return !isInteractiveDocument && super.useTileCache();
+    }
+
     public CanvasGraphicsNode getCanvasGraphicsNode() {
         return getCanvasGraphicsNode(gvtRoot);
 
@@ -3094,6 +3103,18 @@ public class JSVGComponent extends JGVTComponent {
             userAgent.loadDocument(url);
         }
 
+        public int getMaxCachedDocuments() {
+            return userAgent.getMaxCachedDocuments();
+        }
+
+        public long getMaxCachedDocumentSize() {
+            return userAgent.getMaxCachedDocumentSize();
+        }
+
+        public int getPrefetchThreads() {
+            return userAgent.getPrefetchThreads();
+        }
+
         public FontFamilyResolver getFontFamilyResolver() {
             return userAgent.getFontFamilyResolver();
         }
@@ -0,0 +1,124 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.apps.rasterizer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that {@link ClassListGenerator} lists the classes loaded by
+ * the warm-up in the format of the <code>-XX:SharedClassListFile</code>
+ * option: one class per line, with '/' as the package separator.
+ *
+ * @version $Id$
+ */
+public class ClassListGeneratorTest extends AbstractTest {
+
+    /**
+     * Classes the warm-up is expected to load.
+     */
+    public static final String[] EXPECTED_CLASSES = {
+        "org/apache/batik/transcoder/image/WarmUp",
+        "org/apache/batik/transcoder/image/PNGTranscoder",
+        "org/apache/batik/bridge/BridgeContext",
+        "org/apache/batik/bridge/SVGSVGElementBridge",
+        "org/apache/batik/bridge/SVGRectElementBridge",
+        "org/apache/batik/bridge/SVGPathElementBridge",
+        "org/apache/batik/bridge/SVGTextElementBridge",
+        "org/apache/batik/bridge/SVGLinearGradientElementBridge",
+        "org/apache/batik/bridge/SVGFilterElementBridge"
+    };
+
+    public TestReport runImpl() throws Exception {
+        List names = new ClassListGenerator(new ArrayList()).generate();
+        assertTrue(!names.isEmpty());
+
+        Set seen = new HashSet();
+        Iterator it = names.iterator();
+        while (it.hasNext()) {
+            String name = (String)it.next();
+            if (!isClassListEntry(name) || !seen.add(name)) {
+                return reportEntry("invalid.class.list.entry", name);
+            }
+        }
+        for (String expected : EXPECTED_CLASSES) {
+            if (!seen.contains(expected)) {
+                return reportEntry("missing.class", expected);
+            }
+        }
+
+        // The written file has one entry per line.
+        File f = File.createTempFile("batik", ".classlist");
+        try {
+            ClassListGenerator.write(names, f);
+            List lines = new ArrayList();
+            BufferedReader r = new BufferedReader(new InputStreamReader
+                (new FileInputStream(f), "UTF-8"));
+            try {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    lines.add(line);
+                }
+            } finally {
+                r.close();
+            }
+            assertEquals(names, lines);
+        } finally {
+            f.delete();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns whether the given string is a class name using '/' as
+     * the package separator.
+     */
+    protected static boolean isClassListEntry(String name) {
+        if (name.length() == 0 || name.startsWith("/") || name.endsWith("/")
+            || name.indexOf('.') != -1 || name.indexOf("//") != -1) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '/' && !Character.isJavaIdentifierPart(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected TestReport reportEntry(String errorCode, String name) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(errorCode);
+        report.addDescriptionEntry("class", name);
+        report.setPassed(false);
+        return report;
+    }
+}
@@ -22,6 +22,8 @@ package org.apache.batik.apps.rasterizer;
 import java.awt.Color;
 import java.awt.geom.Rectangle2D;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.StringTokenizer;
 import java.util.List;
 
@@ -549,8 +551,113 @@ public class MainTest extends DefaultTestSuite {
         addTest(t);
         t.setId("MainIllegalArgTest.q");
 
+        t = new MainIllegalArgTest("threads", "-threads 1.5");
+        addTest(t);
+        t.setId("MainIllegalArgTest.threads");
+
+        t = new MainIllegalArgTest("threads", "-threads 0");
+        addTest(t);
+        t.setId("MainIllegalArgTest.threadsZero");
+
+        t = new MainThreadsTest();
+        addTest(t);
+        t.setId("MainThreadsTest");
+
+    }
+
+}
+
+/**
+ * Converts several files, one of them invalid, with <code>-threads 2</code>
+ * and checks that each outcome is reported, in the order of the sources,
+ * and that the images are written.
+ */
+class MainThreadsTest extends AbstractTest {
+    static final String[] SOURCES = {
+        "samples/anne.svg",
+        "test-resources/org/apache/batik/apps/rasterizer/invalidSVG.svg",
+        "samples/batikFX.svg",
+        "samples/tests/spec/styling/smiley.svg"
+    };
+
+    static final String[] EXPECTED_RESULTS = {
+        "anne.png",
+        "invalidSVG.png " + SVGConverter.ERROR_WHILE_RASTERIZING_FILE,
+        "batikFX.png",
+        "smiley.png"
+    };
+
+    static final String ERROR_UNEXPECTED_RESULTS
+        = "MainThreadsTest.error.unexpected.results";
+
+    static final String ERROR_MISSING_OUTPUT
+        = "MainThreadsTest.error.missing.output";
+
+    static final String ENTRY_KEY_EXPECTED_RESULTS
+        = "MainThreadsTest.entry.key.expected.results";
+
+    static final String ENTRY_KEY_ACTUAL_RESULTS
+        = "MainThreadsTest.entry.key.actual.results";
+
+    static final String ENTRY_KEY_OUTPUT
+        = "MainThreadsTest.entry.key.output";
+
+    public String getName(){
+        return getId();
     }
 
+    public TestReport runImpl() throws Exception {
+        File dir = File.createTempFile("mainThreads", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+
+        String[] args = new String[SOURCES.length + 5];
+        args[0] = "-threads";
+        args[1] = "2";
+        args[2] = "-d";
+        args[3] = dir.getPath();
+        args[4] = "-scriptSecurityOff";
+        System.arraycopy(SOURCES, 0, args, 5, SOURCES.length);
+
+        final List results = new ArrayList();
+        Main main = new Main(args) {
+                public boolean proceedOnSourceTranscodingFailure
+                    (SVGConverterSource source, File dest, String errorCode){
+                    results.add(dest.getName() + " " + errorCode);
+                    return super.proceedOnSourceTranscodingFailure
+                        (source, dest, errorCode);
+                }
+
+                public void onSourceTranscodingSuccess(SVGConverterSource source,
+                                                       File dest){
+                    results.add(dest.getName());
+                    super.onSourceTranscodingSuccess(source, dest);
+                }
+            };
+        main.execute();
+
+        if (!Arrays.asList(EXPECTED_RESULTS).equals(results)){
+            TestReport report = reportError(ERROR_UNEXPECTED_RESULTS);
+            report.addDescriptionEntry(ENTRY_KEY_EXPECTED_RESULTS,
+                                       Arrays.asList(EXPECTED_RESULTS).toString());
+            report.addDescriptionEntry(ENTRY_KEY_ACTUAL_RESULTS,
+                                       results.toString());
+            return report;
+        }
+
+        TestReport report = null;
+        for (String r : EXPECTED_RESULTS) {
+            File f = new File(dir, r.substring(0, r.indexOf(".png") + 4));
+            f.deleteOnExit();
+            boolean written = f.length() > 0;
+            if ((written != (r.indexOf(' ') == -1)) && (report == null)){
+                report = reportError(ERROR_MISSING_OUTPUT);
+                report.addDescriptionEntry(ENTRY_KEY_OUTPUT, f.getPath());
+            }
+        }
+        return (report != null) ? report : reportSuccess();
+    }
 }
 
 class MainIllegalArgTest extends AbstractTest {
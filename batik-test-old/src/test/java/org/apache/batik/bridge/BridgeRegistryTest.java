@@ -0,0 +1,283 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.anim.dom.SVGOMElement;
+import org.apache.batik.dom.svg.SVGContext;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.SVG12Constants;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Checks that the bridge contexts sharing a {@link BridgeRegistry} get
+ * bridges of their own, that modifying the bridges of a context detaches
+ * it from the registry, that the extensions of a context overriding
+ * <code>getBridgeExtensions</code> are registered, and that SVG 1.2
+ * documents use the SVG 1.2 registry.
+ *
+ * @version $Id$
+ */
+public class BridgeRegistryTest extends AbstractTest {
+
+    public static final String SVG = SVGConstants.SVG_NAMESPACE_URI;
+
+    public static final String TEST_NAMESPACE_URI =
+        "http://xmlgraphics.apache.org/batik/test";
+
+    public static final String DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg' version='%v'" +
+        " width='100' height='100'>" +
+        "<defs><linearGradient id='g'>" +
+        "<stop id='s' offset='0' stop-color='red'/>" +
+        "<stop offset='1' stop-color='blue'/></linearGradient>" +
+        "<filter id='f'><feGaussianBlur id='b' stdDeviation='2'/></filter>" +
+        "</defs>" +
+        "<rect width='50' height='50' fill='url(#g)' filter='url(#f)'/>" +
+        "<circle r='10'/></svg>";
+
+    public TestReport runImpl() throws Exception {
+        testDynamicContexts();
+        testDetach();
+        testOverriddenExtensions();
+        testVersions();
+        return reportSuccess();
+    }
+
+    /**
+     * Checks that the gradient and filter elements of two dynamic
+     * documents keep the bridge context of their own document.
+     */
+    protected void testDynamicContexts() throws Exception {
+        Document docA = createDocument("1.1");
+        Document docB = createDocument("1.1");
+        BridgeContext ctxA = build(new BridgeContext(new UserAgentAdapter()),
+                                   docA, true);
+        BridgeContext ctxB = build(new BridgeContext(new UserAgentAdapter()),
+                                   docB, true);
+        assertTrue(ctxA.getBridgeRegistry() != null);
+        assertTrue(ctxA.getBridgeRegistry() == ctxB.getBridgeRegistry());
+
+        String[] ids = { "g", "s", "f", "b" };
+        for (int i = 0; i < ids.length; i++) {
+            SVGContext a = getSVGContext(docA, ids[i]);
+            SVGContext b = getSVGContext(docB, ids[i]);
+            assertTrue(a != b);
+            assertTrue(((AnimatableSVGBridge)a).ctx == ctxA);
+            assertTrue(((AnimatableSVGBridge)b).ctx == ctxB);
+        }
+        ctxA.dispose();
+        ctxB.dispose();
+    }
+
+    /**
+     * Checks that putBridge, removeBridge and putReservedNamespaceURI
+     * give the context a modifiable copy of the registry's bridges.
+     */
+    protected void testDetach() throws Exception {
+        BridgeRegistry registry = BridgeRegistry.getRegistry(false);
+        BridgeContext ctx = build(new BridgeContext(new UserAgentAdapter()),
+                                  createDocument("1.1"), false);
+        assertTrue(ctx.getBridgeRegistry() == registry);
+        Bridge rect = ctx.getBridge(SVG, SVGConstants.SVG_RECT_TAG);
+        assertTrue(rect != null);
+        assertTrue(rect != registry.getBridge(SVG, SVGConstants.SVG_RECT_TAG));
+        assertTrue(ctx.getBridge(SVG, SVGConstants.SVG_RECT_TAG) == rect);
+        assertTrue(ctx.getBridge(TEST_NAMESPACE_URI, "test") == null);
+
+        TestBridge test = new TestBridge();
+        ctx.putBridge(test);
+        assertTrue(ctx.getBridgeRegistry() == null);
+        assertTrue(ctx.getBridge(TEST_NAMESPACE_URI, "test") == test);
+        // The bridges already created are kept, the others are created.
+        assertTrue(ctx.getBridge(SVG, SVGConstants.SVG_RECT_TAG) == rect);
+        Bridge circle = ctx.getBridge(SVG, SVGConstants.SVG_CIRCLE_TAG);
+        assertTrue(circle instanceof SVGCircleElementBridge);
+        assertTrue(circle
+                   != registry.getBridge(SVG, SVGConstants.SVG_CIRCLE_TAG));
+        ctx.dispose();
+
+        ctx = build(new BridgeContext(new UserAgentAdapter()),
+                    createDocument("1.1"), false);
+        ctx.removeBridge(SVG, SVGConstants.SVG_CIRCLE_TAG);
+        assertTrue(ctx.getBridgeRegistry() == null);
+        assertTrue(ctx.getBridge(SVG, SVGConstants.SVG_CIRCLE_TAG) == null);
+        assertTrue(ctx.getBridge(SVG, SVGConstants.SVG_RECT_TAG) != null);
+        ctx.dispose();
+
+        ctx = build(new BridgeContext(new UserAgentAdapter()),
+                    createDocument("1.1"), false);
+        ctx.putReservedNamespaceURI(TEST_NAMESPACE_URI);
+        assertTrue(ctx.getBridgeRegistry() == null);
+        assertTrue(ctx.getBridge(SVG, SVGConstants.SVG_RECT_TAG) != null);
+        ctx.dispose();
+
+        // The shared registry is left untouched.
+        assertTrue(registry.getBridge(SVG, SVGConstants.SVG_CIRCLE_TAG)
+                   != null);
+        assertTrue(registry.getBridge(TEST_NAMESPACE_URI, "test") == null);
+    }
+
+    /**
+     * Checks that the extensions returned by an overridden
+     * getBridgeExtensions are registered in the context, and that the
+     * registry is still used if the override adds nothing.
+     */
+    protected void testOverriddenExtensions() throws Exception {
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter()) {
+                public List getBridgeExtensions(Document doc) {
+                    List l = super.getBridgeExtensions(doc);
+                    l.add(new TestBridgeExtension());
+                    return l;
+                }
+            };
+        build(ctx, createDocument("1.1"), false);
+        assertTrue(ctx.getBridgeRegistry() == null);
+        assertTrue(ctx.getBridge(TEST_NAMESPACE_URI, "test")
+                   instanceof TestBridge);
+        assertTrue(ctx.getBridge(SVG, SVGConstants.SVG_RECT_TAG) != null);
+        ctx.dispose();
+
+        ctx = new BridgeContext(new UserAgentAdapter()) {
+                public List getBridgeExtensions(Document doc) {
+                    return super.getBridgeExtensions(doc);
+                }
+            };
+        build(ctx, createDocument("1.1"), false);
+        assertTrue(ctx.getBridgeRegistry()
+                   == BridgeRegistry.getRegistry(false));
+        assertTrue(ctx.getBridge(TEST_NAMESPACE_URI, "test") == null);
+        ctx.dispose();
+
+        ctx = new BridgeContext(new UserAgentAdapter()) {
+                protected BridgeRegistry getSharedBridgeRegistry(Document d) {
+                    return null;
+                }
+            };
+        build(ctx, createDocument("1.1"), false);
+        assertTrue(ctx.getBridgeRegistry() == null);
+        assertTrue(ctx.getBridge(SVG, SVGConstants.SVG_RECT_TAG) != null);
+        ctx.dispose();
+    }
+
+    /**
+     * Checks that the registry is chosen from the version of the document.
+     */
+    protected void testVersions() throws Exception {
+        BridgeContext ctx = build(new BridgeContext(new UserAgentAdapter()),
+                                  createDocument("1.2"), false);
+        assertTrue(ctx.getBridgeRegistry()
+                   == BridgeRegistry.getRegistry(true));
+        assertTrue(ctx.getBridge(SVG, SVG12Constants.SVG_FLOW_ROOT_TAG)
+                   != null);
+        ctx.dispose();
+
+        ctx = build(new BridgeContext(new UserAgentAdapter()),
+                    createDocument("1.1"), false);
+        assertTrue(ctx.getBridgeRegistry()
+                   == BridgeRegistry.getRegistry(false));
+        assertTrue(ctx.getBridge(SVG, SVG12Constants.SVG_FLOW_ROOT_TAG)
+                   == null);
+        ctx.dispose();
+        assertTrue(BridgeRegistry.getRegistry(true)
+                   != BridgeRegistry.getRegistry(false));
+    }
+
+    /**
+     * Parses the test document with the given version.
+     */
+    protected Document createDocument(String version) throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        String s = DOCUMENT.replace("%v", version);
+        return f.createDocument("file:/test.svg", new StringReader(s));
+    }
+
+    /**
+     * Builds the GVT tree of the given document with the given context.
+     */
+    protected BridgeContext build(BridgeContext ctx, Document doc,
+                                  boolean dynamic) {
+        ctx.setDynamic(dynamic);
+        new GVTBuilder().build(ctx, doc);
+        return ctx;
+    }
+
+    /**
+     * Returns the SVG context of the element with the given id.
+     */
+    protected SVGContext getSVGContext(Document doc, String id) {
+        return ((SVGOMElement)doc.getElementById(id)).getSVGContext();
+    }
+
+    /**
+     * A bridge for an element of the test namespace.
+     */
+    public static class TestBridge implements Bridge {
+        public String getNamespaceURI() {
+            return TEST_NAMESPACE_URI;
+        }
+        public String getLocalName() {
+            return "test";
+        }
+        public Bridge getInstance() {
+            return this;
+        }
+    }
+
+    /**
+     * An extension registering a {@link TestBridge}.
+     */
+    public static class TestBridgeExtension implements BridgeExtension {
+        public float getPriority() {
+            return 10f;
+        }
+        public Iterator getImplementedExtensions() {
+            return Collections.EMPTY_LIST.iterator();
+        }
+        public String getAuthor() {
+            return "test";
+        }
+        public String getContactAddress() {
+            return "test";
+        }
+        public String getURL() {
+            return TEST_NAMESPACE_URI;
+        }
+        public String getDescription() {
+            return "test";
+        }
+        public void registerTags(BridgeContext ctx) {
+            ctx.putBridge(new TestBridge());
+        }
+        public boolean isDynamicElement(Element e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that the {@link CompiledScriptCache} shares the scripts
+ * between the documents with the same code base, that it is bounded
+ * and drops the least recently used scripts first, and that the
+ * scripts compiled in parallel by
+ * {@link BaseScriptingEnvironment#loadScripts} still run in document
+ * order.
+ *
+ * @version $Id$
+ */
+public class CompiledScriptCacheTest extends AbstractTest {
+
+    /**
+     * The test document.  The inline scripts are named after the
+     * document, so it only uses external scripts to share them.
+     */
+    public static final String DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg'" +
+        " xmlns:xlink='http://www.w3.org/1999/xlink'" +
+        " width='100' height='100'>" +
+        "<script xlink:href='../lib/s0.js'/>" +
+        "<script xlink:href='../lib/s1.js'/>" +
+        "<script xlink:href='../lib/s2.js'/>" +
+        "<script xlink:href='../lib/s3.js'/>" +
+        "<rect width='10' height='10'/></svg>";
+
+    /**
+     * The external scripts, which must run in order.
+     */
+    public static final String[] SCRIPTS = {
+        "var order = 'a';",
+        "function add(c) { order += c; }",
+        "add('b');",
+        "add('c');"
+    };
+
+    /**
+     * The number of scripts compiled and found in the shared cache by
+     * the last call to {@link #loadScripts}.
+     */
+    protected int misses, hits;
+
+    /**
+     * The directory of the test files.
+     */
+    protected File dir;
+
+    public TestReport runImpl() throws Exception {
+        testCodeBase();
+        testBound();
+        boolean precompile = BaseScriptingEnvironment.getPrecompileScripts();
+        BaseScriptingEnvironment.setPrecompileScripts(true);
+        dir = File.createTempFile("scripts", "");
+        dir.delete();
+        File lib = new File(dir, "lib");
+        File[] dirs = { lib, new File(dir, "a"), new File(dir, "b") };
+        for (int i = 0; i < dirs.length; i++) {
+            dirs[i].mkdirs();
+        }
+        try {
+            for (int i = 0; i < SCRIPTS.length; i++) {
+                write(new File(lib, "s" + i + ".js"), SCRIPTS[i]);
+            }
+            testSharing();
+        } finally {
+            BaseScriptingEnvironment.setPrecompileScripts(precompile);
+            File[] files = lib.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            for (int i = 0; i < dirs.length; i++) {
+                dirs[i].delete();
+            }
+            dir.delete();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Checks the code bases the scripts are shared by.
+     */
+    protected void testCodeBase() throws Exception {
+        assertEquals(codeBase("file:/tmp/a/doc.svg"),
+                     codeBase("file:/tmp/a/other.svg#id"));
+        assertTrue(!codeBase("file:/tmp/a/doc.svg")
+                   .equals(codeBase("file:/tmp/b/doc.svg")));
+        assertTrue(!codeBase("file:/tmp/a/doc.svg")
+                   .equals(codeBase("file:/tmp/a/b/doc.svg")));
+        assertEquals(codeBase("http://example.org/a/doc.svg"),
+                     codeBase("http://example.org/b/doc.svg?x=1"));
+        assertTrue(!codeBase("http://example.org/doc.svg")
+                   .equals(codeBase("http://example.com/doc.svg")));
+        assertTrue(!codeBase("http://example.org/doc.svg")
+                   .equals(codeBase("https://example.org/doc.svg")));
+        assertTrue(!codeBase("http://example.org/doc.svg")
+                   .equals(codeBase("http://example.org:8080/doc.svg")));
+        assertTrue(!codeBase("jar:file:/tmp/a.jar!/doc.svg")
+                   .equals(codeBase("jar:file:/tmp/b.jar!/doc.svg")));
+    }
+
+    protected static String codeBase(String url) throws Exception {
+        return RhinoInterpreter.getCodeBase(new URL(url));
+    }
+
+    /**
+     * Checks the size bound and the eviction order of a cache.
+     */
+    protected void testBound() throws Exception {
+        CompiledScriptCache cache = new CompiledScriptCache(10);
+        Script a = new TestScript();
+        Script b = new TestScript();
+        Script c = new TestScript();
+        cache.put("a", a, 4, 0);
+        cache.put("b", b, 4, 0);
+        assertEquals(8, cache.getSize());
+        assertTrue(cache.get("a") == a);
+
+        // b is now the least recently used script.
+        cache.put("c", c, 4, 0);
+        assertEquals(8, cache.getSize());
+        assertEquals(2, cache.getScriptCount());
+        assertTrue(cache.get("b") == null);
+        assertTrue(cache.get("a") == a);
+        assertTrue(cache.get("c") == c);
+
+        // Replacing a script does not count it twice.
+        cache.put("c", c, 5, 0);
+        assertEquals(9, cache.getSize());
+
+        // A script larger than the cache is not kept.
+        cache.put("d", new TestScript(), 11, 0);
+        assertTrue(cache.get("d") == null);
+        assertEquals(2, cache.getScriptCount());
+
+        assertEquals(3, (int)cache.getHitCount());
+        assertEquals(2, (int)cache.getMissCount());
+
+        cache.setMaxSize(5);
+        assertEquals(1, cache.getScriptCount());
+        assertTrue(cache.get("c") == c);
+        cache.setMaxSize(0);
+        assertEquals(0, cache.getScriptCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Loads the scripts of documents in the same and in another
+     * directory, and checks which are found in the shared cache.
+     */
+    protected void testSharing() throws Exception {
+        CompiledScriptCache cache = CompiledScriptCache.getInstance();
+        cache.clear();
+
+        // The scripts are compiled in parallel, then found in the
+        // cache when run.
+        assertEquals("abc", loadScripts("a/doc1.svg"));
+        assertEquals(SCRIPTS.length, misses);
+        assertEquals(SCRIPTS.length, hits);
+
+        // A document in the same directory reuses them.
+        assertEquals("abc", loadScripts("a/doc2.svg"));
+        assertEquals(0, misses);
+        assertEquals(2 * SCRIPTS.length, hits);
+
+        // A document in another directory compiles them again.
+        assertEquals("abc", loadScripts("b/doc1.svg"));
+        assertEquals(SCRIPTS.length, misses);
+        assertEquals(SCRIPTS.length, hits);
+        cache.clear();
+    }
+
+    /**
+     * Loads the scripts of the test document with the given path and
+     * returns the value of the <code>order</code> variable they set.
+     */
+    protected String loadScripts(String path) throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        String uri = new File(dir, path).toURI().toString();
+        Document doc = f.createDocument(uri, new StringReader(DOCUMENT));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter() {
+                public void displayError(Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        ctx.setDocument(doc);
+        try {
+            CompiledScriptCache cache = CompiledScriptCache.getInstance();
+            long m = cache.getMissCount();
+            long h = cache.getHitCount();
+            BaseScriptingEnvironment se = new BaseScriptingEnvironment(ctx);
+            se.loadScripts();
+            misses = (int)(cache.getMissCount() - m);
+            hits = (int)(cache.getHitCount() - h);
+            return String.valueOf(se.getInterpreter().evaluate("order"));
+        } finally {
+            ctx.dispose();
+        }
+    }
+
+    protected static void write(File file, String content)
+        throws IOException {
+        Writer w = new OutputStreamWriter(new FileOutputStream(file),
+                                          StandardCharsets.UTF_8);
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * A script which does nothing.
+     */
+    protected static class TestScript implements Script {
+        public Object exec(Context cx, Scriptable scope) {
+            return null;
+        }
+    }
+}
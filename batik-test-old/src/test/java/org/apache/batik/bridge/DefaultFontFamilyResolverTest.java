@@ -0,0 +1,226 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.batik.gvt.font.AWTFontFamily;
+import org.apache.batik.gvt.font.AWTGVTFont;
+import org.apache.batik.gvt.font.GVTFontFamily;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that the coverage index of {@link DefaultFontFamilyResolver}
+ * finds the same family for a character as probing the installed
+ * fonts in order, for sample ranges of the BMP including CJK, and that
+ * resolving families and looking up characters from several threads at
+ * once gives the same results.
+ *
+ * @version $Id$
+ */
+public class DefaultFontFamilyResolverTest extends AbstractTest {
+
+    /**
+     * The ranges of characters compared with the linear probe, as
+     * pairs of first and last characters.
+     */
+    public static final int[] RANGES = {
+        0x0000, 0x017f,   // Latin
+        0x0370, 0x04ff,   // Greek, Cyrillic
+        0x0590, 0x06ff,   // Hebrew, Arabic
+        0x0e00, 0x0e7f,   // Thai
+        0x2000, 0x22ff,   // Punctuation, symbols, arrows, math
+        0x3000, 0x30ff,   // CJK punctuation, Hiragana, Katakana
+        0x4e00, 0x4fff,   // CJK unified ideographs
+        0x9f00, 0x9fff,
+        0xac00, 0xacff,   // Hangul
+        0xd7f0, 0xe0ff,   // Surrogates, private use
+        0xff00, 0xffff    // Halfwidth and fullwidth forms, specials
+    };
+
+    /**
+     * The step between the characters of the BMP compared with the
+     * linear probe, outside the sample ranges.
+     */
+    public static final int STEP = 61;
+
+    /**
+     * The number of threads of the concurrent test.
+     */
+    public static final int THREADS = 8;
+
+    /**
+     * The family names resolved by the concurrent test, besides the
+     * installed ones.
+     */
+    public static final String[] NAMES = {
+        "serif", "Sans-Serif", "SansSerif", "monospace", "Courier",
+        "Times New Roman", "cursive", "fantasy", "no such family"
+    };
+
+    protected DefaultFontFamilyResolver resolver =
+        DefaultFontFamilyResolver.SINGLETON;
+
+    public TestReport runImpl() throws Exception {
+        // The concurrent test first, while most pages are not computed.
+        TestReport report = testConcurrent();
+        if (report != null) {
+            return report;
+        }
+        for (int r = 0; r < RANGES.length; r += 2) {
+            for (int c = RANGES[r]; c <= RANGES[r + 1]; c++) {
+                report = check((char)c);
+                if (report != null) {
+                    return report;
+                }
+            }
+        }
+        for (int c = 0; c <= 0xffff; c += STEP) {
+            report = check((char)c);
+            if (report != null) {
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns the first family able to display the given character, as
+     * getFamilyThatCanDisplay did before the coverage index.
+     */
+    protected static GVTFontFamily probe(char c) {
+        List families = DefaultFontFamilyResolver.awtFontFamilies;
+        for (int i = 0; i < families.size(); i++) {
+            AWTFontFamily family = (AWTFontFamily)families.get(i);
+            AWTGVTFont font =
+                (AWTGVTFont)DefaultFontFamilyResolver.awtFonts.get(i);
+            if (font.canDisplay(c)
+                && family.getFamilyName().indexOf("Song") == -1) {
+                return family;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares the family found by the index with the linear probe.
+     * Returns a failed report, or null.
+     */
+    protected TestReport check(char c) {
+        GVTFontFamily expected = probe(c);
+        GVTFontFamily actual = resolver.getFamilyThatCanDisplay(c);
+        if (expected == actual) {
+            return null;
+        }
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode("family.differs");
+        report.addDescriptionEntry("char", Integer.toHexString(c));
+        report.addDescriptionEntry
+            ("expected", expected == null ? "null" : expected.getFamilyName());
+        report.addDescriptionEntry
+            ("actual", actual == null ? "null" : actual.getFamilyName());
+        report.setPassed(false);
+        return report;
+    }
+
+    /**
+     * Resolves families and looks up characters from several threads
+     * at once, each in its own order, and checks that they all get the
+     * same families, the ones the linear probe finds.
+     */
+    protected TestReport testConcurrent() throws Exception {
+        final List names = new ArrayList();
+        Collections.addAll(names, NAMES);
+        names.addAll(DefaultFontFamilyResolver.fonts.keySet());
+        final char[] chars = new char[2048];
+        for (int i = 0; i < chars.length; i++) {
+            // Spread over pages, CJK included.
+            chars[i] = (char)(0x2300 + i * 37);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List futures = new ArrayList();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t * chars.length / THREADS;
+                futures.add(executor.submit(new Callable() {
+                        public Object call() throws Exception {
+                            start.await();
+                            int n = names.size();
+                            GVTFontFamily[] resolved = new GVTFontFamily[n];
+                            for (int i = 0; i < n; i++) {
+                                int k = (i + offset) % n;
+                                resolved[k] = resolver.resolve
+                                    ((String)names.get(k));
+                            }
+                            GVTFontFamily[] found =
+                                new GVTFontFamily[chars.length];
+                            for (int i = 0; i < chars.length; i++) {
+                                int k = (i + offset) % chars.length;
+                                found[k] = resolver.getFamilyThatCanDisplay
+                                    (chars[k]);
+                            }
+                            return new Object[] { resolved, found };
+                        }
+                    }));
+            }
+            start.countDown();
+
+            Object[] first = (Object[])((Future)futures.get(0)).get
+                (60, TimeUnit.SECONDS);
+            for (int t = 1; t < THREADS; t++) {
+                Object[] result = (Object[])((Future)futures.get(t)).get
+                    (60, TimeUnit.SECONDS);
+                for (int k = 0; k < 2; k++) {
+                    Object[] a = (Object[])first[k];
+                    Object[] b = (Object[])result[k];
+                    for (int i = 0; i < a.length; i++) {
+                        // The same instances, since resolved families
+                        // are shared.
+                        assertTrue(a[i] == b[i]);
+                    }
+                }
+            }
+            for (int i = 0; i < names.size(); i++) {
+                GVTFontFamily ff = ((GVTFontFamily[])first[0])[i];
+                assertTrue((ff == null) == (i == NAMES.length - 1));
+            }
+            for (int i = 0; i < chars.length; i++) {
+                TestReport report = check(chars[i]);
+                if (report != null) {
+                    return report;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return null;
+    }
+}
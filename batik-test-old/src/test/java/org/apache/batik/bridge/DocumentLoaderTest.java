@@ -0,0 +1,386 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that a {@link DocumentLoader} evicts the least recently used
+ * documents, accounts for the size of the documents it caches and
+ * parses a document requested by several threads at once only once.
+ *
+ * @version $Id$
+ */
+public class DocumentLoaderTest extends AbstractTest {
+
+    public static final String DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg' width='100' height='100'>" +
+        "<rect id='r' width='10' height='10'/></svg>";
+
+    /**
+     * The number of test documents.
+     */
+    public static final int DOCUMENTS = 5;
+
+    /**
+     * The time to wait for the other threads, in milliseconds.
+     */
+    public static final long TIMEOUT = 20000;
+
+    protected String[] uris = new String[DOCUMENTS];
+
+    public TestReport runImpl() throws Exception {
+        File dir = File.createTempFile("loader", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            for (int i = 0; i < DOCUMENTS; i++) {
+                File file = new File(dir, "doc" + i + ".svg");
+                write(file, DOCUMENT);
+                uris[i] = file.toURI().toString();
+            }
+            testEviction();
+            testSize();
+            testCoalescing();
+            testCoalescedError();
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Checks that the documents are evicted in least recently used
+     * order once the count limit is reached.
+     */
+    protected void testEviction() throws Exception {
+        DocumentLoader loader = new DocumentLoader(new TestUserAgent(3, 0));
+        Document[] docs = new Document[DOCUMENTS];
+        for (int i = 0; i < 3; i++) {
+            docs[i] = loader.loadDocument(uris[i]);
+        }
+        assertEquals(3, loader.getCachedDocumentCount());
+        assertEquals(0L, loader.getCacheHitCount());
+        assertEquals(3L, loader.getCacheMissCount());
+
+        // A fragment identifier refers to the cached document.
+        assertTrue(loader.loadDocument(uris[0] + "#r") == docs[0]);
+        assertEquals(1L, loader.getCacheHitCount());
+
+        // doc1 is now the least recently used document.
+        docs[3] = loader.loadDocument(uris[3]);
+        assertEquals(3, loader.getCachedDocumentCount());
+        assertEquals(1L, loader.getCacheEvictionCount());
+        assertTrue(loader.checkCache(uris[1]) == null);
+
+        // doc2 is now the least recently used document.
+        docs[4] = loader.loadDocument(uris[4]);
+        assertEquals(2L, loader.getCacheEvictionCount());
+        assertTrue(loader.checkCache(uris[2]) == null);
+        assertTrue(loader.checkCache(uris[0]) == docs[0]);
+        assertTrue(loader.checkCache(uris[3]) == docs[3]);
+        assertTrue(loader.checkCache(uris[4]) == docs[4]);
+
+        // An evicted document is loaded again.
+        Document d = loader.loadDocument(uris[1]);
+        assertTrue(d != docs[1]);
+        assertEquals(6L, loader.getCacheMissCount());
+        assertEquals(3, loader.getCachedDocumentCount());
+        loader.dispose();
+    }
+
+    /**
+     * Checks that the cached size is the sum of the estimated sizes of
+     * the cached documents, and that the size limit is honoured.
+     */
+    protected void testSize() throws Exception {
+        DocumentLoader loader = new DocumentLoader(new TestUserAgent(0, 0));
+        Document[] docs = new Document[DOCUMENTS];
+        long total = 0;
+        for (int i = 0; i < DOCUMENTS; i++) {
+            docs[i] = loader.loadDocument(uris[i]);
+            total += loader.estimateSize(docs[i]);
+            assertEquals(total, loader.getCachedDocumentSize());
+        }
+        assertEquals(DOCUMENTS, loader.getCachedDocumentCount());
+        assertEquals(0L, loader.getCacheEvictionCount());
+        long size = loader.estimateSize(docs[0]);
+        assertTrue(size > 0);
+        loader.dispose();
+        assertEquals(0, loader.getCachedDocumentCount());
+        assertEquals(0L, loader.getCachedDocumentSize());
+
+        // Room for two documents and a half.
+        loader = new DocumentLoader(new TestUserAgent(0, size * 5 / 2));
+        for (int i = 0; i < DOCUMENTS; i++) {
+            docs[i] = loader.loadDocument(uris[i]);
+            assertTrue(loader.getCachedDocumentCount() <= 2);
+            assertTrue(loader.getCachedDocumentSize() <= size * 5 / 2);
+        }
+        assertEquals(2, loader.getCachedDocumentCount());
+        assertEquals(2 * size, loader.getCachedDocumentSize());
+        assertEquals((long)DOCUMENTS - 2, loader.getCacheEvictionCount());
+        assertTrue(loader.checkCache(uris[DOCUMENTS - 1]) != null);
+        assertTrue(loader.checkCache(uris[DOCUMENTS - 2]) != null);
+
+        // A document larger than the limit is kept until the next load.
+        loader.dispose();
+        loader = new DocumentLoader(new TestUserAgent(0, size / 2));
+        docs[0] = loader.loadDocument(uris[0]);
+        assertEquals(1, loader.getCachedDocumentCount());
+        assertEquals(size, loader.getCachedDocumentSize());
+        docs[1] = loader.loadDocument(uris[1]);
+        assertEquals(1, loader.getCachedDocumentCount());
+        assertTrue(loader.checkCache(uris[1]) == docs[1]);
+        loader.dispose();
+    }
+
+    /**
+     * Checks that the threads requesting a document being loaded wait
+     * for it rather than parsing it again.
+     */
+    protected void testCoalescing() throws Exception {
+        final DocumentLoader loader =
+            new DocumentLoader(new TestUserAgent(0, 0));
+        // The waiters would fail to open this URI if they parsed it.
+        final String uri = uris[0] + ".missing";
+        final BlockingInputStream is = new BlockingInputStream
+            (DOCUMENT.getBytes(StandardCharsets.UTF_8));
+        final int waiters = 3;
+        final Object[] results = new Object[waiters + 1];
+        Thread[] threads = new Thread[waiters + 1];
+        threads[0] = new Thread() {
+                public void run() {
+                    results[0] = load(loader, uri, is);
+                }
+            };
+        threads[0].start();
+        is.waitForRead();
+        for (int i = 1; i <= waiters; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+                    public void run() {
+                        results[n] = load(loader, uri, null);
+                    }
+                };
+            threads[i].start();
+        }
+        waitForMisses(loader, waiters + 1);
+        is.release();
+        for (int i = 0; i <= waiters; i++) {
+            threads[i].join(TIMEOUT);
+        }
+        assertTrue(results[0] instanceof Document);
+        for (int i = 1; i <= waiters; i++) {
+            assertTrue(results[i] == results[0]);
+        }
+        assertEquals(1, is.opened);
+        assertEquals(1, loader.getCachedDocumentCount());
+        assertTrue(loader.checkCache(uri) == results[0]);
+        loader.dispose();
+    }
+
+    /**
+     * Checks that the threads waiting for a document get the error of
+     * the thread loading it.
+     */
+    protected void testCoalescedError() throws Exception {
+        final DocumentLoader loader =
+            new DocumentLoader(new TestUserAgent(0, 0));
+        final String uri = uris[0] + ".missing";
+        final BlockingInputStream is = new BlockingInputStream(null);
+        final Object[] results = new Object[2];
+        Thread t0 = new Thread() {
+                public void run() {
+                    results[0] = load(loader, uri, is);
+                }
+            };
+        t0.start();
+        is.waitForRead();
+        Thread t1 = new Thread() {
+                public void run() {
+                    results[1] = load(loader, uri, null);
+                }
+            };
+        t1.start();
+        waitForMisses(loader, 2);
+        is.release();
+        t0.join(TIMEOUT);
+        t1.join(TIMEOUT);
+        assertTrue(results[0] instanceof IOException);
+        assertTrue(results[1] == results[0]);
+        assertEquals(0, loader.getCachedDocumentCount());
+        loader.dispose();
+    }
+
+    /**
+     * Loads the given document, and returns it or the error thrown.
+     */
+    protected static Object load(DocumentLoader loader, String uri,
+                                 InputStream is) {
+        try {
+            return loader.loadDocument(uri, is);
+        } catch (Throwable t) {
+            return t;
+        }
+    }
+
+    /**
+     * Waits until the given loader has missed its cache the given
+     * number of times, i.e. until all the threads requesting a document
+     * are loading it or waiting for it.
+     */
+    protected static void waitForMisses(DocumentLoader loader, long misses)
+            throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (loader.getCacheMissCount() < misses) {
+            if (System.currentTimeMillis() > end) {
+                throw new IllegalStateException
+                    ("Loads not started: " + loader.getCacheMissCount());
+            }
+            Thread.sleep(10);
+        }
+        // Let the waiters block on the pending load.
+        Thread.sleep(50);
+    }
+
+    /**
+     * Writes the given string to the given file.
+     */
+    protected static void write(File file, String s) throws Exception {
+        Writer w = new OutputStreamWriter(new FileOutputStream(file),
+                                          StandardCharsets.UTF_8);
+        try {
+            w.write(s);
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * A user agent with the given cache limits.
+     */
+    protected static class TestUserAgent extends UserAgentAdapter {
+
+        protected int maxDocuments;
+
+        protected long maxSize;
+
+        public TestUserAgent(int maxDocuments, long maxSize) {
+            this.maxDocuments = maxDocuments;
+            this.maxSize = maxSize;
+        }
+
+        public int getMaxCachedDocuments() {
+            return maxDocuments;
+        }
+
+        public long getMaxCachedDocumentSize() {
+            return maxSize;
+        }
+    }
+
+    /**
+     * A stream whose first read blocks until it is released. It fails
+     * once released if it has no content.
+     */
+    protected static class BlockingInputStream extends InputStream {
+
+        protected InputStream in;
+
+        protected boolean reading;
+
+        protected boolean released;
+
+        protected int opened;
+
+        public BlockingInputStream(byte[] content) {
+            if (content != null) {
+                in = new ByteArrayInputStream(content);
+            }
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return (n == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            synchronized (this) {
+                if (!reading) {
+                    reading = true;
+                    opened++;
+                    notifyAll();
+                }
+                long end = System.currentTimeMillis() + TIMEOUT;
+                while (!released) {
+                    long left = end - System.currentTimeMillis();
+                    if (left <= 0) {
+                        throw new IOException("Never released");
+                    }
+                    try {
+                        wait(left);
+                    } catch (InterruptedException e) {
+                        throw new IOException("Interrupted");
+                    }
+                }
+            }
+            if (in == null) {
+                throw new IOException("Unreadable document");
+            }
+            return in.read(b, off, len);
+        }
+
+        /**
+         * Waits until the stream is first read.
+         */
+        public synchronized void waitForRead() throws Exception {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            while (!reading) {
+                long left = end - System.currentTimeMillis();
+                if (left <= 0) {
+                    throw new IllegalStateException("Stream never read");
+                }
+                wait(left);
+            }
+        }
+
+        public synchronized void release() {
+            released = true;
+            notifyAll();
+        }
+    }
+}
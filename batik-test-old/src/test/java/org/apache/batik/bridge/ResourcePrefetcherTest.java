@@ -0,0 +1,226 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.ext.awt.image.spi.ImageTagRegistry;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.ParsedURL;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that a {@link ResourcePrefetcher} fetches the external images
+ * and documents of a document into the caches the bridges read, runs
+ * no more fetches at once than it is allowed to, and skips the images
+ * with a color-profile, the local references and the URLs already
+ * queued.
+ *
+ * @version $Id$
+ */
+public class ResourcePrefetcherTest extends AbstractTest {
+
+    public static final String DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg'" +
+        " xmlns:xlink='http://www.w3.org/1999/xlink'" +
+        " width='100' height='100'>" +
+        "<defs><filter id='f'><feImage xlink:href='c.png'/></filter></defs>" +
+        "<image xlink:href='a.png' width='10' height='10'/>" +
+        "<image xlink:href='b.png' width='10' height='10'" +
+        " style='color-profile:sRGB'/>" +
+        "<image xlink:href='a.png' x='20' width='10' height='10'/>" +
+        "<use xlink:href='ext.svg#r'/>" +
+        "<use xlink:href='#local'/>" +
+        "<image xlink:href='d.png' width='10' height='10'/>" +
+        "<image xlink:href='e.png' width='10' height='10'/>" +
+        "<rect id='local' width='10' height='10'/>" +
+        "</svg>";
+
+    public static final String EXTERNAL =
+        "<svg xmlns='http://www.w3.org/2000/svg'>" +
+        "<rect id='r' width='10' height='10'/></svg>";
+
+    public TestReport runImpl() throws Exception {
+        File dir = File.createTempFile("prefetch", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            String[] images = { "a", "b", "c", "d", "e" };
+            for (String name : images) {
+                BufferedImage img =
+                    new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+                ImageIO.write(img, "png", new File(dir, name + ".png"));
+            }
+            write(new File(dir, "ext.svg"), EXTERNAL);
+            File docFile = new File(dir, "doc.svg");
+            write(docFile, DOCUMENT);
+
+            SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+                (XMLResourceDescriptor.getXMLParserClassName());
+            String docURL = docFile.toURI().toString();
+            Document doc = f.createDocument(docURL);
+
+            // The resources are fetched in document order, once.
+            TestPrefetcher p = prefetch(doc, 2);
+            String base = dir.toURI().toString();
+            List expected = new ArrayList();
+            expected.add(base + "c.png");
+            expected.add(base + "a.png");
+            expected.add(base + "ext.svg");
+            expected.add(base + "d.png");
+            expected.add(base + "e.png");
+            assertEquals(expected, p.submitted);
+            assertTrue(p.maxRunning <= 2);
+
+            ImageTagRegistry reg = ImageTagRegistry.getRegistry();
+            assertTrue(reg.checkCache(new ParsedURL(base + "a.png"), null)
+                       != null);
+            assertTrue(reg.checkCache(new ParsedURL(base + "c.png"), null)
+                       != null);
+            assertTrue(reg.checkCache(new ParsedURL(base + "b.png"), null)
+                       == null);
+            assertTrue(p.ctx.getDocumentLoader().checkCache(base + "ext.svg")
+                       != null);
+
+            // The shared pool keeps serving prefetchers with other
+            // thread counts.
+            p = prefetch(doc, 1);
+            assertEquals(expected, p.submitted);
+            assertEquals(1, p.maxRunning);
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Prefetches the resources of the given document with a new bridge
+     * context, and waits for the fetches to end.
+     */
+    protected TestPrefetcher prefetch(Document doc, int threads)
+            throws Exception {
+        UserAgent ua = new UserAgentAdapter() {
+                public void checkLoadExternalResource(ParsedURL resourceURL,
+                                                      ParsedURL docURL) {
+                }
+            };
+        BridgeContext ctx = new BridgeContext(ua);
+        ctx.setDocument(doc);
+        ctx.initializeDocument(doc);
+        TestPrefetcher p = new TestPrefetcher(ctx, threads);
+        p.prefetch(doc);
+        p.waitForFetches();
+        ctx.dispose();
+        return p;
+    }
+
+    /**
+     * Writes the given string to the given file.
+     */
+    protected static void write(File file, String s) throws Exception {
+        Writer w = new OutputStreamWriter(new FileOutputStream(file),
+                                          StandardCharsets.UTF_8);
+        try {
+            w.write(s);
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * A prefetcher recording the URLs it fetches and the number of
+     * fetches running at once.
+     */
+    protected static class TestPrefetcher extends ResourcePrefetcher {
+
+        protected List submitted = new ArrayList();
+
+        protected int running;
+
+        protected int maxRunning;
+
+        protected int done;
+
+        public TestPrefetcher(BridgeContext ctx, int threads) {
+            super(ctx, threads);
+        }
+
+        protected void submit(final Runnable r) {
+            ParsedURL purl;
+            if (r instanceof ImageFetch) {
+                purl = ((ImageFetch)r).purl;
+            } else {
+                purl = ((DocumentFetch)r).purl;
+            }
+            submitted.add(purl.toString());
+            super.submit(new Runnable() {
+                    public void run() {
+                        synchronized (TestPrefetcher.this) {
+                            running++;
+                            maxRunning = Math.max(maxRunning, running);
+                        }
+                        try {
+                            // Let the other workers start.
+                            Thread.sleep(50);
+                            r.run();
+                        } catch (InterruptedException e) {
+                        } finally {
+                            synchronized (TestPrefetcher.this) {
+                                running--;
+                                done++;
+                                TestPrefetcher.this.notifyAll();
+                            }
+                        }
+                    }
+                });
+        }
+
+        /**
+         * Waits until all the submitted fetches have run.
+         */
+        public synchronized void waitForFetches() throws Exception {
+            long end = System.currentTimeMillis() + 20000;
+            while (done < submitted.size()) {
+                long left = end - System.currentTimeMillis();
+                if (left <= 0) {
+                    throw new IllegalStateException
+                        ("Fetches still running: " + (submitted.size() - done));
+                }
+                wait(left);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.StringReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.RunnableQueue;
+import org.apache.batik.util.XMLResourceDescriptor;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks the <code>setTimeout</code> and <code>setInterval</code>
+ * tasks of a {@link ScriptingEnvironment} whose update manager runs in
+ * a shared executor: they run in the update queue, they can be
+ * cleared, and interrupting the update manager cancels those which
+ * are pending.
+ *
+ * @version $Id$
+ */
+public class ScriptingEnvironmentExecutorTest extends AbstractTest {
+
+    public static final String DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg' width='100' height='100'>" +
+        "<rect width='10' height='10'/></svg>";
+
+    /**
+     * The time to wait for the tasks, in milliseconds.
+     */
+    public static final long TIMEOUT = 20000;
+
+    public TestReport runImpl() throws Exception {
+        ScheduledExecutorService shared = UpdateManager.getSharedExecutor();
+        ScheduledThreadPoolExecutor executor =
+            new ScheduledThreadPoolExecutor(2);
+        UpdateManager.setSharedExecutor(executor);
+        try {
+            testTimers();
+        } finally {
+            UpdateManager.setSharedExecutor(shared);
+            executor.shutdownNow();
+        }
+        return reportSuccess();
+    }
+
+    protected void testTimers() throws Exception {
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory
+            (XMLResourceDescriptor.getXMLParserClassName());
+        Document doc = f.createDocument("file:/test.svg",
+                                        new StringReader(DOCUMENT));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        ctx.setDynamic(true);
+        GraphicsNode gn = new GVTBuilder().build(ctx, doc);
+        UpdateManager um = new UpdateManager(ctx, gn, doc);
+        final RunnableQueue rq = um.getUpdateRunnableQueue();
+        assertTrue(rq.getThread() == null);
+        rq.resumeExecution();
+        ScriptingEnvironment se = um.getScriptingEnvironment();
+        // The window of the scripts, without an interpreter.
+        Window w = se.createWindow(null, null);
+
+        // A timeout runs once, in the update queue.
+        final CountDownLatch timeout = new CountDownLatch(1);
+        final AtomicInteger errors = new AtomicInteger();
+        w.setTimeout(new Runnable() {
+                public void run() {
+                    if (!rq.isQueueThread()) {
+                        errors.incrementAndGet();
+                    }
+                    timeout.countDown();
+                }
+            }, 10);
+        assertTrue(timeout.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // An interval runs until it is cleared.
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch interval = new CountDownLatch(3);
+        Object task = w.setInterval(new Runnable() {
+                public void run() {
+                    if (!rq.isQueueThread()) {
+                        errors.incrementAndGet();
+                    }
+                    count.incrementAndGet();
+                    interval.countDown();
+                }
+            }, 10);
+        assertTrue(interval.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        w.clearInterval(task);
+        flush(rq);
+        int n = count.get();
+        Thread.sleep(100);
+        flush(rq);
+        assertEquals(n, count.get());
+        assertTrue(se.scheduledTasks.isEmpty());
+
+        // Interrupting the update manager cancels the pending tasks.
+        final AtomicInteger late = new AtomicInteger();
+        Runnable r = new Runnable() {
+                public void run() {
+                    late.incrementAndGet();
+                }
+            };
+        w.setTimeout(r, 200);
+        w.setInterval(r, 200);
+        assertEquals(2, se.scheduledTasks.size());
+        um.interrupt();
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (rq.isAlive()) {
+            if (System.currentTimeMillis() > end) {
+                throw new Exception("Update queue not halted");
+            }
+            Thread.sleep(10);
+        }
+        assertTrue(se.scheduledTasks.isEmpty());
+        Thread.sleep(400);
+        assertEquals(0, late.get());
+        assertEquals(0, errors.get());
+
+        try {
+            w.setTimeout(r, 10);
+            throw new Exception("Timeout scheduled after interrupt");
+        } catch (IllegalStateException e) {
+        }
+        ctx.dispose();
+    }
+
+    /**
+     * Waits for the runnables already in the given queue to run.
+     */
+    protected static void flush(RunnableQueue rq) throws Exception {
+        rq.invokeAndWait(new Runnable() {
+                public void run() {
+                }
+            });
+    }
+}
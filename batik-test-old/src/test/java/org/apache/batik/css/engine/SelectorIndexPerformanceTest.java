@@ -0,0 +1,128 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import org.apache.batik.anim.dom.SVGDOMImplementation;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.test.PerformanceTest;
+import org.apache.batik.util.SVGConstants;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * This test checks that the time needed to cascade the styles of a
+ * document does not grow with the number of rules of the style-sheet
+ * when the rules use id, class and element name selectors. The
+ * operation cascades the styles against a 10000 rules style-sheet,
+ * the reference against a 100 rules style-sheet.
+ *
+ * @version $Id$
+ */
+public class SelectorIndexPerformanceTest extends PerformanceTest {
+
+    /**
+     * The number of elements of the test document.
+     */
+    protected static final int ELEMENTS = 500;
+
+    /**
+     * The number of times the styles are cascaded by each run, so that
+     * a run lasts long enough to be timed.
+     */
+    protected static final int PASSES = 20;
+
+    protected SVGOMDocument refDocument;
+    protected SVGOMDocument opDocument;
+
+    public SelectorIndexPerformanceTest() {
+        refDocument = createDocument(100);
+        opDocument = createDocument(10000);
+    }
+
+    public void runRef() {
+        cascade(refDocument);
+    }
+
+    public void runOp() {
+        cascade(opDocument);
+    }
+
+    /**
+     * Computes the cascaded style of every element of the given
+     * document, <code>PASSES</code> times.
+     */
+    protected void cascade(SVGOMDocument doc) {
+        CSSEngine eng = doc.getCSSEngine();
+        for (int i = 0; i < PASSES; i++) {
+            for (Node n = doc.getDocumentElement().getFirstChild();
+                 n != null;
+                 n = n.getNextSibling()) {
+                eng.getCascadedStyleMap((CSSStylableElement)n, null);
+            }
+        }
+    }
+
+    /**
+     * Creates a document with a user style-sheet of the given size.
+     */
+    protected SVGOMDocument createDocument(int rules) {
+        DOMImplementation impl = SVGDOMImplementation.getDOMImplementation();
+        String svgNS = SVGDOMImplementation.SVG_NAMESPACE_URI;
+        SVGOMDocument doc =
+            (SVGOMDocument)impl.createDocument(svgNS, SVGConstants.SVG_SVG_TAG, null);
+        Element root = doc.getDocumentElement();
+        for (int i = 0; i < ELEMENTS; i++) {
+            Element e = doc.createElementNS(svgNS, SVGConstants.SVG_RECT_TAG);
+            e.setAttributeNS(null, SVGConstants.SVG_ID_ATTRIBUTE, "r" + i);
+            e.setAttributeNS(null, SVGConstants.SVG_CLASS_ATTRIBUTE,
+                             "c" + (i % 50) + " d" + (i % 7));
+            root.appendChild(e);
+        }
+
+        StringBuffer sb = new StringBuffer(rules * 32);
+        for (int i = 0; i < rules; i++) {
+            switch (i % 4) {
+            case 0:
+                sb.append("#r").append(i / 4);
+                break;
+            case 1:
+                sb.append(".c").append(i / 4);
+                break;
+            case 2:
+                sb.append("rect.d").append(i / 4);
+                break;
+            default:
+                sb.append("g > circle.e").append(i / 4);
+            }
+            sb.append(" { fill: #").append(Integer.toHexString(0x100000 + i))
+              .append("; }\n");
+        }
+
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        CSSEngine eng = ((SVGDOMImplementation)doc.getImplementation())
+            .createCSSEngine(doc, ctx);
+        doc.setCSSEngine(eng);
+        eng.setUserStyleSheet(eng.parseStyleSheet(sb.toString(), null, "all"));
+        return doc;
+    }
+}
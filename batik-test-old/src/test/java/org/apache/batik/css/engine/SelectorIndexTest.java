@@ -0,0 +1,202 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.css.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SVGDOMImplementation;
+import org.apache.batik.anim.dom.SVGOMDocument;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.UserAgentAdapter;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.SVGConstants;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Checks that <code>CSSEngine.addMatchingRules</code> finds, through
+ * the {@link SelectorIndex} of a style-sheet, the same rules in the
+ * same order as a linear scan of the style-sheet, for every element
+ * of a document and with selectors of all kinds.
+ *
+ * @version $Id$
+ */
+public class SelectorIndexTest extends AbstractTest {
+
+    /**
+     * Error when the indexed and linear matches differ.
+     * {0} = the element
+     * {1} = the pseudo-element
+     * {2} = the rules found by the linear scan
+     * {3} = the rules found through the index
+     */
+    public static final String ERROR_MATCHES_DIFFER
+        = "SelectorIndexTest.error.matches.differ";
+
+    /**
+     * The style-sheet.  Every rule has a distinct fill, so the rules
+     * can be told apart in a report.
+     */
+    public static final String[] RULES = {
+        "*", "rect", "circle", "g", ".a", ".b", "#r1", "#c2",
+        "rect.a", "circle#c1.a", ".a.b", "rect, circle", "g > rect.b",
+        "g .a", "rect:first-child", "[stroke]", "rect[stroke=\"red\"]",
+        "rect + circle", "*.b", "#r1.a", "#missing", ".missing",
+        "text", "svg rect", "g > *", "rect.a.b#r3", "circle:first-child",
+        "#r1, .b, text", "@media screen { .a { fill: #000001 } #r2 { fill: #000002 } }",
+        "@media print { rect { fill: #000003 } }", "rect:first-line",
+        ".A", "RECT", "rect.a"
+    };
+
+    public TestReport runImpl() throws Exception {
+        SVGOMDocument doc = createDocument();
+        CSSEngine eng = doc.getCSSEngine();
+
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < RULES.length; i++) {
+            String r = RULES[i];
+            if (r.startsWith("@")) {
+                sb.append(r).append('\n');
+            } else {
+                sb.append(r).append(" { fill: #")
+                  .append(Integer.toHexString(0x100000 + i)).append("; }\n");
+            }
+        }
+        StyleSheet ss = eng.parseStyleSheet(sb.toString(), null, "all");
+        assertEquals(RULES.length, ss.getSize());
+        assertTrue(ss.getSelectorIndex() != null);
+
+        TestReport report = compare(eng, ss, doc.getDocumentElement());
+        if (report != null) {
+            return report;
+        }
+
+        // The index follows the rules appended to the style-sheet.
+        StyleSheet extra = eng.parseStyleSheet("rect { stroke: blue }",
+                                               null, "all");
+        SelectorIndex index = ss.getSelectorIndex();
+        ss.append(extra.getRule(0));
+        assertTrue(ss.getSelectorIndex() != index);
+        report = compare(eng, ss, doc.getDocumentElement());
+        if (report != null) {
+            return report;
+        }
+
+        return reportSuccess();
+    }
+
+    /**
+     * Compares the indexed and linear matches of the given element and
+     * of its descendants.  Returns a failure report, or null.
+     */
+    protected TestReport compare(CSSEngine eng, StyleSheet ss, Element e) {
+        StyleSheet linear = new StyleSheet() {
+                public SelectorIndex getSelectorIndex() {
+                    return null;
+                }
+            };
+        for (int i = 0; i < ss.getSize(); i++) {
+            linear.append(ss.getRule(i));
+        }
+        String[] pseudos = { null, "first-line" };
+        for (int i = 0; i < pseudos.length; i++) {
+            List expected = new ArrayList();
+            eng.addMatchingRules(expected, linear, e, pseudos[i]);
+            List actual = new ArrayList();
+            eng.addMatchingRules(actual, ss, e, pseudos[i]);
+            if (!expected.equals(actual)) {
+                DefaultTestReport report = new DefaultTestReport(this);
+                report.setErrorCode(ERROR_MATCHES_DIFFER);
+                report.setDescription(new TestReport.Entry[] {
+                    new TestReport.Entry("element", e.getNodeName() + " id="
+                                         + e.getAttributeNS(null, "id")),
+                    new TestReport.Entry("pseudo", String.valueOf(pseudos[i])),
+                    new TestReport.Entry("linear", expected.toString()),
+                    new TestReport.Entry("indexed", actual.toString()) });
+                report.setPassed(false);
+                return report;
+            }
+        }
+        for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                TestReport report = compare(eng, ss, (Element)n);
+                if (report != null) {
+                    return report;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a document with elements of various names, ids, classes
+     * and attributes.
+     */
+    protected SVGOMDocument createDocument() {
+        DOMImplementation impl = SVGDOMImplementation.getDOMImplementation();
+        String svgNS = SVGDOMImplementation.SVG_NAMESPACE_URI;
+        SVGOMDocument doc = (SVGOMDocument)impl.createDocument
+            (svgNS, SVGConstants.SVG_SVG_TAG, null);
+        Element root = doc.getDocumentElement();
+        String[][] children = {
+            { "rect", "r1", "a" },
+            { "circle", "c1", "a b" },
+            { "rect", "r2", "b" },
+            { "rect", "r3", "a b  a" },
+            { "circle", "c2", "" },
+            { "text", "t1", "A" },
+            { "rect", null, " b" },
+            { "ellipse", "r1", "b" }
+        };
+        for (int g = 0; g < 2; g++) {
+            Element parent = root;
+            if (g == 1) {
+                parent = doc.createElementNS(svgNS, SVGConstants.SVG_G_TAG);
+                parent.setAttributeNS(null, SVGConstants.SVG_CLASS_ATTRIBUTE,
+                                      "a");
+                root.appendChild(parent);
+            }
+            for (int i = 0; i < children.length; i++) {
+                Element e = doc.createElementNS(svgNS, children[i][0]);
+                if (children[i][1] != null) {
+                    e.setAttributeNS(null, SVGConstants.SVG_ID_ATTRIBUTE,
+                                     children[i][1] + (g == 0 ? "" : "g"));
+                }
+                e.setAttributeNS(null, SVGConstants.SVG_CLASS_ATTRIBUTE,
+                                 children[i][2]);
+                if (i % 3 == 0) {
+                    e.setAttributeNS(null, SVGConstants.SVG_STROKE_ATTRIBUTE,
+                                     "red");
+                }
+                parent.appendChild(e);
+            }
+        }
+
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        CSSEngine eng = ((SVGDOMImplementation)doc.getImplementation())
+            .createCSSEngine(doc, ctx);
+        doc.setCSSEngine(eng);
+        return doc;
+    }
+}
@@ -0,0 +1,377 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.codec.png;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * This test checks the compression settings of {@link PNGEncodeParam}.
+ * It encodes an image for every combination of compression level,
+ * strategy, filter type and number of threads, checks the chunk CRCs
+ * and the Adler-32 checksum of the image data, and decodes the file
+ * with both <code>ImageIO</code> and {@link PNGImageDecoder} to compare
+ * the pixels with the original ones.  It also checks that
+ * {@link ParallelDeflaterOutputStream} inflates back to its input for
+ * sizes around its block size.
+ *
+ * @version $Id$
+ */
+public class PNGCompressionTest extends AbstractTest {
+
+    /**
+     * The compression levels tested.
+     */
+    public static final int[] LEVELS = {
+        Deflater.DEFAULT_COMPRESSION, 0, 1, 6, 9
+    };
+
+    /**
+     * The compression strategies tested.
+     */
+    public static final int[] STRATEGIES = {
+        Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY
+    };
+
+    /**
+     * The filter types tested.
+     */
+    public static final int[] FILTERS = {
+        PNGEncodeParam.PNG_FILTER_ADAPTIVE,
+        PNGEncodeParam.PNG_FILTER_NONE,
+        PNGEncodeParam.PNG_FILTER_SUB,
+        PNGEncodeParam.PNG_FILTER_UP,
+        PNGEncodeParam.PNG_FILTER_AVERAGE,
+        PNGEncodeParam.PNG_FILTER_PAETH
+    };
+
+    /**
+     * The numbers of compressing threads tested.
+     */
+    public static final int[] THREADS = { 1, 4 };
+
+    /**
+     * The size of the blocks of ParallelDeflaterOutputStream.
+     */
+    public static final int BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * The width of the encoded image.  With its height, its filtered
+     * rows span three compression blocks.
+     */
+    public static final int WIDTH = 300;
+
+    /**
+     * The height of the encoded image.
+     */
+    public static final int HEIGHT = 250;
+
+    public TestReport runImpl() throws Exception {
+        TestReport report = testStream();
+        if (report != null) {
+            return report;
+        }
+
+        BufferedImage image = createImage();
+        for (int l = 0; l < LEVELS.length; l++) {
+            for (int s = 0; s < STRATEGIES.length; s++) {
+                for (int f = 0; f < FILTERS.length; f++) {
+                    for (int t = 0; t < THREADS.length; t++) {
+                        PNGEncodeParam param =
+                            PNGEncodeParam.getDefaultEncodeParam(image);
+                        param.setCompressionLevel(LEVELS[l]);
+                        param.setCompressionStrategy(STRATEGIES[s]);
+                        param.setFilterType(FILTERS[f]);
+                        param.setCompressionThreads(THREADS[t]);
+                        report = testImage(image, param);
+                        if (report != null) {
+                            return report;
+                        }
+                    }
+                }
+            }
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Checks that ParallelDeflaterOutputStream produces a zlib stream
+     * which inflates back to its input.
+     */
+    protected TestReport testStream() throws Exception {
+        int[] sizes = {
+            0, 1, 1000, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1,
+            3 * BLOCK_SIZE + 12345
+        };
+        Random random = new Random(1);
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] data = new byte[sizes[i]];
+            for (int j = 0; j < data.length; j++) {
+                // Compressible, with some noise.
+                data[j] = (byte)((j % 251) ^ (random.nextInt(16)));
+            }
+            for (int l = 0; l < LEVELS.length; l++) {
+                for (int s = 0; s < STRATEGIES.length; s++) {
+                    for (int t = 0; t < THREADS.length; t++) {
+                        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                        ParallelDeflaterOutputStream pdos =
+                            new ParallelDeflaterOutputStream
+                            (bos, LEVELS[l], STRATEGIES[s], THREADS[t]);
+                        // Write in uneven pieces.
+                        int off = 0;
+                        while (off < data.length) {
+                            int n = Math.min(data.length - off, 7777);
+                            pdos.write(data, off, n);
+                            off += n;
+                        }
+                        pdos.close();
+
+                        String error = checkZlib(bos.toByteArray(), data);
+                        if (error != null) {
+                            return report(error, "size " + sizes[i]
+                                          + ", level " + LEVELS[l]
+                                          + ", strategy " + STRATEGIES[s]
+                                          + ", threads " + THREADS[t]);
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encodes the image with the given parameters, then checks the
+     * encoded data and the decoded pixels.
+     */
+    protected TestReport testImage(BufferedImage image, PNGEncodeParam param)
+            throws Exception {
+        String settings = "level " + param.getCompressionLevel()
+            + ", strategy " + param.getCompressionStrategy()
+            + ", filter " + param.getFilterType()
+            + ", threads " + param.getCompressionThreads();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, param).encode(image);
+        bos.close();
+        byte[] png = bos.toByteArray();
+
+        String error = checkChunks(png, image);
+        if (error != null) {
+            return report(error, settings);
+        }
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+        if (decoded == null) {
+            return report("imageio.cannot.decode", settings);
+        }
+        if (!identical(image, decoded)) {
+            return report("imageio.decoded.does.not.match", settings);
+        }
+
+        PNGDecodeParam decodeParam = new PNGDecodeParam();
+        decodeParam.setPerformGammaCorrection(false);
+        PNGImageDecoder decoder = new PNGImageDecoder
+            (new ByteArrayInputStream(png), decodeParam);
+        if (!identical(image, toBufferedImage
+                       (decoder.decodeAsRenderedImage(0)))) {
+            return report("batik.decoded.does.not.match", settings);
+        }
+        return null;
+    }
+
+    /**
+     * Checks the CRC of every chunk of a PNG file and the zlib stream
+     * of its IDAT chunks.  Returns an error code, or null.
+     */
+    protected String checkChunks(byte[] png, BufferedImage image)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(png));
+        in.skipBytes(8);
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        while (true) {
+            int length = in.readInt();
+            byte[] chunk = new byte[length + 4];
+            in.readFully(chunk);
+            CRC32 crc = new CRC32();
+            crc.update(chunk);
+            if ((int)crc.getValue() != in.readInt()) {
+                return "invalid.chunk.crc";
+            }
+            String type = new String(chunk, 0, 4, "ISO-8859-1");
+            if (type.equals("IDAT")) {
+                idat.write(chunk, 4, length);
+            } else if (type.equals("IEND")) {
+                break;
+            }
+        }
+        // Each row is its filter byte followed by 4 bytes per pixel.
+        return checkZlib(idat.toByteArray(), null,
+                         image.getHeight() * (1 + image.getWidth() * 4));
+    }
+
+    /**
+     * Inflates a zlib stream and checks that it gives back the given
+     * data and ends with its Adler-32 checksum.  Returns an error
+     * code, or null.
+     */
+    protected String checkZlib(byte[] zlib, byte[] data) {
+        return checkZlib(zlib, data, data.length);
+    }
+
+    /**
+     * Inflates a zlib stream and checks that it gives back the given
+     * data, or at least its length when the data is null, and ends
+     * with its Adler-32 checksum.  Returns an error code, or null.
+     */
+    protected String checkZlib(byte[] zlib, byte[] data, int length) {
+        if (zlib.length < 6 || ((zlib[0] & 0xff) << 8 | (zlib[1] & 0xff)) % 31 != 0) {
+            return "invalid.zlib.header";
+        }
+        byte[] inflated = new byte[length + 1];
+        int n = 0;
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            while (!inflater.finished() && n < inflated.length) {
+                int k = inflater.inflate(inflated, n, inflated.length - n);
+                if (k == 0 && !inflater.finished()
+                    && (inflater.needsInput()
+                        || inflater.needsDictionary())) {
+                    return "truncated.zlib.stream";
+                }
+                n += k;
+            }
+            if (!inflater.finished() || inflater.getRemaining() != 0) {
+                return "invalid.zlib.stream.end";
+            }
+        } catch (DataFormatException e) {
+            // Also thrown by a wrong Adler-32 checksum.
+            return "invalid.zlib.stream";
+        } finally {
+            inflater.end();
+        }
+        if (n != length) {
+            return "invalid.inflated.length";
+        }
+        if (data != null
+            && !Arrays.equals(data, Arrays.copyOf(inflated, length))) {
+            return "inflated.does.not.match";
+        }
+
+        Adler32 adler = new Adler32();
+        adler.update(inflated, 0, length);
+        int i = zlib.length - 4;
+        int checksum = (zlib[i] & 0xff) << 24 | (zlib[i + 1] & 0xff) << 16
+            | (zlib[i + 2] & 0xff) << 8 | (zlib[i + 3] & 0xff);
+        if (checksum != (int)adler.getValue()) {
+            return "invalid.adler32.checksum";
+        }
+        return null;
+    }
+
+    /**
+     * Creates a translucent image with gradients, flat areas and
+     * noise, so that each filter type wins on some rows.
+     */
+    protected BufferedImage createImage() {
+        BufferedImage image = new BufferedImage
+            (WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(2);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int a, r, g, b;
+                if (y < HEIGHT / 3) {
+                    a = 255;
+                    r = x * 255 / WIDTH;
+                    g = y * 255 / HEIGHT;
+                    b = (x + y) & 0xff;
+                } else if (y < 2 * HEIGHT / 3) {
+                    a = (x / 25) * 20;
+                    r = 200;
+                    g = 50;
+                    b = 100;
+                } else {
+                    a = random.nextInt(256);
+                    r = random.nextInt(256);
+                    g = (x * 3) & 0xff;
+                    b = random.nextInt(4) * 60;
+                }
+                image.setRGB(x, y, a << 24 | r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Copies the pixels of a rendered image, without compositing them.
+     */
+    protected static BufferedImage toBufferedImage(RenderedImage ri) {
+        if (ri instanceof BufferedImage) {
+            return (BufferedImage)ri;
+        }
+        ColorModel cm = ri.getColorModel();
+        WritableRaster wr = cm.createCompatibleWritableRaster
+            (ri.getWidth(), ri.getHeight());
+        ri.copyData(wr.createWritableTranslatedChild
+                    (ri.getMinX(), ri.getMinY()));
+        return new BufferedImage(cm, wr, cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Returns true if the two images have the same size and the same
+     * ARGB pixels.
+     */
+    protected static boolean identical(BufferedImage a, BufferedImage b) {
+        int w = a.getWidth();
+        int h = a.getHeight();
+        if (b.getWidth() != w || b.getHeight() != h) {
+            return false;
+        }
+        return Arrays.equals(a.getRGB(0, 0, w, h, null, 0, w),
+                             b.getRGB(0, 0, w, h, null, 0, w));
+    }
+
+    protected TestReport report(String errorCode, String settings) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(errorCode);
+        report.addDescriptionEntry("settings", settings);
+        report.setPassed(false);
+        return report;
+    }
+}
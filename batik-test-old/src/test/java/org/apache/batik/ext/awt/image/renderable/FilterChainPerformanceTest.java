@@ -0,0 +1,129 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.renderable;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.renderable.RenderContext;
+import java.util.Random;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.rendered.BufferedImageCachableRed;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * This test measures the cost of the color space conversions between
+ * the primitives of a filter chain.  The operation renders a chain of
+ * color matrix primitives alternating between linear and gamma
+ * corrected sRGB, so the data is converted between every primitive,
+ * the reference renders the same chain with all the primitives in
+ * linear sRGB.
+ *
+ * @version $Id$
+ */
+public class FilterChainPerformanceTest extends PerformanceTest {
+
+    /**
+     * The size of the filtered image.
+     */
+    protected static final int SIZE = 512;
+
+    /**
+     * The number of primitives of the chain.
+     */
+    protected static final int PRIMITIVES = 6;
+
+    protected Filter refChain;
+    protected Filter opChain;
+    protected WritableRaster raster;
+
+    public FilterChainPerformanceTest() {
+        Filter source = createSource();
+        refChain = createChain(source, false);
+        opChain = createChain(source, true);
+        raster = GraphicsUtil.sRGB_Unpre.createCompatibleWritableRaster
+            (SIZE, SIZE);
+    }
+
+    public void runRef() {
+        render(refChain);
+    }
+
+    public void runOp() {
+        render(opChain);
+    }
+
+    /**
+     * Renders the chain at the identity transform.
+     */
+    protected void render(Filter chain) {
+        RenderContext rc = new RenderContext(new AffineTransform());
+        for (int i = 0; i < 10; i++) {
+            RenderedImage ri = chain.createRendering(rc);
+            Rectangle r = new Rectangle(ri.getMinX(), ri.getMinY(),
+                                        ri.getWidth(), ri.getHeight());
+            ri.copyData(raster.createWritableChild
+                        (0, 0, r.width, r.height, r.x, r.y, null));
+        }
+    }
+
+    /**
+     * Creates a chain of color matrix primitives.
+     * @param alternate if true, the primitives alternate between linear
+     *        and gamma corrected sRGB, otherwise they are all linear.
+     */
+    protected Filter createChain(Filter source, boolean alternate) {
+        Filter f = source;
+        for (int i = 0; i < PRIMITIVES; i++) {
+            ColorMatrixRable cm;
+            if (i % 2 == 0)
+                cm = ColorMatrixRable8Bit.buildSaturate(0.8f);
+            else
+                cm = ColorMatrixRable8Bit.buildHueRotate(10);
+            cm.setSource(f);
+            cm.setColorSpaceLinear(!alternate || (i % 2 == 0));
+            f = cm;
+        }
+        return f;
+    }
+
+    /**
+     * Creates a premultiplied sRGB source of random translucent
+     * rectangles.
+     */
+    protected Filter createSource() {
+        BufferedImage bi = new BufferedImage
+            (SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = bi.createGraphics();
+        Random rnd = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            g.setColor(new Color(rnd.nextInt(256), rnd.nextInt(256),
+                                 rnd.nextInt(256), rnd.nextInt(256)));
+            g.fillRect(rnd.nextInt(SIZE), rnd.nextInt(SIZE),
+                       rnd.nextInt(SIZE / 2) + 1, rnd.nextInt(SIZE / 2) + 1);
+        }
+        g.dispose();
+        return new RedRable(new BufferedImageCachableRed(bi));
+    }
+}
@@ -0,0 +1,426 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * This test measures the box approximation of the gaussian blur of
+ * <code>GaussianBlurRed8Bit</code> against its previous implementation,
+ * kept here as the reference.  Each run blurs tiles of 64, 256 and 512
+ * pixels with standard deviations of 2.5, 5, 10 and 20 pixels.  The
+ * two implementations are checked to give the same pixels by
+ * {@link GaussianBlurRedTest}.
+ *
+ * @version $Id$
+ */
+public class GaussianBlurPerformanceTest extends PerformanceTest {
+
+    /**
+     * The standard deviations of the blurs.
+     */
+    protected static final double[] STD_DEVIATIONS = { 2.5, 5, 10, 20 };
+
+    /**
+     * The sizes of the blurred tiles.
+     */
+    protected static final int[] TILE_SIZES = { 64, 256, 512 };
+
+    protected GaussianBlurRed8Bit[] refBlurs;
+    protected GaussianBlurRed8Bit[] opBlurs;
+    protected WritableRaster[] tiles;
+
+    public GaussianBlurPerformanceTest() {
+        CachableRed source = createSource(640);
+        refBlurs = new GaussianBlurRed8Bit[STD_DEVIATIONS.length];
+        opBlurs = new GaussianBlurRed8Bit[STD_DEVIATIONS.length];
+        for (int i = 0; i < STD_DEVIATIONS.length; i++) {
+            double sd = STD_DEVIATIONS[i];
+            refBlurs[i] = new LegacyGaussianBlurRed(source, sd, sd);
+            opBlurs[i] = new GaussianBlurRed8Bit(source, sd, sd, null);
+        }
+        tiles = new WritableRaster[TILE_SIZES.length];
+        for (int i = 0; i < TILE_SIZES.length; i++) {
+            int s = TILE_SIZES[i];
+            tiles[i] = opBlurs[0].getColorModel()
+                .createCompatibleWritableRaster(s, s)
+                .createWritableTranslatedChild(64, 64);
+        }
+    }
+
+    public void runRef() {
+        blur(refBlurs);
+    }
+
+    public void runOp() {
+        blur(opBlurs);
+    }
+
+    /**
+     * Blurs every tile with every blur.
+     */
+    protected void blur(GaussianBlurRed8Bit[] blurs) {
+        for (int i = 0; i < blurs.length; i++) {
+            for (int j = 0; j < tiles.length; j++) {
+                blurs[i].copyData(tiles[j]);
+            }
+        }
+    }
+
+    /**
+     * Creates a source image of random translucent ellipses.
+     */
+    protected CachableRed createSource(int size) {
+        BufferedImage bi = new BufferedImage
+            (size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = bi.createGraphics();
+        Random rnd = new Random(1);
+        for (int i = 0; i < 300; i++) {
+            g.setColor(new Color(rnd.nextInt(256), rnd.nextInt(256),
+                                 rnd.nextInt(256), rnd.nextInt(256)));
+            g.fillOval(rnd.nextInt(size), rnd.nextInt(size),
+                       rnd.nextInt(size / 4) + 1, rnd.nextInt(size / 4) + 1);
+        }
+        g.dispose();
+        return new BufferedImageCachableRed(bi);
+    }
+
+    /**
+     * The blur as implemented before its box filters worked in place
+     * on reusable buffers, walking the columns one at a time.
+     */
+    protected static class LegacyGaussianBlurRed extends GaussianBlurRed8Bit {
+
+        public LegacyGaussianBlurRed(CachableRed src,
+                                     double stdDevX, double stdDevY) {
+            super(src, stdDevX, stdDevY, null);
+        }
+
+        public WritableRaster copyData(WritableRaster wr) {
+            // Get my source.
+            CachableRed src = (CachableRed)getSources().get(0);
+
+            Rectangle r = wr.getBounds();
+            r.x      -=   xinset;
+            r.y      -=   yinset;
+            r.width  += 2*xinset;
+            r.height += 2*yinset;
+
+            ColorModel srcCM = src.getColorModel();
+
+            WritableRaster tmpR1=null, tmpR2=null;
+
+            tmpR1 = srcCM.createCompatibleWritableRaster(r.width, r.height);
+            {
+                WritableRaster fill;
+                fill = tmpR1.createWritableTranslatedChild(r.x, r.y);
+                src.copyData(fill);
+            }
+            if (srcCM.hasAlpha() && !srcCM.isAlphaPremultiplied())
+                GraphicsUtil.coerceData(tmpR1, srcCM, true);
+
+            // For the blur box approx we can use dest as our intermediate
+            // otherwise we let it default to null which means we create a new
+            // one...
+
+            // this lets the Vertical conv know how much is junk, so it
+            // doesn't bother to convolve the top and bottom edges
+            int skipX;
+            if (xinset == 0) {
+                skipX = 0;
+            } else if (convOp[0] != null) {
+                tmpR2 = getColorModel().createCompatibleWritableRaster
+                    (r.width, r.height);
+                tmpR2 = convOp[0].filter(tmpR1, tmpR2);
+                skipX = convOp[0].getKernel().getXOrigin();
+
+                // Swap them...
+                WritableRaster tmp = tmpR1;
+                tmpR1 = tmpR2;
+                tmpR2 = tmp;
+            } else {
+                if ((dX&0x01) == 0){
+                    tmpR1 = boxFilterH(tmpR1, tmpR1, 0,    0,   dX,   dX/2);
+                    tmpR1 = boxFilterH(tmpR1, tmpR1, dX/2, 0,   dX,   dX/2-1);
+                    tmpR1 = boxFilterH(tmpR1, tmpR1, dX-1, 0,   dX+1, dX/2);
+                    skipX = dX-1 + dX/2;
+                } else {
+                    tmpR1 = boxFilterH(tmpR1, tmpR1, 0,    0,   dX, dX/2);
+                    tmpR1 = boxFilterH(tmpR1, tmpR1, dX/2, 0,   dX, dX/2);
+                    tmpR1 = boxFilterH(tmpR1, tmpR1, dX-2, 0,   dX, dX/2);
+                    skipX = dX-2 + dX/2;
+                }
+            }
+
+            if (yinset == 0) {
+                tmpR2 = tmpR1;
+            } else if (convOp[1] != null) {
+                if (tmpR2 == null) {
+                    tmpR2 = getColorModel().createCompatibleWritableRaster
+                        (r.width, r.height);
+                }
+                tmpR2 = convOp[1].filter(tmpR1, tmpR2);
+            } else {
+                if ((dY&0x01) == 0){
+                    tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, 0,    dY,   dY/2);
+                    tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY/2, dY,   dY/2-1);
+                    tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY-1, dY+1, dY/2);
+                }
+                else {
+                    tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, 0,    dY, dY/2);
+                    tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY/2, dY, dY/2);
+                    tmpR1 = boxFilterV(tmpR1, tmpR1, skipX, dY-2, dY, dY/2);
+                }
+                tmpR2 = tmpR1;
+            }
+            tmpR2 = tmpR2.createWritableTranslatedChild(r.x, r.y);
+            GraphicsUtil.copyData(tmpR2, wr);
+
+            return wr;
+        }
+
+        private WritableRaster boxFilterH(Raster src, WritableRaster dest,
+                                          int skipX, int skipY,
+                                          int boxSz, int loc) {
+
+            final int w = src.getWidth();
+            final int h = src.getHeight();
+
+              // Check if the raster is wide enough to do _any_ work
+            if (w < (2*skipX)+boxSz) return dest;
+            if (h < (2*skipY))       return dest;
+
+            final SinglePixelPackedSampleModel srcSPPSM =
+                (SinglePixelPackedSampleModel)src.getSampleModel();
+
+            final SinglePixelPackedSampleModel dstSPPSM =
+                (SinglePixelPackedSampleModel)dest.getSampleModel();
+
+            // Stride is the distance between two consecutive column elements,
+            // in the one-dimention dataBuffer
+            final int srcScanStride = srcSPPSM.getScanlineStride();
+            final int dstScanStride = dstSPPSM.getScanlineStride();
+
+            // Access the integer buffer for each image.
+            DataBufferInt srcDB = (DataBufferInt)src.getDataBuffer();
+            DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
+
+            // Offset defines where in the stack the real data begin
+            final int srcOff
+                = (srcDB.getOffset() +
+                   srcSPPSM.getOffset
+                   (src.getMinX()-src.getSampleModelTranslateX(),
+                    src.getMinY()-src.getSampleModelTranslateY()));
+            final int dstOff
+                = (dstDB.getOffset() +
+                   dstSPPSM.getOffset
+                   (dest.getMinX()-dest.getSampleModelTranslateX(),
+                    dest.getMinY()-dest.getSampleModelTranslateY()));
+
+            // Access the pixel value array
+            final int[] srcPixels  = srcDB.getBankData()[0];
+            final int[] destPixels = dstDB.getBankData()[0];
+
+            final int [] buffer = new int [boxSz];
+            int curr, prev;
+
+              // Fixed point normalization factor (8.24)
+            int scale = (1<<24)/boxSz;
+
+            for (int y=skipY; y<(h-skipY); y++) {
+                int sp     = srcOff + y*srcScanStride;
+                int dp     = dstOff + y*dstScanStride;
+                int rowEnd = sp + (w-skipX);
+
+                int k    = 0;
+                int sumA = 0;
+                int sumR = 0;
+                int sumG = 0;
+                int sumB = 0;
+
+                sp += skipX;
+                int end  = sp+boxSz;
+
+                while (sp < end) {
+                    curr = buffer[k] = srcPixels[sp];
+                    sumA += (curr>>> 24);
+                    sumR += (curr >> 16)&0xFF;
+                    sumG += (curr >>  8)&0xFF;
+                    sumB += (curr      )&0xFF;
+                    k++;
+                    sp++;
+                }
+
+                dp += skipX + loc;
+                prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
+                                         (((sumR*scale)&0xFF000000)>>>8)  |
+                                         (((sumG*scale)&0xFF000000)>>>16) |
+                                         (((sumB*scale)&0xFF000000)>>>24));
+                dp++;
+                k=0;
+                while (sp < rowEnd) {
+                    curr = buffer[k];
+                    if (curr == srcPixels[sp]) {
+                        destPixels[dp] = prev;
+                    } else {
+                        sumA -= (curr>>> 24);
+                        sumR -= (curr >> 16)&0xFF;
+                        sumG -= (curr >>  8)&0xFF;
+                        sumB -= (curr      )&0xFF;
+
+                        curr = buffer[k] = srcPixels[sp];
+
+                        sumA += (curr>>> 24);
+                        sumR += (curr >> 16)&0xFF;
+                        sumG += (curr >>  8)&0xFF;
+                        sumB += (curr      )&0xFF;
+                        prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
+                                                 (((sumR*scale)&0xFF000000)>>>8)  |
+                                                 (((sumG*scale)&0xFF000000)>>>16) |
+                                                 (((sumB*scale)&0xFF000000)>>>24));
+                    }
+                    k = (k+1)%boxSz;
+                    sp++;
+                    dp++;
+                }
+            }
+            return dest;
+        }
+
+        private WritableRaster boxFilterV(Raster src, WritableRaster dest,
+                                          int skipX, int skipY,
+                                          int boxSz, int loc) {
+
+            final int w = src.getWidth();
+            final int h = src.getHeight();
+
+              // Check if the raster is wide enough to do _any_ work
+            if (w < (2*skipX))       return dest;
+            if (h < (2*skipY)+boxSz) return dest;
+
+            final SinglePixelPackedSampleModel srcSPPSM =
+                (SinglePixelPackedSampleModel)src.getSampleModel();
+
+            final SinglePixelPackedSampleModel dstSPPSM =
+                (SinglePixelPackedSampleModel)dest.getSampleModel();
+
+            // Stride is the distance between two consecutive column elements,
+            // in the one-dimention dataBuffer
+            final int srcScanStride = srcSPPSM.getScanlineStride();
+            final int dstScanStride = dstSPPSM.getScanlineStride();
+
+            // Access the integer buffer for each image.
+            DataBufferInt srcDB = (DataBufferInt)src.getDataBuffer();
+            DataBufferInt dstDB = (DataBufferInt)dest.getDataBuffer();
+
+            // Offset defines where in the stack the real data begin
+            final int srcOff
+                = (srcDB.getOffset() +
+                   srcSPPSM.getOffset
+                   (src.getMinX()-src.getSampleModelTranslateX(),
+                    src.getMinY()-src.getSampleModelTranslateY()));
+            final int dstOff
+                = (dstDB.getOffset() +
+                   dstSPPSM.getOffset
+                   (dest.getMinX()-dest.getSampleModelTranslateX(),
+                    dest.getMinY()-dest.getSampleModelTranslateY()));
+
+            // Access the pixel value array
+            final int[] srcPixels  = srcDB.getBankData()[0];
+            final int[] destPixels = dstDB.getBankData()[0];
+
+            final int [] buffer = new int [boxSz];
+            int curr, prev;
+
+              // Fixed point normalization factor (8.24)
+            final int scale = (1<<24)/boxSz;
+
+            for (int x=skipX; x<(w-skipX); x++) {
+                int sp = srcOff + x;
+                int dp = dstOff + x;
+                int colEnd = sp + (h-skipY)*srcScanStride;
+
+                int k=0;
+                int sumA = 0;
+                int sumR = 0;
+                int sumG = 0;
+                int sumB = 0;
+
+                sp += skipY*srcScanStride;
+                int end  = sp+(boxSz*srcScanStride);
+
+                while (sp < end) {
+                    curr = buffer[k] = srcPixels[sp];
+                    sumA += (curr>>> 24);
+                    sumR += (curr >> 16)&0xFF;
+                    sumG += (curr >>  8)&0xFF;
+                    sumB += (curr      )&0xFF;
+                    k++;
+                    sp+=srcScanStride;
+                }
+
+                dp += (skipY + loc)*dstScanStride;
+                prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
+                                         (((sumR*scale)&0xFF000000)>>>8)  |
+                                         (((sumG*scale)&0xFF000000)>>>16) |
+                                         (((sumB*scale)&0xFF000000)>>>24));
+                dp+=dstScanStride;
+                k=0;
+                while (sp < colEnd) {
+                    curr = buffer[k];
+                    if (curr == srcPixels[sp]) {
+                        destPixels[dp] = prev;
+                    } else {
+                        sumA -= (curr>>> 24);
+                        sumR -= (curr >> 16)&0xFF;
+                        sumG -= (curr >>  8)&0xFF;
+                        sumB -= (curr      )&0xFF;
+
+                        curr = buffer[k] = srcPixels[sp];
+
+                        sumA += (curr>>> 24);
+                        sumR += (curr >> 16)&0xFF;
+                        sumG += (curr >>  8)&0xFF;
+                        sumB += (curr      )&0xFF;
+                        prev = destPixels[dp] = (( (sumA*scale)&0xFF000000)       |
+                                                 (((sumR*scale)&0xFF000000)>>>8)  |
+                                                 (((sumG*scale)&0xFF000000)>>>16) |
+                                                 (((sumB*scale)&0xFF000000)>>>24));
+                    }
+                    k = (k+1)%boxSz;
+                    sp+=srcScanStride;
+                    dp+=dstScanStride;
+                }
+            }
+            return dest;
+        }
+    }
+}
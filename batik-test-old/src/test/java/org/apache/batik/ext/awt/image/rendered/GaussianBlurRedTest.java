@@ -0,0 +1,133 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that <code>GaussianBlurRed8Bit</code> blurs exactly as its
+ * previous implementation, kept as the reference by
+ * {@link GaussianBlurPerformanceTest}.  The tiles are blurred with the
+ * box filters run sequentially and split between the threads of a
+ * pool.  Some tiles extend past the source, after tiles which fill the
+ * buffers reused by the next requests.
+ *
+ * @version $Id$
+ */
+public class GaussianBlurRedTest extends AbstractTest {
+
+    /**
+     * Error when a tile differs from the reference.
+     * {0} = the generation mode
+     * {1} = the standard deviations
+     * {2} = the tile
+     */
+    public static final String ERROR_PIXELS_DIFFER
+        = "GaussianBlurRedTest.error.pixels.differ";
+
+    /**
+     * The standard deviations of the blurs, along x and y.
+     */
+    protected static final double[][] STD_DEVIATIONS = {
+        { 1, 1 }, { 2.5, 2.5 }, { 5, 5 }, { 10, 10 }, { 20, 20 }, { 3, 12 }
+    };
+
+    /**
+     * The blurred tiles.  The source covers (0, 0, 640, 640).
+     */
+    protected static final Rectangle[] TILES = {
+        new Rectangle(64, 64, 256, 256),
+        new Rectangle(-20, 600, 128, 128),
+        new Rectangle(64, 64, 512, 512),
+        new Rectangle(560, -40, 200, 100),
+        new Rectangle(100, 200, 64, 64)
+    };
+
+    public TestReport runImpl() throws Exception {
+        CachableRed source = new GaussianBlurPerformanceTest().createSource(640);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        int parallelThreshold = GaussianBlurRed8Bit.parallelThreshold;
+        ForkJoinPool filterPool = GaussianBlurRed8Bit.filterPool;
+        try {
+            for (int i = 0; i < STD_DEVIATIONS.length; i++) {
+                double sdX = STD_DEVIATIONS[i][0];
+                double sdY = STD_DEVIATIONS[i][1];
+                GaussianBlurRed8Bit ref =
+                    new GaussianBlurPerformanceTest.LegacyGaussianBlurRed
+                    (source, sdX, sdY);
+                GaussianBlurRed8Bit op =
+                    new GaussianBlurRed8Bit(source, sdX, sdY, null);
+                for (int j = 0; j < TILES.length; j++) {
+                    Rectangle r = TILES[j];
+                    int[] expected = blur(ref, r);
+
+                    GaussianBlurRed8Bit.filterPool = filterPool;
+                    GaussianBlurRed8Bit.parallelThreshold = Integer.MAX_VALUE;
+                    if (!Arrays.equals(expected, blur(op, r))) {
+                        return reportDifference("sequential", sdX, sdY, r);
+                    }
+
+                    GaussianBlurRed8Bit.filterPool = pool;
+                    GaussianBlurRed8Bit.parallelThreshold = 0;
+                    if (!Arrays.equals(expected, blur(op, r))) {
+                        return reportDifference("parallel", sdX, sdY, r);
+                    }
+                }
+            }
+        } finally {
+            GaussianBlurRed8Bit.filterPool = filterPool;
+            GaussianBlurRed8Bit.parallelThreshold = parallelThreshold;
+            pool.shutdown();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Returns the samples of the given tile of a blur.
+     */
+    protected int[] blur(GaussianBlurRed8Bit blur, Rectangle r) {
+        WritableRaster wr = blur.getColorModel()
+            .createCompatibleWritableRaster(r.width, r.height)
+            .createWritableTranslatedChild(r.x, r.y);
+        blur.copyData(wr);
+        return wr.getPixels(r.x, r.y, r.width, r.height, (int[])null);
+    }
+
+    /**
+     * Reports a tile differing from the reference.
+     */
+    protected TestReport reportDifference(String mode, double sdX, double sdY,
+                                          Rectangle r) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(ERROR_PIXELS_DIFFER);
+        report.setDescription(new TestReport.Entry[] {
+            new TestReport.Entry("mode", mode),
+            new TestReport.Entry("stdDeviation", sdX + " " + sdY),
+            new TestReport.Entry("tile", r.toString()) });
+        report.setPassed(false);
+        return report;
+    }
+}
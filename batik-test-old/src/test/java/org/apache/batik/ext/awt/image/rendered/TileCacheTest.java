@@ -0,0 +1,153 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that a byte budgeted, sharded tile cache stays within its
+ * budget and that the <code>TileStoreStatistics</code> of its stores
+ * agree with the cache, when the tiles are requested from one thread
+ * and from several threads at once.
+ *
+ * @version $Id$
+ */
+public class TileCacheTest extends AbstractTest {
+
+    /**
+     * The size of the tiles.
+     */
+    public static final int TILE_SIZE = 32;
+
+    /**
+     * The size in bytes of one tile.
+     */
+    public static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+
+    /**
+     * The number of tiles in each direction.
+     */
+    public static final int TILES = 8;
+
+    /**
+     * The number of shards of the cache.
+     */
+    public static final int SHARDS = 4;
+
+    /**
+     * The number of threads requesting tiles concurrently.
+     */
+    public static final int THREADS = 4;
+
+    /**
+     * The number of times each thread requests every tile.
+     */
+    public static final int PASSES = 20;
+
+    public TestReport runImpl() throws Exception {
+        long maxBytes = SHARDS * 3 * TILE_BYTES;
+        ShardedLRUCache cache =
+            new ShardedLRUCache(SHARDS, Integer.MAX_VALUE, maxBytes);
+        TileStoreStatistics statistics = new TileStoreStatistics();
+        final AtomicInteger generated = new AtomicInteger();
+        TileGenerator source = new TileGenerator() {
+                public Raster genTile(int x, int y) {
+                    generated.incrementAndGet();
+                    return Raster.createBandedRaster
+                        (DataBuffer.TYPE_INT, TILE_SIZE, TILE_SIZE, 1,
+                         new Point(x * TILE_SIZE, y * TILE_SIZE));
+                }
+            };
+        final TileStore store = new TileGrid(0, 0, TILES, TILES, source,
+                                             cache, statistics);
+        assertTrue(store.getStatistics() != statistics);
+
+        // Each tile is generated on its first request and found in the
+        // cache on the second one.
+        for (int y = 0; y < TILES; y++) {
+            for (int x = 0; x < TILES; x++) {
+                Raster ras = store.getTile(x, y);
+                assertTrue(store.getTile(x, y) == ras);
+            }
+        }
+        int tiles = TILES * TILES;
+        assertEquals(tiles, generated.get());
+        assertEquals(tiles, (int)statistics.getMissCount());
+        assertEquals(tiles, (int)statistics.getHitCount());
+        assertEquals(tiles, (int)store.getStatistics().getMissCount());
+        assertTrue(cache.getEvictionCount() > 0);
+        checkBudget(cache, statistics, maxBytes);
+
+        // The counts stay consistent when the threads contend.
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int offset = i;
+            threads[i] = new Thread() {
+                    public void run() {
+                        for (int p = 0; p < PASSES; p++) {
+                            for (int j = 0; j < TILES * TILES; j++) {
+                                int t = (j + offset * 7) % (TILES * TILES);
+                                store.getTile(t % TILES, t / TILES);
+                            }
+                        }
+                    }
+                };
+            threads[i].start();
+        }
+        for (int i = 0; i < THREADS; i++) {
+            threads[i].join();
+        }
+        int requests = 2 * tiles + THREADS * PASSES * tiles;
+        assertEquals(requests - generated.get(),
+                     (int)statistics.getHitCount());
+        assertEquals(generated.get(), (int)statistics.getMissCount());
+        checkBudget(cache, statistics, maxBytes);
+
+        // Flushing the cache releases all the tiles.
+        cache.flush();
+        assertEquals(0, cache.getUsed());
+        assertEquals(0, (int)cache.getUsedBytes());
+        assertEquals(0, (int)statistics.getCachedTileCount());
+        assertEquals(0, (int)statistics.getCachedBytes());
+
+        return reportSuccess();
+    }
+
+    /**
+     * Checks that the cache is within its budget and that the
+     * statistics account for the tiles it holds.
+     */
+    protected void checkBudget(LRUCache cache,
+                               TileStoreStatistics statistics,
+                               long maxBytes) throws Exception {
+        assertTrue(cache.getUsedBytes() > 0);
+        assertTrue(cache.getUsedBytes() <= maxBytes);
+        assertEquals(cache.getUsed(), (int)statistics.getCachedTileCount());
+        assertEquals((int)cache.getUsedBytes(),
+                     (int)statistics.getCachedBytes());
+        assertEquals(cache.getUsed() * (int)TILE_BYTES,
+                     (int)cache.getUsedBytes());
+    }
+}
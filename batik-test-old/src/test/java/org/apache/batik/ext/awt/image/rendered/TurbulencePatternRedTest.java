@@ -0,0 +1,294 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.WritableRaster;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that <code>TurbulencePatternRed</code> generates the same
+ * pixels, bit for bit, as the implementation which evaluated the noise
+ * of each raster sequentially with its own lattice.  Each request is
+ * generated sequentially, with the rows split between the threads of a
+ * pool, and with the stitched tiles reused.
+ *
+ * <p>By default the test makes one request for each combination of
+ * fractal noise or turbulence, stitching and alpha, the transform,
+ * octaves, seed and raster bounds varying between them.  The
+ * exhaustive test, registered in <code>exhaustiveTesting.xml</code>,
+ * makes the 864 requests of all the combinations of these
+ * parameters.</p>
+ *
+ * @version $Id$
+ */
+public class TurbulencePatternRedTest extends AbstractTest {
+
+    /**
+     * Error when a raster differs from the sequentially generated one.
+     * {0} = the generation mode
+     * {1} = the index of the request
+     */
+    public static final String ERROR_PIXELS_DIFFER
+        = "TurbulencePatternRedTest.error.pixels.differ";
+
+    /**
+     * Error when the pixels differ from the reference implementation.
+     * {0} = the digest of the generated pixels
+     */
+    public static final String ERROR_REFERENCE_DIFFERS
+        = "TurbulencePatternRedTest.error.reference.differs";
+
+    /**
+     * The SHA-256 digest of the samples generated by the reference
+     * implementation for all the requests of the exhaustive test, in
+     * order.
+     */
+    public static final String REFERENCE_DIGEST =
+        "64a5d4e40f9df7863a05f44a2e0da600bb500e0d1f52adb8609cd6b79bee980b";
+
+    /**
+     * The SHA-256 digest of the samples generated by the reference
+     * implementation for the requests of the default test, in order.
+     */
+    public static final String REFERENCE_SUBSET_DIGEST =
+        "128f73e23891dbda94057b5fb6e6fa7f3299c68f3782e5e0b40c44b8f962957e";
+
+    /**
+     * The maximum size in bytes of the reused stitched tiles.
+     */
+    public static final long TILE_CACHE_BYTES = 4L * 1024 * 1024;
+
+    protected static final AffineTransform[] TRANSFORMS = {
+        new AffineTransform(),
+        AffineTransform.getScaleInstance(0.37, 0.41),
+        new AffineTransform(0.9, 0.2, -0.1, 1.1, 3.3, -7.1) };
+    protected static final boolean[] BOOLEANS = { true, false };
+    protected static final Rectangle2D[] TILES = {
+        null, new Rectangle2D.Double(10, 20, 300, 250) };
+    protected static final int[] OCTAVES = { 1, 4 };
+    protected static final int[] SEEDS = { 0, 7, -3 };
+    protected static final Rectangle[] RECTS = {
+        new Rectangle(0, 0, 128, 128),
+        new Rectangle(13, 17, 300, 280),
+        new Rectangle(0, 0, 600, 500) };
+
+    /**
+     * Whether all the combinations of the parameters are requested.
+     */
+    protected boolean exhaustive;
+
+    protected ColorSpace cs = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+    protected Rectangle dev = new Rectangle(0, 0, 600, 500);
+    protected MessageDigest md;
+    protected ForkJoinPool pool;
+    protected int n;
+
+    /**
+     * Creates a new TurbulencePatternRedTest making one request for
+     * each combination of noise type, stitching and alpha.
+     */
+    public TurbulencePatternRedTest() {
+        this(Boolean.FALSE);
+    }
+
+    /**
+     * Creates a new TurbulencePatternRedTest.
+     * @param exhaustive whether to request all the combinations of
+     *        the parameters.
+     */
+    public TurbulencePatternRedTest(Boolean exhaustive) {
+        this.exhaustive = exhaustive.booleanValue();
+    }
+
+    public TestReport runImpl() throws Exception {
+        md = MessageDigest.getInstance("SHA-256");
+        pool = new ForkJoinPool(4);
+        n = 0;
+        int parallelThreshold = TurbulencePatternRed.parallelThreshold;
+        ForkJoinPool fillPool = TurbulencePatternRed.fillPool;
+        long tileCacheMaxBytes = TurbulencePatternRed.getTileCacheMaxBytes();
+        try {
+            TestReport report = exhaustive ? runAll() : runSubset();
+            if (report != null) {
+                return report;
+            }
+        } finally {
+            TurbulencePatternRed.fillPool = fillPool;
+            TurbulencePatternRed.parallelThreshold = parallelThreshold;
+            TurbulencePatternRed.setTileCacheMaxBytes(tileCacheMaxBytes);
+            pool.shutdown();
+        }
+        assertEquals(exhaustive ? 864 : 16, n);
+
+        StringBuffer sb = new StringBuffer();
+        for (byte x : md.digest()) {
+            sb.append(Character.forDigit((x >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(x & 0xf, 16));
+        }
+        String digest = exhaustive ? REFERENCE_DIGEST : REFERENCE_SUBSET_DIGEST;
+        if (!sb.toString().equals(digest)) {
+            DefaultTestReport report = new DefaultTestReport(this);
+            report.setErrorCode(ERROR_REFERENCE_DIFFERS);
+            report.setDescription(new TestReport.Entry[] {
+                new TestReport.Entry("digest", sb.toString()) });
+            report.setPassed(false);
+            return report;
+        }
+
+        // The whole budget is released when the reuse is disabled.
+        TurbulencePatternRed.setTileCacheMaxBytes(0);
+        assertEquals(0, (int)TurbulencePatternRed.getTileCacheBytes());
+
+        return reportSuccess();
+    }
+
+    /**
+     * Requests all the combinations of the parameters.
+     */
+    protected TestReport runAll() throws Exception {
+        for (AffineTransform txf : TRANSFORMS)
+        for (boolean fractal : BOOLEANS)
+        for (Rectangle2D tile : TILES)
+        for (int oct : OCTAVES)
+        for (boolean alpha : BOOLEANS)
+        for (int seed : SEEDS)
+        for (Rectangle r : RECTS) {
+            TestReport report = check(txf, fractal, tile, oct, alpha,
+                                      seed, r);
+            if (report != null) {
+                return report;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Makes one request for each combination of noise type, stitching
+     * and alpha.
+     */
+    protected TestReport runSubset() throws Exception {
+        int i = 0;
+        for (boolean fractal : BOOLEANS)
+        for (Rectangle2D tile : TILES)
+        for (boolean alpha : BOOLEANS) {
+            TestReport report = check(TRANSFORMS[i % TRANSFORMS.length],
+                                      fractal, tile,
+                                      OCTAVES[(i / 2) % OCTAVES.length],
+                                      alpha, SEEDS[(i + 1) % SEEDS.length],
+                                      RECTS[i % RECTS.length]);
+            if (report != null) {
+                return report;
+            }
+            i++;
+        }
+        return null;
+    }
+
+    /**
+     * Generates a request twice in each mode, adds the samples to the
+     * digest and checks that all the modes generate them.  Returns a
+     * failed report, or null.
+     */
+    protected TestReport check(AffineTransform txf, boolean fractal,
+                               Rectangle2D tile, int oct, boolean alpha,
+                               int seed, Rectangle r) throws Exception {
+        for (int rep = 0; rep < 2; rep++) {
+            n++;
+            TurbulencePatternRed.setTileCacheMaxBytes(0);
+            TurbulencePatternRed.parallelThreshold = Integer.MAX_VALUE;
+            int[] seq = generate(0.05, 0.031, oct, seed, fractal, tile,
+                                 txf, dev, cs, alpha, r);
+            byte[] b = new byte[seq.length];
+            for (int i = 0; i < seq.length; i++) {
+                b[i] = (byte)seq[i];
+            }
+            md.update(b);
+
+            ForkJoinPool fillPool = TurbulencePatternRed.fillPool;
+            TurbulencePatternRed.fillPool = pool;
+            TurbulencePatternRed.parallelThreshold = 0;
+            int[] par = generate(0.05, 0.031, oct, seed, fractal, tile,
+                                 txf, dev, cs, alpha, r);
+            TurbulencePatternRed.fillPool = fillPool;
+            TurbulencePatternRed.parallelThreshold = Integer.MAX_VALUE;
+            if (!Arrays.equals(seq, par)) {
+                return reportDifference("parallel", n);
+            }
+
+            // The first repetition fills the cache, the second one
+            // reads it back.
+            TurbulencePatternRed.setTileCacheMaxBytes(TILE_CACHE_BYTES);
+            for (int i = 0; i < 2; i++) {
+                int[] reused = generate(0.05, 0.031, oct, seed, fractal,
+                                        tile, txf, dev, cs, alpha, r);
+                if (!Arrays.equals(seq, reused)) {
+                    return reportDifference("reuse", n);
+                }
+            }
+            assertTrue(TurbulencePatternRed.getTileCacheBytes()
+                       <= TILE_CACHE_BYTES);
+            if ((tile != null) && (4L * r.width * r.height
+                                   <= TILE_CACHE_BYTES)) {
+                assertTrue(TurbulencePatternRed.getTileCacheBytes() > 0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Generates the samples of the given raster of a pattern.
+     */
+    protected int[] generate(double baseFrequencyX, double baseFrequencyY,
+                             int numOctaves, int seed, boolean fractal,
+                             Rectangle2D tile, AffineTransform txf,
+                             Rectangle dev, ColorSpace cs, boolean alpha,
+                             Rectangle r) {
+        TurbulencePatternRed red = new TurbulencePatternRed
+            (baseFrequencyX, baseFrequencyY, numOctaves, seed, fractal,
+             tile, txf, dev, cs, alpha);
+        WritableRaster wr = red.getColorModel()
+            .createCompatibleWritableRaster(r.width, r.height)
+            .createWritableTranslatedChild(r.x, r.y);
+        red.copyData(wr);
+        return wr.getPixels(r.x, r.y, r.width, r.height, (int[])null);
+    }
+
+    /**
+     * Reports a raster differing from the sequentially generated one.
+     */
+    protected TestReport reportDifference(String mode, int request) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(ERROR_PIXELS_DIFFER);
+        report.setDescription(new TestReport.Entry[] {
+            new TestReport.Entry("mode", mode),
+            new TestReport.Entry("request", Integer.toString(request)) });
+        report.setPassed(false);
+        return report;
+    }
+}
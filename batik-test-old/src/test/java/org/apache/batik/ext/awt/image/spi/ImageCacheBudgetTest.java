@@ -0,0 +1,138 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.spi;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import org.apache.batik.ext.awt.image.BoundedURLImageCache;
+import org.apache.batik.ext.awt.image.URLImageCache;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * Checks that the caches of a registry share the budget given to it,
+ * and that the image cache keeps the images it reads within its share.
+ *
+ * @version $Id$
+ */
+public class ImageCacheBudgetTest extends AbstractTest {
+
+    /**
+     * The number of test images.
+     */
+    public static final int IMAGES = 5;
+
+    public TestReport runImpl() throws Exception {
+        // No budget, soft references.
+        ImageTagRegistry r = ImageTagRegistry.createRegistry(0);
+        assertTrue(!(r.getImageCache() instanceof BoundedURLImageCache));
+        assertTrue(!(r.getRawCache() instanceof BoundedURLImageCache));
+
+        r = ImageTagRegistry.createRegistry(1001);
+        BoundedURLImageCache raw = (BoundedURLImageCache)r.getRawCache();
+        BoundedURLImageCache img = (BoundedURLImageCache)r.getImageCache();
+        assertEquals(250L, raw.getMaxSize());
+        assertEquals(751L, img.getMaxSize());
+
+        File dir = File.createTempFile("imgcache", "");
+        dir.delete();
+        dir.mkdir();
+        try {
+            ParsedURL[] urls = new ParsedURL[IMAGES];
+            for (int i = 0; i < IMAGES; i++) {
+                BufferedImage bi =
+                    new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+                bi.setRGB(i, i, 0xff000000 | (i * 40));
+                File file = new File(dir, "img" + i + ".png");
+                ImageIO.write(bi, "png", file);
+                urls[i] = new ParsedURL(file.toURI().toString());
+            }
+
+            // The size of one decoded image.
+            r = createRegistry(Long.MAX_VALUE / 2);
+            img = (BoundedURLImageCache)r.getImageCache();
+            read(r, urls[0]);
+            long size = img.getSize();
+            assertTrue(size > BoundedURLImageCache.ENTRY_OVERHEAD);
+
+            // The image cache has room for two images and a half.
+            r = createRegistry(size * 10 / 3);
+            img = (BoundedURLImageCache)r.getImageCache();
+            raw = (BoundedURLImageCache)r.getRawCache();
+            assertEquals(size * 10 / 3, img.getMaxSize() + raw.getMaxSize());
+            for (int i = 0; i < IMAGES; i++) {
+                read(r, urls[i]);
+                assertTrue(img.getSize() <= img.getMaxSize());
+            }
+            assertEquals(2, img.getImageCount());
+            assertEquals(2 * size, img.getSize());
+            assertEquals((long)IMAGES - 2, img.getEvictionCount());
+            assertEquals((long)IMAGES, img.getMissCount());
+            assertEquals(0, raw.getImageCount());
+
+            // The most recent images are served from the cache.
+            Filter f = r.readURL(urls[IMAGES - 1]);
+            assertTrue(f != null);
+            assertEquals(1L, img.getHitCount());
+            assertTrue(img.isDone(urls[IMAGES - 2]));
+            assertTrue(!img.isPresent(urls[0]));
+
+            r.flushCache();
+            assertEquals(0L, img.getSize());
+            assertEquals(0, img.getImageCount());
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Creates a registry with the given budget, reading the images with
+     * a <code>JDKRegistryEntry</code>.
+     */
+    protected static ImageTagRegistry createRegistry(long cacheSize) {
+        ImageTagRegistry r = ImageTagRegistry.createRegistry(cacheSize);
+        r.register(new JDKRegistryEntry());
+        return r;
+    }
+
+    /**
+     * Reads the given image, waits for it to be decoded and lets its
+     * cache account for it.
+     */
+    protected static void read(ImageTagRegistry r, ParsedURL purl) {
+        Filter f = r.readURL(purl);
+        f.createDefaultRendering();
+        URLImageCache cache = r.getImageCache();
+        if (cache instanceof BoundedURLImageCache) {
+            BoundedURLImageCache bc = (BoundedURLImageCache)cache;
+            // Trimming sizes the images decoded since they were put.
+            bc.setMaxSize(bc.getMaxSize());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * This test checks that repainting a zoomed in view of a large tree
+ * only costs a bounds check for each of the children outside the
+ * clip, much less than painting them. The operation repaints a 20x magnified corner of a tree of 10000
+ * shapes, the reference the same corner of a tree of 100 shapes.
+ * The spatial index of the children is turned off while painting, so
+ * that both trees go through the culling of primitivePaint.
+ *
+ * @version $Id$
+ */
+public class CullingPerformanceTest extends PerformanceTest {
+
+    /**
+     * The size of the painted image.
+     */
+    protected static final int SIZE = 200;
+
+    /**
+     * The zoom factor of the repaint.
+     */
+    protected static final double ZOOM = 20;
+
+    /**
+     * The number of repaints of each run.
+     */
+    protected static final int REPAINTS = 500;
+
+    protected GraphicsNode refNode;
+    protected GraphicsNode opNode;
+    protected BufferedImage image;
+
+    public CullingPerformanceTest() {
+        refNode = createTree(10);
+        opNode = createTree(100);
+        image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    public void runRef() {
+        paint(refNode);
+    }
+
+    public void runOp() {
+        paint(opNode);
+    }
+
+    /**
+     * Repaints the top left corner of the given tree, magnified,
+     * without the spatial index.
+     */
+    protected void paint(GraphicsNode node) {
+        int threshold = CompositeGraphicsNode.getSpatialIndexThreshold();
+        CompositeGraphicsNode.setSpatialIndexThreshold(0);
+        try {
+            for (int i = 0; i < REPAINTS; i++) {
+                Graphics2D g2d = image.createGraphics();
+                g2d.setClip(0, 0, SIZE, SIZE);
+                g2d.transform(AffineTransform.getScaleInstance(ZOOM, ZOOM));
+                node.paint(g2d);
+                g2d.dispose();
+            }
+        } finally {
+            CompositeGraphicsNode.setSpatialIndexThreshold(threshold);
+        }
+    }
+
+    /**
+     * Creates a tree of <code>n</code> by <code>n</code> squares,
+     * spaced 10 user units apart.
+     */
+    protected GraphicsNode createTree(int n) {
+        CompositeGraphicsNode root = new CompositeGraphicsNode();
+        List children = root.getChildren();
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                ShapeNode s = new ShapeNode();
+                s.setShape(new Rectangle2D.Double(x * 10, y * 10, 8, 8));
+                FillShapePainter p = new FillShapePainter(s.getShape());
+                p.setPaint(new Color((x * 255) / n, (y * 255) / n, 128));
+                s.setShapePainter(p);
+                children.add(s);
+            }
+        }
+        return root;
+    }
+}
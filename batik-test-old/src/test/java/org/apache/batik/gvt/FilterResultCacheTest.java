@@ -0,0 +1,317 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderContext;
+import java.lang.ref.WeakReference;
+import java.util.Vector;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.FilterResultCache;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.FloodRable8Bit;
+import org.apache.batik.gvt.filter.BackgroundRable8Bit;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks when the {@link FilterResultCache} reuses a rendering: on a
+ * repaint and under an integer translation, but not under another
+ * scale or other rendering hints.  Checks its byte budget and the
+ * invalidation of the renderings of a node when the node or one of
+ * its descendants changes, and that the filters reading the
+ * background image are not cached.
+ *
+ * @version $Id$
+ */
+public class FilterResultCacheTest extends AbstractTest {
+
+    /**
+     * The size of the test filters, in pixels.
+     */
+    public static final int SIZE = 20;
+
+    /**
+     * The size of the raster of a test filter, in bytes.
+     */
+    public static final int BYTES = SIZE * SIZE * 4;
+
+    public TestReport runImpl() throws Exception {
+        testReuse();
+        testBudget();
+        testInvalidate();
+        FilterResultCache frc = FilterResultCache.getInstance();
+        long max = frc.getMaxSize();
+        frc.setMaxSize(1 << 24);
+        try {
+            testNodes();
+            testBackground();
+        } finally {
+            frc.clear();
+            frc.setMaxSize(max);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Checks the renderings reused by a repaint.
+     */
+    protected void testReuse() throws Exception {
+        FilterResultCache frc = new FilterResultCache(1 << 20);
+        CountingFilter f = new CountingFilter();
+        Object owner = new Object();
+
+        // Nothing is cached without an owner.
+        render(frc, f, new AffineTransform(), null);
+        render(frc, f, new AffineTransform(), null);
+        assertEquals(2, f.count);
+        assertEquals(0, frc.getCount());
+
+        Object prev = frc.enter(owner);
+        try {
+            RenderedImage ri = render(frc, f, new AffineTransform(), null);
+            assertEquals(3, f.count);
+            assertEquals(0, ri.getMinX());
+            assertEquals(1, frc.getCount());
+            assertEquals(BYTES, (int)frc.getSize());
+
+            // A repaint reuses the rendering.
+            render(frc, f, new AffineTransform(), null);
+            assertEquals(3, f.count);
+
+            // So does a repaint translated by whole pixels.
+            ri = render(frc, f,
+                        AffineTransform.getTranslateInstance(5, -3), null);
+            assertEquals(3, f.count);
+            assertEquals(5, ri.getMinX());
+            assertEquals(-3, ri.getMinY());
+
+            // Not a repaint translated by a fraction of a pixel.
+            render(frc, f, AffineTransform.getTranslateInstance(0.5, 0),
+                   null);
+            assertEquals(4, f.count);
+
+            // Nor a scaled one.
+            render(frc, f, AffineTransform.getScaleInstance(2, 2), null);
+            assertEquals(5, f.count);
+            render(frc, f, AffineTransform.getScaleInstance(2, 2), null);
+            assertEquals(5, f.count);
+
+            // Nor one with other rendering hints.
+            RenderingHints rh = new RenderingHints
+                (RenderingHints.KEY_ANTIALIASING,
+                 RenderingHints.VALUE_ANTIALIAS_ON);
+            render(frc, f, AffineTransform.getScaleInstance(2, 2), rh);
+            assertEquals(6, f.count);
+            render(frc, f, AffineTransform.getScaleInstance(2, 2), rh);
+            assertEquals(6, f.count);
+
+            // Nor a rendering of a modified filter.
+            f.setFloodPaint(Color.blue);
+            render(frc, f, AffineTransform.getScaleInstance(2, 2), rh);
+            assertEquals(7, f.count);
+        } finally {
+            frc.exit(prev);
+        }
+        assertEquals(4, (int)frc.getHitCount());
+        assertEquals(5, (int)frc.getMissCount());
+    }
+
+    /**
+     * Checks that the cache keeps within its budget by dropping the
+     * least recently used renderings.
+     */
+    protected void testBudget() throws Exception {
+        FilterResultCache frc = new FilterResultCache(4 * BYTES);
+        CountingFilter[] filters = new CountingFilter[5];
+        Object prev = frc.enter(new Object());
+        try {
+            for (int i = 0; i < filters.length; i++) {
+                filters[i] = new CountingFilter();
+                render(frc, filters[i], new AffineTransform(), null);
+                if (i == 2) {
+                    // The first filter is now more recent than the
+                    // second.
+                    render(frc, filters[0], new AffineTransform(), null);
+                }
+                assertTrue(frc.getSize() <= 4 * BYTES);
+            }
+            assertEquals(4, frc.getCount());
+            assertEquals(1, (int)frc.getEvictionCount());
+
+            render(frc, filters[0], new AffineTransform(), null);
+            assertEquals(1, filters[0].count);
+            render(frc, filters[1], new AffineTransform(), null);
+            assertEquals(2, filters[1].count);
+
+            // A smaller budget drops the renderings which do not fit.
+            frc.setMaxSize(2 * BYTES);
+            assertEquals(2, frc.getCount());
+            assertEquals(2 * BYTES, (int)frc.getSize());
+
+            // A rendering larger than a quarter of the budget is not
+            // kept.
+            frc.setMaxSize(3 * BYTES);
+            CountingFilter large = new CountingFilter();
+            render(frc, large, new AffineTransform(), null);
+            render(frc, large, new AffineTransform(), null);
+            assertEquals(2, large.count);
+        } finally {
+            frc.exit(prev);
+        }
+    }
+
+    /**
+     * Checks that invalidating an owner drops all its renderings and
+     * only them.
+     */
+    protected void testInvalidate() throws Exception {
+        FilterResultCache frc = new FilterResultCache(1 << 20);
+        Object a = new Object();
+        Object b = new Object();
+        CountingFilter f = new CountingFilter();
+        CountingFilter g = new CountingFilter();
+        Object prev = frc.enter(a);
+        render(frc, f, new AffineTransform(), null);
+        render(frc, g, new AffineTransform(), null);
+        frc.enter(b);
+        render(frc, f, new AffineTransform(), null);
+        frc.exit(prev);
+        assertEquals(3, frc.getCount());
+
+        frc.invalidate(a);
+        assertEquals(1, frc.getCount());
+        assertEquals(BYTES, (int)frc.getSize());
+        frc.invalidate(a);
+        assertEquals(1, frc.getCount());
+
+        prev = frc.enter(b);
+        render(frc, f, new AffineTransform(), null);
+        assertEquals(2, f.count);
+        frc.enter(a);
+        render(frc, f, new AffineTransform(), null);
+        assertEquals(3, f.count);
+        frc.exit(prev);
+
+        frc.invalidate(b);
+        frc.invalidate(a);
+        assertEquals(0, frc.getCount());
+        assertEquals(0, (int)frc.getSize());
+    }
+
+    /**
+     * Checks that repainting a filtered node reuses the rendering of
+     * its filter until the node or one of its descendants changes.
+     */
+    protected void testNodes() throws Exception {
+        RootGraphicsNode root = new RootGraphicsNode();
+        CompositeGraphicsNode group = new CompositeGraphicsNode();
+        ShapeNode shape = new ShapeNode();
+        shape.setShape(new Rectangle(0, 0, SIZE, SIZE));
+        shape.setShapePainter(new FillShapePainter(shape.getShape()));
+        group.getChildren().add(shape);
+        root.getChildren().add(group);
+        CountingFilter f = new CountingFilter();
+        group.setFilter(f);
+        root.addTreeGraphicsNodeChangeListener(new UpdateTracker());
+
+        paint(root);
+        paint(root);
+        assertEquals(1, f.count);
+
+        // A change of the node drops its rendering.
+        group.setTransform(new AffineTransform());
+        paint(root);
+        assertEquals(2, f.count);
+        paint(root);
+        assertEquals(2, f.count);
+
+        // So does a change of a descendant.
+        shape.setShape(new Rectangle(1, 1, SIZE, SIZE));
+        paint(root);
+        assertEquals(3, f.count);
+        paint(root);
+        assertEquals(3, f.count);
+    }
+
+    /**
+     * Checks that a filter reading the background image is rendered
+     * on every repaint.
+     */
+    protected void testBackground() throws Exception {
+        RootGraphicsNode root = new RootGraphicsNode();
+        ShapeNode shape = new ShapeNode();
+        shape.setShape(new Rectangle(0, 0, SIZE, SIZE));
+        shape.setShapePainter(new FillShapePainter(shape.getShape()));
+        root.getChildren().add(shape);
+        final Filter bg = new BackgroundRable8Bit(shape);
+        CountingFilter f = new CountingFilter() {
+                public Vector getSources() {
+                    Vector v = new Vector();
+                    v.add(bg);
+                    return v;
+                }
+            };
+        shape.setFilter(f);
+        paint(root);
+        paint(root);
+        assertEquals(2, f.count);
+    }
+
+    protected static RenderedImage render(FilterResultCache frc, Filter f,
+                                          AffineTransform at,
+                                          RenderingHints rh) {
+        return frc.createRendering(f, new RenderContext(at, rh));
+    }
+
+    protected static void paint(GraphicsNode gn) {
+        BufferedImage bi = new BufferedImage
+            (2 * SIZE, 2 * SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = bi.createGraphics();
+        g.setRenderingHint(RenderingHintsKeyExt.KEY_BUFFERED_IMAGE,
+                           new WeakReference(bi));
+        gn.paint(g);
+        g.dispose();
+    }
+
+    /**
+     * A flood filter counting its renderings.
+     */
+    protected static class CountingFilter extends FloodRable8Bit {
+
+        public int count;
+
+        public CountingFilter() {
+            super(new Rectangle2D.Float(0, 0, SIZE, SIZE), Color.red);
+        }
+
+        public RenderedImage createRendering(RenderContext rc) {
+            count++;
+            return super.createRendering(rc);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that hit testing a composite node through the grid of its
+ * children's sensitive bounds finds the same nodes as the linear scan
+ * of its children.
+ *
+ * @version $Id$
+ */
+public class HitTestGridTest extends AbstractTest {
+
+    /**
+     * The number of children of the tested node.
+     */
+    public static final int CHILDREN = 600;
+
+    /**
+     * The number of tested points.
+     */
+    public static final int POINTS = 5000;
+
+    /**
+     * The size of the area covered by the children.
+     */
+    public static final double EXTENT = 1000;
+
+    public TestReport runImpl() throws Exception {
+        int threshold = CompositeGraphicsNode.getSpatialIndexThreshold();
+        try {
+            Random rand = new Random(4567);
+            CompositeGraphicsNode root = createTree(rand);
+            Point2D[] points = new Point2D[POINTS];
+            for (int i = 0; i < POINTS; i++) {
+                points[i] = new Point2D.Double
+                    (rand.nextDouble() * EXTENT * 1.1 - EXTENT * 0.05,
+                     rand.nextDouble() * EXTENT * 1.1 - EXTENT * 0.05);
+            }
+
+            CompositeGraphicsNode.setSpatialIndexThreshold(0);
+            assertTrue(root.getSensitiveGrid() == null);
+            GraphicsNode[] linearHits = new GraphicsNode[POINTS];
+            boolean[] linearContains = new boolean[POINTS];
+            int hits = 0;
+            for (int i = 0; i < POINTS; i++) {
+                linearHits[i] = root.nodeHitAt(points[i]);
+                linearContains[i] = root.contains(points[i]);
+                if (linearHits[i] != null) {
+                    hits++;
+                }
+            }
+            // The points must test both hits and misses.
+            assertTrue(hits > POINTS / 10);
+            assertTrue(hits < POINTS - POINTS / 10);
+
+            CompositeGraphicsNode.setSpatialIndexThreshold(CHILDREN / 2);
+            assertTrue(root.getSensitiveGrid() != null);
+            for (int i = 0; i < POINTS; i++) {
+                assertTrue(root.nodeHitAt(points[i]) == linearHits[i]);
+                assertEquals(linearContains[i], root.contains(points[i]));
+            }
+
+            // A missing child is left out of the grid.
+            root.children[0] = null;
+            root.invalidateGeometryCache();
+            assertTrue(root.getSensitiveGrid() != null);
+        } finally {
+            CompositeGraphicsNode.setSpatialIndexThreshold(threshold);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Creates a node with overlapping squares, some of them rotated,
+     * and a few nested composite nodes.
+     */
+    protected CompositeGraphicsNode createTree(Random rand) {
+        CompositeGraphicsNode root = new CompositeGraphicsNode();
+        List children = root.getChildren();
+        for (int i = 0; i < CHILDREN; i++) {
+            GraphicsNode node = createShape(rand);
+            if (i % 50 == 0) {
+                CompositeGraphicsNode group = new CompositeGraphicsNode();
+                group.getChildren().add(node);
+                group.getChildren().add(createShape(rand));
+                node = group;
+            }
+            if (i % 7 == 0) {
+                Rectangle2D b = node.getPrimitiveBounds();
+                node.setTransform(AffineTransform.getRotateInstance
+                                  (rand.nextDouble() * Math.PI,
+                                   b.getCenterX(), b.getCenterY()));
+            }
+            children.add(node);
+        }
+        return root;
+    }
+
+    /**
+     * Creates a filled square at a random position.
+     */
+    protected ShapeNode createShape(Random rand) {
+        double size = 5 + rand.nextDouble() * 40;
+        ShapeNode s = new ShapeNode();
+        s.setShape(new Rectangle2D.Double
+                   (rand.nextDouble() * (EXTENT - size),
+                    rand.nextDouble() * (EXTENT - size), size, size));
+        FillShapePainter p = new FillShapePainter(s.getShape());
+        p.setPaint(Color.black);
+        s.setShapePainter(p);
+        return s;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.parser;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.io.StringReader;
+
+import org.apache.batik.ext.awt.geom.ExtendedPathIterator;
+import org.apache.batik.ext.awt.geom.ExtendedShape;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that a {@link PackedPathShape} has the same segments and bounds
+ * as the <code>ExtendedGeneralPath</code> built by an
+ * {@link AWTPathProducer} from the same path data.
+ *
+ * @version $Id$
+ */
+public class PackedPathShapeTest extends AbstractTest {
+
+    protected String path;
+
+    /**
+     * Creates a new PackedPathShapeTest.
+     * @param path The path to check.
+     */
+    public PackedPathShapeTest(String path) {
+        this.path = path;
+    }
+
+    public TestReport runImpl() throws Exception {
+        Shape expected = AWTPathProducer.createShape
+            (new StringReader(path), PathIterator.WIND_NON_ZERO);
+        PackedPathShape shape = new PackedPathShape
+            (PackedPathProducer.createPackedPath(path),
+             PathIterator.WIND_NON_ZERO);
+
+        AffineTransform at = new AffineTransform(2, 0.5, -0.25, 3, 10, -5);
+        String[][] results = {
+            { toString(expected.getPathIterator(null)),
+              toString(shape.getPathIterator(null)) },
+            { toString(expected.getPathIterator(at)),
+              toString(shape.getPathIterator(at)) },
+            { toString(((ExtendedShape)expected).getExtendedPathIterator()),
+              toString(shape.getExtendedPathIterator()) },
+            { expected.getBounds2D().toString(),
+              shape.getBounds2D().toString() }
+        };
+        for (String[] result : results) {
+            if (!result[0].equals(result[1])) {
+                DefaultTestReport report = new DefaultTestReport(this);
+                report.setErrorCode("invalid.segments");
+                report.addDescriptionEntry("expected.text", result[0]);
+                report.addDescriptionEntry("generated.text", result[1]);
+                report.setPassed(false);
+                return report;
+            }
+        }
+        return reportSuccess();
+    }
+
+    protected static String toString(PathIterator pi) {
+        StringBuffer sb = new StringBuffer();
+        float[] coords = new float[6];
+        while (!pi.isDone()) {
+            int type = pi.currentSegment(coords);
+            sb.append(type);
+            for (int i = 0; i < 6; i++) {
+                sb.append(' ');
+                sb.append(coords[i]);
+                coords[i] = 0;
+            }
+            sb.append(';');
+            pi.next();
+        }
+        return sb.toString();
+    }
+
+    protected static String toString(ExtendedPathIterator pi) {
+        StringBuffer sb = new StringBuffer();
+        float[] coords = new float[7];
+        while (!pi.isDone()) {
+            int type = pi.currentSegment(coords);
+            sb.append(type);
+            for (int i = 0; i < 7; i++) {
+                sb.append(' ');
+                sb.append(coords[i]);
+                coords[i] = 0;
+            }
+            sb.append(';');
+            pi.next();
+        }
+        return sb.toString();
+    }
+}
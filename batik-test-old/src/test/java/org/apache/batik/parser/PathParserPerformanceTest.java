@@ -0,0 +1,133 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.parser;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * This test checks that parsing a large 'd' attribute from a string,
+ * which scans the characters from an array, stays faster than parsing
+ * it through a <code>Reader</code>.  The time of <code>parse(String)</code>
+ * relative to <code>parse(Reader)</code> is measured on the running
+ * machine and must stay below {@link #MAX_RATIO}, which leaves room
+ * for the variations between machines.
+ *
+ * @version $Id$
+ */
+public class PathParserPerformanceTest extends AbstractTest {
+
+    /**
+     * The number of segments of the parsed path.
+     */
+    protected static final int SEGMENTS = 20000;
+
+    /**
+     * The number of timed runs.
+     */
+    protected static final int RUNS = 30;
+
+    /**
+     * The highest accepted ratio of the two parse times.
+     */
+    public static final double MAX_RATIO = 0.5;
+
+    protected String path;
+    protected PathParser parser = new PathParser();
+
+    public PathParserPerformanceTest() {
+        StringBuffer sb = new StringBuffer(SEGMENTS * 24);
+        sb.append("M 0 0");
+        for (int i = 0; i < SEGMENTS; i++) {
+            switch (i % 4) {
+            case 0:
+                sb.append(" L").append(i % 97).append(',').append(i % 89);
+                break;
+            case 1:
+                sb.append(" c1.5-2.25 3e1 .5 -4.125,6");
+                break;
+            case 2:
+                sb.append(" Q ").append(i).append(".25 12 -3.5 ").append(i);
+                break;
+            default:
+                sb.append(" a10 20 30 0 1 -5.5 6.75");
+            }
+        }
+        sb.append('z');
+        path = sb.toString();
+    }
+
+    public TestReport runImpl() throws Exception {
+        // Let both paths be compiled before timing them.
+        for (int i = 0; i < 5; i++) {
+            parseReader();
+            parseString();
+        }
+
+        // Alternate the order of the runs and keep the median ratio.
+        double[] ratios = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long ref, op;
+            if (i % 2 == 0) {
+                ref = parseReader();
+                op = parseString();
+            } else {
+                op = parseString();
+                ref = parseReader();
+            }
+            ratios[i] = (double)op / Math.max(ref, 1);
+        }
+        Arrays.sort(ratios);
+        double ratio = ratios[RUNS / 2];
+
+        if (ratio > MAX_RATIO) {
+            DefaultTestReport report = new DefaultTestReport(this);
+            report.setErrorCode("performance.regression");
+            report.addDescriptionEntry("max.ratio", String.valueOf(MAX_RATIO));
+            report.addDescriptionEntry("computed.ratio", String.valueOf(ratio));
+            report.setPassed(false);
+            return report;
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Parses the path through a <code>Reader</code> and returns the
+     * time taken, in nanoseconds.
+     */
+    protected long parseReader() {
+        long start = System.nanoTime();
+        parser.parse(new StringReader(path));
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Parses the path from its string and returns the time taken, in
+     * nanoseconds.
+     */
+    protected long parseString() {
+        long start = System.nanoTime();
+        parser.parse(path);
+        return System.nanoTime() - start;
+    }
+}
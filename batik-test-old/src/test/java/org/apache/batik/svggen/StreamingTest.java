@@ -0,0 +1,199 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.ImageTranscoder;
+import org.apache.batik.util.SVGConstants;
+
+/**
+ * This test validates that the content streamed by SVGGraphics2D
+ * renders like the content generated in the DOM tree. The painter
+ * draws enough elements, with changing clips and gradients, for the
+ * content to be written in several steps.
+ *
+ * @version $Id$
+ */
+public class StreamingTest extends AbstractTest implements SVGConstants {
+    public static final Dimension CANVAS_SIZE
+        = new Dimension(300, 400);
+
+    public static final String ERROR_DIFFERENT_RENDERING
+        = "StreamingTest.error.different.rendering";
+
+    public static final String ERROR_DUPLICATE_DEFINITION
+        = "StreamingTest.error.duplicate.definition";
+
+    public static final String ENTRY_KEY_DUPLICATE_ID
+        = "StreamingTest.entry.key.duplicate.id";
+
+    public static final String ENTRY_KEY_DOM_OUTPUT
+        = "StreamingTest.entry.key.dom.output";
+
+    public static final String ENTRY_KEY_STREAMED_OUTPUT
+        = "StreamingTest.entry.key.streamed.output";
+
+    public TestReport runImpl() throws Exception {
+        Painter painter = new StreamingPainter();
+
+        // First, generate the content in the DOM tree
+        SVGGraphics2D g2d = createGraphics();
+        painter.paint(g2d);
+        StringWriter swA = new StringWriter();
+        g2d.stream(swA);
+
+        // Now, stream the same content
+        g2d = createGraphics();
+        StringWriter swB = new StringWriter();
+        g2d.startStreaming(swB, false, false);
+        painter.paint(g2d);
+        g2d.endStreaming();
+
+        // Each definition must be written once, in the flush that
+        // follows its creation.
+        String duplicate = findDuplicateId(swB.toString());
+        if (duplicate != null) {
+            TestReport report = reportError(ERROR_DUPLICATE_DEFINITION);
+            report.addDescriptionEntry(ENTRY_KEY_DUPLICATE_ID, duplicate);
+            report.addDescriptionEntry(ENTRY_KEY_STREAMED_OUTPUT,
+                                       swB.toString());
+            return report;
+        }
+
+        BufferedImage imgA = render(swA.toString());
+        BufferedImage imgB = render(swB.toString());
+        int w = imgA.getWidth();
+        int h = imgA.getHeight();
+        if ((w == imgB.getWidth()) && (h == imgB.getHeight()) &&
+            Arrays.equals(imgA.getRGB(0, 0, w, h, null, 0, w),
+                          imgB.getRGB(0, 0, w, h, null, 0, w))) {
+            return reportSuccess();
+        }
+
+        TestReport report = reportError(ERROR_DIFFERENT_RENDERING);
+        report.addDescriptionEntry(ENTRY_KEY_DOM_OUTPUT,
+                                   swA.toString());
+        report.addDescriptionEntry(ENTRY_KEY_STREAMED_OUTPUT,
+                                   swB.toString());
+        return report;
+    }
+
+    /**
+     * Returns the first id defined twice in <code>svg</code>, or null.
+     */
+    protected static String findDuplicateId(String svg) {
+        Set ids = new HashSet();
+        String attr = " " + SVG_ID_ATTRIBUTE + "=\"";
+        int i = 0;
+        while ((i = svg.indexOf(attr, i)) != -1) {
+            i += attr.length();
+            String id = svg.substring(i, svg.indexOf('"', i));
+            if (!ids.add(id))
+                return id;
+        }
+        return null;
+    }
+
+    protected SVGGraphics2D createGraphics() {
+        DOMImplementation impl = GenericDOMImplementation.getDOMImplementation();
+        Document domFactory = impl.createDocument(SVG_NAMESPACE_URI, SVG_SVG_TAG, null);
+        SVGGeneratorContext ctx = SVGGeneratorContext.createDefault(domFactory);
+        SVGGraphics2D g2d = new SVGGraphics2D(ctx, false);
+        g2d.setSVGCanvasSize(CANVAS_SIZE);
+        return g2d;
+    }
+
+    protected BufferedImage render(String svg) throws TranscoderException {
+        ImageCapture t = new ImageCapture();
+        TranscoderInput input = new TranscoderInput(new StringReader(svg));
+        input.setURI("file:/StreamingTest.svg");
+        t.transcode(input, null);
+        return t.image;
+    }
+
+    /**
+     * Keeps the rendered image.
+     */
+    protected static class ImageCapture extends ImageTranscoder {
+        protected BufferedImage image;
+
+        public BufferedImage createImage(int w, int h) {
+            return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        public void writeImage(BufferedImage img, TranscoderOutput output) {
+            image = img;
+        }
+    }
+
+    /**
+     * Draws the content of other painters followed by many small
+     * shapes, with a clip and a paint changing every few shapes.
+     */
+    protected static class StreamingPainter implements Painter {
+        public void paint(Graphics2D g) {
+            AffineTransform transform = g.getTransform();
+            Shape clip = g.getClip();
+            new BasicShapes().paint(g);
+            g.setTransform(transform);
+            new AttributedCharacterIterator().paint(g);
+            g.setTransform(transform);
+            g.setClip(clip);
+
+            for (int i = 0; i < 600; i++) {
+                int x = (i % 30) * 10;
+                int y = (i / 30) * 20;
+                if (i % 7 == 0)
+                    g.setClip(x - 25, 0, 50 + i % 13, CANVAS_SIZE.height);
+                if (i % 5 == 0) {
+                    g.setPaint(new GradientPaint(x, y, Color.red,
+                                                 x + 10, y + 10,
+                                                 new Color(0, 0, 255, 128)));
+                } else {
+                    g.setPaint(new Color(i * 97 % 256, i * 31 % 256, 128));
+                }
+                g.fillRect(x, y, 8, 16);
+                if (i % 11 == 0)
+                    g.drawString("s" + i, x, y + 16);
+            }
+            g.setClip(clip);
+        }
+    }
+}
@@ -0,0 +1,378 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.swing.gvt;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.batik.ext.awt.geom.RectListManager;
+import org.apache.batik.gvt.CompositeGraphicsNode;
+import org.apache.batik.gvt.FillShapePainter;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.ShapeNode;
+import org.apache.batik.gvt.renderer.StaticRenderer;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks the tile cache of {@link JGVTComponent}: the cache keeps
+ * within its budget, panning reuses the tiles of the current level,
+ * the tiles paint the same pixels as a {@link StaticRenderer}
+ * rendering of the view, and the tile threads stop once idle.  It
+ * does not need a display.
+ *
+ * @version $Id$
+ */
+public class TilePyramidTest extends AbstractTest {
+
+    /**
+     * The size of a tile, in bytes.
+     */
+    public static final long TILE_BYTES =
+        TilePyramid.TILE_SIZE * TilePyramid.TILE_SIZE * 4;
+
+    /**
+     * The maximum time to wait for the tiles of a request, in
+     * milliseconds.
+     */
+    public static final long TIMEOUT = 30000;
+
+    /**
+     * The largest accepted difference between a channel of the tiles
+     * and of the rendering of the view.
+     */
+    public static final int MAX_DIFFERENCE = 32;
+
+    public TestReport runImpl() throws Exception {
+        testBudget();
+        testPan();
+        TestReport report = testPixels();
+        if (report != null) {
+            return report;
+        }
+        testIdleThreads();
+        return reportSuccess();
+    }
+
+    /**
+     * Checks that the cache never holds more than its budget, however
+     * many tiles are requested.
+     */
+    protected void testBudget() throws Exception {
+        CountingTilePyramid tp = new CountingTilePyramid(3 * TILE_BYTES, 2);
+        tp.setGraphicsNode(createTree());
+
+        // A view of 2 by 2 tiles, more than the budget.
+        Rectangle area = new Rectangle(0, 0, 512, 512);
+        tp.request(new AffineTransform(), area);
+        tp.waitForTiles();
+        assertEquals(3, tp.getTileCount());
+        assertEquals(3 * TILE_BYTES, tp.getSize());
+
+        // Other levels evict the least recently used tiles.
+        for (int i = 2; i < 6; i++) {
+            tp.request(AffineTransform.getScaleInstance(i, i), area);
+            tp.waitForTiles();
+            assertTrue(tp.getSize() <= 3 * TILE_BYTES);
+            assertTrue(tp.getTileCount() <= 3);
+        }
+
+        tp.setMaxSize(TILE_BYTES);
+        assertEquals(TILE_BYTES, tp.getSize());
+        assertEquals(1, tp.getTileCount());
+        tp.setGraphicsNode(null);
+    }
+
+    /**
+     * Checks that panning renders only the tiles it uncovers.
+     */
+    protected void testPan() throws Exception {
+        CountingTilePyramid tp = new CountingTilePyramid(100 * TILE_BYTES, 2);
+        tp.setGraphicsNode(createTree());
+        Rectangle area = new Rectangle(0, 0, 512, 512);
+
+        // The view and the ring of tiles around it.
+        tp.request(AffineTransform.getScaleInstance(2, 2), area);
+        tp.waitForTiles();
+        assertEquals(16, tp.rendered.size());
+
+        // Pan by a fraction of a tile, and by a fraction of a pixel,
+        // which is rounded as the renderers do.
+        AffineTransform at = AffineTransform.getTranslateInstance(-100.3, 0);
+        at.scale(2, 2);
+        tp.request(at, area);
+        tp.waitForTiles();
+        assertEquals(20, tp.rendered.size());
+        assertEquals(0, tp.renderedTwice);
+
+        // Back to the first view: nothing to render.
+        tp.request(AffineTransform.getScaleInstance(2, 2), area);
+        tp.waitForTiles();
+        assertEquals(20, tp.rendered.size());
+        assertEquals(0, tp.renderedTwice);
+
+        // A zoom is a new level.
+        tp.request(AffineTransform.getScaleInstance(3, 3), area);
+        tp.waitForTiles();
+        assertEquals(36, tp.rendered.size());
+        assertEquals(0, tp.renderedTwice);
+        tp.setGraphicsNode(null);
+    }
+
+    /**
+     * Checks that the tiles of a view paint the same pixels as a
+     * StaticRenderer rendering of the view, and that the tiles
+     * copied from that rendering paint them too.
+     */
+    protected TestReport testPixels() throws Exception {
+        GraphicsNode root = createTree();
+        int w = 600;
+        int h = 400;
+        AffineTransform at = AffineTransform.getTranslateInstance(-37, 52);
+        at.scale(1.5, 1.5);
+        Rectangle area = new Rectangle(0, 0, w, h);
+
+        StaticRenderer renderer = new StaticRenderer();
+        renderer.setTree(root);
+        renderer.setTransform(at);
+        renderer.updateOffScreen(w, h);
+        renderer.clearOffScreen();
+        RectListManager rlm = new RectListManager();
+        rlm.add(area);
+        renderer.repaint(rlm);
+        BufferedImage expected = renderer.getOffScreen();
+
+        CountingTilePyramid tp = new CountingTilePyramid(100 * TILE_BYTES, 2);
+        tp.setRenderingHints(renderer.getRenderingHints());
+        tp.setGraphicsNode(root);
+        tp.request(at, area);
+        tp.waitForTiles();
+        TestReport report = compare(expected, paint(tp, at, w, h), "rendered");
+        if (report != null) {
+            return report;
+        }
+
+        tp.setGraphicsNode(null);
+
+        // The tiles fully covered by a complete rendering are copied.
+        tp = new CountingTilePyramid(100 * TILE_BYTES, 2);
+        tp.setRenderingHints(renderer.getRenderingHints());
+        tp.setGraphicsNode(root);
+        tp.addImage(expected, at);
+        int copied = tp.getTileCount();
+        assertTrue(copied > 0);
+        tp.request(at, area);
+        tp.waitForTiles();
+        assertEquals(tp.getTileCount() - copied, tp.rendered.size());
+        report = compare(expected, paint(tp, at, w, h), "copied");
+        tp.setGraphicsNode(null);
+        renderer.dispose();
+        return report;
+    }
+
+    /**
+     * Checks that the tile threads stop once they have nothing to do.
+     */
+    protected void testIdleThreads() throws Exception {
+        CountingTilePyramid tp = new CountingTilePyramid(100 * TILE_BYTES, 3);
+        tp.setGraphicsNode(createTree());
+        tp.request(new AffineTransform(), new Rectangle(0, 0, 512, 512));
+        tp.waitForTiles();
+        assertTrue(tp.getThreadCount() > 0);
+
+        long end = System.currentTimeMillis() + TilePyramid.IDLE_TIMEOUT
+            + TIMEOUT;
+        while (tp.getThreadCount() > 0 || countWorkers() > 0) {
+            if (System.currentTimeMillis() > end) {
+                assertEquals(0, tp.getThreadCount());
+                assertEquals(0, countWorkers());
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Returns the number of live tile threads.
+     */
+    protected static int countWorkers() {
+        int n = 0;
+        Thread[] threads = new Thread[Thread.activeCount() * 2 + 16];
+        int count = Thread.enumerate(threads);
+        for (int i = 0; i < count; i++) {
+            if (threads[i] instanceof TilePyramid.Worker
+                && threads[i].isAlive()) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Paints the tiles of a view in a new image.
+     */
+    protected static BufferedImage paint(TilePyramid tp, AffineTransform at,
+                                         int w, int h) {
+        BufferedImage bi = new BufferedImage
+            (w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = bi.createGraphics();
+        tp.paint(g, at, new Rectangle(0, 0, w, h));
+        g.dispose();
+        return bi;
+    }
+
+    /**
+     * Returns a failed report if the two images differ, null otherwise.
+     * The premultiplied channels of the pixels are compared with a
+     * tolerance of {@link #MAX_DIFFERENCE}: the renderer paints the
+     * tree from other device origins than the tiles, which changes the
+     * antialiased coverage of curved edges slightly.
+     */
+    protected TestReport compare(BufferedImage expected,
+                                 BufferedImage actual, String tiles) {
+        int w = expected.getWidth();
+        int h = expected.getHeight();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int p = expected.getRGB(x, y);
+                int q = actual.getRGB(x, y);
+                if (difference(p, q) > MAX_DIFFERENCE) {
+                    DefaultTestReport report = new DefaultTestReport(this);
+                    report.setErrorCode("tiles.differ");
+                    report.addDescriptionEntry("tiles", tiles);
+                    report.addDescriptionEntry
+                        ("pixel", x + ", " + y + ": "
+                         + Integer.toHexString(p) + " / "
+                         + Integer.toHexString(q));
+                    report.setPassed(false);
+                    return report;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the largest difference between the premultiplied
+     * channels of two ARGB pixels.
+     */
+    protected static int difference(int p, int q) {
+        int pa = p >>> 24;
+        int qa = q >>> 24;
+        int d = Math.abs(pa - qa);
+        for (int shift = 0; shift < 24; shift += 8) {
+            int pc = ((p >> shift) & 0xff) * pa / 255;
+            int qc = ((q >> shift) & 0xff) * qa / 255;
+            d = Math.max(d, Math.abs(pc - qc));
+        }
+        return d;
+    }
+
+    /**
+     * Creates a tree of antialiased shapes crossing the tile
+     * boundaries.
+     */
+    protected static GraphicsNode createTree() {
+        CompositeGraphicsNode root = new CompositeGraphicsNode();
+        List children = root.getChildren();
+        for (int i = 0; i < 12; i++) {
+            ShapeNode s = new ShapeNode();
+            if (i % 2 == 0) {
+                s.setShape(new Ellipse2D.Double
+                           (i * 37.3, i * 23.1, 90.5, 70.25));
+            } else {
+                s.setShape(new Rectangle2D.Double
+                           (i * 29.7, 300 - i * 19.9, 120.3, 45.6));
+            }
+            FillShapePainter p = new FillShapePainter(s.getShape());
+            p.setPaint(new Color(i * 20, 255 - i * 20, (i * 97) & 0xff,
+                                 128 + i * 10));
+            s.setShapePainter(p);
+            children.add(s);
+        }
+        return root;
+    }
+
+    /**
+     * A TilePyramid which records the tiles it renders.
+     */
+    protected static class CountingTilePyramid extends TilePyramid {
+
+        /**
+         * The keys of the rendered tiles.
+         */
+        public Set rendered = new HashSet();
+
+        /**
+         * The number of tiles rendered more than once.
+         */
+        public int renderedTwice;
+
+        public CountingTilePyramid(long maxSize, int threadCount) {
+            super(new Component() {}, maxSize, threadCount);
+        }
+
+        protected BufferedImage render(GraphicsNode gn, RenderingHints rh,
+                                       Key k) {
+            synchronized (this) {
+                if (!rendered.add(k)) {
+                    renderedTwice++;
+                }
+            }
+            return super.render(gn, rh, k);
+        }
+
+        public synchronized int getTileCount() {
+            return tiles.size();
+        }
+
+        public synchronized int getThreadCount() {
+            return threads;
+        }
+
+        /**
+         * Waits for the requested tiles to be rendered.
+         */
+        public void waitForTiles() throws Exception {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            for (;;) {
+                synchronized (this) {
+                    if (pending.isEmpty() && rendering.isEmpty()) {
+                        return;
+                    }
+                }
+                if (System.currentTimeMillis() > end) {
+                    throw new IllegalStateException
+                        ("Tiles not rendered after " + TIMEOUT + "ms");
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+}
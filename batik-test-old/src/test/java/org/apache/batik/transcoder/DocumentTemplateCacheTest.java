@@ -0,0 +1,117 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that the {@link DocumentTemplateCache} of an
+ * <code>SVGAbstractTranscoder</code> serves copies of the documents it
+ * has already parsed, and only when the content and the parsing hints
+ * are the same.
+ *
+ * @version $Id$
+ */
+public class DocumentTemplateCacheTest extends AbstractTest {
+
+    public static final String DOCUMENT =
+        "<svg xmlns='http://www.w3.org/2000/svg' width='10' height='10'>" +
+        "<rect width='5' height='5'/></svg>";
+
+    public TestReport runImpl() throws Exception {
+        String uri = new File("samples/anne.svg").toURI().toString();
+        DocumentTemplateCache cache = new DocumentTemplateCache();
+
+        // The first transcoding parses the document
+        TestTranscoder t = new TestTranscoder(cache);
+        t.transcode(new TranscoderInput(uri), null);
+        Document first = t.document;
+        assertTrue(first != null);
+        assertEquals(0, (int)cache.getHitCount());
+        assertEquals(1, (int)cache.getMissCount());
+        assertEquals(1, cache.size());
+
+        // The second one gets a copy of the cached document
+        t = new TestTranscoder(cache);
+        t.transcode(new TranscoderInput(uri), null);
+        assertTrue(t.document != null);
+        assertTrue(t.document != first);
+        assertEquals(first.getDocumentElement().getAttributeNS(null, "viewBox"),
+                     t.document.getDocumentElement().getAttributeNS(null, "viewBox"));
+        assertEquals(1, (int)cache.getHitCount());
+        assertEquals(1, (int)cache.getMissCount());
+
+        // Hints left to their default value give the same key
+        t = new TestTranscoder(cache);
+        t.addTranscodingHint(XMLAbstractTranscoder.KEY_XML_PARSER_VALIDATING,
+                             Boolean.FALSE);
+        t.transcode(new TranscoderInput(uri), null);
+        assertEquals(2, (int)cache.getHitCount());
+        assertEquals(1, (int)cache.getMissCount());
+
+        // Another content under the same URI is parsed again
+        t = new TestTranscoder(cache);
+        TranscoderInput input = new TranscoderInput
+            (new ByteArrayInputStream(DOCUMENT.getBytes(StandardCharsets.UTF_8)));
+        input.setURI(uri);
+        t.transcode(input, null);
+        assertEquals("10",
+                     t.document.getDocumentElement().getAttributeNS(null, "width"));
+        assertEquals(2, (int)cache.getHitCount());
+        assertEquals(2, (int)cache.getMissCount());
+        assertEquals(2, cache.size());
+
+        // As is the same content parsed with other hints
+        t = new TestTranscoder(cache);
+        t.addTranscodingHint(XMLAbstractTranscoder.KEY_DOM_IMPLEMENTATION,
+                             GenericDOMImplementation.getDOMImplementation());
+        t.transcode(new TranscoderInput(uri), null);
+        assertEquals(2, (int)cache.getHitCount());
+        assertEquals(3, (int)cache.getMissCount());
+        assertEquals(3, cache.size());
+
+        return reportSuccess();
+    }
+
+    /**
+     * A transcoder which keeps the document it is given.
+     */
+    protected static class TestTranscoder extends SVGAbstractTranscoder {
+
+        protected Document document;
+
+        public TestTranscoder(DocumentTemplateCache cache) {
+            addTranscodingHint(KEY_DOCUMENT_TEMPLATE_CACHE, cache);
+        }
+
+        protected void transcode(Document document,
+                                 String uri,
+                                 TranscoderOutput output) {
+            this.document = document;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.DefaultTestReport;
+import org.apache.batik.test.TestReport;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+/**
+ * Compares the rasters rendered by an <code>ImageTranscoder</code>
+ * with one and several threads (see
+ * {@link ImageTranscoder#KEY_RENDER_THREADS}).  The renderings with
+ * one, two and three threads must be identical.
+ *
+ * @version $Id$
+ */
+public class RenderThreadsTest extends AbstractTest {
+
+    /**
+     * Error when two multi-threaded renderings differ.
+     */
+    public static final String ERROR_THREADS_DIFFER =
+        "RenderThreadsTest.error.threads.differ";
+
+    /**
+     * Error when the multi-threaded rendering differs from the single
+     * thread one.
+     */
+    public static final String ERROR_SINGLE_THREAD_DIFFERS =
+        "RenderThreadsTest.error.single.thread.differs";
+
+    /**
+     * Error when two renderings do not have the same size.
+     */
+    public static final String ERROR_SIZES_DIFFER =
+        "RenderThreadsTest.error.sizes.differ";
+
+    protected String inputURI;
+
+    /**
+     * Creates a new RenderThreadsTest.
+     * @param inputURI the URI of the document to render
+     */
+    public RenderThreadsTest(String inputURI) {
+        this.inputURI = inputURI;
+    }
+
+    public TestReport runImpl() throws Exception {
+        BufferedImage single = render(1);
+        BufferedImage two    = render(2);
+        BufferedImage three  = render(3);
+
+        int n = countDifferentPixels(two, three);
+        if (n == -1) {
+            return report(ERROR_SIZES_DIFFER, n, three);
+        }
+        if (n != 0) {
+            return report(ERROR_THREADS_DIFFER, n, two);
+        }
+        n = countDifferentPixels(single, two);
+        if (n == -1) {
+            return report(ERROR_SIZES_DIFFER, n, single);
+        }
+        if (n != 0) {
+            return report(ERROR_SINGLE_THREAD_DIFFERS, n, two);
+        }
+        return reportSuccess();
+    }
+
+    /**
+     * Renders the document with the given number of threads.
+     */
+    protected BufferedImage render(int threads) throws Exception {
+        final BufferedImage[] result = new BufferedImage[1];
+        ImageTranscoder t = new ImageTranscoder() {
+                public BufferedImage createImage(int w, int h) {
+                    return new BufferedImage
+                        (w, h, BufferedImage.TYPE_INT_ARGB);
+                }
+                public void writeImage(BufferedImage img,
+                                       TranscoderOutput output) {
+                    result[0] = img;
+                }
+            };
+        t.addTranscodingHint(ImageTranscoder.KEY_RENDER_THREADS,
+                             Integer.valueOf(threads));
+        String uri = new File(inputURI).toURI().toString();
+        t.transcode(new TranscoderInput(uri), null);
+        return result[0];
+    }
+
+    /**
+     * Returns the number of pixels which differ between two images,
+     * or -1 if their sizes differ.
+     */
+    protected static int countDifferentPixels(BufferedImage a,
+                                              BufferedImage b) {
+        int w = a.getWidth();
+        int h = a.getHeight();
+        if ((w != b.getWidth()) || (h != b.getHeight()))
+            return -1;
+        int[] pa = a.getRGB(0, 0, w, h, null, 0, w);
+        int[] pb = b.getRGB(0, 0, w, h, null, 0, w);
+        int n = 0;
+        for (int i = 0; i < pa.length; i++) {
+            if (pa[i] != pb[i])
+                n++;
+        }
+        return n;
+    }
+
+    protected TestReport report(String code, int n, BufferedImage img) {
+        DefaultTestReport report = new DefaultTestReport(this);
+        report.setErrorCode(code);
+        report.addDescriptionEntry("different.pixels", Integer.toString(n));
+        report.addDescriptionEntry
+            ("total.pixels",
+             Integer.toString(img.getWidth() * img.getHeight()));
+        report.setPassed(false);
+        return report;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import org.apache.batik.bridge.DefaultFontFamilyResolver;
+import org.apache.batik.ext.awt.image.spi.ImageTagRegistry;
+import org.apache.batik.ext.awt.image.spi.ImageWriterRegistry;
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks that {@link WarmUp#warmUp()} completes, that it leaves the
+ * shared registries set up, and that calling it again is harmless and
+ * does not set them up again.
+ *
+ * @version $Id$
+ */
+public class WarmUpTest extends AbstractTest {
+
+    public TestReport runImpl() throws Exception {
+        WarmUp.warmUp();
+        assertTrue(WarmUp.isWarm());
+
+        ImageTagRegistry tags = ImageTagRegistry.getRegistry();
+        ImageWriterRegistry writers = ImageWriterRegistry.getInstance();
+        assertTrue(tags != null);
+        assertTrue(writers != null);
+        assertTrue(DefaultFontFamilyResolver.SINGLETON
+                   .getFamilyThatCanDisplay('A') != null);
+
+        // Later calls return at once and keep the same registries.
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            WarmUp.warmUp();
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(WarmUp.isWarm());
+        assertTrue(ImageTagRegistry.getRegistry() == tags);
+        assertTrue(ImageWriterRegistry.getInstance() == writers);
+
+        return reportSuccess();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+
+/**
+ * A size bounded cache of parsed documents, used by
+ * {@link SVGAbstractTranscoder} to avoid parsing the same document
+ * over and over again when it is transcoded many times (for instance
+ * with different sizes or backgrounds).
+ *
+ * <p>Documents are keyed by their URI, a digest of their content and
+ * the settings they are parsed with.
+ * The cached documents are never handed out: each call to
+ * {@link #getDocument} returns a deep clone of the cached document,
+ * which the caller is free to modify. The least recently used
+ * document is dropped when the cache is full.</p>
+ *
+ * <p>A cache may be shared by any number of transcoders, including
+ * transcoders running on different threads. It is enabled on a
+ * transcoder with the {@link SVGAbstractTranscoder#KEY_DOCUMENT_TEMPLATE_CACHE}
+ * hint.</p>
+ *
+ * @version $Id$
+ */
+public class DocumentTemplateCache {
+
+    /**
+     * The default maximum number of cached documents.
+     */
+    public static final int DEFAULT_MAX_DOCUMENTS = 256;
+
+    /**
+     * The digest algorithm used to identify document contents.
+     */
+    protected static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * The maximum number of cached documents.
+     */
+    protected int maxDocuments;
+
+    /**
+     * The cached documents, in least recently used order.
+     */
+    protected Map documents;
+
+    /**
+     * The number of lookups which found a cached document.
+     */
+    protected long hitCount;
+
+    /**
+     * The number of lookups which did not find a cached document.
+     */
+    protected long missCount;
+
+    /**
+     * The number of documents dropped to keep the cache within bounds.
+     */
+    protected long evictionCount;
+
+    /**
+     * Creates a new cache holding at most
+     * <code>DEFAULT_MAX_DOCUMENTS</code> documents.
+     */
+    public DocumentTemplateCache() {
+        this(DEFAULT_MAX_DOCUMENTS);
+    }
+
+    /**
+     * Creates a new cache.
+     * @param maxDocuments The maximum number of cached documents.
+     */
+    public DocumentTemplateCache(int maxDocuments) {
+        if (maxDocuments < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.maxDocuments = maxDocuments;
+        documents = new LinkedHashMap(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry e) {
+                    if (size() > DocumentTemplateCache.this.maxDocuments) {
+                        evictionCount++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    }
+
+    /**
+     * Returns the maximum number of cached documents.
+     */
+    public int getMaxDocuments() {
+        return maxDocuments;
+    }
+
+    /**
+     * Computes the cache key of a document.
+     * @param uri The URI of the document, or null.
+     * @param content The serialized content of the document.
+     * @param parsingHints The values of the settings the document is
+     *        parsed with, which must be equal for two documents to
+     *        share a key.
+     */
+    public static String createKey(String uri, byte[] content,
+                                   Object[] parsingHints) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform implements SHA-256.
+            throw new IllegalStateException(e.getMessage());
+        }
+        byte[] digest = md.digest(content);
+        StringBuffer sb = new StringBuffer(digest.length * 2 + 256);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        for (Object hint : parsingHints) {
+            sb.append('\n');
+            sb.append(hint);
+        }
+        sb.append('\n');
+        sb.append(uri);
+        return sb.toString();
+    }
+
+    /**
+     * Returns a copy of the document cached under the given key, or
+     * null if there is none.
+     */
+    public Document getDocument(String key) {
+        Document doc;
+        synchronized (this) {
+            doc = (Document)documents.get(key);
+            if (doc == null) {
+                missCount++;
+                return null;
+            }
+            hitCount++;
+        }
+        return copyDocument(doc);
+    }
+
+    /**
+     * Caches the given document under the given key. The document
+     * must not be modified afterwards.
+     */
+    public synchronized void putDocument(String key, Document doc) {
+        documents.put(key, doc);
+    }
+
+    /**
+     * Returns a deep clone of a cached document. Cloning only reads the
+     * cached document, but lazily built DOM structures (like child node
+     * lists) make concurrent reads unsafe, so clones are serialized per
+     * document.
+     */
+    protected Document copyDocument(Document doc) {
+        synchronized (doc) {
+            return (Document)doc.cloneNode(true);
+        }
+    }
+
+    /**
+     * Removes all the documents from this cache.
+     */
+    public synchronized void clear() {
+        documents.clear();
+    }
+
+    /**
+     * Returns the number of cached documents.
+     */
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    /**
+     * Returns the number of lookups which found a cached document.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups which did not find a cached document.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of documents dropped to keep the cache within
+     * bounds.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+}
@@ -22,6 +22,13 @@ import java.awt.Dimension;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Dimension2D;
 import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -50,12 +57,15 @@ import org.apache.batik.gvt.CanvasGraphicsNode;
 import org.apache.batik.gvt.CompositeGraphicsNode;
 import org.apache.batik.gvt.GraphicsNode;
 import org.apache.batik.transcoder.keys.BooleanKey;
+import org.apache.batik.transcoder.keys.DocumentTemplateCacheKey;
 import org.apache.batik.transcoder.keys.FloatKey;
+import org.apache.batik.transcoder.keys.IntegerKey;
 import org.apache.batik.transcoder.keys.LengthKey;
 import org.apache.batik.transcoder.keys.Rectangle2DKey;
 import org.apache.batik.transcoder.keys.StringKey;
 import org.apache.batik.util.ParsedURL;
 import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.XMLResourceDescriptor;
 import org.w3c.dom.DOMImplementation;
 import org.w3c.dom.Document;
 import org.w3c.dom.svg.SVGSVGElement;
@@ -155,11 +165,129 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
     public void transcode(TranscoderInput input, TranscoderOutput output)
             throws TranscoderException {
 
+        DocumentTemplateCache cache =
+            (DocumentTemplateCache)hints.get(KEY_DOCUMENT_TEMPLATE_CACHE);
+        if (cache != null
+                && input.getDocument() == null
+                && input.getXMLReader() == null) {
+            Document document = getTemplateDocument(input, cache);
+            if (document == null) {
+                return;
+            }
+            TranscoderInput copy = new TranscoderInput(document);
+            copy.setURI(input.getURI());
+            input = copy;
+        }
+
         super.transcode(input, output);
 
         if (ctx != null)
             ctx.dispose();
     }
+
+    /**
+     * Returns a private copy of the document described by the given
+     * input, taken from <code>cache</code> if the same content was
+     * already parsed for the same URI. Errors are reported to the
+     * error handler, in which case null is returned.
+     *
+     * @param input the XML input to transcode
+     * @param cache the cache of parsed documents
+     */
+    protected Document getTemplateDocument(TranscoderInput input,
+                                           DocumentTemplateCache cache)
+            throws TranscoderException {
+        String uri = input.getURI();
+        byte[] bytes = null;
+        String chars = null;
+        try {
+            if (input.getInputStream() != null) {
+                bytes = readFully(input.getInputStream());
+            } else if (input.getReader() != null) {
+                chars = readFully(input.getReader());
+            } else if (uri != null) {
+                InputStream is = new ParsedURL(uri).openStream();
+                try {
+                    bytes = readFully(is);
+                } finally {
+                    is.close();
+                }
+            } else {
+                return null;
+            }
+        } catch (IOException ex) {
+            handler.fatalError(new TranscoderException(ex));
+            return null;
+        }
+
+        String key = DocumentTemplateCache.createKey
+            (uri, bytes != null ? bytes : chars.getBytes(StandardCharsets.UTF_8),
+             getParsingHints());
+        Document document = cache.getDocument(key);
+        if (document != null) {
+            return document;
+        }
+
+        TranscoderInput parsed;
+        if (bytes != null) {
+            parsed = new TranscoderInput(new ByteArrayInputStream(bytes));
+        } else {
+            parsed = new TranscoderInput(new StringReader(chars));
+        }
+        parsed.setURI(uri);
+        document = parseDocument(parsed);
+        if (document == null) {
+            return null;
+        }
+
+        // The parsed document is used for this transcoding, so keep
+        // an untouched copy in the cache.
+        cache.putDocument(key, (Document)document.cloneNode(true));
+        return document;
+    }
+
+    /**
+     * Returns the values of the transcoding hints which change the
+     * document built from a given content: the XML parser, whether it
+     * validates, the DOM implementation and the document element.
+     * They are part of the keys of the document template cache.
+     */
+    protected Object[] getParsingHints() {
+        String parserClassname = (String)hints.get(KEY_XML_PARSER_CLASSNAME);
+        if (parserClassname == null) {
+            parserClassname = XMLResourceDescriptor.getXMLParserClassName();
+        }
+        Object domImpl = hints.get(KEY_DOM_IMPLEMENTATION);
+        return new Object[] {
+            parserClassname,
+            Boolean.valueOf
+                (Boolean.TRUE.equals(hints.get(KEY_XML_PARSER_VALIDATING))),
+            (domImpl == null) ? null : domImpl.getClass().getName(),
+            hints.get(KEY_DOCUMENT_ELEMENT_NAMESPACE_URI),
+            hints.get(KEY_DOCUMENT_ELEMENT)
+        };
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = is.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static String readFully(Reader r) throws IOException {
+        StringBuffer sb = new StringBuffer();
+        char[] buf = new char[8192];
+        int n;
+        while ((n = r.read(buf)) != -1) {
+            sb.append(buf, 0, n);
+        }
+        return sb.toString();
+    }
+
     /**
      * Transcodes the specified Document as an image in the specified output.
      *
@@ -882,6 +1010,69 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
     public static final TranscodingHints.Key KEY_ALLOW_EXTERNAL_RESOURCES
             = new BooleanKey();
 
+    /**
+     * The document template cache key.
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_DOCUMENT_TEMPLATE_CACHE</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">DocumentTemplateCache</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">null</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">Specify a cache of parsed documents. When set,
+     *       input given as a URI, a byte stream or a character stream is
+     *       only parsed the first time its content is seen for that URI;
+     *       later transcodings work on a copy of the cached document. The
+     *       same cache may be shared by several transcoders.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_DOCUMENT_TEMPLATE_CACHE
+            = new DocumentTemplateCacheKey();
+
+    /**
+     * The prefetch threads key.
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_PREFETCH_THREADS</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">0</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">Specify the number of threads fetching the
+     *       images and documents referenced by the document before the
+     *       GVT tree is built. 0 fetches them one at a time while the
+     *       tree is built.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_PREFETCH_THREADS
+            = new IntegerKey();
+
     /**
      * A user agent implementation for <code>PrintTranscoder</code>.
      */
@@ -1128,5 +1319,17 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
             }
             return false;
         }
+
+        /**
+         * Returns the number of threads prefetching the resources of
+         * the document, from the <code>KEY_PREFETCH_THREADS</code> hint.
+         */
+        public int getPrefetchThreads() {
+            Integer i = (Integer)SVGAbstractTranscoder.this.hints.get(KEY_PREFETCH_THREADS);
+            if (i != null) {
+                return i;
+            }
+            return 0;
+        }
     }
 }
@@ -77,64 +77,7 @@ public abstract class XMLAbstractTranscoder extends AbstractTranscoder {
         if (input.getDocument() != null) {
             document = input.getDocument();
         } else {
-            String parserClassname =
-                (String)hints.get(KEY_XML_PARSER_CLASSNAME);
-            String namespaceURI =
-                (String)hints.get(KEY_DOCUMENT_ELEMENT_NAMESPACE_URI);
-            String documentElement =
-                (String)hints.get(KEY_DOCUMENT_ELEMENT);
-            DOMImplementation domImpl =
-                (DOMImplementation)hints.get(KEY_DOM_IMPLEMENTATION);
-
-            if (parserClassname == null) {
-                parserClassname = XMLResourceDescriptor.getXMLParserClassName();
-            }
-            if (domImpl == null) {
-                handler.fatalError(new TranscoderException(
-                    "Unspecified transcoding hints: KEY_DOM_IMPLEMENTATION"));
-                return;
-            }
-            if (namespaceURI == null) {
-                handler.fatalError(new TranscoderException(
-                "Unspecified transcoding hints: KEY_DOCUMENT_ELEMENT_NAMESPACE_URI"));
-                return;
-            }
-            if (documentElement == null) {
-                handler.fatalError(new TranscoderException(
-                    "Unspecified transcoding hints: KEY_DOCUMENT_ELEMENT"));
-                return;
-            }
-            // parse the XML document
-            DocumentFactory f = createDocumentFactory(domImpl, parserClassname);
-            Object xmlParserValidating = hints.get(KEY_XML_PARSER_VALIDATING);
-            boolean validating = xmlParserValidating != null && (Boolean) xmlParserValidating;
-            f.setValidating(validating);
-            try {
-                if (input.getInputStream() != null) {
-                    document = f.createDocument(namespaceURI,
-                                                documentElement,
-                                                input.getURI(),
-                                                input.getInputStream());
-                } else if (input.getReader() != null) {
-                    document = f.createDocument(namespaceURI,
-                                                documentElement,
-                                                input.getURI(),
-                                                input.getReader());
-                } else if (input.getXMLReader() != null) {
-                    document = f.createDocument(namespaceURI,
-                                                documentElement,
-                                                input.getURI(),
-                                                input.getXMLReader());
-                } else if (uri != null) {
-                    document = f.createDocument(namespaceURI,
-                                                documentElement,
-                                                uri);
-                }
-            } catch (DOMException ex) {
-                handler.fatalError(new TranscoderException(ex));
-            } catch (IOException ex) {
-                handler.fatalError(new TranscoderException(ex));
-            }
+            document = parseDocument(input);
         }
         // call the dedicated transcode method
         if (document != null) {
@@ -148,6 +91,82 @@ public abstract class XMLAbstractTranscoder extends AbstractTranscoder {
         }
     }
 
+    /**
+     * Parses the document described by the specified XML input, which
+     * is a stream, a reader, an <code>XMLReader</code> or a URI, with
+     * the parser and the document element set by the transcoding
+     * hints.  Errors are reported to the error handler.
+     *
+     * @param input the XML input to parse
+     * @return the document, or null if it could not be created
+     * @exception TranscoderException if the error handler reported
+     *            an error as fatal
+     */
+    protected Document parseDocument(TranscoderInput input)
+            throws TranscoderException {
+        Document document = null;
+        String uri = input.getURI();
+        String parserClassname =
+            (String)hints.get(KEY_XML_PARSER_CLASSNAME);
+        String namespaceURI =
+            (String)hints.get(KEY_DOCUMENT_ELEMENT_NAMESPACE_URI);
+        String documentElement =
+            (String)hints.get(KEY_DOCUMENT_ELEMENT);
+        DOMImplementation domImpl =
+            (DOMImplementation)hints.get(KEY_DOM_IMPLEMENTATION);
+
+        if (parserClassname == null) {
+            parserClassname = XMLResourceDescriptor.getXMLParserClassName();
+        }
+        if (domImpl == null) {
+            handler.fatalError(new TranscoderException(
+                "Unspecified transcoding hints: KEY_DOM_IMPLEMENTATION"));
+            return null;
+        }
+        if (namespaceURI == null) {
+            handler.fatalError(new TranscoderException(
+            "Unspecified transcoding hints: KEY_DOCUMENT_ELEMENT_NAMESPACE_URI"));
+            return null;
+        }
+        if (documentElement == null) {
+            handler.fatalError(new TranscoderException(
+                "Unspecified transcoding hints: KEY_DOCUMENT_ELEMENT"));
+            return null;
+        }
+        // parse the XML document
+        DocumentFactory f = createDocumentFactory(domImpl, parserClassname);
+        Object xmlParserValidating = hints.get(KEY_XML_PARSER_VALIDATING);
+        boolean validating = xmlParserValidating != null && (Boolean) xmlParserValidating;
+        f.setValidating(validating);
+        try {
+            if (input.getInputStream() != null) {
+                document = f.createDocument(namespaceURI,
+                                            documentElement,
+                                            input.getURI(),
+                                            input.getInputStream());
+            } else if (input.getReader() != null) {
+                document = f.createDocument(namespaceURI,
+                                            documentElement,
+                                            input.getURI(),
+                                            input.getReader());
+            } else if (input.getXMLReader() != null) {
+                document = f.createDocument(namespaceURI,
+                                            documentElement,
+                                            input.getURI(),
+                                            input.getXMLReader());
+            } else if (uri != null) {
+                document = f.createDocument(namespaceURI,
+                                            documentElement,
+                                            uri);
+            }
+        } catch (DOMException ex) {
+            handler.fatalError(new TranscoderException(ex));
+        } catch (IOException ex) {
+            handler.fatalError(new TranscoderException(ex));
+        }
+        return document;
+    }
+
     /**
      * Creates the <code>DocumentFactory</code> used to create the DOM
      * tree. Override this method if you have to use another
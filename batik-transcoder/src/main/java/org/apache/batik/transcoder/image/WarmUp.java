@@ -0,0 +1,127 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import org.apache.batik.anim.dom.SVGDOMImplementation;
+import org.apache.batik.bridge.BridgeContext;
+import org.apache.batik.bridge.DefaultFontFamilyResolver;
+import org.apache.batik.ext.awt.image.spi.ImageTagRegistry;
+import org.apache.batik.ext.awt.image.spi.ImageWriterRegistry;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+/**
+ * Eagerly initializes the shared registries used by the transcoders:
+ * the SVG DOM implementation, the CSS value managers, the bridge
+ * extensions, the image readers and writers found through
+ * <code>Service</code>, the fonts and the index of the characters they
+ * can display.  All of them are otherwise set up lazily by the first
+ * transcode done in the virtual machine, which makes it noticeably
+ * slower than the following ones.
+ *
+ * <p>Short-lived processes can call {@link #warmUp()} while they are
+ * being initialized, before the first request is known.  Only the first
+ * call does any work.</p>
+ *
+ * @version $Id$
+ */
+public final class WarmUp {
+
+    /**
+     * The document transcoded to exercise the common code paths: CSS
+     * styling, shapes, paths, gradients, filters and text.
+     */
+    public static final String WARM_UP_DOCUMENT
+        = "<?xml version=\"1.0\" standalone=\"no\"?>\n"
+        + "<svg xmlns=\"http://www.w3.org/2000/svg\" "
+        + "xmlns:xlink=\"http://www.w3.org/1999/xlink\" "
+        + "width=\"32\" height=\"32\" viewBox=\"0 0 32 32\">\n"
+        + "<style type=\"text/css\">.s { fill: url(#g); stroke: #036; "
+        + "stroke-width: 0.5; opacity: 0.9 }</style>\n"
+        + "<defs>\n"
+        + "<linearGradient id=\"g\"><stop offset=\"0\" stop-color=\"red\"/>"
+        + "<stop offset=\"1\" stop-color=\"blue\"/></linearGradient>\n"
+        + "<radialGradient id=\"r\"><stop offset=\"0\" stop-color=\"white\"/>"
+        + "<stop offset=\"1\" stop-color=\"green\"/></radialGradient>\n"
+        + "<filter id=\"f\"><feGaussianBlur stdDeviation=\"1\"/></filter>\n"
+        + "<clipPath id=\"c\"><circle cx=\"16\" cy=\"16\" r=\"14\"/></clipPath>\n"
+        + "<circle id=\"d\" cx=\"4\" cy=\"24\" r=\"2\" fill=\"orange\"/>\n"
+        + "</defs>\n"
+        + "<g clip-path=\"url(#c)\" transform=\"translate(1,1)\">\n"
+        + "<rect class=\"s\" x=\"2\" y=\"2\" width=\"12\" height=\"12\" rx=\"2\"/>\n"
+        + "<ellipse cx=\"22\" cy=\"8\" rx=\"6\" ry=\"4\" fill=\"url(#r)\"/>\n"
+        + "<path d=\"M2 20 C8 14 12 26 18 20 S28 24 30 18 L30 30 Z\" "
+        + "fill=\"none\" stroke=\"black\" stroke-dasharray=\"2 1\"/>\n"
+        + "<polygon points=\"20,20 28,22 24,28\" filter=\"url(#f)\"/>\n"
+        + "<use xlink:href=\"#d\"/>\n"
+        + "<text x=\"2\" y=\"30\" font-family=\"sans-serif\" font-size=\"6\">"
+        + "Ab<tspan font-weight=\"bold\">c</tspan></text>\n"
+        + "</g>\n"
+        + "</svg>\n";
+
+    /**
+     * Whether the warm-up already happened.
+     */
+    private static boolean done;
+
+    /**
+     * This class does not need to be instantiated.
+     */
+    private WarmUp() {
+    }
+
+    /**
+     * Initializes the shared registries and transcodes a small document
+     * to PNG in memory.  Errors are ignored: they will be reported by the
+     * actual transcodes.
+     */
+    public static synchronized void warmUp() {
+        if (done) {
+            return;
+        }
+        done = true;
+
+        SVGDOMImplementation.getDOMImplementation();
+        BridgeContext.getGlobalBridgeExtensions();
+        ImageTagRegistry.getRegistry();
+        ImageWriterRegistry.getInstance();
+        DefaultFontFamilyResolver.buildCoverageIndex();
+
+        TranscoderInput input
+            = new TranscoderInput(new StringReader(WARM_UP_DOCUMENT));
+        input.setURI("file:/warm-up.svg");
+        TranscoderOutput output
+            = new TranscoderOutput(new ByteArrayOutputStream());
+        try {
+            new PNGTranscoder().transcode(input, output);
+        } catch (TranscoderException e) {
+        }
+    }
+
+    /**
+     * Returns whether {@link #warmUp()} has been called.
+     */
+    public static synchronized boolean isWarm() {
+        return done;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache which holds its values strongly, within a budget of bytes,
+ * and drops the least recently used ones when they exceed it.
+ *
+ * <p>The request/put protocol is the one of
+ * <code>SoftReferenceCache</code>: the first requester of a key is 'on
+ * the hook' for it, and the other requesters wait until it is put or
+ * cleared.  The cache has no global lock: the lookups of different
+ * keys do not block each other.</p>
+ *
+ * <p>The size of a value is given when it is put, or computed by
+ * {@link #getSize(Object)} if it is not known.  A value whose size is
+ * not known yet, such as an image still being decoded, is accounted for
+ * once it is.</p>
+ *
+ * @version $Id$
+ */
+public class BoundedCache {
+
+    /**
+     * The cached entries.
+     */
+    protected final ConcurrentHashMap entries = new ConcurrentHashMap();
+
+    /**
+     * The entries put before their size was known.
+     */
+    protected final ConcurrentLinkedQueue unsized
+        = new ConcurrentLinkedQueue();
+
+    /**
+     * The lock held while dropping entries.
+     */
+    protected final ReentrantLock trimLock = new ReentrantLock();
+
+    /**
+     * The clock ordering the uses of the entries.
+     */
+    protected final AtomicLong clock = new AtomicLong();
+
+    /**
+     * The total size of the cached values, in bytes.
+     */
+    protected final AtomicLong size = new AtomicLong();
+
+    protected final LongAdder hitCount = new LongAdder();
+    protected final LongAdder missCount = new LongAdder();
+    protected final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * The maximum total size of the cached values, in bytes.
+     */
+    protected volatile long maxSize;
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum total size of the cached values, in
+     *        bytes.
+     */
+    public BoundedCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Check if <code>request(key)</code> will return with a value
+     * (not putting you on the hook for it).
+     */
+    public boolean isPresent(Object key) {
+        Entry e = (Entry)entries.get(key);
+        return (e != null) && (!e.done || (e.value != null));
+    }
+
+    /**
+     * Check if <code>request(key)</code> will return immediately with
+     * the value.
+     */
+    public boolean isDone(Object key) {
+        Entry e = (Entry)entries.get(key);
+        return (e != null) && e.done;
+    }
+
+    /**
+     * If this returns null then you are now 'on the hook'
+     * to put the value associated with key into the cache.
+     */
+    public Object request(Object key) {
+        for (;;) {
+            Entry e = (Entry)entries.get(key);
+            if (e == null) {
+                e = new Entry();
+                e.key = key;
+                if (entries.putIfAbsent(key, e) == null) {
+                    missCount.increment();
+                    return null;
+                }
+                // Lost a race, someone else is now on the hook.
+                continue;
+            }
+            synchronized (e) {
+                while (!e.done && !e.removed) {
+                    try {
+                        // When it is put or cleared we will be notified.
+                        e.wait();
+                    } catch (InterruptedException ie) { }
+                }
+            }
+            Object value = e.value;
+            if (e.done && (value != null)) {
+                e.lastUse = clock.incrementAndGet();
+                hitCount.increment();
+                return value;
+            }
+            // It was cleared, try to get on the hook.
+        }
+    }
+
+    /**
+     * Clear the entry for key.
+     * This is the easiest way to 'get off the hook'
+     * if you didn't intend to get on it.
+     */
+    public void clear(Object key) {
+        Entry e = (Entry)entries.remove(key);
+        if (e != null) {
+            release(e);
+        }
+    }
+
+    /**
+     * Associate value with key, its size being computed by
+     * {@link #getSize(Object)}.
+     */
+    public void put(Object key, Object value) {
+        put(key, value, -1);
+    }
+
+    /**
+     * Associate value with key.  If the cache no longer contains key it
+     * was cleared or flushed since we were put on the hook for it, so in
+     * that case we will do nothing.  A null value clears the entry.
+     * @param bytes the size of the value, or -1 to compute it with
+     *        {@link #getSize(Object)}.
+     */
+    public void put(Object key, Object value, long bytes) {
+        Entry e = (Entry)entries.get(key);
+        if ((e == null) || e.done) {
+            return;
+        }
+        if (value == null) {
+            // Nothing to cache, let the next requester try again.
+            if (entries.remove(key, e)) {
+                release(e);
+            }
+            return;
+        }
+        e.lastUse = clock.incrementAndGet();
+        if (bytes < 0) {
+            bytes = getSize(value);
+        }
+        synchronized (e) {
+            if (e.removed) {
+                // Cleared since we got on the hook.
+                return;
+            }
+            e.value = value;
+            e.done = true;
+            if (bytes >= 0) {
+                e.size = bytes;
+                size.addAndGet(bytes);
+            }
+            e.notifyAll();
+        }
+        if (bytes < 0) {
+            unsized.add(e);
+        }
+        trim();
+    }
+
+    /**
+     * Removes all the values from the cache.  Pending requests will
+     * be treated as though clear() was called on their key.
+     */
+    public void flush() {
+        Iterator it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = (Entry)it.next();
+            it.remove();
+            release(e);
+        }
+        unsized.clear();
+    }
+
+    /**
+     * Returns the maximum total size of the cached values, in bytes.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum total size of the cached values, in bytes.
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        trim();
+    }
+
+    /**
+     * Returns the total size of the cached values, in bytes.
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of cached values, including the ones being
+     * loaded.
+     */
+    public int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of requests which found their value.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of requests which put the caller on the hook.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of values dropped to fit the budget.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public void resetStatistics() {
+        hitCount.reset();
+        missCount.reset();
+        evictionCount.reset();
+    }
+
+    /**
+     * Returns the size of the given value, in bytes, or -1 if it is not
+     * known yet.  This implementation returns 0.
+     */
+    protected long getSize(Object value) {
+        return 0;
+    }
+
+    /**
+     * Removes the accounting of a removed entry and wakes the threads
+     * waiting for it.
+     */
+    protected void release(Entry e) {
+        synchronized (e) {
+            e.removed = true;
+            if (e.size > 0) {
+                size.addAndGet(-e.size);
+                e.size = 0;
+            }
+            e.notifyAll();
+        }
+    }
+
+    /**
+     * Accounts for the entries whose size has become known since they
+     * were put.
+     */
+    protected void sizeEntries() {
+        Iterator it = unsized.iterator();
+        while (it.hasNext()) {
+            Entry e = (Entry)it.next();
+            long bytes = getSize(e.value);
+            if (bytes < 0) {
+                continue;
+            }
+            it.remove();
+            synchronized (e) {
+                if (!e.removed) {
+                    e.size = bytes;
+                    size.addAndGet(bytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the least recently used values until the cache fits in
+     * its budget.  Only one thread trims at a time, the others leave
+     * the work to it.
+     */
+    protected void trim() {
+        if (!trimLock.tryLock()) {
+            return;
+        }
+        try {
+            sizeEntries();
+            if (size.get() <= maxSize) {
+                return;
+            }
+            List done = new ArrayList(entries.size());
+            Iterator it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry e = (Entry)it.next();
+                if (e.done) {
+                    done.add(e);
+                }
+            }
+            Collections.sort(done, new Comparator() {
+                    public int compare(Object o1, Object o2) {
+                        long l1 = ((Entry)o1).lastUse;
+                        long l2 = ((Entry)o2).lastUse;
+                        return (l1 < l2) ? -1 : ((l1 == l2) ? 0 : 1);
+                    }
+                });
+            it = done.iterator();
+            while ((size.get() > maxSize) && it.hasNext()) {
+                Entry e = (Entry)it.next();
+                if (entries.remove(e.key, e)) {
+                    release(e);
+                    evictionCount.increment();
+                }
+            }
+        } finally {
+            trimLock.unlock();
+        }
+    }
+
+    /**
+     * A cached value, or a value being loaded.
+     */
+    protected static class Entry {
+
+        /**
+         * The key of the value.
+         */
+        public Object key;
+
+        /**
+         * The value, null until it is put.
+         */
+        public volatile Object value;
+
+        /**
+         * Whether the value has been put.
+         */
+        public volatile boolean done;
+
+        /**
+         * Whether the entry has been removed from the cache.
+         */
+        public boolean removed;
+
+        /**
+         * The accounted size of the value, in bytes.
+         */
+        public long size;
+
+        /**
+         * The clock value of the last use of the value.
+         */
+        public volatile long lastUse;
+    }
+}
@@ -20,11 +20,20 @@ package org.apache.batik.util;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class represents an object which queues Runnable objects for
  * invocation in a single thread.
  *
+ * <p>A queue created with an executor does not have a thread of its
+ * own: it submits a task to the executor whenever it has runnables to
+ * run, so many queues can share a few threads.  The runnables of a
+ * queue are still run one at a time, in order.</p>
+ *
  * @author <a href="mailto:stephane@hillion.org">Stephane Hillion</a>
  * @version $Id$
  */
@@ -81,7 +90,7 @@ public class RunnableQueue implements Runnable {
      * Used to indicate if the queue was resumed while
      * still running, so a 'resumed' event can be sent.
      */
-    protected boolean wasResumed;
+    protected volatile boolean wasResumed;
 
     /**
      * The Runnable objects list, also used as synchronization point
@@ -115,6 +124,53 @@ public class RunnableQueue implements Runnable {
      */
     private long idleRunnableWaitTime;
 
+    /**
+     * The maximum number of runnables run by an executor task before
+     * it gives way to the other queues sharing the executor.
+     */
+    protected static final int EXECUTOR_BATCH_SIZE = 64;
+
+    /**
+     * The executor running this queue, or null if the queue runs in
+     * its own thread.
+     */
+    protected ScheduledExecutorService executor;
+
+    /**
+     * Whether a task running this queue has been submitted to the
+     * executor and has not completed.  Guarded by <code>list</code>.
+     */
+    private boolean executorTaskPending;
+
+    /**
+     * The task waking this queue up when its idle runnable is due.
+     */
+    private ScheduledFuture idleWakeUp;
+
+    /**
+     * Whether the executor queue has been halted.
+     */
+    private volatile boolean halted;
+
+    /**
+     * Whether the executor queue has exited.
+     */
+    private volatile boolean exited;
+
+    /**
+     * The thread running the executor queue, if it is running.
+     */
+    private volatile Thread executorThread;
+
+    /**
+     * The task running the queue in the executor.
+     */
+    private final Runnable executorTask = new Runnable() {
+            public void run() {
+                runTasks();
+            }
+        };
+
     /**
      * Creates a new RunnableQueue started in a new thread.
      * @return a RunnableQueue which is guaranteed to have entered its
@@ -142,6 +198,25 @@ public class RunnableQueue implements Runnable {
 
     private static volatile int threadCount;
 
+    /**
+     * Creates a new RunnableQueue run by the given executor.  The
+     * queue runs its runnables one at a time, in order, in the
+     * threads of the executor, and is immediately ready to accept
+     * runnables.  {@link #getThread()} returns null for such a queue.
+     * Runnables waiting for another queue of the same executor, with
+     * <code>invokeAndWait</code> for instance, hold one of its threads,
+     * so the executor should not have a fixed small number of threads.
+     * @param executor the executor, which can be shared by many queues.
+     */
+    public static RunnableQueue createRunnableQueue
+        (ScheduledExecutorService executor) {
+        RunnableQueue result = new RunnableQueue();
+        result.executor = executor;
+        // Go to the initial SUSPENDED state, as a thread would.
+        result.wakeUp();
+        return result;
+    }
+
     /**
      * Runs this queue.
      */
@@ -234,50 +309,247 @@ public class RunnableQueue implements Runnable {
                     }
                 }
 
-                try {
-                    runnableStart(rable);
-
-                    rable.run();
-                } catch (ThreadDeath td) {
-                    // Let it kill us...
-                    throw td;
-                } catch (Throwable t) {
-                    // Might be nice to notify someone directly.
-                    // But this is more or less what Swing does.
-                    t.printStackTrace();
+                invoke(rable, l);
+            }
+        } finally {
+            releaseRunnables();
+
+            synchronized (this) {
+                runnableQueueThread = null;
+            }
+        }
+    }
+
+    /**
+     * Runs the given runnable and notifies the run handler.
+     * @param l the link of the runnable, or null for the idle runnable.
+     */
+    private void invoke(Runnable rable, Link l) {
+        try {
+            runnableStart(rable);
+
+            rable.run();
+        } catch (ThreadDeath td) {
+            // Let it kill us...
+            throw td;
+        } catch (Throwable t) {
+            // Might be nice to notify someone directly.
+            // But this is more or less what Swing does.
+            t.printStackTrace();
+        }
+        // Notify something waiting on the runnable just completed,
+        // if we just ran one from the queue.
+        if (l != null) {
+            l.unlock();
+        }
+
+        try {
+            runnableInvoked(rable);
+        } catch (ThreadDeath td) {
+            // Let it kill us...
+            throw td;
+        } catch (Throwable t) {
+            // Might be nice to notify someone directly.
+            // But this is more or less what Swing does.
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Empties the list of pending runnables and unlocks them (so
+     * invokeAndWait will return).  It's up to the runnables to check
+     * if the runnable actually ran, if that is important.
+     */
+    private void releaseRunnables() {
+        Link l;
+        do {
+            synchronized (list) {
+                l = (Link)list.pop();
+            }
+            if (l == null) break;
+            else           l.unlock();
+        } while (true);
+    }
+
+    /**
+     * Runs the queue in an executor thread, until it has nothing to
+     * do or it has run <code>EXECUTOR_BATCH_SIZE</code> runnables.
+     */
+    private void runTasks() {
+        boolean more = true;
+        executorThread = Thread.currentThread();
+        try {
+            for (int i = 0; more && (i < EXECUTOR_BATCH_SIZE); i++) {
+                more = runTask();
+            }
+        } finally {
+            executorThread = null;
+            synchronized (list) {
+                executorTaskPending = false;
+                if (!exited) {
+                    RunnableQueueState s = state;
+                    if (more || halted || wasResumed ||
+                        ((s != RUNNING) && (s != SUSPENDED)) ||
+                        ((s == RUNNING) && (list.getSize() > 0))) {
+                        wakeUp();
+                    } else if ((s == RUNNING) && (idleRunnable != null) &&
+                               (idleRunnableWaitTime != Long.MAX_VALUE)) {
+                        scheduleWakeUp(idleRunnableWaitTime
+                                       - System.currentTimeMillis());
+                    }
                 }
-                // Notify something waiting on the runnable just completed,
-                // if we just ran one from the queue.
-                if (l != null) {
-                    l.unlock();
+            }
+        }
+    }
+
+    /**
+     * Does one step of the loop of <code>run()</code> without waiting.
+     * @return false if the queue has nothing more to do for now.
+     */
+    private boolean runTask() {
+        if (halted) {
+            synchronized (list) {
+                exited = true;
+                if (idleWakeUp != null) {
+                    idleWakeUp.cancel(false);
                 }
+            }
+            releaseRunnables();
+            return false;
+        }
 
-                try {
-                    runnableInvoked(rable);
-                } catch (ThreadDeath td) {
-                    // Let it kill us...
-                    throw td;
-                } catch (Throwable t) {
-                    // Might be nice to notify someone directly.
-                    // But this is more or less what Swing does.
-                    t.printStackTrace();
+        boolean callSuspended = false;
+        boolean callResumed   = false;
+        boolean suspended     = false;
+        synchronized (stateLock) {
+            if (state != RUNNING) {
+                callSuspended = (state != SUSPENDED);
+                state = SUSPENDED;
+                suspended = true;
+                // notify suspendExecution in case it is
+                // waiting til we shut down.
+                stateLock.notifyAll();
+            } else if (wasResumed) {
+                wasResumed = false;
+                callResumed = true;
+            }
+        }
+        if (callSuspended)
+            executionSuspended();
+        if (suspended)
+            return false;
+        if (callResumed)
+            executionResumed();
+
+        Link l;
+        Runnable rable;
+        synchronized (list) {
+            if (state == SUSPENDING)
+                return true;
+            l = (Link)list.pop();
+            if (preemptCount != 0) preemptCount--;
+            if (l == null) {
+                // No item to run, see if there is an idle runnable
+                // to run instead.
+                if (idleRunnable != null &&
+                        (idleRunnableWaitTime = idleRunnable.getWaitTime())
+                            < System.currentTimeMillis()) {
+                    rable = idleRunnable;
+                } else {
+                    return false;
                 }
+            } else {
+                rable = l.runnable;
             }
-        } finally {
-            do {
-                // Empty the list of pending runnables and unlock them (so
-                // invokeAndWait will return).
-                // It's up to the runnables to check if the runnable actually
-                // ran, if that is important.
-                synchronized (list) {
-                    l = (Link)list.pop();
+        }
+
+        invoke(rable, l);
+        return true;
+    }
+
+    /**
+     * Submits a task running this queue to the executor, unless one
+     * is already pending.
+     */
+    private void wakeUp() {
+        synchronized (list) {
+            if (executorTaskPending || exited)
+                return;
+            executorTaskPending = true;
+            try {
+                executor.execute(executorTask);
+            } catch (RejectedExecutionException e) {
+                executorTaskPending = false;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Wakes this queue up after the given delay, to run its idle
+     * runnable.
+     */
+    private void scheduleWakeUp(long delay) {
+        if (idleWakeUp != null) {
+            idleWakeUp.cancel(false);
+        }
+        idleWakeUp = executor.schedule(new Runnable() {
+                public void run() {
+                    wakeUp();
                 }
-                if (l == null) break;
-                else           l.unlock();
-            } while (true);
+            }, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
 
-            synchronized (this) {
-                runnableQueueThread = null;
+    /**
+     * Tells the queue that its state or its list of runnables has
+     * changed.
+     */
+    private void stateChanged() {
+        if (executor != null) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Returns true if the queue has been started and has not exited,
+     * that is if runnables can be added to it.
+     */
+    public boolean isAlive() {
+        if (executor != null) {
+            return !exited;
+        }
+        return runnableQueueThread != null;
+    }
+
+    /**
+     * Returns true if the current thread is the one running this
+     * queue.
+     */
+    public boolean isQueueThread() {
+        Thread t = Thread.currentThread();
+        if (executor != null) {
+            return executorThread == t;
+        }
+        return runnableQueueThread == t;
+    }
+
+    /**
+     * Stops the queue after the current runnable completes.  The
+     * pending runnables are not run but the threads waiting for them
+     * are released.
+     */
+    public void halt() {
+        if (executor != null) {
+            halted = true;
+            wakeUp();
+            return;
+        }
+        HaltingThread t = runnableQueueThread;
+        if (t != null) {
+            t.halt();
+            synchronized (list) {
+                // Wake up run thread if it is waiting for jobs.
+                list.notify();
             }
         }
     }
@@ -285,7 +557,7 @@ public class RunnableQueue implements Runnable {
     /**
      * Returns the thread in which the RunnableQueue is currently running.
      * @return null if the RunnableQueue has not entered his
-     *         <code>run()</code> method.
+     *         <code>run()</code> method, or if it is run by an executor.
      */
     public HaltingThread getThread() {
         return runnableQueueThread;
@@ -298,7 +570,7 @@ public class RunnableQueue implements Runnable {
      * @throws IllegalStateException if getThread() is null.
      */
     public void invokeLater(Runnable r) {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
@@ -306,6 +578,7 @@ public class RunnableQueue implements Runnable {
             list.push(new Link(r));
             list.notify();
         }
+        stateChanged();
     }
 
     /**
@@ -317,11 +590,11 @@ public class RunnableQueue implements Runnable {
      *         thread returned by getThread() is the current one.
      */
     public void invokeAndWait(Runnable r) throws InterruptedException {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
-        if (runnableQueueThread == Thread.currentThread()) {
+        if (isQueueThread()) {
             throw new IllegalStateException
                 ("Cannot be called from the RunnableQueue thread");
         }
@@ -331,6 +604,7 @@ public class RunnableQueue implements Runnable {
             list.push(l);
             list.notify();
         }
+        stateChanged();
         l.lock();           // todo: the 'other side' of list may retrieve the l before it is locked...
     }
 
@@ -344,7 +618,7 @@ public class RunnableQueue implements Runnable {
      * @throws IllegalStateException if getThread() is  null.
      */
     public void preemptLater(Runnable r) {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
@@ -353,6 +627,7 @@ public class RunnableQueue implements Runnable {
             preemptCount++;
             list.notify();
         }
+        stateChanged();
     }
 
     /**
@@ -366,11 +641,11 @@ public class RunnableQueue implements Runnable {
      *         thread returned by getThread() is the current one.
      */
     public void preemptAndWait(Runnable r) throws InterruptedException {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
-        if (runnableQueueThread == Thread.currentThread()) {
+        if (isQueueThread()) {
             throw new IllegalStateException
                 ("Cannot be called from the RunnableQueue thread");
         }
@@ -381,6 +656,7 @@ public class RunnableQueue implements Runnable {
             preemptCount++;
             list.notify();
         }
+        stateChanged();
         l.lock();               // todo: the 'other side' of list may retrieve the l before it is locked...
     }
 
@@ -402,7 +678,7 @@ public class RunnableQueue implements Runnable {
      * @throws IllegalStateException if getThread() is null.
      */
     public void suspendExecution(boolean waitTillSuspended) {
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
@@ -425,6 +701,7 @@ public class RunnableQueue implements Runnable {
                     // run-handler etc...)
                     list.notify();
                 }
+                stateChanged();
             }
 
             if (waitTillSuspended) {
@@ -443,7 +720,7 @@ public class RunnableQueue implements Runnable {
      */
     public void resumeExecution() {
         // System.err.println("Resume Called");
-        if (runnableQueueThread == null) {
+        if (!isAlive()) {
             throw new IllegalStateException
                 ("RunnableQueue not started or has exited");
         }
@@ -456,6 +733,7 @@ public class RunnableQueue implements Runnable {
                 stateLock.notifyAll(); // wake it up.
             }
         }
+        stateChanged();
     }
 
     /**
@@ -523,6 +801,7 @@ public class RunnableQueue implements Runnable {
             idleRunnableWaitTime = 0;
             list.notify();
         }
+        stateChanged();
     }
 
     /**
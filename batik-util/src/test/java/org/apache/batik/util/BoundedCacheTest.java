@@ -0,0 +1,222 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks the request/put protocol of a {@link BoundedCache}, its
+ * accounting of the sizes of its values and the order in which it
+ * drops them to fit its budget.
+ *
+ * @version $Id$
+ */
+public class BoundedCacheTest extends AbstractTest {
+
+    /**
+     * The time to wait for the other threads, in milliseconds.
+     */
+    public static final long TIMEOUT = 20000;
+
+    public TestReport runImpl() throws Exception {
+        testProtocol();
+        testEviction();
+        testUnsized();
+        testWaiters();
+        return reportSuccess();
+    }
+
+    /**
+     * Checks the request/put protocol and the statistics.
+     */
+    protected void testProtocol() throws Exception {
+        BoundedCache cache = new BoundedCache(100);
+        assertTrue(!cache.isPresent("a"));
+        assertTrue(cache.request("a") == null);
+        assertTrue(cache.isPresent("a"));
+        assertTrue(!cache.isDone("a"));
+        cache.put("a", "A", 10);
+        assertTrue(cache.isDone("a"));
+        assertEquals("A", cache.request("a"));
+        assertEquals(1L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+        assertEquals(10L, cache.getSize());
+
+        // A second put is ignored.
+        cache.put("a", "B", 20);
+        assertEquals("A", cache.request("a"));
+        assertEquals(10L, cache.getSize());
+
+        // A null value gets the caller off the hook.
+        assertTrue(cache.request("b") == null);
+        cache.put("b", null, 10);
+        assertTrue(!cache.isPresent("b"));
+        assertEquals(1, cache.getCount());
+
+        // A value put after its key was cleared is not cached.
+        assertTrue(cache.request("c") == null);
+        cache.clear("c");
+        cache.put("c", "C", 10);
+        assertTrue(!cache.isPresent("c"));
+        assertEquals(10L, cache.getSize());
+
+        cache.clear("a");
+        assertEquals(0L, cache.getSize());
+        assertEquals(0, cache.getCount());
+
+        cache.resetStatistics();
+        assertEquals(0L, cache.getHitCount());
+        assertEquals(0L, cache.getMissCount());
+        assertEquals(0L, cache.getEvictionCount());
+    }
+
+    /**
+     * Checks that the least recently used values are dropped first,
+     * and that the size stays the sum of the sizes of the cached values.
+     */
+    protected void testEviction() throws Exception {
+        BoundedCache cache = new BoundedCache(100);
+        String[] keys = { "a", "b", "c", "d" };
+        for (int i = 0; i < keys.length; i++) {
+            assertTrue(cache.request(keys[i]) == null);
+            cache.put(keys[i], keys[i].toUpperCase(), 30);
+        }
+        // a is dropped to fit d.
+        assertEquals(90L, cache.getSize());
+        assertEquals(1L, cache.getEvictionCount());
+        assertTrue(!cache.isPresent("a"));
+
+        // b becomes the most recently used value, c is dropped next.
+        assertEquals("B", cache.request("b"));
+        assertTrue(cache.request("e") == null);
+        cache.put("e", "E", 30);
+        assertTrue(!cache.isPresent("c"));
+        assertTrue(cache.isDone("b"));
+        assertTrue(cache.isDone("d"));
+        assertTrue(cache.isDone("e"));
+        assertEquals(90L, cache.getSize());
+        assertEquals(2L, cache.getEvictionCount());
+
+        // Lowering the budget drops the oldest values.
+        cache.setMaxSize(40);
+        assertEquals(30L, cache.getSize());
+        assertEquals(1, cache.getCount());
+        assertTrue(cache.isDone("e"));
+
+        // A value larger than the budget is not kept.
+        assertTrue(cache.request("f") == null);
+        cache.put("f", "F", 50);
+        assertEquals(0L, cache.getSize());
+        assertEquals(0, cache.getCount());
+
+        cache.setMaxSize(100);
+        assertTrue(cache.request("g") == null);
+        cache.put("g", "G", 30);
+        cache.flush();
+        assertEquals(0L, cache.getSize());
+        assertEquals(0, cache.getCount());
+    }
+
+    /**
+     * Checks that a value put before its size is known is accounted
+     * for once it is.
+     */
+    protected void testUnsized() throws Exception {
+        final int[] sizes = { -1 };
+        BoundedCache cache = new BoundedCache(100) {
+                protected long getSize(Object value) {
+                    return "U".equals(value) ? sizes[0] : 10;
+                }
+            };
+        assertTrue(cache.request("u") == null);
+        cache.put("u", "U");
+        assertTrue(cache.isDone("u"));
+        assertEquals(0L, cache.getSize());
+
+        assertTrue(cache.request("a") == null);
+        cache.put("a", "A");
+        assertEquals(10L, cache.getSize());
+
+        // The next trim accounts for u.
+        sizes[0] = 80;
+        assertTrue(cache.request("b") == null);
+        cache.put("b", "B");
+        assertEquals(100L, cache.getSize());
+        assertEquals(0L, cache.getEvictionCount());
+
+        // An unsized value cleared before it is sized is not counted.
+        sizes[0] = -1;
+        cache.flush();
+        assertTrue(cache.request("v") == null);
+        cache.put("v", "U");
+        cache.clear("v");
+        sizes[0] = 50;
+        cache.setMaxSize(100);
+        assertEquals(0L, cache.getSize());
+    }
+
+    /**
+     * Checks that the requesters of a key being loaded wait for its
+     * value, and get on the hook if it is cleared.
+     */
+    protected void testWaiters() throws Exception {
+        final BoundedCache cache = new BoundedCache(100);
+        assertTrue(cache.request("a") == null);
+        final int n = 4;
+        final Object[] results = new Object[n];
+        Thread[] threads = new Thread[n];
+        for (int i = 0; i < n; i++) {
+            final int t = i;
+            threads[i] = new Thread() {
+                    public void run() {
+                        results[t] = cache.request("a");
+                    }
+                };
+            threads[i].start();
+        }
+        // Let the requesters block on the entry.
+        Thread.sleep(50);
+        cache.put("a", "A", 10);
+        for (int i = 0; i < n; i++) {
+            threads[i].join(TIMEOUT);
+            assertEquals("A", results[i]);
+        }
+        assertEquals((long)n, cache.getHitCount());
+
+        // Clearing the key puts one of the waiters on the hook.
+        assertTrue(cache.request("b") == null);
+        final Object[] result = new Object[1];
+        Thread t = new Thread() {
+                public void run() {
+                    Object v = cache.request("b");
+                    if (v == null) {
+                        cache.put("b", "B2", 10);
+                    }
+                    result[0] = (v == null) ? "hook" : v;
+                }
+            };
+        t.start();
+        Thread.sleep(50);
+        cache.clear("b");
+        t.join(TIMEOUT);
+        assertEquals("hook", result[0]);
+        assertEquals("B2", cache.request("b"));
+    }
+}
@@ -0,0 +1,462 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.batik.test.AbstractTest;
+import org.apache.batik.test.TestReport;
+
+/**
+ * Checks the {@link RunnableQueue}s run by an executor: the runnables
+ * of a queue run one at a time and in order, the queues sharing an
+ * executor take turns, the suspend and resume events are sent, halting
+ * releases the threads waiting for runnables and the idle runnable is
+ * run when it is due.
+ *
+ * @version $Id$
+ */
+public class RunnableQueueExecutorTest extends AbstractTest {
+
+    /**
+     * The time to wait for the queues, in milliseconds.
+     */
+    public static final long TIMEOUT = 20000;
+
+    /**
+     * The number of runnables posted to a queue.
+     */
+    public static final int RUNNABLES = 1000;
+
+    public TestReport runImpl() throws Exception {
+        testOrder();
+        testFairness();
+        testSuspendResume();
+        testHalt();
+        testIdleRunnable();
+        return reportSuccess();
+    }
+
+    /**
+     * Checks that the runnables of a queue run one at a time, in the
+     * queue thread and in order, although the executor has several
+     * threads.
+     */
+    protected void testOrder() throws Exception {
+        ScheduledThreadPoolExecutor executor =
+            new ScheduledThreadPoolExecutor(4);
+        try {
+            final RunnableQueue rq =
+                RunnableQueue.createRunnableQueue(executor);
+            assertTrue(rq.isAlive());
+            assertTrue(rq.getThread() == null);
+            rq.resumeExecution();
+
+            final List order = Collections.synchronizedList(new ArrayList());
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger errors = new AtomicInteger();
+            for (int i = 0; i < RUNNABLES; i++) {
+                final Integer n = Integer.valueOf(i);
+                Runnable r = new Runnable() {
+                        public void run() {
+                            if (running.incrementAndGet() != 1
+                                    || !rq.isQueueThread()) {
+                                errors.incrementAndGet();
+                            }
+                            order.add(n);
+                            Thread.yield();
+                            running.decrementAndGet();
+                        }
+                    };
+                if (i % 2 == 0) {
+                    rq.invokeLater(r);
+                } else {
+                    rq.invokeAndWait(r);
+                }
+            }
+            rq.invokeAndWait(new Runnable() {
+                    public void run() {
+                    }
+                });
+            assertTrue(!rq.isQueueThread());
+            assertEquals(0, errors.get());
+            assertEquals(RUNNABLES, order.size());
+            for (int i = 0; i < RUNNABLES; i++) {
+                assertEquals(i, ((Integer)order.get(i)).intValue());
+            }
+            rq.halt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks that two busy queues sharing a single thread executor
+     * take turns, running at most <code>EXECUTOR_BATCH_SIZE</code>
+     * runnables in a row.
+     */
+    protected void testFairness() throws Exception {
+        ScheduledThreadPoolExecutor executor =
+            new ScheduledThreadPoolExecutor(1);
+        try {
+            RunnableQueue a = RunnableQueue.createRunnableQueue(executor);
+            RunnableQueue b = RunnableQueue.createRunnableQueue(executor);
+            final List order = Collections.synchronizedList(new ArrayList());
+            final CountDownLatch start = new CountDownLatch(1);
+
+            // The first runnable of a holds the executor thread until
+            // both queues are resumed.
+            a.invokeLater(new Runnable() {
+                    public void run() {
+                        try {
+                            start.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                        }
+                    }
+                });
+            post(a, "a", order);
+            post(b, "b", order);
+            a.resumeExecution();
+            b.resumeExecution();
+            start.countDown();
+
+            Runnable end = new Runnable() {
+                    public void run() {
+                    }
+                };
+            a.invokeAndWait(end);
+            b.invokeAndWait(end);
+            assertEquals(2 * RUNNABLES, order.size());
+
+            // Count the runnables run in a row while the other queue
+            // still had runnables to run.
+            int na = 0;
+            int nb = 0;
+            int run = 0;
+            Object last = null;
+            for (int i = 0; i < order.size(); i++) {
+                Object q = order.get(i);
+                if (q == "a") na++; else nb++;
+                run = (q == last) ? run + 1 : 1;
+                last = q;
+                if ((na < RUNNABLES) && (nb < RUNNABLES)
+                        && (run > RunnableQueue.EXECUTOR_BATCH_SIZE)) {
+                    throw new Exception("Queue " + q + " ran " + run +
+                                        " runnables in a row at " + i);
+                }
+            }
+            a.halt();
+            b.halt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Posts <code>RUNNABLES</code> runnables to a queue, which add the
+     * given name to a list.
+     */
+    protected void post(RunnableQueue rq, final String name,
+                        final List order) {
+        for (int i = 0; i < RUNNABLES; i++) {
+            rq.invokeLater(new Runnable() {
+                    public void run() {
+                        order.add(name);
+                    }
+                });
+        }
+    }
+
+    /**
+     * Checks that the run handler is told of the suspensions and
+     * resumptions, and that no runnable is run while the queue is
+     * suspended.
+     */
+    protected void testSuspendResume() throws Exception {
+        ScheduledThreadPoolExecutor executor =
+            new ScheduledThreadPoolExecutor(2);
+        try {
+            RunnableQueue rq = RunnableQueue.createRunnableQueue(executor);
+            EventHandler h = new EventHandler();
+            rq.setRunHandler(h);
+
+            // The queue starts suspended.
+            final AtomicInteger count = new AtomicInteger();
+            Runnable r = new Runnable() {
+                    public void run() {
+                        count.incrementAndGet();
+                    }
+                };
+            rq.invokeLater(r);
+            Thread.sleep(100);
+            assertEquals(0, count.get());
+            assertTrue(rq.getQueueState() == RunnableQueue.SUSPENDED);
+            // The initial suspension may be sent before the handler
+            // is set.
+            h.clear();
+
+            rq.resumeExecution();
+            h.waitFor("resumed", 1);
+            rq.invokeAndWait(r);
+            assertEquals(2, count.get());
+
+            rq.suspendExecution(true);
+            assertTrue(rq.getQueueState() == RunnableQueue.SUSPENDED);
+            h.waitFor("suspended", 1);
+            rq.invokeLater(r);
+            Thread.sleep(100);
+            assertEquals(2, count.get());
+
+            rq.resumeExecution();
+            h.waitFor("resumed", 2);
+            rq.invokeAndWait(r);
+            assertEquals(4, count.get());
+            h.waitFor("invoked", 4);
+            assertEquals("[resumed, start, invoked, start, invoked, " +
+                         "suspended, resumed, start, invoked, " +
+                         "start, invoked]",
+                         h.getEvents().toString());
+            rq.halt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks that halting a suspended queue releases the threads
+     * blocked in <code>invokeAndWait</code> and
+     * <code>preemptAndWait</code>, without running their runnables.
+     */
+    protected void testHalt() throws Exception {
+        ScheduledThreadPoolExecutor executor =
+            new ScheduledThreadPoolExecutor(2);
+        try {
+            final RunnableQueue rq =
+                RunnableQueue.createRunnableQueue(executor);
+            final AtomicInteger count = new AtomicInteger();
+            final AtomicInteger released = new AtomicInteger();
+            final Runnable r = new Runnable() {
+                    public void run() {
+                        count.incrementAndGet();
+                    }
+                };
+            Thread[] threads = new Thread[2];
+            for (int i = 0; i < threads.length; i++) {
+                final boolean preempt = (i == 1);
+                threads[i] = new Thread() {
+                        public void run() {
+                            try {
+                                if (preempt) {
+                                    rq.preemptAndWait(r);
+                                } else {
+                                    rq.invokeAndWait(r);
+                                }
+                                released.incrementAndGet();
+                            } catch (InterruptedException e) {
+                            }
+                        }
+                    };
+                threads[i].start();
+            }
+
+            // Wait for both runnables to be queued.
+            long end = System.currentTimeMillis() + TIMEOUT;
+            while (size(rq) < 2) {
+                if (System.currentTimeMillis() > end) {
+                    throw new Exception("Runnables not queued");
+                }
+                Thread.sleep(10);
+            }
+            rq.halt();
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].join(TIMEOUT);
+                assertTrue(!threads[i].isAlive());
+            }
+            assertEquals(2, released.get());
+            assertEquals(0, count.get());
+            assertTrue(!rq.isAlive());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the number of runnables waiting in a queue.
+     */
+    protected static int size(RunnableQueue rq) {
+        synchronized (rq.getIteratorLock()) {
+            int n = 0;
+            Iterator it = rq.iterator();
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Checks that an idle queue wakes up to run its idle runnable
+     * when it is due, and not before.
+     */
+    protected void testIdleRunnable() throws Exception {
+        ScheduledThreadPoolExecutor executor =
+            new ScheduledThreadPoolExecutor(2);
+        try {
+            RunnableQueue rq = RunnableQueue.createRunnableQueue(executor);
+            rq.resumeExecution();
+            rq.invokeAndWait(new Runnable() {
+                    public void run() {
+                    }
+                });
+            IdleRunnable idle = new IdleRunnable(3, 50);
+            rq.setIdleRunnable(idle);
+            long[] times = idle.waitForRuns(TIMEOUT);
+            for (int i = 1; i < times.length; i++) {
+                if (times[i] - times[i - 1] < 40) {
+                    throw new Exception("Idle runnable run after "
+                                        + (times[i] - times[i - 1])
+                                        + "ms");
+                }
+            }
+            // No more run once the idle runnable is not due any more.
+            Thread.sleep(200);
+            assertEquals(3, idle.getRunCount());
+            rq.halt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A run handler recording the events it is told of.
+     */
+    protected static class EventHandler
+            extends RunnableQueue.RunHandlerAdapter {
+
+        protected List events = new ArrayList();
+
+        public synchronized void runnableStart(RunnableQueue rq,
+                                               Runnable r) {
+            add("start");
+        }
+
+        public synchronized void runnableInvoked(RunnableQueue rq,
+                                                 Runnable r) {
+            add("invoked");
+        }
+
+        public synchronized void executionSuspended(RunnableQueue rq) {
+            add("suspended");
+        }
+
+        public synchronized void executionResumed(RunnableQueue rq) {
+            add("resumed");
+        }
+
+        protected void add(String event) {
+            events.add(event);
+            notifyAll();
+        }
+
+        /**
+         * Waits until the given event has been sent <code>n</code>
+         * times.
+         */
+        public synchronized void waitFor(String event, int n)
+                throws Exception {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            while (Collections.frequency(events, event) < n) {
+                long t = end - System.currentTimeMillis();
+                if (t <= 0) {
+                    throw new Exception("No " + event + " event: " + events);
+                }
+                wait(t);
+            }
+        }
+
+        public synchronized void clear() {
+            events.clear();
+        }
+
+        public synchronized List getEvents() {
+            return new ArrayList(events);
+        }
+    }
+
+    /**
+     * An idle runnable due a given time after each run, a given
+     * number of times.
+     */
+    protected static class IdleRunnable
+            implements RunnableQueue.IdleRunnable {
+
+        protected long[] times;
+        protected int count;
+        protected long delay;
+
+        public IdleRunnable(int runs, long delay) {
+            this.times = new long[runs];
+            this.delay = delay;
+        }
+
+        public synchronized long getWaitTime() {
+            if (count == times.length) {
+                return Long.MAX_VALUE;
+            }
+            if (count == 0) {
+                return 0;
+            }
+            return times[count - 1] + delay;
+        }
+
+        public synchronized void run() {
+            times[count++] = System.currentTimeMillis();
+            notifyAll();
+        }
+
+        public synchronized int getRunCount() {
+            return count;
+        }
+
+        /**
+         * Waits for all the runs and returns their times.
+         */
+        public synchronized long[] waitForRuns(long timeout)
+                throws Exception {
+            long end = System.currentTimeMillis() + timeout;
+            while (count < times.length) {
+                long t = end - System.currentTimeMillis();
+                if (t <= 0) {
+                    throw new Exception("Idle runnable run " + count
+                                        + " times");
+                }
+                wait(t);
+            }
+            return (long[])times.clone();
+        }
+    }
+}